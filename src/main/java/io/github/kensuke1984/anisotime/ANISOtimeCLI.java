@@ -2,16 +2,24 @@ package io.github.kensuke1984.anisotime;
 
 import java.awt.Desktop;
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -32,10 +40,18 @@ import net.sf.epsgraphics.EpsGraphics;
 /**
  * This class is only for CLI use of ANISOtime.
  * <p>
+ * In the batch mode (-b) and the server mode (--server), each input line is a
+ * query "depth[km] distance[deg] (phase,phase,...)". Columns are separated
+ * by spaces or commas and lines starting with # are ignored. If no phase is
+ * given, the phases by -ph are used. For each arrival, a line "depth distance
+ * phase (p &Delta; T)" is output. When the phase has no arrival, the values
+ * are NaN. The server listens only on the loopback address and keeps the
+ * catalog in memory, so queries need neither a new JVM nor reading catalogs.
+ * <p>
  * TODO customize for catalog ddelta dR
  *
  * @author Kensuke Konishi
- * @version 0.3.7.2b
+ * @version 0.3.8b
  */
 final class ANISOtimeCLI {
 
@@ -209,6 +225,18 @@ final class ANISOtimeCLI {
         targets[targets.length - 1] = max;
         for (Phase phase : targetPhases) {
             Path out = outDir.resolve(phase.toString() + "." + timeStr + ".rcs");
+            if (!phase.isDiffracted()) {
+                // {p, delta, T}
+                List<double[]> lines = new ArrayList<>();
+                for (double d : targets)
+                    for (double[] pt : catalog.searchRayparameterAndTime(phase, eventR, Math.toRadians(d)))
+                        lines.add(new double[]{pt[0], d, pt[1]});
+                try (PrintStream ps = new PrintStream(Files.newOutputStream(out, StandardOpenOption.CREATE_NEW))) {
+                    lines.stream().sorted(Comparator.comparingDouble((double[] line) -> line[0]).reversed())
+                            .forEach(line -> printLine(phase, ps, decimalPlaces, line));
+                }
+                continue;
+            }
             Map<Raypath, Double> deltaPathMap = new HashMap<>();
             for (double d : targets)
                 for (Raypath p : catalog.searchPath(phase, eventR, Math.toRadians(d)))
@@ -267,6 +295,16 @@ final class ANISOtimeCLI {
 
             setParameters();
 
+            if (cmd.hasOption("b")) {
+                processBatch();
+                return;
+            }
+
+            if (cmd.hasOption("server")) {
+                serve();
+                return;
+            }
+
             if (cmd.hasOption("rs")) {
                 printRecordSection();
                 return;
@@ -348,8 +386,128 @@ final class ANISOtimeCLI {
     }
 
     private void printLine(Phase phase, PrintStream out, int decimalPlace, double... values) {
-        out.println(phase + " " + IntStream.range(0, values.length).filter(i -> (1 << i & showFlag) != 0)
-                .mapToObj(i -> Utilities.fixDecimalPlaces(decimalPlace, values[i])).collect(Collectors.joining(" ")));
+        out.println(toLine(phase, decimalPlace, values));
+    }
+
+    private String toLine(Phase phase, int decimalPlace, double... values) {
+        return phase + " " + IntStream.range(0, values.length).filter(i -> (1 << i & showFlag) != 0)
+                .mapToObj(i -> Utilities.fixDecimalPlaces(decimalPlace, values[i])).collect(Collectors.joining(" "));
+    }
+
+    /**
+     * Answers the queries in the file (or the standard input for "-") given by
+     * -b. Results are written in the standard output line by line.
+     *
+     * @throws IOException if any
+     */
+    private void processBatch() throws IOException {
+        String input = cmd.getOptionValue("b");
+        try (BufferedReader reader = input.equals("-") ?
+                new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)) :
+                Files.newBufferedReader(Paths.get(input))) {
+            PrintStream out = new PrintStream(new BufferedOutputStream(System.out), false);
+            answer(reader, out);
+            out.flush();
+        }
+    }
+
+    /**
+     * Accepts connections on the loopback address at the port given by
+     * --server. Each connection is handled by its own thread and the results
+     * are flushed line by line.
+     *
+     * @throws IOException if any
+     */
+    private void serve() throws IOException {
+        int port = Integer.parseInt(cmd.getOptionValue("server"));
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.println("ANISOtime is waiting for queries on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket socket = server.accept();
+                Thread thread = new Thread(() -> {
+                    try (Socket s = socket; BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                         PrintStream out = new PrintStream(s.getOutputStream(), true, "UTF-8")) {
+                        answer(reader, out);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Reads queries until the end of the reader. A query with a problem is
+     * answered by a line starting with #.
+     *
+     * @param reader for queries
+     * @param out    for results
+     * @throws IOException if any
+     */
+    private void answer(BufferedReader reader, PrintStream out) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            try {
+                out.println(query(line));
+            } catch (RuntimeException e) {
+                out.println("# " + line + " : " + e.getMessage());
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * @param line depth[km] distance[deg] (phase,phase,...)
+     * @return lines for all the arrivals
+     */
+    private String query(String line) {
+        String[] parts = line.split("[\\s,]+");
+        if (parts.length < 2) throw new IllegalArgumentException("depth and distance are necessary.");
+        double depth = Double.parseDouble(parts[0]);
+        double distance = Double.parseDouble(parts[1]);
+        double r = structure.earthRadius() - depth;
+        if (r <= structure.innerCoreBoundary() || structure.earthRadius() < r)
+            throw new IllegalArgumentException("Invalid depth " + parts[0]);
+        Phase[] phases = parts.length == 2 ? targetPhases :
+                Arrays.stream(parts, 2, parts.length).map(n -> Phase.create(n, cmd.hasOption("SV")))
+                        .toArray(Phase[]::new);
+        String prefix = parts[0] + " " + parts[1] + " ";
+        List<String> lines = new ArrayList<>();
+        for (Phase phase : phases) {
+            List<double[]> results = search(phase, r, Math.toRadians(distance));
+            if (results.isEmpty()) results.add(new double[]{Double.NaN, Double.NaN, Double.NaN});
+            for (double[] result : results)
+                lines.add(prefix + toLine(phase, decimalPlaces, result));
+        }
+        return String.join(System.lineSeparator(), lines);
+    }
+
+    /**
+     * @param phase       target phase
+     * @param r           radius of the source [km]
+     * @param targetDelta [rad]
+     * @return {p, &Delta; [deg], T [s]} of the arrivals in the order of p
+     */
+    private List<double[]> search(Phase phase, double r, double targetDelta) {
+        List<double[]> results = new ArrayList<>();
+        if (!phase.isDiffracted()) {
+            for (double[] pt : catalog.searchRayparameterAndTime(phase, r, targetDelta))
+                results.add(new double[]{pt[0], Math.toDegrees(targetDelta), pt[1]});
+            return results;
+        }
+        Raypath[] raypaths = catalog.searchPath(phase, r, targetDelta);
+        if (raypaths.length == 0) return results;
+        double deltaOnBoundary = Math.toDegrees(targetDelta - raypaths[0].computeDelta(r, phase));
+        if (deltaOnBoundary < 0) return results;
+        Phase diffracted = Phase.create(phase.toString() + deltaOnBoundary, phase.isPSV());
+        results.add(new double[]{raypaths[0].getRayParameter(), Math.toDegrees(targetDelta),
+                raypaths[0].computeT(r, diffracted)});
+        return results;
     }
 
     /**
@@ -451,6 +609,10 @@ final class ANISOtimeCLI {
         options.addOption("rs", "record-section", true,
                 "start,end(,interval) [deg]\n Computes a table of a record section for the range.");
         options.addOption("o", true, "Directory for ray path figures or record sections.");
+        options.addOption("b", "batch", true,
+                "Path of a file (- for the standard input) of queries \"depth[km] distance[deg] (phases)\" in lines.");
+        options.addOption(null, "server", true,
+                "Port number. Answers queries (same as -b) from the local host, keeping the catalog in memory.");
     }
 
     /**
@@ -500,6 +662,17 @@ final class ANISOtimeCLI {
             return true;
         }
 
+        if (cmd.hasOption("b") || cmd.hasOption("server")) {
+            if (cmd.hasOption("b") && cmd.hasOption("server")) {
+                System.err.println("Either -b or --server can be chosen.");
+                return true;
+            }
+            if (cmd.hasOption("rs") || cmd.hasOption("p") || cmd.hasOption("deg") || cmd.hasOption("eps")) {
+                System.err.println("In the batch or server mode, none of -rs, -p, -deg and -eps can be specified.");
+                return true;
+            }
+        }
+
         if (cmd.hasOption("rc") && cmd.hasOption("mod")) {
             System.err.println("When you read a catalog, you cannot specify a velocity model.");
             return true;
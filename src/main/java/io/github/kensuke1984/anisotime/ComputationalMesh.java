@@ -19,7 +19,7 @@ import org.apache.commons.math3.linear.RealVector;
  * TODO Automesh by QDelta ?
  *
  * @author Kensuke Konishi
- * @version 0.0.1.1
+ * @version 0.0.1.2
  */
 public class ComputationalMesh implements Serializable {
 
@@ -73,6 +73,17 @@ public class ComputationalMesh implements Serializable {
         createSimpleMesh(structure, innerCoreInterval, outerCoreInterval, mantleInterval);
     }
 
+    /**
+     * @param innerCoreMesh mesh for the inner-core
+     * @param outerCoreMesh mesh for the outer-core
+     * @param mantleMesh    mesh for the mantle
+     */
+    ComputationalMesh(double[] innerCoreMesh, double[] outerCoreMesh, double[] mantleMesh) {
+        this.innerCoreMesh = RealVector.unmodifiableRealVector(new ArrayRealVector(innerCoreMesh));
+        this.outerCoreMesh = RealVector.unmodifiableRealVector(new ArrayRealVector(outerCoreMesh));
+        this.mantleMesh = RealVector.unmodifiableRealVector(new ArrayRealVector(mantleMesh));
+    }
+
     /**
      * @param partition for the return mesh
      * @return mesh for the partition
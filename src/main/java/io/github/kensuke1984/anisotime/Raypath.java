@@ -19,6 +19,7 @@ import java.util.EnumMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.DoubleFunction;
@@ -60,7 +61,7 @@ import io.github.kensuke1984.kibrary.math.Integrand;
  * JV,JH: SV, SH(J) wave in the inner-core<br>
  *
  * @author Kensuke Konishi
- * @version 0.4.2.2b
+ * @version 0.4.2.4b
  * @see "Woodhouse, 1981"
  */
 public class Raypath implements Serializable, Comparable<Raypath> {
@@ -181,6 +182,69 @@ public class Raypath implements Serializable, Comparable<Raypath> {
         computeJeffreysRange();
     }
 
+    /**
+     * The number of values of each phase part in {@link #getPackedValues(PhasePart)}
+     */
+    static final int PACKED_LENGTH = 6;
+
+    /**
+     * Restores a raypath from the values by {@link #getPropagation(PhasePart)}
+     * and {@link #getPackedValues(PhasePart)}. Nothing is computed here.
+     *
+     * @param rayParameter ray parameter P
+     * @param woodhouse    {@link Woodhouse1981}
+     * @param mesh         {@link ComputationalMesh}
+     * @param computed     if &Delta; and T in the values are computed
+     * @param propagations propagation of each phase part in the order of {@link PhasePart#values()}
+     * @param values       packed values of each phase part in the order of {@link PhasePart#values()}
+     */
+    Raypath(double rayParameter, Woodhouse1981 woodhouse, ComputationalMesh mesh, boolean computed,
+            Propagation[] propagations, double[][] values) {
+        RAY_PARAMETER = rayParameter;
+        WOODHOUSE = woodhouse;
+        MESH = mesh;
+        turningRMap = Collections.synchronizedMap(new EnumMap<>(PhasePart.class));
+        propagationMap = Collections.synchronizedMap(new EnumMap<>(PhasePart.class));
+        jeffreysBoundaryMap = Collections.synchronizedMap(new EnumMap<>(PhasePart.class));
+        jeffreysDeltaMap = Collections.synchronizedMap(new EnumMap<>(PhasePart.class));
+        jeffreysTMap = Collections.synchronizedMap(new EnumMap<>(PhasePart.class));
+        if (computed) {
+            deltaMap = Collections.synchronizedMap(new EnumMap<>(PhasePart.class));
+            timeMap = Collections.synchronizedMap(new EnumMap<>(PhasePart.class));
+        }
+        for (PhasePart pp : PhasePart.values()) {
+            double[] value = values[pp.ordinal()];
+            propagationMap.put(pp, propagations[pp.ordinal()]);
+            turningRMap.put(pp, value[0]);
+            jeffreysBoundaryMap.put(pp, value[1]);
+            jeffreysDeltaMap.put(pp, value[2]);
+            jeffreysTMap.put(pp, value[3]);
+            if (!computed) continue;
+            deltaMap.put(pp, value[4]);
+            timeMap.put(pp, value[5]);
+        }
+        isComputed = computed;
+    }
+
+    /**
+     * @param pp phase part
+     * @return {turning R, Jeffreys boundary, Jeffreys &Delta;, Jeffreys T,
+     * &Delta;, T} of the phase part. &Delta; and T are NaN if this is not
+     * computed.
+     */
+    double[] getPackedValues(PhasePart pp) {
+        return new double[]{turningRMap.get(pp), jeffreysBoundaryMap.get(pp), jeffreysDeltaMap.get(pp),
+                jeffreysTMap.get(pp), isComputed ? deltaMap.get(pp) : Double.NaN,
+                isComputed ? timeMap.get(pp) : Double.NaN};
+    }
+
+    /**
+     * @return if &Delta; and T of the phase parts are computed
+     */
+    boolean isComputed() {
+        return isComputed;
+    }
+
     /**
      * @param phase the target phase
      * @return bottom Radius of the input phase[km]
@@ -409,11 +473,11 @@ public class Raypath implements Serializable, Comparable<Raypath> {
     private void computeT() {
         timeMap = Collections.synchronizedMap(new EnumMap<>(PhasePart.class));
         Arrays.stream(PhasePart.values()).forEach(pp -> timeMap.put(pp, Double.NaN));
-        Function<PhasePart, Thread> createThread = pp -> {
+        Function<PhasePart, ForkJoinTask<?>> createTask = pp -> {
             RealVector mesh = MESH.getMesh(pp.whichPartition());
             double[] dT = new double[mesh.getDimension() - 1];
             dTMap.put(pp, dT);
-            return new Thread(() -> {
+            return ForkJoinTask.adapt(() -> {
                 double jeffreysBoundary = jeffreysBoundaryMap.get(pp);
                 for (int i = 0; i < dT.length; i++) {
                     if (mesh.getEntry(i) < jeffreysBoundary) continue;
@@ -438,15 +502,11 @@ public class Raypath implements Serializable, Comparable<Raypath> {
         };
 
         dTMap = new EnumMap<>(PhasePart.class);
-        List<Thread> runningThread =
+        List<ForkJoinTask<?>> tasks =
                 Arrays.stream(PhasePart.values()).filter(pp -> propagationMap.get(pp) != Propagation.NOEXIST)
-                        .map(createThread).collect(Collectors.toList());
-
-        runningThread.forEach(Thread::start);
-
+                        .map(createTask).collect(Collectors.toList());
         try {
-            for (Thread t : runningThread)
-                t.join();
+            ForkJoinTask.invokeAll(tasks);
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException("Could not compute travel time.");
@@ -990,11 +1050,11 @@ public class Raypath implements Serializable, Comparable<Raypath> {
     private void computeDelta() {
         deltaMap = Collections.synchronizedMap(new EnumMap<>(PhasePart.class));
         Arrays.stream(PhasePart.values()).forEach(pp -> deltaMap.put(pp, Double.NaN));
-        Function<PhasePart, Thread> createThread = pp -> {
+        Function<PhasePart, ForkJoinTask<?>> createTask = pp -> {
             RealVector mesh = MESH.getMesh(pp.whichPartition());
             double[] dTheta = new double[mesh.getDimension() - 1];
             dThetaMap.put(pp, dTheta);
-            return new Thread(() -> {
+            return ForkJoinTask.adapt(() -> {
                 double jeffreysBoundary = jeffreysBoundaryMap.get(pp);
                 for (int i = 0; i < dTheta.length; i++) {
                     if (mesh.getEntry(i) < jeffreysBoundary) continue;
@@ -1019,14 +1079,11 @@ public class Raypath implements Serializable, Comparable<Raypath> {
         };
 
         dThetaMap = Collections.synchronizedMap(new EnumMap<>(PhasePart.class));
-        List<Thread> runningThread =
+        List<ForkJoinTask<?>> tasks =
                 Arrays.stream(PhasePart.values()).filter(pp -> propagationMap.get(pp) != Propagation.NOEXIST)
-                        .map(createThread).collect(Collectors.toList());
-
-        runningThread.forEach(Thread::start);
+                        .map(createTask).collect(Collectors.toList());
         try {
-            for (Thread t : runningThread)
-                t.join();
+            ForkJoinTask.invokeAll(tasks);
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException("Could not compute epicentral distances.");
@@ -1,23 +1,37 @@
 package io.github.kensuke1984.anisotime;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
-import java.util.function.BiFunction;
-
-import org.apache.commons.math3.analysis.polynomials.PolynomialFunction;
-import org.apache.commons.math3.fitting.PolynomialCurveFitter;
-import org.apache.commons.math3.fitting.WeightedObservedPoints;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
 
 import io.github.kensuke1984.kibrary.util.Trace;
 import io.github.kensuke1984.kibrary.util.Utilities;
@@ -28,9 +42,21 @@ import io.github.kensuke1984.kibrary.util.Utilities;
  * <p>
  * If a new catalog is computed which does not exist in Kibrary share, it
  * automatically is stored.
+ * <p>
+ * Raypaths for a new catalog are computed on the common {@link ForkJoinPool}
+ * ahead of the (sequential) choice of ray parameters: the next ones on the
+ * grid of {@link #DELTA_P} and the midpoints for the refinement of intervals
+ * which do not satisfy {@link #D_DELTA} are expected and computed in parallel.
+ * The choice itself is not changed, so the catalog is the same as the one
+ * computed one by one.
+ * <p>
+ * Catalogs are written in a flat binary format (see {@link #write(Path,
+ * OpenOption...)}) which is read by a memory mapping without computation for
+ * each raypath. Files in the former format (Java serialization) are still
+ * read, and the ones in the share are converted when they are read.
  *
  * @author Kensuke Konishi
- * @version 0.0.10b
+ * @version 0.0.14b
  */
 public class RaypathCatalog implements Serializable {
 
@@ -49,56 +75,87 @@ public class RaypathCatalog implements Serializable {
 
     /**
      * Catalog for PREM. &delta;&Delta; = 1. Mesh is simple.
+     * It is read (or computed) when it is used first.
+     *
+     * @return catalog for PREM
      */
-    public final static RaypathCatalog PREM;
+    public static RaypathCatalog prem() {
+        return PREMHolder.CATALOG;
+    }
 
     /**
      * Catalog for the isotropic PREM. &delta;&Delta; = 1. Mesh is simple.
+     * It is read (or computed) when it is used first.
+     *
+     * @return catalog for the isotropic PREM
      */
-    public final static RaypathCatalog ISO_PREM;
+    public static RaypathCatalog iprem() {
+        return ISOPREMHolder.CATALOG;
+    }
 
     /**
      * Catalog for AK135. &delta;&Delta; = 1. Mesh is simple.
+     * It is read (or computed) when it is used first.
+     *
+     * @return catalog for AK135
      */
-    public final static RaypathCatalog AK135;
+    public static RaypathCatalog ak135() {
+        return AK135Holder.CATALOG;
+    }
 
-    static {
+    private static final class PREMHolder {
+        private static final RaypathCatalog CATALOG =
+                getCatalogue(share.resolve("prem.cat"), VelocityStructure.prem());
+    }
+
+    private static final class ISOPREMHolder {
+        private static final RaypathCatalog CATALOG =
+                getCatalogue(share.resolve("iprem.cat"), VelocityStructure.iprem());
+    }
+
+    private static final class AK135Holder {
+        private static final RaypathCatalog CATALOG =
+                getCatalogue(share.resolve("ak135.cat"), VelocityStructure.ak135());
+    }
+
+    /**
+     * @param p path of the catalog in the share
+     * @param v structure of the catalog
+     * @return the catalog in p. If p does not exist or is out of date, a new
+     * one is computed and written in p.
+     */
+    private static RaypathCatalog getCatalogue(Path p, VelocityStructure v) {
+        RaypathCatalog cat;
+        String model = p.getFileName().toString().replace(".cat", "");
+        ComputationalMesh simple = ComputationalMesh.simple(v);
         try {
-            BiFunction<Path, VelocityStructure, RaypathCatalog> getCatalogue = (p, v) -> {
-                RaypathCatalog cat;
-                String model = p.getFileName().toString().replace(".cat", "");
-                ComputationalMesh simple = ComputationalMesh.simple(v);
-                if (Files.exists(p)) {
-                    try {
-                        cat = read(p);
-                    } catch (ClassNotFoundException | IOException ice) {
-                        System.err.println("Creating a catalog for " + model +
-                                " (due to out of date).  This computation is done only once.");
-                        (cat = new RaypathCatalog(v, simple, Math.toRadians(1))).create();
-                        try {
-                            cat.write(p);
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                } else {
-                    System.err.println("Creating a catalog for " + model + ". This computation is done only once.");
-                    (cat = new RaypathCatalog(v, simple, Math.toRadians(1))).create();
-                    try {
-                        cat.write(p);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
-                return cat;
-            };
             Files.createDirectories(share);
-            PREM = getCatalogue.apply(share.resolve("prem.cat"), VelocityStructure.prem());
-            ISO_PREM = getCatalogue.apply(share.resolve("iprem.cat"), VelocityStructure.iprem());
-            AK135 = getCatalogue.apply(share.resolve("ak135.cat"), VelocityStructure.ak135());
-        } catch (Exception e) {
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        if (Files.exists(p)) {
+            try {
+                cat = readAndMigrate(p);
+            } catch (ClassNotFoundException | IOException ice) {
+                System.err.println("Creating a catalog for " + model +
+                        " (due to out of date).  This computation is done only once.");
+                (cat = new RaypathCatalog(v, simple, Math.toRadians(1))).create();
+                try {
+                    cat.write(p);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        } else {
+            System.err.println("Creating a catalog for " + model + ". This computation is done only once.");
+            (cat = new RaypathCatalog(v, simple, Math.toRadians(1))).create();
+            try {
+                cat.write(p);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return cat;
     }
 
     /**
@@ -148,6 +205,26 @@ public class RaypathCatalog implements Serializable {
      */
     final double MINIMUM_DELTA_P = 0.01;
 
+    /**
+     * The number of ray parameters computed ahead in {@link #create()}
+     */
+    private static final int LOOKAHEAD = Runtime.getRuntime().availableProcessors() - 1;
+
+    /**
+     * Raypaths computed (or being computed) in {@link #create()}. Key is the ray parameter.
+     */
+    private transient Map<Double, ForkJoinTask<Raypath>> raypathTasks;
+
+    /**
+     * The maximum number of source radii for which {@link RaypathIndex}s are kept
+     */
+    private static final int MAX_INDEXED_RADII = 16;
+
+    /**
+     * {@link RaypathIndex}s for the recently used source radii
+     */
+    private transient Map<Double, Map<Phase, RaypathIndex>> indexMap;
+
     /**
      * List of stored raypaths. Ordered by each ray parameter p.
      */
@@ -174,7 +251,8 @@ public class RaypathCatalog implements Serializable {
      * p<sub>i+1</sub> are stored, otherwise either only one of them is stored.
      * <p>
      * Note that if a catalog for the input parameter already exists in
-     * KibraryHOME/share, the stored catalog returns.
+     * KibraryHOME/share, the stored catalog returns. The catalogs for PREM,
+     * the isotropic PREM and AK135 are read only when the input is for them.
      *
      * @param structure for computation of raypaths
      * @param mesh      for computation of raypaths.
@@ -187,20 +265,26 @@ public class RaypathCatalog implements Serializable {
                     RaypathCatalog c;
                     switch (p.getFileName().toString()) {
                         case "iprem.cat":
-                            c = ISO_PREM;
+                            if (!structure.equals(VelocityStructure.iprem())) continue;
+                            c = iprem();
                             break;
                         case "prem.cat":
-                            c = PREM;
+                            if (!structure.equals(VelocityStructure.prem())) continue;
+                            c = prem();
                             break;
                         case "ak135.cat":
-                            c = AK135;
+                            if (!structure.equals(VelocityStructure.ak135())) continue;
+                            c = ak135();
                             break;
                         default:
-                            c = read(p);
+                            if (!mayHave(p, dDelta)) continue;
+                            c = readAndMigrate(p);
                     }
                     if (c.getStructure().equals(structure) && c.MESH.equals(mesh) && c.D_DELTA == dDelta) return c;
                 } catch (InvalidClassException ice) {
                     System.err.println(p + " may be out of date.");
+                } catch (IOException e) {
+                    System.err.println(p + " can not be read. " + e.getMessage());
                 }
         } catch (Exception e) {
             e.printStackTrace();
@@ -229,7 +313,11 @@ public class RaypathCatalog implements Serializable {
      * @param dDelta    &delta;&Delta; [rad] for creation of a catalog.
      */
     private RaypathCatalog(VelocityStructure structure, ComputationalMesh mesh, double dDelta) {
-        WOODHOUSE = new Woodhouse1981(structure);
+        this(new Woodhouse1981(structure), mesh, dDelta);
+    }
+
+    private RaypathCatalog(Woodhouse1981 woodhouse, ComputationalMesh mesh, double dDelta) {
+        WOODHOUSE = woodhouse;
         if (dDelta <= 0) throw new IllegalArgumentException("Input dDelta must be positive.");
         D_DELTA = dDelta;
         MESH = mesh;
@@ -261,9 +349,131 @@ public class RaypathCatalog implements Serializable {
         double p_Pdiff = cmb * Math.sqrt(rho / structure.getA(cmb));
         double p_SVdiff = cmb * Math.sqrt(rho / structure.getL(cmb));
         double p_SHdiff = cmb * Math.sqrt(rho / structure.getN(cmb));
-        (pDiff = new Raypath(p_Pdiff, WOODHOUSE, MESH)).compute();
-        (svDiff = new Raypath(p_SVdiff, WOODHOUSE, MESH)).compute();
-        (shDiff = new Raypath(p_SHdiff, WOODHOUSE, MESH)).compute();
+        prefetch(p_Pdiff);
+        prefetch(p_SVdiff);
+        prefetch(p_SHdiff);
+        (pDiff = computeRaypath(p_Pdiff)).compute();
+        (svDiff = computeRaypath(p_SVdiff)).compute();
+        (shDiff = computeRaypath(p_SHdiff)).compute();
+    }
+
+    /**
+     * Starts computation of the raypath for the ray parameter p, if it is not started yet.
+     *
+     * @param p ray parameter
+     */
+    private void prefetch(double p) {
+        raypathTasks.computeIfAbsent(p, key -> ForkJoinPool.commonPool().submit(() -> {
+            Raypath raypath = new Raypath(key, WOODHOUSE, MESH);
+            if (raypath.exists()) raypath.compute();
+            return raypath;
+        }));
+    }
+
+    /**
+     * @param p ray parameter
+     * @return raypath for p. It is computed if it exists.
+     */
+    private Raypath computeRaypath(double p) {
+        prefetch(p);
+        return raypathTasks.get(p).join();
+    }
+
+    /**
+     * @param raypath1 computed raypath
+     * @param raypath2 computed raypath (p<sub>1</sub> &lt; p<sub>2</sub>)
+     * @return &delta;p with which &delta;&Delta; of P, SV and SH would be {@link #D_DELTA}
+     * if they change linearly.
+     */
+    private double estimateInterval(Raypath raypath1, Raypath raypath2) {
+        double earthRadius = WOODHOUSE.getStructure().earthRadius();
+        double dDelta = 0;
+        for (Phase[] phases : new Phase[][]{{Phase.P, Phase.PcP}, {Phase.SV, Phase.SVcS}, {Phase.S, Phase.ScS}}) {
+            double delta1 = raypath1.computeDelta(earthRadius, phases[0]);
+            double delta2 = raypath2.computeDelta(earthRadius, phases[0]);
+            if (Double.isNaN(delta1)) {
+                delta1 = raypath1.computeDelta(earthRadius, phases[1]);
+                delta2 = raypath2.computeDelta(earthRadius, phases[1]);
+            }
+            if (!Double.isNaN(delta1 - delta2)) dDelta = Math.max(dDelta, Math.abs(delta1 - delta2));
+        }
+        double dp = raypath2.getRayParameter() - raypath1.getRayParameter();
+        return dDelta == 0 ? DELTA_P : dp * D_DELTA / dDelta;
+    }
+
+    /**
+     * @param p ray parameter
+     * @return raypath for p if its computation is finished, otherwise null
+     */
+    private Raypath getIfFinished(double p) {
+        ForkJoinTask<Raypath> task = raypathTasks.get(p);
+        return task != null && task.isDone() ? task.join() : null;
+    }
+
+    /**
+     * {@link #closeEnough(Raypath, Raypath)} if both raypaths are already computed,
+     * otherwise an estimation by the interval.
+     */
+    private boolean expectCloseEnough(double p1, double p2, double interval) {
+        Raypath raypath1 = getIfFinished(p1);
+        Raypath raypath2 = getIfFinished(p2);
+        if (raypath1 != null && raypath2 != null) return closeEnough(raypath1, raypath2);
+        return p1 < p2 && p2 - p1 <= interval;
+    }
+
+    /**
+     * Starts computation of the raypath for p and the next {@link #LOOKAHEAD} ones which
+     * {@link #create()} will probably need. The choice in {@link #create()} is followed
+     * using the raypaths already computed. For the ones in computation, it is assumed
+     * that they exist and that &Delta; changes linearly with p as between the last two
+     * raypaths in the catalog. While the raypath for p is in computation, both of the
+     * cases (close enough to the last one or not) are followed.
+     *
+     * @param p    ray parameter to be computed next
+     * @param pMax maximum ray parameter
+     */
+    private void speculate(double p, double pMax) {
+        prefetch(p);
+        if (LOOKAHEAD == 0) return;
+        Raypath lastPath = raypathList.last();
+        Raypath lower = raypathList.lower(lastPath);
+        double interval = lower == null ? DELTA_P : estimateInterval(lower, lastPath);
+        TreeSet<Double> pool = new TreeSet<>();
+        raypathPool.tailSet(lastPath, false).forEach(raypath -> pool.add(raypath.getRayParameter()));
+        double last = lastPath.getRayParameter();
+        if (getIfFinished(p) != null || LOOKAHEAD == 1) {
+            speculate(p, last, pool, interval, pMax, LOOKAHEAD, null);
+            return;
+        }
+        speculate(p, last, new TreeSet<>(pool), interval, pMax, LOOKAHEAD / 2, true);
+        speculate(p, last, pool, interval, pMax, LOOKAHEAD - LOOKAHEAD / 2, false);
+    }
+
+    /**
+     * Follows the choice in {@link #create()} from p and starts computation of the next n raypaths.
+     *
+     * @param closeEnough if p is close enough to last (null if unknown)
+     */
+    private void speculate(double p, double last, TreeSet<Double> pool, double interval, double pMax, int n,
+                           Boolean closeEnough) {
+        for (int i = 0; i < n; i++) {
+            Raypath raypath = getIfFinished(p);
+            if (raypath != null && !raypath.exists()) {
+                last += MINIMUM_DELTA_P;
+                prefetch(last);
+                p = last + DELTA_P;
+            } else if ((i == 0 && closeEnough != null) ? closeEnough : expectCloseEnough(last, p, interval)) {
+                last = p;
+                for (double pooled : pool)
+                    if (expectCloseEnough(last, pooled, interval)) last = pooled;
+                p = last + DELTA_P;
+            } else {
+                pool.add(p);
+                p = (p + last) / 2;
+            }
+            if (pMax <= p) return;
+            prefetch(p);
+        }
     }
 
     /**
@@ -313,21 +523,23 @@ public class RaypathCatalog implements Serializable {
     private void create() {
         double pMax = computeRayparameterLimit() + DELTA_P;
 //        System.out.println("pMax=" + pMax);
+        raypathTasks = new HashMap<>();
         // Compute raparameters for diffration phases.
         computeDiffraction();
         long time = System.nanoTime();
         System.err.println("Computing a catalogue. (If you use the same model, the catalog is not computed anymore.)");
-        Raypath firstPath = new Raypath(0, WOODHOUSE, MESH);
+        Raypath firstPath = computeRaypath(0);
         firstPath.compute();
         raypathList.add(firstPath);
         double p_Pdiff = pDiff.getRayParameter();
         double p_SVdiff = svDiff.getRayParameter();
         double p_SHdiff = shDiff.getRayParameter();
         for (double p = firstPath.getRayParameter() + DELTA_P, nextP; p < pMax; p = nextP) {
-            Raypath rp = new Raypath(p, WOODHOUSE, MESH);
+            speculate(p, pMax);
+            Raypath rp = computeRaypath(p);
             if (!rp.exists()) {
                 p = raypathList.last().getRayParameter() + MINIMUM_DELTA_P;
-                rp = new Raypath(p, WOODHOUSE, MESH);
+                rp = computeRaypath(p);
                 if (!rp.exists()) rp = lookForNextExistingRaypath(p, pMax);
                 rp.compute();
                 raypathList.add(rp);
@@ -363,6 +575,8 @@ public class RaypathCatalog implements Serializable {
         raypathList.add(pDiff);
         raypathList.add(svDiff);
         raypathList.add(shDiff);
+        raypathTasks.values().forEach(task -> task.cancel(false));
+        raypathTasks = null;
 
         System.err.println("Catalogue was made in " + Utilities.toTimeString(System.nanoTime() - time));
     }
@@ -370,12 +584,14 @@ public class RaypathCatalog implements Serializable {
     private void closeDiff(Raypath diffPath) {
         double diffP = diffPath.getRayParameter();
         Raypath last = raypathList.last();
-        Raypath diffMinus = new Raypath(diffP - MINIMUM_DELTA_P, WOODHOUSE, MESH);
-        Raypath diffPlus = new Raypath(diffP + MINIMUM_DELTA_P, WOODHOUSE, MESH);
+        prefetch(diffP - MINIMUM_DELTA_P);
+        prefetch(diffP + MINIMUM_DELTA_P);
+        Raypath diffMinus = computeRaypath(diffP - MINIMUM_DELTA_P);
+        Raypath diffPlus = computeRaypath(diffP + MINIMUM_DELTA_P);
         diffMinus.compute();
         diffPlus.compute();
         for (double p = (diffP + last.getRayParameter()) / 2, nextP; ; p = nextP) {
-            Raypath candidate = new Raypath(p, WOODHOUSE, MESH);
+            Raypath candidate = computeRaypath(p);
             candidate.compute();
             if (!closeEnough(raypathList.last(), candidate)) {
                 raypathPool.add(candidate);
@@ -491,6 +707,19 @@ public class RaypathCatalog implements Serializable {
     }
 
     /**
+     * First bytes of a catalog in the binary format
+     */
+    private static final byte[] MAGIC = "ANISOCAT".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Version of the binary format. Catalogs in other versions are not read.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Catalogs in the binary format (see {@link #write(Path, OpenOption...)})
+     * and the former one (Java serialization) are both read.
+     *
      * @param path    the path for the catalogue file.
      * @param options open option
      * @return Catalogue read from the path
@@ -498,43 +727,256 @@ public class RaypathCatalog implements Serializable {
      * @throws ClassNotFoundException if any
      */
     public static RaypathCatalog read(Path path, OpenOption... options) throws IOException, ClassNotFoundException {
+        if (isBinary(path, options)) return readBinary(path, options);
         try (ObjectInputStream oi = new ObjectInputStream(Files.newInputStream(path, options))) {
             return (RaypathCatalog) oi.readObject();
         }
     }
 
     /**
-     * Assume that there is a regression curve f(&Delta;) = p(ray parameter) for
-     * the small range. The function f is assumed to be a polynomial function.
-     * The degree of the function depends on the number of the input raypaths.
+     * Reads a catalog. If it is in the former format, it is rewritten in the
+     * binary format.
      *
-     * @param targetDelta [rad] epicentral distance to get T for
-     * @param raypaths    Polynomial interpolation is done with these. All the raypaths
-     *                    must be computed.
-     * @return travel time [s] for the target Delta estimated by the polynomial
-     * interpolation with the raypaths.
+     * @param path the path for the catalogue file.
+     * @return Catalogue read from the path
+     * @throws IOException            if any
+     * @throws ClassNotFoundException if any
+     */
+    private static RaypathCatalog readAndMigrate(Path path) throws IOException, ClassNotFoundException {
+        if (isBinary(path)) return readBinary(path);
+        RaypathCatalog catalog = read(path);
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            catalog.write(tmp);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            System.err.println(path + " is converted to the new format.");
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return catalog;
+    }
+
+    /**
+     * @param path    the path for the catalogue file.
+     * @param options open option
+     * @return if the file begins with {@link #MAGIC}
+     * @throws IOException if any
      */
-    private Raypath interpolateRaypath(Phase targetPhase, double eventR, double targetDelta, Raypath... raypaths) {
-        WeightedObservedPoints deltaP = new WeightedObservedPoints();
-        for (Raypath raypath : raypaths)
-            deltaP.add(raypath.computeDelta(eventR, targetPhase), raypath.getRayParameter());
-        PolynomialCurveFitter fitter = PolynomialCurveFitter.create(raypaths.length - 1);
-        PolynomialFunction pf = new PolynomialFunction(fitter.fit(deltaP.toList()));
-        Raypath ray = new Raypath(pf.value(targetDelta), WOODHOUSE, MESH);
-        ray.compute();
-        return ray;
+    private static boolean isBinary(Path path, OpenOption... options) throws IOException {
+        byte[] head = new byte[MAGIC.length];
+        try (InputStream in = Files.newInputStream(path, options)) {
+            int n = 0;
+            for (int read; n < head.length && (read = in.read(head, n, head.length - n)) != -1; )
+                n += read;
+            return n == head.length && Arrays.equals(head, MAGIC);
+        }
     }
 
     /**
-     * @param path the path to the output file
+     * Looks only into the header of a catalog in the binary format.
+     *
+     * @param path   the path for the catalogue file.
+     * @param dDelta &delta;&Delta; [rad]
+     * @return false if the catalog is in the binary format and is made for
+     * another &delta;&Delta;, otherwise true.
+     * @throws IOException if any
+     */
+    private static boolean mayHave(Path path, double dDelta) throws IOException {
+        if (!isBinary(path)) return true;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 4 + 8 + 8).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) != -1) ;
+            header.position(MAGIC.length);
+            return header.getInt() != FORMAT_VERSION || header.getDouble(MAGIC.length + 4 + 8) == dDelta;
+        }
+    }
+
+    private static RaypathCatalog readBinary(Path path, OpenOption... options) throws IOException, ClassNotFoundException {
+        Set<OpenOption> openOptions = new HashSet<>(Arrays.asList(options));
+        openOptions.add(StandardOpenOption.READ);
+        try (FileChannel channel = FileChannel.open(path, openOptions)) {
+            ByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(MAGIC.length);
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION)
+                throw new IOException(path + " is in an unsupported format version " + version);
+            long fingerprint = buffer.getLong();
+            double dDelta = buffer.getDouble();
+            double pPdiff = buffer.getDouble();
+            double pSVdiff = buffer.getDouble();
+            double pSHdiff = buffer.getDouble();
+            int nRaypath = buffer.getInt();
+            int nPart = buffer.getInt();
+            int packedLength = buffer.getInt();
+            if (nPart != PhasePart.values().length || packedLength != Raypath.PACKED_LENGTH)
+                throw new IOException(path + " has unexpected phase parts.");
+            byte[] structureBytes = new byte[buffer.getInt()];
+            buffer.get(structureBytes);
+            ComputationalMesh mesh = new ComputationalMesh(getDoubles(buffer, buffer.getInt()),
+                    getDoubles(buffer, buffer.getInt()), getDoubles(buffer, buffer.getInt()));
+            if (fingerprint(structureBytes, mesh) != fingerprint) throw new IOException(path + " is broken.");
+
+            double[] p = getDoubles(buffer, nRaypath);
+            double[] values = getDoubles(buffer, nPart * packedLength * nRaypath);
+            byte[] computed = new byte[nRaypath];
+            buffer.get(computed);
+            byte[] propagations = new byte[nPart * nRaypath];
+            buffer.get(propagations);
+
+            VelocityStructure structure;
+            try (ObjectInputStream oi = new ObjectInputStream(new ByteArrayInputStream(structureBytes))) {
+                structure = (VelocityStructure) oi.readObject();
+            }
+            // the same instance as the default ones shares the cache of Woodhouse1981
+            for (VelocityStructure known : new VelocityStructure[]{VelocityStructure.prem(), VelocityStructure.iprem(),
+                    VelocityStructure.ak135()})
+                if (known.equals(structure)) structure = known;
+
+            RaypathCatalog catalog = new RaypathCatalog(new Woodhouse1981(structure), mesh, dDelta);
+            Propagation[] propagationValues = Propagation.values();
+            for (int i = 0; i < nRaypath; i++) {
+                Propagation[] propagation = new Propagation[nPart];
+                double[][] packed = new double[nPart][packedLength];
+                for (int j = 0; j < nPart; j++) {
+                    propagation[j] = propagationValues[propagations[j * nRaypath + i]];
+                    for (int k = 0; k < packedLength; k++)
+                        packed[j][k] = values[(j * packedLength + k) * nRaypath + i];
+                }
+                Raypath raypath = new Raypath(p[i], catalog.WOODHOUSE, mesh, computed[i] != 0, propagation, packed);
+                catalog.raypathList.add(raypath);
+                if (p[i] == pPdiff) catalog.pDiff = raypath;
+                if (p[i] == pSVdiff) catalog.svDiff = raypath;
+                if (p[i] == pSHdiff) catalog.shDiff = raypath;
+            }
+            return catalog;
+        }
+    }
+
+    private static double[] getDoubles(ByteBuffer buffer, int n) {
+        double[] values = new double[n];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + Double.BYTES * n);
+        return values;
+    }
+
+    private static void putDoubles(ByteBuffer buffer, double[] values) {
+        buffer.asDoubleBuffer().put(values);
+        buffer.position(buffer.position() + Double.BYTES * values.length);
+    }
+
+    /**
+     * @param structureBytes serialized structure
+     * @param mesh           mesh
+     * @return CRC32 of the structure and the mesh
+     */
+    private static long fingerprint(byte[] structureBytes, ComputationalMesh mesh) {
+        CRC32 crc = new CRC32();
+        crc.update(structureBytes);
+        for (Partition partition : new Partition[]{Partition.INNERCORE, Partition.OUTERCORE, Partition.MANTLE}) {
+            double[] radii = mesh.getMesh(partition).toArray();
+            ByteBuffer buffer = ByteBuffer.allocate(Double.BYTES * radii.length).order(ByteOrder.LITTLE_ENDIAN);
+            putDoubles(buffer, radii);
+            crc.update(buffer.array());
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Writes the catalog in the binary format (little endian).
+     * <ol>
+     * <li>"ANISOCAT", format version (int)</li>
+     * <li>fingerprint (long) of the structure and the mesh, &delta;&Delta;
+     * and the ray parameters of Pdiff, SVdiff and SHdiff (double)</li>
+     * <li>the number of raypaths n, the number of phase parts m and the
+     * number of packed values k (int)</li>
+     * <li>the structure (Java serialization) and the mesh of the inner-core,
+     * the outer-core and the mantle, each after its length (int)</li>
+     * <li>ray parameters (double[n]) and the packed values (double[m*k*n]) of
+     * each phase part: turning R, Jeffreys boundary, Jeffreys &Delta;,
+     * Jeffreys T, &Delta; and T</li>
+     * <li>if computed (byte[n]) and the propagations of each phase part
+     * (byte[m*n])</li>
+     * </ol>
+     *
+     * @param path    the path to the output file
+     * @param options open options
      * @throws IOException If an I/O error happens. it throws error.
      */
     public void write(Path path, OpenOption... options) throws IOException {
-        try (ObjectOutputStream o = new ObjectOutputStream(Files.newOutputStream(path, options))) {
-            o.writeObject(this);
+        ByteArrayOutputStream structureStream = new ByteArrayOutputStream();
+        try (ObjectOutputStream o = new ObjectOutputStream(structureStream)) {
+            o.writeObject(getStructure());
+        }
+        byte[] structureBytes = structureStream.toByteArray();
+        double[][] meshes = {MESH.getMesh(Partition.INNERCORE).toArray(), MESH.getMesh(Partition.OUTERCORE).toArray(),
+                MESH.getMesh(Partition.MANTLE).toArray()};
+        Raypath[] raypaths = getRaypaths();
+        int n = raypaths.length;
+        PhasePart[] parts = PhasePart.values();
+        int packedLength = Raypath.PACKED_LENGTH;
+
+        int size = MAGIC.length + Integer.BYTES + Long.BYTES + Double.BYTES * 4 + Integer.BYTES * 4 +
+                structureBytes.length + Arrays.stream(meshes).mapToInt(m -> Integer.BYTES + Double.BYTES * m.length)
+                .sum() + Double.BYTES * n * (1 + parts.length * packedLength) + n * (1 + parts.length);
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC).putInt(FORMAT_VERSION).putLong(fingerprint(structureBytes, MESH)).putDouble(D_DELTA);
+        buffer.putDouble(pDiff == null ? Double.NaN : pDiff.getRayParameter());
+        buffer.putDouble(svDiff == null ? Double.NaN : svDiff.getRayParameter());
+        buffer.putDouble(shDiff == null ? Double.NaN : shDiff.getRayParameter());
+        buffer.putInt(n).putInt(parts.length).putInt(packedLength);
+        buffer.putInt(structureBytes.length).put(structureBytes);
+        for (double[] mesh : meshes) {
+            buffer.putInt(mesh.length);
+            putDoubles(buffer, mesh);
+        }
+
+        double[] p = new double[n];
+        double[] values = new double[parts.length * packedLength * n];
+        byte[] computed = new byte[n];
+        byte[] propagations = new byte[parts.length * n];
+        for (int i = 0; i < n; i++) {
+            p[i] = raypaths[i].getRayParameter();
+            computed[i] = (byte) (raypaths[i].isComputed() ? 1 : 0);
+            for (PhasePart pp : parts) {
+                int j = pp.ordinal();
+                propagations[j * n + i] = (byte) raypaths[i].getPropagation(pp).ordinal();
+                double[] packed = raypaths[i].getPackedValues(pp);
+                for (int k = 0; k < packedLength; k++)
+                    values[(j * packedLength + k) * n + i] = packed[k];
+            }
+        }
+        putDoubles(buffer, p);
+        putDoubles(buffer, values);
+        buffer.put(computed).put(propagations);
+
+        try (OutputStream out = Files.newOutputStream(path, options)) {
+            out.write(buffer.array());
         }
     }
 
+    /**
+     * The index is made when a pair of the phase and the source radius is used
+     * first. Indices for the last {@link #MAX_INDEXED_RADII} source radii are
+     * kept.
+     *
+     * @param phase  target phase
+     * @param eventR [km] event radius
+     * @return {@link RaypathIndex} for the phase and eventR
+     */
+    private synchronized RaypathIndex getIndex(Phase phase, double eventR) {
+        if (indexMap == null) indexMap = new LinkedHashMap<Double, Map<Phase, RaypathIndex>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Double, Map<Phase, RaypathIndex>> eldest) {
+                return MAX_INDEXED_RADII < size();
+            }
+        };
+        return indexMap.computeIfAbsent(eventR, r -> new HashMap<>())
+                .computeIfAbsent(phase, ph -> new RaypathIndex(this, ph, eventR));
+    }
+
     /**
      * @param targetPhase target phase
      * @param eventR      [km] event radius
@@ -542,7 +984,6 @@ public class RaypathCatalog implements Serializable {
      * @return Never returns null. zero length array is possible.
      */
     public Raypath[] searchPath(Phase targetPhase, double eventR, double targetDelta) {
-        Raypath[] raypaths = getRaypaths();
         // System.err.println("Looking for Phase:" + targetPhase + ",
         // \u0394[\u02da]:"
         // + Precision.round(Math.toDegrees(targetDelta), 4));
@@ -550,19 +991,12 @@ public class RaypathCatalog implements Serializable {
         if (targetPhase.isDiffracted()) return new Raypath[]{targetPhase.toString().contains("Pdiff") ? getPdiff() :
                 (targetPhase.isPSV() ? getSVdiff() : getSHdiff())};
 
+        RaypathIndex index = getIndex(targetPhase, eventR);
         List<Raypath> pathList = new ArrayList<>();
-        for (int i = 0; i < raypaths.length - 1; i++) {
-            Raypath rayI = raypaths[i];
-            Raypath rayP = raypaths[i + 1];
-            double deltaI = rayI.computeDelta(eventR, targetPhase);
-            double deltaP = rayP.computeDelta(eventR, targetPhase);
-            if (Double.isNaN(deltaI) || Double.isNaN(deltaP)) continue;
-            if (0 < (deltaI - targetDelta) * (deltaP - targetDelta)) continue;
-            Raypath rayC = new Raypath((rayI.getRayParameter() + rayP.getRayParameter()) / 2, WOODHOUSE, MESH);
-            rayC.compute();
-            double deltaC = rayC.computeDelta(eventR, targetPhase);
-            if (Double.isNaN(deltaC)) continue;
-            Raypath rayIn = interpolateRaypath(targetPhase, eventR, targetDelta, rayI, rayC, rayP);
+        for (int i : index.bracket(targetDelta)) {
+            if (Double.isNaN(index.getMidpointDelta(i))) continue;
+            Raypath rayIn = new Raypath(index.interpolateRayparameter(i, targetDelta), WOODHOUSE, MESH);
+            rayIn.compute();
             if (Double.isNaN(rayIn.computeDelta(eventR, targetPhase))) continue;
             pathList.add(rayIn);
         }
@@ -573,49 +1007,33 @@ public class RaypathCatalog implements Serializable {
      * @param targetPhase target phase
      * @param eventR      [km] event radius
      * @param targetDelta [rad] target &Delta;
+     * @return travel times [s] for the target. Never returns null. zero length array is possible.
      */
     public double[] searchTime(Phase targetPhase, double eventR, double targetDelta) {
-        // System.err.println("Looking for Phase:" + targetPhase + ",
-        // \u0394[\u02da]:"
-        // + Precision.round(Math.toDegrees(targetDelta), 4));
-        List<Double> timeList = new ArrayList<>();
-        Raypath[] raypaths = getRaypaths();
-        for (int i = 0; i < raypaths.length - 1; i++) {
-            Raypath rayI = raypaths[i];
-            Raypath rayP = raypaths[i + 1];
-            double deltaI = rayI.computeDelta(eventR, targetPhase);
-            double deltaP = rayP.computeDelta(eventR, targetPhase);
-            if (Double.isNaN(deltaI) || Double.isNaN(deltaP)) continue;
-            if (0 < (deltaI - targetDelta) * (deltaP - targetDelta)) continue;
-            Raypath rayC = new Raypath((rayI.getRayParameter() + rayP.getRayParameter()) / 2, WOODHOUSE, MESH);
-            rayC.compute();
-            Raypath rayIn = interpolateRaypath(targetPhase, eventR, targetDelta, rayI, rayC, rayP);
-            double deltaC = rayC.computeDelta(eventR, targetPhase);
-            double deltaIn = rayIn.computeDelta(eventR, targetPhase);
-            if (Double.isNaN(deltaC) || Double.isNaN(deltaIn)) continue;
-            timeList.add(interpolateTraveltime(targetPhase, eventR, targetDelta, rayI, rayC, rayP, rayIn));
-        }
-        return timeList.stream().mapToDouble(Double::doubleValue).toArray();
+        return Arrays.stream(searchRayparameterAndTime(targetPhase, eventR, targetDelta)).mapToDouble(pt -> pt[1])
+                .toArray();
     }
 
     /**
-     * Assume that there is a regression curve f(&Delta;) = T for the small
-     * range. The function f is assumed to be a polynomial function. The degree
-     * of the function depends on the number of the input raypaths.
+     * Ray parameters and travel times for the target are interpolated in the
+     * catalog (see {@link RaypathIndex}). Raypaths are computed only when the
+     * catalog around the target is not refined yet.
      *
-     * @param targetDelta [rad] epicentral distance to get T for
-     * @param raypaths    Polynomial interpolation is done with these. All the raypaths
-     *                    must be computed.
-     * @return travel time [s] for the target Delta estimated by the polynomial
-     * interpolation with the raypaths.
-     */
-    private static double interpolateTraveltime(Phase targetPhase, double eventR, double targetDelta,
-                                                Raypath... raypaths) {
-        WeightedObservedPoints deltaTime = new WeightedObservedPoints();
-        for (Raypath raypath : raypaths)
-            deltaTime.add(raypath.computeDelta(eventR, targetPhase), raypath.computeT(eventR, targetPhase));
-        PolynomialCurveFitter fitter = PolynomialCurveFitter.create(raypaths.length - 1);
-        return new PolynomialFunction(fitter.fit(deltaTime.toList())).value(targetDelta);
+     * @param targetPhase target phase (not diffracted)
+     * @param eventR      [km] event radius
+     * @param targetDelta [rad] target &Delta;
+     * @return {ray parameter, travel time [s]} for the target. zero length array is possible.
+     */
+    double[][] searchRayparameterAndTime(Phase targetPhase, double eventR, double targetDelta) {
+        RaypathIndex index = getIndex(targetPhase, eventR);
+        List<double[]> list = new ArrayList<>();
+        for (int i : index.bracket(targetDelta)) {
+            if (Double.isNaN(index.getMidpointDelta(i))) continue;
+            double[] pt = index.interpolateRayparameterAndTime(i, targetDelta);
+            if (Double.isNaN(pt[1])) continue;
+            list.add(pt);
+        }
+        return list.toArray(new double[0][]);
     }
 
     /**
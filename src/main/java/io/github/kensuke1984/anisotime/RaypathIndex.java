@@ -0,0 +1,258 @@
+package io.github.kensuke1984.anisotime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import org.apache.commons.math3.analysis.polynomials.PolynomialFunction;
+import org.apache.commons.math3.fitting.PolynomialCurveFitter;
+import org.apache.commons.math3.fitting.WeightedObservedPoints;
+
+/**
+ * Index of the raypaths in a {@link RaypathCatalog} for one phase and one
+ * source radius.
+ * <p>
+ * &Delta; and T of all the raypaths in the catalogue are computed once. A
+ * segment is a pair of neighbouring raypaths (p<sub>i</sub>,
+ * p<sub>i+1</sub>) which both have the phase. The segments are sorted by
+ * their minimum &Delta;, so that the ones including a target &Delta; are
+ * found by a binary search. &Delta; and T at the midpoint of a segment are
+ * computed when the segment is used first and kept.
+ * <p>
+ * For travel times, the part of a segment including a target &Delta; is
+ * bisected until its width becomes less than {@link #REFINED_WIDTH}. The
+ * raypaths computed in the bisection are also kept, so queries at close
+ * distances need no more computation.
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.1
+ */
+class RaypathIndex {
+
+    /**
+     * [rad] width of &Delta; for the interpolation of travel times
+     */
+    static final double REFINED_WIDTH = Math.toRadians(0.05);
+
+    /**
+     * the minimum width of the ray parameter in the bisection
+     */
+    private static final double MINIMUM_DP = 1e-6;
+
+    private final RaypathCatalog catalog;
+    private final Phase phase;
+    private final double eventR;
+
+    /**
+     * ray parameters, &Delta; [rad] and T [s] of the raypaths in the catalogue
+     */
+    private final double[] p;
+    private final double[] delta;
+    private final double[] time;
+
+    /**
+     * i of the segments (p<sub>i</sub>, p<sub>i+1</sub>) in the order of the
+     * minimum &Delta;
+     */
+    private final int[] segments;
+
+    /**
+     * minimum &Delta; of {@link #segments}
+     */
+    private final double[] segmentMin;
+
+    /**
+     * segmentMaxUpTo[k] is the maximum &Delta; of segments[0], ...,
+     * segments[k]
+     */
+    private final double[] segmentMaxUpTo;
+
+    /**
+     * &Delta; and T at the midpoint of the segment i. Valid if
+     * {@link #hasMidpoint}[i].
+     */
+    private final double[] midDelta;
+    private final double[] midTime;
+    private final boolean[] hasMidpoint;
+
+    /**
+     * p &rarr; {&Delta;, T} in the segments refined for travel times. Key is the segment i.
+     */
+    private final Map<Integer, TreeMap<Double, double[]>> refinedNodes = new ConcurrentHashMap<>();
+
+    RaypathIndex(RaypathCatalog catalog, Phase phase, double eventR) {
+        this.catalog = catalog;
+        this.phase = phase;
+        this.eventR = eventR;
+        Raypath[] raypaths = catalog.getRaypaths();
+        int n = raypaths.length;
+        p = new double[n];
+        delta = new double[n];
+        time = new double[n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            p[i] = raypaths[i].getRayParameter();
+            delta[i] = raypaths[i].computeDelta(eventR, phase);
+            time[i] = raypaths[i].computeT(eventR, phase);
+        });
+        segments = IntStream.range(0, Math.max(0, n - 1))
+                .filter(i -> !Double.isNaN(delta[i]) && !Double.isNaN(delta[i + 1])).boxed()
+                .sorted(Comparator.comparingDouble(i -> Math.min(delta[i], delta[i + 1]))).mapToInt(Integer::intValue)
+                .toArray();
+        segmentMin = new double[segments.length];
+        segmentMaxUpTo = new double[segments.length];
+        for (int k = 0; k < segments.length; k++) {
+            int i = segments[k];
+            segmentMin[k] = Math.min(delta[i], delta[i + 1]);
+            double max = Math.max(delta[i], delta[i + 1]);
+            segmentMaxUpTo[k] = k == 0 ? max : Math.max(segmentMaxUpTo[k - 1], max);
+        }
+        midDelta = new double[n];
+        midTime = new double[n];
+        hasMidpoint = new boolean[n];
+    }
+
+    /**
+     * @param targetDelta [rad]
+     * @return i of the segments (p<sub>i</sub>, p<sub>i+1</sub>) including
+     * the targetDelta in the order of the ray parameter
+     */
+    int[] bracket(double targetDelta) {
+        // the last k with segmentMin[k] <= targetDelta
+        int k = Arrays.binarySearch(segmentMin, targetDelta);
+        if (k < 0) k = -k - 2;
+        else while (k + 1 < segmentMin.length && segmentMin[k + 1] == targetDelta) k++;
+        List<Integer> found = new ArrayList<>();
+        for (; 0 <= k && targetDelta <= segmentMaxUpTo[k]; k--) {
+            int i = segments[k];
+            if ((delta[i] - targetDelta) * (delta[i + 1] - targetDelta) <= 0) found.add(i);
+        }
+        return found.stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    /**
+     * @param i index of the segment
+     * @return &Delta; [rad] at the midpoint of the segment i (NaN if the phase
+     * does not exist there)
+     */
+    double getMidpointDelta(int i) {
+        computeMidpoint(i);
+        return midDelta[i];
+    }
+
+    private synchronized void computeMidpoint(int i) {
+        if (hasMidpoint[i]) return;
+        Raypath raypath = new Raypath((p[i] + p[i + 1]) / 2, catalog.getWoodhouse1981(), catalog.getMesh());
+        raypath.compute();
+        midDelta[i] = raypath.computeDelta(eventR, phase);
+        midTime[i] = raypath.computeT(eventR, phase);
+        hasMidpoint[i] = true;
+    }
+
+    /**
+     * The ray parameter is estimated by a quadratic function p(&Delta;)
+     * through the both ends and the midpoint of the segment.
+     *
+     * @param i           index of the segment
+     * @param targetDelta [rad]
+     * @return ray parameter for the targetDelta
+     */
+    double interpolateRayparameter(int i, double targetDelta) {
+        computeMidpoint(i);
+        WeightedObservedPoints deltaP = new WeightedObservedPoints();
+        deltaP.add(delta[i], p[i]);
+        deltaP.add(midDelta[i], (p[i] + p[i + 1]) / 2);
+        deltaP.add(delta[i + 1], p[i + 1]);
+        PolynomialCurveFitter fitter = PolynomialCurveFitter.create(2);
+        return new PolynomialFunction(fitter.fit(deltaP.toList())).value(targetDelta);
+    }
+
+    /**
+     * The part (p<sub>a</sub>, p<sub>b</sub>) of the segment including the
+     * targetDelta is bisected until |&Delta;<sub>a</sub>-&Delta;<sub>b</sub>|
+     * &le; {@link #REFINED_WIDTH}. Then p and T are interpolated by quadratic
+     * functions of &Delta; through a, b and the next node.
+     *
+     * @param i           index of the segment
+     * @param targetDelta [rad]
+     * @return {ray parameter, travel time [s]} for the targetDelta. NaN if
+     * not found.
+     */
+    double[] interpolateRayparameterAndTime(int i, double targetDelta) {
+        computeMidpoint(i);
+        TreeMap<Double, double[]> nodes = refinedNodes.computeIfAbsent(i, key -> {
+            TreeMap<Double, double[]> map = new TreeMap<>();
+            map.put(p[i], new double[]{delta[i], time[i]});
+            map.put((p[i] + p[i + 1]) / 2, new double[]{midDelta[i], midTime[i]});
+            map.put(p[i + 1], new double[]{delta[i + 1], time[i + 1]});
+            return map;
+        });
+        synchronized (nodes) {
+            while (true) {
+                Map.Entry<Double, double[]> a = bracket(nodes, targetDelta);
+                if (a == null) return new double[]{Double.NaN, Double.NaN};
+                Map.Entry<Double, double[]> b = nodes.higherEntry(a.getKey());
+                if (Math.abs(a.getValue()[0] - b.getValue()[0]) <= REFINED_WIDTH ||
+                        b.getKey() - a.getKey() < MINIMUM_DP) return interpolate(nodes, a, b, targetDelta);
+                double pm = (a.getKey() + b.getKey()) / 2;
+                Raypath raypath = new Raypath(pm, catalog.getWoodhouse1981(), catalog.getMesh());
+                raypath.compute();
+                double deltaM = raypath.computeDelta(eventR, phase);
+                double timeM = raypath.computeT(eventR, phase);
+                if (Double.isNaN(deltaM) || Double.isNaN(timeM)) return interpolate(nodes, a, b, targetDelta);
+                nodes.put(pm, new double[]{deltaM, timeM});
+            }
+        }
+    }
+
+    /**
+     * @return the first node a such that the targetDelta is between a and the
+     * next node. null if there is no such node.
+     */
+    private static Map.Entry<Double, double[]> bracket(TreeMap<Double, double[]> nodes, double targetDelta) {
+        Map.Entry<Double, double[]> a = nodes.firstEntry();
+        for (Map.Entry<Double, double[]> b = nodes.higherEntry(a.getKey()); b != null;
+             a = b, b = nodes.higherEntry(b.getKey()))
+            if ((a.getValue()[0] - targetDelta) * (b.getValue()[0] - targetDelta) <= 0) return a;
+        return null;
+    }
+
+    private static double[] interpolate(TreeMap<Double, double[]> nodes, Map.Entry<Double, double[]> a,
+                                        Map.Entry<Double, double[]> b, double targetDelta) {
+        Map.Entry<Double, double[]> c = nodes.higherEntry(b.getKey());
+        if (c == null) c = nodes.lowerEntry(a.getKey());
+        double[] deltas = {a.getValue()[0], b.getValue()[0], c.getValue()[0]};
+        double rayParameter = lagrange(targetDelta, deltas, new double[]{a.getKey(), b.getKey(), c.getKey()});
+        double targetTime =
+                lagrange(targetDelta, deltas, new double[]{a.getValue()[1], b.getValue()[1], c.getValue()[1]});
+        if (Double.isFinite(rayParameter) && Double.isFinite(targetTime))
+            return new double[]{rayParameter, targetTime};
+        // linear when the nodes have the same delta
+        double ratio = a.getValue()[0] == b.getValue()[0] ? 0.5 :
+                (targetDelta - a.getValue()[0]) / (b.getValue()[0] - a.getValue()[0]);
+        return new double[]{a.getKey() + ratio * (b.getKey() - a.getKey()),
+                a.getValue()[1] + ratio * (b.getValue()[1] - a.getValue()[1])};
+    }
+
+    /**
+     * @param x  to compute the value at
+     * @param xs nodes
+     * @param ys values at the nodes
+     * @return value at x of the polynomial through (xs, ys)
+     */
+    private static double lagrange(double x, double[] xs, double[] ys) {
+        double value = 0;
+        for (int j = 0; j < xs.length; j++) {
+            double l = ys[j];
+            for (int k = 0; k < xs.length; k++)
+                if (k != j) l *= (x - xs[k]) / (xs[j] - xs[k]);
+            value += l;
+        }
+        return value;
+    }
+
+}
@@ -13,7 +13,7 @@ import org.apache.commons.math3.util.FastMath;
  * ω=2πfδt
  *
  * @author Kensuke Konishi
- * @version 0.1.3.2
+ * @version 0.1.4
  */
 public class BandPassFilter extends ButterworthFilter {
 
@@ -299,6 +299,12 @@ public class BandPassFilter extends ButterworthFilter {
         return y;
     }
 
+    @Override
+    void applySections(double[] data, int from, int to, boolean reverse) {
+        for (int j = 0; j < n; j++)
+            computeRecursion(0, -1, b1[j], b2[j], data, from, to, reverse);
+    }
+
     /**
      * y[t]=a<sub>0</sub>x[t]+a<sub>1</sub>x[t-1]+a<sub>2</sub>x[t-2]-b<sub>1</sub>y[t-1]-b<sub>2</sub>y[t-2] <br>
      * a<sub>0</sub> =1, a<sub>1</sub>= 0, a<sub>2</sub> = -1
@@ -8,7 +8,7 @@ import org.apache.commons.math3.util.FastMath;
  * Bandstop filter
  *
  * @author Kensuke Konishi
- * @version 0.0.5.1
+ * @version 0.0.6
  */
 public class BandStopFilter extends ButterworthFilter {
 
@@ -333,6 +333,21 @@ public class BandStopFilter extends ButterworthFilter {
         return y;
     }
 
+    /**
+     * As {@link #applyFilter(Complex[])}, the filter is causal.
+     */
+    @Override
+    public void applyFilter(double[] data, int from, int to) {
+        backward = false;
+        super.applyFilter(data, from, to);
+    }
+
+    @Override
+    void applySections(double[] data, int from, int to, boolean reverse) {
+        for (int j = 0; j < n; j++)
+            computeRecursion(a1, 1, b1[j], b2[j], data, from, to, reverse);
+    }
+
     /**
      * <sub></sub>
      * y[t]=a<sub>0</sub>x[t]+a<sub>1</sub>x[t-1]+a<sub>2</sub>x[t-2]-b<sub>1</sub>y[t-1]-b<sub>2</sub>y[t-2] <br>
@@ -17,7 +17,7 @@ import org.apache.commons.math3.util.FastMath;
  * true.
  * 
  * @author Kensuke Konishi
- * @version 0.0.5
+ * @version 0.0.6
  * 
  */
 public abstract class ButterworthFilter {
@@ -101,17 +101,67 @@ public abstract class ButterworthFilter {
 	 * @return フィルタをかけたあとの数列
 	 */
 	public double[] applyFilter(double[] data) {
-		Complex[] cdata = new Complex[data.length];
-		for (int i = 0; i < cdata.length; i++)
-			cdata[i] = Complex.valueOf(data[i]);
+		double[] newData = data.clone();
+		applyFilter(newData, 0, newData.length);
+		return newData;
+	}
 
-		cdata = applyFilter(cdata);
+	/**
+	 * Applies the filter on data[from], ..., data[to-1] in place. The
+	 * sections are computed one after another on the array, so nothing is
+	 * allocated. The result is same as {@link #applyFilter(Complex[])} for
+	 * real data.
+	 * 
+	 * @param data
+	 *            フィルタを掛ける系列 (overwritten)
+	 * @param from
+	 *            index of the first element (inclusive)
+	 * @param to
+	 *            index of the last element (exclusive)
+	 */
+	public void applyFilter(double[] data, int from, int to) {
+		if (from < 0 || data.length < to || to < from)
+			throw new IllegalArgumentException("Invalid range [" + from + ", " + to + ") for " + data.length);
+		applySections(data, from, to, false);
+		for (int i = from; i < to; i++)
+			data[i] *= g;
+		if (!backward)
+			return;
+		applySections(data, from, to, true);
+		for (int i = from; i < to; i++)
+			data[i] *= g;
+	}
 
-		double[] newData = new double[data.length];
-		for (int i = 0; i < data.length; i++)
-			newData[i] = cdata[i].getReal();
+	/**
+	 * Applies all the sections (without G) in place.
+	 * 
+	 * @param reverse
+	 *            if true, the recursion runs from data[to-1] to data[from]
+	 */
+	abstract void applySections(double[] data, int from, int to, boolean reverse);
 
-		return newData;
+	/**
+	 * One section in place<br>
+	 * y[t]=x[t]+a<sub>1</sub>x[t-1]+a<sub>2</sub>x[t-2]-b<sub>1</sub>y[t-1]-b
+	 * <sub>2</sub>y[t-2] <br>
+	 * x and y before the first one are 0.
+	 */
+	static void computeRecursion(double a1, double a2, double b1, double b2, double[] data, int from, int to,
+			boolean reverse) {
+		double x1 = 0;
+		double x2 = 0;
+		double y1 = 0;
+		double y2 = 0;
+		int step = reverse ? -1 : 1;
+		for (int i = reverse ? to - 1 : from, k = from; k < to; i += step, k++) {
+			double x = data[i];
+			double y = x + a1 * x1 + a2 * x2 - b1 * y1 - b2 * y2;
+			x2 = x1;
+			x1 = x;
+			y2 = y1;
+			y1 = y;
+			data[i] = y;
+		}
 	}
 
 	/**
@@ -8,7 +8,7 @@ import org.apache.commons.math3.util.FastMath;
  * Highpass filter
  *
  * @author Kensuke Konishi
- * @version 0.0.5.1
+ * @version 0.0.6
  */
 public class HighPassFilter extends ButterworthFilter {
 
@@ -244,6 +244,13 @@ public class HighPassFilter extends ButterworthFilter {
         return y;
     }
 
+    @Override
+    void applySections(double[] data, int from, int to, boolean reverse) {
+        for (int j = 0; j < n / 2; j++)
+            computeRecursion(-2, 1, b1[j], b2[j], data, from, to, reverse);
+        if (n % 2 == 1) computeRecursion(-1, 0, b1[n / 2], 0, data, from, to, reverse);
+    }
+
     /**
      * <sub></sub>
      * y[t]=a<sub>0</sub>x[t]+a<sub>1</sub>x[t-1]+a2<sub>2</sub>x[t-2]-b<sub>1</sub>y[t-1]-b<sub>2</sub>y[t-2] <br>
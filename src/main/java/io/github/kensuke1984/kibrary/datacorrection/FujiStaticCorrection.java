@@ -22,6 +22,7 @@ import org.apache.commons.math3.util.Precision;
 
 import io.github.kensuke1984.kibrary.Operation;
 import io.github.kensuke1984.kibrary.Property;
+import io.github.kensuke1984.kibrary.math.CrossCorrelation;
 import io.github.kensuke1984.kibrary.timewindow.Timewindow;
 import io.github.kensuke1984.kibrary.timewindow.TimewindowInformation;
 import io.github.kensuke1984.kibrary.timewindow.TimewindowInformationFile;
@@ -60,7 +61,7 @@ import io.github.kensuke1984.kibrary.util.sac.SACHeaderEnum;
  * timeshift fileを一つに統一
  *
  * @author Kensuke Konishi
- * @version 0.2.1.3
+ * @version 0.2.1.4
  */
 public class FujiStaticCorrection implements Operation {
 
@@ -359,22 +360,10 @@ public class FujiStaticCorrection implements Operation {
         // synsum = Math.sqrt(synsum);
         // searchWidthから 相関のいいshiftを探す
         int width = obs.length - syn.length; // searchWidth
+        // correlation for all the shifts at once
+        CrossCorrelation correlation = CrossCorrelation.of(syn, obs);
         for (int shiftI = 0; shiftI < width; shiftI++) {
-            // double variance = 0;
-            double tmpcor = 0;
-            double obssum = 0;
-            for (int j = 0; j < syn.length; j++) {
-                tmpcor += syn[j] * obs[j + shiftI];
-                obssum += obs[j + shiftI] * obs[j + shiftI];
-                // variance += (syn[j] - obs[j + shiftI])
-                // * (syn[j] - obs[j + shiftI]);
-            }
-            obssum = Math.sqrt(obssum);
-            // tmpcor /= synsum * obssum;
-            tmpcor /= obssum;
-            // variance /= obssum;
-            // System.out.println(((int) (-searchRange / delta) + shiftI) + " "
-            // + tmpcor + " " + variance);
+            double tmpcor = correlation.getCorrelation(shiftI) / Math.sqrt(correlation.getEnergy(shiftI));
             if (tmpcor > cor) {
                 shift = shiftI;
                 cor = tmpcor;
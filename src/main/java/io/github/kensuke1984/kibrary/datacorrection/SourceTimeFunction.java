@@ -16,6 +16,7 @@ import org.apache.commons.math3.transform.FastFourierTransformer;
 import org.apache.commons.math3.transform.TransformType;
 import org.apache.commons.math3.util.ArithmeticUtils;
 
+import io.github.kensuke1984.kibrary.math.FastFourierTransform;
 import io.github.kensuke1984.kibrary.util.Trace;
 import io.github.kensuke1984.kibrary.util.sac.SACData;
 
@@ -29,7 +30,7 @@ import io.github.kensuke1984.kibrary.util.sac.SACData;
  * {@link #convolve(Complex[])}
  *
  * @author Kensuke Konishi
- * @version 0.0.6.3
+ * @version 0.0.7
  */
 public class SourceTimeFunction {
 
@@ -248,21 +249,12 @@ public class SourceTimeFunction {
     private int nptsInTimeDomain;
 
     private double[] inverseFourierTransform(Complex[] dataInFrequency) {
-        // pack to temporary Complex array
-        Complex[] data = new Complex[nptsInTimeDomain];
-        System.arraycopy(dataInFrequency, 0, data, 0, np + 1);
-
-        // set blank due to lsmooth
-        Arrays.fill(data, np + 1, nptsInTimeDomain / 2 + 1, Complex.ZERO);
-
-        // set values for imaginary frequency
-        for (int i = 0, nnp = nptsInTimeDomain / 2; i < nnp - 1; i++)
-            data[nnp + 1 + i] = data[nnp - 1 - i].conjugate();
-
-        // fast fourier transformation
-        data = fft.transform(data, TransformType.INVERSE);
-
-        return Arrays.stream(data).mapToDouble(Complex::abs).toArray();
+        // blank due to lsmooth and F[N-i] = conjugate of F[i]
+        double[] data = new double[nptsInTimeDomain];
+        FastFourierTransform.of(nptsInTimeDomain).inverseRealTransform(dataInFrequency, np + 1, data);
+        for (int i = 0; i < nptsInTimeDomain; i++)
+            data[i] = Math.abs(data[i]);
+        return data;
     }
 
     /**
@@ -274,9 +266,22 @@ public class SourceTimeFunction {
      */
     public final double[] convolve(double[] data) {
         if (data.length != nptsInTimeDomain) throw new IllegalArgumentException("Input data is invalid (length).");
-        Complex[] dataInFrequencyDomain = fft.transform(data, TransformType.FORWARD);
-        Complex[] convolvedDataInFrequencyDomain = convolve(dataInFrequencyDomain);
-        return inverseFourierTransform(convolvedDataInFrequencyDomain);
+        FastFourierTransform fastFourierTransform = FastFourierTransform.of(nptsInTimeDomain);
+        double[] re = new double[nptsInTimeDomain / 2 + 1];
+        double[] im = new double[nptsInTimeDomain / 2 + 1];
+        fastFourierTransform.realTransform(data, re, im);
+        for (int i = 1; i < np + 1; i++) {
+            double stfRe = sourceTimeFunction[i - 1].getReal();
+            double stfIm = sourceTimeFunction[i - 1].getImaginary();
+            double real = re[i] * stfRe - im[i] * stfIm;
+            im[i] = re[i] * stfIm + im[i] * stfRe;
+            re[i] = real;
+        }
+        double[] convolved = new double[nptsInTimeDomain];
+        fastFourierTransform.inverseRealTransform(re, im, np + 1, convolved);
+        for (int i = 0; i < nptsInTimeDomain; i++)
+            convolved[i] = Math.abs(convolved[i]);
+        return convolved;
     }
 
     /**
@@ -345,11 +350,17 @@ public class SourceTimeFunction {
             realObs[i] = obs[i];
             realSyn[i] = syn[i];
         }
-        Complex[] obsInFrequencyDomain = fft.transform(realObs, TransformType.FORWARD);
-        Complex[] synInFrequencyDomain = fft.transform(realSyn, TransformType.FORWARD);
+        FastFourierTransform fastFourierTransform = FastFourierTransform.of(nptsInTimeDomain);
+        double[] obsRe = new double[nptsInTimeDomain / 2 + 1];
+        double[] obsIm = new double[nptsInTimeDomain / 2 + 1];
+        double[] synRe = new double[nptsInTimeDomain / 2 + 1];
+        double[] synIm = new double[nptsInTimeDomain / 2 + 1];
+        fastFourierTransform.realTransform(realObs, obsRe, obsIm);
+        fastFourierTransform.realTransform(realSyn, synRe, synIm);
         Complex[] sourceTimeFunction = new Complex[np];
         for (int i = 0; i < np; i++)
-            sourceTimeFunction[i] = obsInFrequencyDomain[i + 1].divide(synInFrequencyDomain[i + 1]);
+            sourceTimeFunction[i] =
+                    new Complex(obsRe[i + 1], obsIm[i + 1]).divide(new Complex(synRe[i + 1], synIm[i + 1]));
         SourceTimeFunction stf = new SourceTimeFunction(np, tlen, samplingHz);
         stf.sourceTimeFunction = sourceTimeFunction;
         return stf;
@@ -0,0 +1,110 @@
+package io.github.kensuke1984.kibrary.external;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.github.kensuke1984.anisotime.Phase;
+import io.github.kensuke1984.anisotime.RaypathCatalog;
+
+/**
+ * {@link TravelTimeProvider} by {@link RaypathCatalog#searchTime(Phase, double, double)}
+ * of ANISOtime in this process.
+ * <p>
+ * Epicentral distances are rounded to {@link #DELTA_RESOLUTION} and the
+ * results are memorized for each (source radius, distance, phase), so
+ * requests for the components of a station, and for the stations at the same
+ * distance from an event share the computation. The error by the rounding is
+ * less than about 0.1 s for teleseismic body waves.
+ * <p>
+ * Searches in the catalog run outside the cache map, so that they do not
+ * block other threads. Two threads may search the same key at the same
+ * time, and then the first result put is used by both.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.2.1
+ */
+final class CatalogTravelTime implements TravelTimeProvider {
+
+	/**
+	 * [deg] resolution of epicentral distances
+	 */
+	static final double DELTA_RESOLUTION = 0.01;
+
+	private static final Map<String, CatalogTravelTime> INSTANCES = new ConcurrentHashMap<>();
+
+	/**
+	 * @param model
+	 *            prem, iprem or ak135
+	 * @return the shared instance for the model
+	 */
+	static CatalogTravelTime of(String model) {
+		return INSTANCES.computeIfAbsent(model, m -> {
+			switch (m) {
+			case "prem":
+				return new CatalogTravelTime(RaypathCatalog.prem());
+			case "iprem":
+				return new CatalogTravelTime(RaypathCatalog.iprem());
+			case "ak135":
+				return new CatalogTravelTime(RaypathCatalog.ak135());
+			default:
+				throw new IllegalArgumentException("No catalog for " + m);
+			}
+		});
+	}
+
+	private final RaypathCatalog catalog;
+
+	private final Map<Key, double[]> cache = new ConcurrentHashMap<>();
+
+	private CatalogTravelTime(RaypathCatalog catalog) {
+		this.catalog = catalog;
+	}
+
+	@Override
+	public double[] getTravelTimes(double eventR, double epicentralDistance, Phase phase) {
+		long distanceIndex = Math.round(epicentralDistance / DELTA_RESOLUTION);
+		Key key = new Key(eventR, distanceIndex, phase);
+		double[] times = cache.get(key);
+		if (times == null) {
+			times = catalog.searchTime(phase, eventR, Math.toRadians(distanceIndex * DELTA_RESOLUTION));
+			Arrays.sort(times);
+			double[] former = cache.putIfAbsent(key, times);
+			if (former != null)
+				times = former;
+		}
+		return times.clone();
+	}
+
+	private static final class Key {
+		private final double eventR;
+		private final long distanceIndex;
+		private final Phase phase;
+
+		private Key(double eventR, long distanceIndex, Phase phase) {
+			this.eventR = eventR;
+			this.distanceIndex = distanceIndex;
+			this.phase = phase;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(eventR, distanceIndex, phase);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return Double.compare(eventR, other.eventR) == 0 && distanceIndex == other.distanceIndex
+					&& phase.equals(other.phase);
+		}
+	}
+
+}
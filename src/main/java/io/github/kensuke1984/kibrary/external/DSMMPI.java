@@ -5,7 +5,10 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 /**
@@ -19,8 +22,11 @@ import java.util.concurrent.Callable;
  * so that you do not care about working folder. (If your information file is
  * tricky, ... ...)
  * 
+ * The runs are scheduled by {@link MPIScheduler}. Runs with the number of MPI
+ * processes wait for each other on localhost, and a failed run is retried.
+ * 
  * @author Kensuke Konishi
- * @version 0.0.1
+ * @version 0.0.2
  */
 public final class DSMMPI {
 	public final static boolean psvExists = ExternalProcess.isInPath("mpi-tipsv");
@@ -39,6 +45,27 @@ public final class DSMMPI {
 	private DSMMPI() {
 	}
 
+	/**
+	 * the number of retries of a failed run
+	 */
+	private static final int MAX_RETRIES = 2;
+
+	/**
+	 * schedulers on localhost for the numbers of MPI processes
+	 */
+	private static final Map<Integer, MPIScheduler> LOCAL_SCHEDULERS = new HashMap<>();
+
+	/**
+	 * @param np
+	 *            the number of MPI processes
+	 * @return scheduler which runs one job at a time on localhost with np
+	 *         processes
+	 */
+	private static synchronized MPIScheduler localScheduler(int np) {
+		return LOCAL_SCHEDULERS.computeIfAbsent(np,
+				n -> new MPIScheduler(Collections.singletonMap(MPIScheduler.LOCALHOST, n), MAX_RETRIES));
+	}
+
 	/**
 	 * Executes: mpirun -np `np` mpi-tipsv &lt; `information` Before the
 	 * execution, current directory will be the same as the `information` Note
@@ -51,18 +78,32 @@ public final class DSMMPI {
 	 * @return Callable&lt;Integer&gt; for tipsv returning value is exit code.
 	 */
 	public static Callable<Integer> tipsv(int np, Path information) {
-		if (!psvExists)
-			throw new RuntimeException("mpi-psv does not exist in PATH");
 		if (np <= 0)
 			throw new IllegalArgumentException("np must be positive...");
+		return tipsv(localScheduler(np), information, 0);
+	}
+
+	/**
+	 * mpi-tipsv runs on a host of the scheduler, and runs again if it fails
+	 * up to the limit of the scheduler.
+	 * 
+	 * @param scheduler
+	 *            for the run
+	 * @param information
+	 *            for DSM (tipsv)
+	 * @param priority
+	 *            runs with higher priorities start earlier
+	 * @return Callable&lt;Integer&gt; for tipsv returning value is exit code.
+	 */
+	public static Callable<Integer> tipsv(MPIScheduler scheduler, Path information, double priority) {
+		if (!psvExists)
+			throw new RuntimeException("mpi-psv does not exist in PATH");
 		if (!Files.exists(information))
 			throw new RuntimeException(information + " does not exist");
 
 		return () -> {
 			System.err.println("mpi-tipsv is going on " + information);
-			int exit = new ProcessBuilder("mpirun", "-np", String.valueOf(np), "mpi-tipsv")
-					.directory(information.getParent().toFile()).redirectInput(information.toAbsolutePath().toFile())
-					.redirectError(ExternalProcess.bitBucket).redirectOutput(ExternalProcess.bitBucket).start().waitFor();
+			int exit = scheduler.tipsv(information, priority).get();
 			if (exit == 0)
 				System.err.println("looks like mpi-tipsv on " + information + " successfully finished");
 			else
@@ -83,18 +124,32 @@ public final class DSMMPI {
 	 * @return Callable&lt;Integer&gt; for tish returning value is exit code.
 	 */
 	public static Callable<Integer> tish(int np, Path information) {
-		if (!shExists)
-			throw new RuntimeException("mpi-sh does not exist in PATH");
 		if (np <= 0)
 			throw new IllegalArgumentException("np must be positive...");
+		return tish(localScheduler(np), information, 0);
+	}
+
+	/**
+	 * mpi-tish runs on a host of the scheduler, and runs again if it fails up
+	 * to the limit of the scheduler.
+	 * 
+	 * @param scheduler
+	 *            for the run
+	 * @param information
+	 *            for DSM (tish)
+	 * @param priority
+	 *            runs with higher priorities start earlier
+	 * @return Callable&lt;Integer&gt; for tish returning value is exit code.
+	 */
+	public static Callable<Integer> tish(MPIScheduler scheduler, Path information, double priority) {
+		if (!shExists)
+			throw new RuntimeException("mpi-sh does not exist in PATH");
 		if (!Files.exists(information))
 			throw new RuntimeException(information + " does not exist");
 
 		return () -> {
 			System.err.println("mpi-tish is going on " + information);
-			int exit = new ProcessBuilder("mpirun", "-np", String.valueOf(np), "mpi-tish")
-					.directory(information.getParent().toFile()).redirectInput(information.toAbsolutePath().toFile())
-					.redirectError(ExternalProcess.bitBucket).redirectOutput(ExternalProcess.bitBucket).start().waitFor();
+			int exit = scheduler.tish(information, priority).get();
 			if (exit == 0)
 				System.err.println("looks like mpi-tish on " + information + " successfully finished");
 			else
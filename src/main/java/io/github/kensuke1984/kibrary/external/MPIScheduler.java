@@ -0,0 +1,376 @@
+package io.github.kensuke1984.kibrary.external;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Scheduler of MPI jobs of DSM software such as mpi-tish and mpi-tipsv on
+ * hosts.
+ * <p>
+ * Free hosts wait in a blocking queue in the order of their capacities (the
+ * number of MPI processes), and jobs wait in a blocking queue in the order of
+ * their priorities. A dispatcher gives the job with the highest priority to
+ * the free host with the largest capacity, and sleeps while there are no jobs
+ * or no free hosts. Jobs with the same priority run in the submitted order. A
+ * job which finishes with a non-zero exit code is queued again up to the
+ * limit of retries.
+ * <p>
+ * Each job runs as: mpirun -host `host` -np `capacity` `program` &lt;
+ * `information` in the folder of the information file. Jobs on
+ * {@link #LOCALHOST} run without -host. The program can be any executable,
+ * and if mpirun is not used ({@link #setMPIRun(boolean)}), it is executed
+ * directly, so that a stub can be used instead of DSM in local tests.
+ * <p>
+ * All standard output and error of the jobs go to a bit bucket.
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.2
+ */
+public final class MPIScheduler {
+
+	/**
+	 * name of the local host, where jobs run without specifying the host
+	 */
+	public static final String LOCALHOST = "localhost";
+
+	/**
+	 * hosts in the order of the input
+	 */
+	private final Map<String, Host> hostMap;
+
+	private final PriorityBlockingQueue<Host> freeHosts;
+
+	private final PriorityBlockingQueue<Job> jobs;
+
+	/**
+	 * the number of retries of a failed job
+	 */
+	private final int maxRetries;
+
+	private final ExecutorService pool;
+
+	private final Thread dispatcher;
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final long startTime = System.nanoTime();
+
+	private volatile boolean mpirun = true;
+
+	/**
+	 * @param capacityMap
+	 *            the number of MPI processes for each host
+	 * @param maxRetries
+	 *            the number of retries of a failed job
+	 */
+	public MPIScheduler(Map<String, Integer> capacityMap, int maxRetries) {
+		if (capacityMap.isEmpty())
+			throw new IllegalArgumentException("No hosts are given.");
+		if (maxRetries < 0)
+			throw new IllegalArgumentException("maxRetries must not be negative.");
+		this.maxRetries = maxRetries;
+		hostMap = new LinkedHashMap<>();
+		capacityMap.forEach((name, capacity) -> {
+			if (capacity <= 0)
+				throw new IllegalArgumentException("Capacity of " + name + " must be positive.");
+			hostMap.put(name, new Host(name, capacity, hostMap.size()));
+		});
+		freeHosts = new PriorityBlockingQueue<>(hostMap.size(),
+				Comparator.comparingInt((Host host) -> -host.capacity).thenComparingInt(host -> host.order));
+		freeHosts.addAll(hostMap.values());
+		jobs = new PriorityBlockingQueue<>(11,
+				Comparator.comparingDouble((Job job) -> -job.priority).thenComparingLong(job -> job.sequence));
+		pool = Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r);
+			thread.setDaemon(true);
+			return thread;
+		});
+		dispatcher = new Thread(this::dispatch, "MPIScheduler");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	/**
+	 * Each line in the host file is a host name. A host written in n lines
+	 * runs n MPI processes.
+	 *
+	 * @param hostFile
+	 *            Path of a host file
+	 * @param maxRetries
+	 *            the number of retries of a failed job
+	 * @return scheduler for the hosts in the file
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public static MPIScheduler of(Path hostFile, int maxRetries) throws IOException {
+		Map<String, Integer> capacityMap = Files.readAllLines(hostFile).stream().map(String::trim)
+				.filter(line -> !line.isEmpty())
+				.collect(Collectors.toMap(line -> line, line -> 1, Integer::sum, LinkedHashMap::new));
+		return new MPIScheduler(capacityMap, maxRetries);
+	}
+
+	/**
+	 * @param mpirun
+	 *            if false, programs are executed directly without mpirun
+	 *            (default: true)
+	 */
+	public void setMPIRun(boolean mpirun) {
+		this.mpirun = mpirun;
+	}
+
+	/**
+	 * @param program
+	 *            name (or path) of an executable
+	 * @param information
+	 *            Path of an information file for the program
+	 * @param priority
+	 *            jobs with higher priorities run earlier
+	 * @return future of the exit code of the last try
+	 */
+	public CompletableFuture<Integer> submit(String program, Path information, double priority) {
+		if (!Files.exists(information))
+			throw new RuntimeException(information + " does not exist");
+		Job job = new Job(program, information.toAbsolutePath(), priority, sequence.getAndIncrement());
+		jobs.put(job);
+		return job.future;
+	}
+
+	/**
+	 * @param information
+	 *            for DSM (tish)
+	 * @param priority
+	 *            jobs with higher priorities run earlier
+	 * @return future of the exit code of mpi-tish
+	 */
+	public CompletableFuture<Integer> tish(Path information, double priority) {
+		return submit("mpi-tish", information, priority);
+	}
+
+	/**
+	 * @param information
+	 *            for DSM (tipsv)
+	 * @param priority
+	 *            jobs with higher priorities run earlier
+	 * @return future of the exit code of mpi-tipsv
+	 */
+	public CompletableFuture<Integer> tipsv(Path information, double priority) {
+		return submit("mpi-tipsv", information, priority);
+	}
+
+	private void dispatch() {
+		try {
+			while (true) {
+				// a job is taken only when a host is free, so that it is the
+				// highest at that time
+				freeHosts.put(freeHosts.take());
+				Job job = jobs.take();
+				// the largest among the hosts freed while waiting for the job
+				Host host = freeHosts.take();
+				pool.execute(() -> run(job, host));
+			}
+		} catch (InterruptedException e) {
+			// shutdown
+		}
+	}
+
+	private void run(Job job, Host host) {
+		long start = System.nanoTime();
+		int exit;
+		try {
+			exit = launch(job, host);
+		} catch (InterruptedException e) {
+			host.finish(System.nanoTime() - start, false);
+			freeHosts.put(host);
+			job.future.completeExceptionally(e);
+			return;
+		} catch (Exception e) {
+			e.printStackTrace();
+			exit = -1;
+		}
+		host.finish(System.nanoTime() - start, exit == 0);
+		freeHosts.put(host);
+		if (exit != 0 && job.tries++ < maxRetries) {
+			System.err.println(job.program + " on " + job.information + " at " + host.name + " finished with " + exit
+					+ ", retrying");
+			jobs.put(job);
+		} else
+			job.future.complete(exit);
+	}
+
+	private int launch(Job job, Host host) throws IOException, InterruptedException {
+		List<String> command;
+		if (!mpirun)
+			command = Collections.singletonList(job.program);
+		else if (host.name.equals(LOCALHOST))
+			command = Arrays.asList("mpirun", "-np", String.valueOf(host.capacity), job.program);
+		else
+			command = Arrays.asList("mpirun", "-host", host.name, "-np", String.valueOf(host.capacity), job.program);
+		return new ProcessBuilder(command).directory(job.information.getParent().toFile())
+				.redirectInput(job.information.toFile()).redirectError(ExternalProcess.bitBucket)
+				.redirectOutput(ExternalProcess.bitBucket).start().waitFor();
+	}
+
+	/**
+	 * Stops dispatching. Running jobs are not stopped, and queued jobs never
+	 * run.
+	 */
+	public void shutdown() {
+		dispatcher.interrupt();
+		pool.shutdown();
+	}
+
+	/**
+	 * @return the number of jobs waiting for hosts
+	 */
+	public int getNumberOfWaitingJobs() {
+		return jobs.size();
+	}
+
+	/**
+	 * @return (<b>unmodifiable</b>) List of the current usages of the hosts
+	 */
+	public List<HostUsage> getUsages() {
+		long elapsed = System.nanoTime() - startTime;
+		List<HostUsage> usages = new ArrayList<>(hostMap.size());
+		for (Host host : hostMap.values())
+			usages.add(host.toUsage(elapsed));
+		return Collections.unmodifiableList(usages);
+	}
+
+	/**
+	 * Prints the usages of the hosts to the standard output.
+	 */
+	public void printUsages() {
+		getUsages().forEach(System.out::println);
+	}
+
+	/**
+	 * Usage of a host since the scheduler starts.
+	 *
+	 * This class is <b>IMMUTABLE</b>
+	 */
+	public static final class HostUsage {
+		private final String host;
+		private final int capacity;
+		private final int numberOfJobs;
+		private final int numberOfFailures;
+		private final double busyTime;
+		private final double utilization;
+
+		private HostUsage(String host, int capacity, int numberOfJobs, int numberOfFailures, double busyTime,
+				double utilization) {
+			this.host = host;
+			this.capacity = capacity;
+			this.numberOfJobs = numberOfJobs;
+			this.numberOfFailures = numberOfFailures;
+			this.busyTime = busyTime;
+			this.utilization = utilization;
+		}
+
+		/**
+		 * @return name of the host
+		 */
+		public String getHost() {
+			return host;
+		}
+
+		/**
+		 * @return the number of MPI processes in the host
+		 */
+		public int getCapacity() {
+			return capacity;
+		}
+
+		/**
+		 * @return the number of finished runs including failures
+		 */
+		public int getNumberOfJobs() {
+			return numberOfJobs;
+		}
+
+		/**
+		 * @return the number of runs with non-zero exit codes
+		 */
+		public int getNumberOfFailures() {
+			return numberOfFailures;
+		}
+
+		/**
+		 * @return [s] time for the finished runs
+		 */
+		public double getBusyTime() {
+			return busyTime;
+		}
+
+		/**
+		 * @return busy time / elapsed time
+		 */
+		public double getUtilization() {
+			return utilization;
+		}
+
+		@Override
+		public String toString() {
+			return host + " " + capacity + " " + numberOfJobs + " " + numberOfFailures + " " + busyTime + " "
+					+ utilization;
+		}
+	}
+
+	private static final class Host {
+		private final String name;
+		private final int capacity;
+		private final int order;
+		private int numberOfJobs;
+		private int numberOfFailures;
+		private long busyTime;
+
+		private Host(String name, int capacity, int order) {
+			this.name = name;
+			this.capacity = capacity;
+			this.order = order;
+		}
+
+		private synchronized void finish(long time, boolean succeeded) {
+			numberOfJobs++;
+			if (!succeeded)
+				numberOfFailures++;
+			busyTime += time;
+		}
+
+		private synchronized HostUsage toUsage(long elapsed) {
+			return new HostUsage(name, capacity, numberOfJobs, numberOfFailures, busyTime * 1e-9,
+					(double) busyTime / elapsed);
+		}
+	}
+
+	private static final class Job {
+		private final String program;
+		private final Path information;
+		private final double priority;
+		private final long sequence;
+		private final CompletableFuture<Integer> future = new CompletableFuture<>();
+		private int tries;
+
+		private Job(String program, Path information, double priority, long sequence) {
+			this.program = program;
+			this.information = information;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+	}
+
+}
@@ -0,0 +1,36 @@
+package io.github.kensuke1984.kibrary.external;
+
+import java.util.Collections;
+import java.util.Set;
+
+import io.github.kensuke1984.anisotime.Phase;
+
+/**
+ * {@link TravelTimeProvider} by {@link TauPTimeReader}. Each request runs
+ * taup_time.
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.1
+ */
+final class TauPTravelTime implements TravelTimeProvider {
+
+	static final TauPTravelTime INSTANCE = new TauPTravelTime();
+
+	private TauPTravelTime() {
+	}
+
+	@Override
+	public double[] getTravelTimes(double eventR, double epicentralDistance, Phase phase) {
+		return getTravelTimes(eventR, epicentralDistance, Collections.singleton(phase));
+	}
+
+	/**
+	 * All the phases are computed by one run of taup_time.
+	 */
+	@Override
+	public double[] getTravelTimes(double eventR, double epicentralDistance, Set<Phase> phaseSet) {
+		return TauPTimeReader.getTauPPhase(eventR, epicentralDistance, phaseSet).stream()
+				.mapToDouble(TauPPhase::getTravelTime).sorted().toArray();
+	}
+
+}
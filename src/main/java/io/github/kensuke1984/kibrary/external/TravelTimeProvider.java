@@ -0,0 +1,70 @@
+package io.github.kensuke1984.kibrary.external;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import io.github.kensuke1984.anisotime.Phase;
+import io.github.kensuke1984.anisotime.RaypathCatalog;
+
+/**
+ * Source of travel times of seismic phases.
+ * <p>
+ * {@link #of(String)} gives one from a name in property files:
+ * <ul>
+ * <li>taup: taup_time in TauP package (PREM)</li>
+ * <li>prem, iprem, ak135: {@link RaypathCatalog} of ANISOtime in this
+ * process</li>
+ * </ul>
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.1
+ */
+public interface TravelTimeProvider {
+
+	/**
+	 * @param name
+	 *            taup, prem, iprem or ak135
+	 * @return {@link TravelTimeProvider} for the name
+	 */
+	static TravelTimeProvider of(String name) {
+		switch (name.toLowerCase()) {
+		case "taup":
+			return TauPTravelTime.INSTANCE;
+		case "prem":
+		case "iprem":
+		case "ak135":
+			return CatalogTravelTime.of(name.toLowerCase());
+		default:
+			throw new IllegalArgumentException("Unknown travel time source " + name);
+		}
+	}
+
+	/**
+	 * @param eventR
+	 *            radius (km) !!not depth from the surface!!
+	 * @param epicentralDistance
+	 *            [deg] target epicentral distance
+	 * @param phase
+	 *            to look for
+	 * @return travel times [s] of the phase in ascending order. If there is a
+	 *         multiplication, all values are returned. It is empty if there is
+	 *         no arrival.
+	 */
+	double[] getTravelTimes(double eventR, double epicentralDistance, Phase phase);
+
+	/**
+	 * @param eventR
+	 *            radius (km) !!not depth from the surface!!
+	 * @param epicentralDistance
+	 *            [deg] target epicentral distance
+	 * @param phaseSet
+	 *            set of seismic phases
+	 * @return travel times [s] of all the phases in ascending order
+	 */
+	default double[] getTravelTimes(double eventR, double epicentralDistance, Set<Phase> phaseSet) {
+		return phaseSet.stream()
+				.flatMapToDouble(phase -> Arrays.stream(getTravelTimes(eventR, epicentralDistance, phase))).sorted()
+				.toArray();
+	}
+
+}
@@ -12,11 +12,10 @@ import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import io.github.kensuke1984.kibrary.Operation;
 import io.github.kensuke1984.kibrary.Property;
@@ -41,7 +40,7 @@ import io.github.kensuke1984.kibrary.util.sac.SACHeaderEnum;
  * networks in an event</b>
  * 
  * 
- * @version 0.1.1.1
+ * @version 0.1.1.2
  * @author Kensuke Konishi
  * 
  */
@@ -201,21 +200,10 @@ public class RaypathDistribution implements Operation {
 	}
 
 	private void outputRaypath() throws IOException {
-		List<String> lines = Utilities.eventFolderSet(workPath).stream().flatMap(eventDir -> {
-			try {
-				return eventDir.sacFileSet().stream();
-			} catch (Exception e) {
-				return Stream.empty();
-			}
-		}).filter(name -> name.isOBS() && components.contains(name.getComponent())).filter(this::inTimeWindow)
-				.map(name -> {
-					try {
-						return name.readHeader();
-					} catch (Exception e) {
-						e.printStackTrace();
-						return null;
-					}
-				}).filter(Objects::nonNull)
+		// headers from the index, SAC files are read only if they are new
+		List<String> lines = Utilities.sacHeaderMap(workPath).entrySet().stream()
+				.filter(entry -> entry.getKey().isOBS() && components.contains(entry.getKey().getComponent()))
+				.filter(entry -> inTimeWindow(entry.getKey())).map(Map.Entry::getValue)
 				.map(header -> header.getSACString(SACHeaderEnum.KSTNM) + " " + header.getSACString(SACHeaderEnum.KEVNM)
 						+ " " + header.getEventLocation() + " " + Station.of(header).getPosition())
 				.collect(Collectors.toList());
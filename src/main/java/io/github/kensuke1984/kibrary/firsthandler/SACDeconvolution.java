@@ -3,16 +3,11 @@ package io.github.kensuke1984.kibrary.firsthandler;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.IntStream;
 
-import org.apache.commons.math3.complex.Complex;
-import org.apache.commons.math3.transform.DftNormalization;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.TransformType;
-
+import io.github.kensuke1984.kibrary.math.FastFourierTransform;
 import io.github.kensuke1984.kibrary.util.sac.SACHeaderEnum;
 import io.github.kensuke1984.kibrary.util.sac.SACUtil;
 
@@ -25,7 +20,7 @@ import io.github.kensuke1984.kibrary.util.sac.SACUtil;
  * 
  * とりあえずtaperはsine taperで
  * 
- * @version 0.0.3.3
+ * @version 0.0.4
  * @author Kensuke Konishi
  */
 class SACDeconvolution {
@@ -71,44 +66,41 @@ class SACDeconvolution {
 			taperInTimeDomain(wavedata);
 		// double[] complexWaveform = new double[npts * 2];
 
-		Complex[] complexWave = Arrays.stream(wavedata).mapToObj(Complex::new).toArray(Complex[]::new);
+		double[] waveRe = wavedata.clone();
+		double[] waveIm = new double[npts];
 		// フーリエ変換 波形を周波数空間へ
-		complexWave = fft.transform(complexWave, TransformType.FORWARD);
+		FastFourierTransform fft = FastFourierTransform.of(npts);
+		fft.transform(waveRe, waveIm);
 
 		// int[] ip = new int[npts];
 		// double[] w = new double[npts];
-		Complex[] resp = new Complex[npts];
+		double[] respRe = new double[npts];
+		double[] respIm = new double[npts];
 		double[] freq = new double[npts];
-		readResponseFile(spectraPath, freq, resp);
+		readResponseFile(spectraPath, freq, respRe, respIm);
 
 		// cut frequencyセット
 		double cutfreq = 0.01;
 		for (int i = 0; i < npts; i++)
 			if (0.005 <= freq[i])
 				break;
-			else if (0 < resp[i].getReal())
+			else if (0 < respRe[i])
 				cutfreq = 1 / 360.0;
 
 		// taperセット
-		taperInFrequencyDomain(freq, cutfreq, minFreq, complexWave);
+		taperInFrequencyDomain(freq, cutfreq, minFreq, waveRe, waveIm);
 
 		// 装置関数を外す
-		deconvolve(complexWave, resp);
+		deconvolve(waveRe, waveIm, respRe, respIm);
 
 		// 時間領域に戻す
-		Complex[] finalComplexWave = fft.transform(complexWave, TransformType.INVERSE);
-
-		Arrays.parallelSetAll(wavedata, i -> finalComplexWave[i].getReal());
+		fft.inverseTransform(waveRe, waveIm);
+		System.arraycopy(waveRe, 0, wavedata, 0, npts);
 
 		SACUtil.writeSAC(outputSacPath, sacHeader, wavedata);
 
 	}
 
-	/**
-	 * フーリエ変換
-	 */
-	private static FastFourierTransformer fft = new FastFourierTransformer(DftNormalization.STANDARD);
-
 	/**
 	 * 波形データにテーピングをかける 時間窓の両端taperAreaRatio(%)にかける
 	 * 
@@ -132,25 +124,38 @@ class SACDeconvolution {
 	/**
 	 * 装置関数を外す
 	 */
-	private static void deconvolve(Complex[] complexData, Complex[] resp) {
-		int npts = complexData.length;
+	private static void deconvolve(double[] re, double[] im, double[] respRe, double[] respIm) {
+		int npts = re.length;
 		for (int i = 1; i < npts / 2; i++) {
-			complexData[i] = complexData[i].divide(resp[i - 1]);
-			complexData[npts - i] = complexData[npts - i].divide(resp[i - 1]);
+			divide(re, im, i, respRe[i - 1], respIm[i - 1]);
+			divide(re, im, npts - i, respRe[i - 1], respIm[i - 1]);
 		}
 	}
 
+	/**
+	 * (re[i] + i im[i]) /= (c + i d)
+	 */
+	private static void divide(double[] re, double[] im, int i, double c, double d) {
+		double denominator = c * c + d * d;
+		double real = (re[i] * c + im[i] * d) / denominator;
+		im[i] = (im[i] * c - re[i] * d) / denominator;
+		re[i] = real;
+	}
+
 	/**
 	 * 周波数領域でテーパーをかける
 	 * 
 	 * @param freq frequency data
 	 * @param cutfreq cut frequency
 	 * @param minFreq minimum frequency
-	 * @param complexData complex data
+	 * @param re real parts of data
+	 * @param im imaginary parts of data
 	 */
-	private static void taperInFrequencyDomain(double[] freq, double cutfreq, double minFreq, Complex[] complexData) {
-		int npts = complexData.length;
-		complexData[0] =  Complex.ZERO;
+	private static void taperInFrequencyDomain(double[] freq, double cutfreq, double minFreq, double[] re,
+			double[] im) {
+		int npts = re.length;
+		re[0] = 0;
+		im[0] = 0;
 		for (int i = 1; i <= npts / 2; i++) {
 			double taper = 0;
 			if (freq[i - 1] < cutfreq)
@@ -164,8 +169,10 @@ class SACDeconvolution {
 				taper = 0.5 * (1 + Math.cos(Math.PI * freq[i - 1] / 2.0 / (nyquistFreq * 0.1)));
 			else
 				taper = 0;
-			complexData[i] = complexData[i].multiply(taper);
-			complexData[npts - i] = complexData[npts - i].multiply(taper);
+			re[i] *= taper;
+			im[i] *= taper;
+			re[npts - i] *= taper;
+			im[npts - i] *= taper;
 		}
 	}
 
@@ -174,14 +181,17 @@ class SACDeconvolution {
 	 * 
 	 * @param spectorPath path for the file
 	 * @param freq frequency data
-	 * @param resp response data
+	 * @param respRe real parts of response data
+	 * @param respIm imaginary parts of response data
 	 */
-	private static void readResponseFile(Path spectorPath, double[] freq, Complex[] resp) throws IOException {
+	private static void readResponseFile(Path spectorPath, double[] freq, double[] respRe, double[] respIm)
+			throws IOException {
 		List<String> lines = Files.readAllLines(spectorPath);
 		for (int i = 0; i < lines.size(); i++) {
 			String[] parts = lines.get(i).split("\\s+");
 			freq[i] = Double.parseDouble(parts[0]);
-			resp[i] = new Complex(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+			respRe[i] = Double.parseDouble(parts[1]);
+			respIm[i] = Double.parseDouble(parts[2]);
 		}
 	}
 
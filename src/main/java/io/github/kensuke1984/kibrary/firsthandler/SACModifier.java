@@ -6,17 +6,18 @@ import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.Map;
 
-import io.github.kensuke1984.kibrary.external.SAC;
 import io.github.kensuke1984.kibrary.util.Location;
 import io.github.kensuke1984.kibrary.util.globalcmt.GlobalCMTData;
 import io.github.kensuke1984.kibrary.util.sac.SACHeaderEnum;
+import io.github.kensuke1984.kibrary.util.sac.SACProcessing;
+import io.github.kensuke1984.kibrary.util.sac.SACProcessing.Interpolation;
 import io.github.kensuke1984.kibrary.util.sac.SACUtil;
 
 /**
  * {@link SeedSAC}内で行うSacの修正
  *
  * @author Kensuke Konishi
- * @version 0.1.8.2
+ * @version 0.1.9.1
  */
 class SACModifier {
 
@@ -75,18 +76,14 @@ class SACModifier {
     }
 
     /**
-     * operate rtrend and rmean in SAC and the sac file is write to ??.MOD
+     * operate rtrend and rmean as SAC and the sac file is write to ??.MOD
      */
-    void preprocess() throws IOException, InterruptedException {
-        try (SAC sacProcess = SAC.createProcess()) {
-            String cwd = sacPath.getParent().toString();
-            sacProcess.inputCMD("cd " + cwd);
-            sacProcess.inputCMD("r " + sacPath.getFileName());
-            sacProcess.inputCMD("ch lovrok true");
-            sacProcess.inputCMD("rtrend");
-            sacProcess.inputCMD("rmean");
-            sacProcess.inputCMD("w " + modifiedSacPath.getFileName());
-        }
+    void preprocess() throws IOException {
+        Map<SACHeaderEnum, String> headerMap = SACUtil.readHeader(sacPath);
+        double[] sacdata = SACProcessing.removeMean(SACProcessing.removeTrend(SACUtil.readSACData(sacPath)));
+        headerMap.put(SACHeaderEnum.LOVROK, Boolean.toString(true));
+        SACProcessing.setDependentValues(headerMap, sacdata);
+        SACUtil.writeSAC(modifiedSacPath, headerMap, sacdata);
     }
 
     /**
@@ -216,12 +213,11 @@ class SACModifier {
     }
 
     /**
-     * Rebuild by SAC.
+     * Rebuild as interpolate b 0 and cut b n (2<sup>n</sup>) in SAC.
      *
-     * @throws IOException          if any
-     * @throws InterruptedException if any
+     * @throws IOException if any
      */
-    void rebuild() throws IOException, InterruptedException {
+    void rebuild() throws IOException {
 
         // nptsを元のSacfileのEでのポイントを超えない２の累乗ポイントにする
         Map<SACHeaderEnum, String> headerMap = SACUtil.readHeader(modifiedSacPath);
@@ -229,22 +225,13 @@ class SACModifier {
                 Double.parseDouble(headerMap.get(SACHeaderEnum.DELTA)));
         int newNpts = Integer.highestOneBit(npts);
         // System.out.println("rebuilding "+ sacFile);
-        String cwd = sacPath.getParent().toString();
-        try (SAC sacP1 = SAC.createProcess()) {
-            sacP1.inputCMD("cd " + cwd);
-            sacP1.inputCMD("r " + modifiedSacPath.getFileName());
-            sacP1.inputCMD("interpolate b 0");
-            sacP1.inputCMD("w over");
-        }
-        try (SAC sacP2 = SAC.createProcess()) {
-            // current directoryをうつす
-            sacP2.inputCMD("cd " + cwd);
-            sacP2.inputCMD("cut b n " + newNpts);
-            sacP2.inputCMD("r " + modifiedSacPath.getFileName());
-            sacP2.inputCMD("w over");
-        }
+        double[] sacdata = SACUtil.readSACData(modifiedSacPath);
+        double delta = Double.parseDouble(headerMap.get(SACHeaderEnum.DELTA));
+        sacdata = SACProcessing.interpolate(headerMap, sacdata, delta, 0, Interpolation.WIGGINS);
+        sacdata = SACProcessing.cut(headerMap, sacdata, 0, newNpts);
+        SACUtil.writeSAC(modifiedSacPath, headerMap, sacdata);
         // ヘッダーの更新
-        this.headerMap = SACUtil.readHeader(modifiedSacPath);
+        this.headerMap = headerMap;
     }
 
 }
@@ -10,22 +10,23 @@ import java.util.regex.Matcher;
 
 import org.apache.commons.io.FileUtils;
 
-import io.github.kensuke1984.kibrary.external.SAC;
 import io.github.kensuke1984.kibrary.util.EventFolder;
 import io.github.kensuke1984.kibrary.util.Utilities;
 import io.github.kensuke1984.kibrary.util.globalcmt.GlobalCMTData;
 import io.github.kensuke1984.kibrary.util.globalcmt.GlobalCMTID;
 import io.github.kensuke1984.kibrary.util.globalcmt.GlobalCMTSearch;
 import io.github.kensuke1984.kibrary.util.sac.SACHeaderEnum;
+import io.github.kensuke1984.kibrary.util.sac.SACProcessing;
+import io.github.kensuke1984.kibrary.util.sac.SACProcessing.Interpolation;
 import io.github.kensuke1984.kibrary.util.sac.SACUtil;
 
 /**
  * Class for extracting a seed file. It creates SAC files from the seed file.
  * 
- * This class assumes that rdseed, evalresp and sac exists in your PATH. The
+ * This class assumes that rdseed and evalresp exist in your PATH. The
  * software can be found in IRIS.
  * 
- * @version 0.1.8.3
+ * @version 0.1.9.1
  * 
  * @author Kensuke Konishi
  * 
@@ -449,11 +450,7 @@ class SeedSAC implements Runnable {
 			for (Path sacPath : sacPaths) {
 				Files.copy(sacPath, backupPath.resolve(sacPath.getFileName()));
 				// System.out.println("..illegal delta.");
-				try {
-					fixDelta(sacPath);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
+				fixDelta(sacPath);
 			}
 		}
 
@@ -462,29 +459,27 @@ class SeedSAC implements Runnable {
 	/**
 	 * Set DELTA in a sac file to {@link #delta}. (mostly it is down sampling.)
 	 * Change cmpaz cmpinc BHN BHE BHZ のときはcmpaz cmpincを変更する
+	 * The interpolation is the one in SAC ({@link Interpolation#WIGGINS}).
 	 * 
 	 * @param sacPath
 	 *            Path of a file to fix
 	 * @throws IOException
 	 *             if an I/O error occurs
-	 * @throws InterruptedException
-	 *             if something during sac processing.
 	 */
-	private static void fixDelta(Path sacPath) throws IOException, InterruptedException {
-		try (SAC sacD = SAC.createProcess()) {
-			String cwd = sacPath.getParent().toString();
-			sacD.inputCMD("cd " + cwd);// set current directory
-			sacD.inputCMD("r " + sacPath.getFileName());// read
-			sacD.inputCMD("ch lovrok true");// overwrite permission
-			if (sacPath.toString().contains(".BHN.") || sacPath.toString().contains(".BLN."))
-				sacD.inputCMD("ch cmpaz 0 cmpinc 90");
-			else if (sacPath.toString().contains(".BHE.") || sacPath.toString().contains(".BLE."))
-				sacD.inputCMD("ch cmpaz 90 cmpinc 90");
-			else if (sacPath.toString().contains(".BHZ.") || sacPath.toString().contains(".BLZ."))
-				sacD.inputCMD("ch cmpinc 0");
-			sacD.inputCMD("interpolate delta " + delta);
-			sacD.inputCMD("w over");
-		}
+	private static void fixDelta(Path sacPath) throws IOException {
+		Map<SACHeaderEnum, String> headerMap = SACUtil.readHeader(sacPath);
+		headerMap.put(SACHeaderEnum.LOVROK, Boolean.toString(true));
+		if (sacPath.toString().contains(".BHN.") || sacPath.toString().contains(".BLN.")) {
+			headerMap.put(SACHeaderEnum.CMPAZ, "0");
+			headerMap.put(SACHeaderEnum.CMPINC, "90");
+		} else if (sacPath.toString().contains(".BHE.") || sacPath.toString().contains(".BLE.")) {
+			headerMap.put(SACHeaderEnum.CMPAZ, "90");
+			headerMap.put(SACHeaderEnum.CMPINC, "90");
+		} else if (sacPath.toString().contains(".BHZ.") || sacPath.toString().contains(".BLZ."))
+			headerMap.put(SACHeaderEnum.CMPINC, "0");
+		double[] sacdata = SACProcessing.interpolate(headerMap, SACUtil.readSACData(sacPath), delta,
+				Interpolation.WIGGINS);
+		SACUtil.writeSAC(sacPath, headerMap, sacdata);
 	}
 
 	@Override
@@ -7,6 +7,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -21,6 +22,7 @@ import org.apache.commons.math3.linear.RealVector;
 
 import io.github.kensuke1984.kibrary.util.Station;
 import io.github.kensuke1984.kibrary.util.globalcmt.GlobalCMTID;
+import io.github.kensuke1984.kibrary.util.sac.SACComponent;
 import io.github.kensuke1984.kibrary.util.sac.WaveformType;
 import io.github.kensuke1984.kibrary.waveformdata.BasicID;
 
@@ -32,7 +34,7 @@ import io.github.kensuke1984.kibrary.waveformdata.BasicID;
  * 
  * TODO 同じ震源観測点ペアの波形も周波数やタイムウインドウによってあり得るから それに対処 varianceも
  * 
- * @version 0.2.1.3
+ * @version 0.2.2
  * 
  * @author Kensuke Konishi
  */
@@ -506,20 +508,16 @@ public class Dvector {
 				.filter(chooser).collect(Collectors.toList());
 
 		// 重複チェック 重複が見つかればここから進まない
-		for (int i = 0; i < obsList.size(); i++)
-			for (int j = i + 1; j < obsList.size(); j++)
-				if (obsList.get(i).equals(obsList.get(j)))
-					throw new RuntimeException("Duplicate observed detected");
+		if (new HashSet<>(obsList).size() != obsList.size())
+			throw new RuntimeException("Duplicate observed detected");
 
 		// 理論波形の抽出
 		List<BasicID> synList = Arrays.stream(ids).filter(id -> id.getWaveformType() == WaveformType.SYN)
 				.filter(chooser).collect(Collectors.toList());
 
 		// 重複チェック
-		for (int i = 0; i < synList.size() - 1; i++)
-			for (int j = i + 1; j < synList.size(); j++)
-				if (synList.get(i).equals(synList.get(j)))
-					throw new RuntimeException("Duplicate synthetic detected");
+		if (new HashSet<>(synList).size() != synList.size())
+			throw new RuntimeException("Duplicate synthetic detected");
 
 		// System.out.println("There are "+synList.size()+" synthetic IDs");
 
@@ -533,8 +531,10 @@ public class Dvector {
 		List<BasicID> useObsList = new ArrayList<>(size);
 		List<BasicID> useSynList = new ArrayList<>(size);
 
+		Map<WaveformKey, List<BasicID>> obsMap = obsList.stream()
+				.collect(Collectors.groupingBy(WaveformKey::new, HashMap::new, Collectors.toList()));
 		for (BasicID syn : synList)
-			for (BasicID obs : obsList)
+			for (BasicID obs : obsMap.getOrDefault(new WaveformKey(syn), Collections.emptyList()))
 				if (isPair(syn, obs)) {
 					useObsList.add(obs);
 					useSynList.add(syn);
@@ -558,9 +558,13 @@ public class Dvector {
 		System.err.println(nTimeWindow + " timewindows are used");
 		usedGlobalCMTIDset = new HashSet<>();
 		usedStationSet = new HashSet<>();
+		obsIndex = new HashMap<>();
+		synIndex = new HashMap<>();
 		for (int i = 0; i < nTimeWindow; i++) {
 			usedStationSet.add(obsIDs[i].getStation());
 			usedGlobalCMTIDset.add(obsIDs[i].getGlobalCMTID());
+			obsIndex.computeIfAbsent(new WaveformKey(obsIDs[i]), key -> new ArrayList<>()).add(i);
+			synIndex.computeIfAbsent(new WaveformKey(synIDs[i]), key -> new ArrayList<>()).add(i);
 		}
 
 	}
@@ -574,6 +578,61 @@ public class Dvector {
 	 */
 	int whichTimewindow(BasicID id) {
 		BasicID[] ids = id.getWaveformType() == WaveformType.OBS ? obsIDs : synIDs;
-		return IntStream.range(0, ids.length).filter(i -> isPair(id, ids[i])).findAny().orElse(-1);
+		Map<WaveformKey, List<Integer>> index = id.getWaveformType() == WaveformType.OBS ? obsIndex : synIndex;
+		for (int i : index.getOrDefault(new WaveformKey(id), Collections.emptyList()))
+			if (isPair(id, ids[i]))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * indices of the observed IDs for each key
+	 */
+	private Map<WaveformKey, List<Integer>> obsIndex;
+
+	/**
+	 * indices of the synthetic IDs for each key
+	 */
+	private Map<WaveformKey, List<Integer>> synIndex;
+
+	/**
+	 * Key of station, global CMT ID, component and period range. IDs making a
+	 * pair (see {@link #isPair(BasicID, BasicID)}) have the same key.
+	 */
+	private static final class WaveformKey {
+		private final Station station;
+		private final GlobalCMTID id;
+		private final SACComponent component;
+		private final double minPeriod;
+		private final double maxPeriod;
+
+		private WaveformKey(BasicID basicID) {
+			station = basicID.getStation();
+			id = basicID.getGlobalCMTID();
+			component = basicID.getSacComponent();
+			minPeriod = basicID.getMinPeriod();
+			maxPeriod = basicID.getMaxPeriod();
+		}
+
+		@Override
+		public int hashCode() {
+			int result = station.hashCode();
+			result = 31 * result + id.hashCode();
+			result = 31 * result + component.hashCode();
+			result = 31 * result + Double.hashCode(minPeriod);
+			result = 31 * result + Double.hashCode(maxPeriod);
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof WaveformKey))
+				return false;
+			WaveformKey other = (WaveformKey) obj;
+			return station.equals(other.station) && id.equals(other.id) && component == other.component
+					&& minPeriod == other.minPeriod && maxPeriod == other.maxPeriod;
+		}
 	}
 }
@@ -8,10 +8,10 @@ import org.apache.commons.math3.linear.RealVector;
  * value decomposition.. etc
  * 
  * @author Kensuke Konishi
- * @version 0.0.3
+ * @version 0.0.4
  */
 public enum InverseMethodEnum {
-	SINGULAR_VALUE_DECOMPOSITION, CONJUGATE_GRADIENT, LEAST_SQUARES_METHOD;
+	SINGULAR_VALUE_DECOMPOSITION, CONJUGATE_GRADIENT, LEAST_SQUARES_METHOD, LSQR;
 
 	public String simple() {
 		switch (this) {
@@ -21,6 +21,8 @@ public enum InverseMethodEnum {
 			return "CG";
 		case LEAST_SQUARES_METHOD:
 			return "LSM";
+		case LSQR:
+			return "LSQR";
 		default:
 			throw new RuntimeException("UnEXpECCted");
 		}
@@ -37,6 +39,9 @@ public enum InverseMethodEnum {
 		case "LSM":
 		case "lsm":
 			return LEAST_SQUARES_METHOD;
+		case "LSQR":
+		case "lsqr":
+			return LSQR;
 		default:
 			throw new IllegalArgumentException("Invalid name for InverseMethod");
 		}
@@ -53,4 +58,20 @@ public enum InverseMethodEnum {
 		}
 	}
 
+	/**
+	 * A<sup>T</sup>A is computed only for the methods which need it.
+	 * 
+	 * @param eq
+	 *            Am=d
+	 * @return {@link InverseProblem} for eq
+	 */
+	InverseProblem getMethod(ObservationEquation eq) {
+		switch (this) {
+		case LSQR:
+			return new LSQRMethod(eq);
+		default:
+			return getMethod(eq.getAtA(), eq.getAtD());
+		}
+	}
+
 }
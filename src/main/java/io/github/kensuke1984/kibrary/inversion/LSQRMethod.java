@@ -0,0 +1,237 @@
+package io.github.kensuke1984.kibrary.inversion;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+
+/**
+ * LSQR method (Paige &amp; Saunders, 1982) which needs only Am and
+ * A<sup>T</sup>v of {@link ObservationEquation}. A<sup>T</sup>A is never
+ * formed.
+ * <p>
+ * Solves min |Am-d|<sup>2</sup> + &lambda;<sup>2</sup>|m|<sup>2</sup>. The
+ * iteration stops when the estimate of |r|/|d| or |A<sup>T</sup>r|/(|A||r|)
+ * becomes less than the tolerance, or at the maximum number of iterations.
+ * Only the last k iterates (and the Lanczos vectors v of the same
+ * iterations) are kept; i th column of {@link #getANS()} is the answer at
+ * {@link #getIteration(int)}.
+ * <p>
+ * The equation must have A, i.e. it must not be built by
+ * {@link ObservationEquation#accumulate}.
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.1
+ * @see <a href=https://en.wikipedia.org/wiki/LSQR>English wiki</a>
+ */
+public class LSQRMethod extends InverseProblem {
+
+	private final ObservationEquation eq;
+
+	/**
+	 * &lambda; for the damping
+	 */
+	private double damping;
+
+	/**
+	 * tolerance for the termination
+	 */
+	private double tolerance = 1e-8;
+
+	/**
+	 * maximum number of the iterations, the number of unknowns as default
+	 */
+	private int maxIteration;
+
+	/**
+	 * the number of iterates to keep
+	 */
+	private int nCheckpoint = 10;
+
+	/**
+	 * iteration numbers (1, 2, ...) for the columns of {@link #ans}
+	 */
+	private int[] iterations;
+
+	/**
+	 * Lanczos vectors v for the columns of {@link #ans}
+	 */
+	private RealMatrix baseVectors;
+
+	/**
+	 * @param eq
+	 *            Am=d (must have A)
+	 */
+	public LSQRMethod(ObservationEquation eq) {
+		this.eq = eq;
+		atd = eq.getAtD();
+		maxIteration = eq.getMlength();
+	}
+
+	/**
+	 * @param damping
+	 *            &lambda; (0 for no damping)
+	 */
+	public void setDamping(double damping) {
+		this.damping = damping;
+	}
+
+	/**
+	 * @param tolerance
+	 *            for |r|/|d| and |A<sup>T</sup>r|/(|A||r|)
+	 */
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * @param maxIteration
+	 *            maximum number of iterations
+	 */
+	public void setMaxIteration(int maxIteration) {
+		this.maxIteration = maxIteration;
+	}
+
+	/**
+	 * @param nCheckpoint
+	 *            the number of the last iterates to keep
+	 */
+	public void setNumberOfCheckpoints(int nCheckpoint) {
+		this.nCheckpoint = nCheckpoint;
+	}
+
+	@Override
+	public void compute() {
+		System.err.println("Solving by LSQR method.");
+		int n = getParN();
+		int k = Math.max(1, Math.min(nCheckpoint, maxIteration));
+		RealMatrix kept = new Array2DRowRealMatrix(n, k);
+		RealMatrix keptV = new Array2DRowRealMatrix(n, k);
+		int[] keptIteration = new int[k];
+
+		RealVector u = eq.getDVector().getD();
+		double beta = u.getNorm();
+		double normD = beta;
+		if (0 < beta)
+			u.mapDivideToSelf(beta);
+		RealVector v = eq.computeAtD(u);
+		double alpha = v.getNorm();
+		if (0 < alpha)
+			v.mapDivideToSelf(alpha);
+		RealVector w = v.copy();
+		RealVector x = v.mapMultiply(0);
+		double phibar = beta;
+		double rhobar = alpha;
+		// estimate of the Frobenius norm of A
+		double normA2 = alpha * alpha;
+
+		int nIteration = 0;
+		while (nIteration < maxIteration && 0 < alpha && 0 < beta) {
+			nIteration++;
+			u = eq.operate(v).subtract(u.mapMultiply(alpha));
+			beta = u.getNorm();
+			if (0 < beta)
+				u.mapDivideToSelf(beta);
+			v = eq.computeAtD(u).subtract(v.mapMultiply(beta));
+			alpha = v.getNorm();
+			if (0 < alpha)
+				v.mapDivideToSelf(alpha);
+			normA2 += alpha * alpha + beta * beta + damping * damping;
+
+			// eliminates the damping
+			double rhobar1 = Math.sqrt(rhobar * rhobar + damping * damping);
+			phibar *= rhobar / rhobar1;
+
+			// plane rotation
+			double rho = Math.sqrt(rhobar1 * rhobar1 + beta * beta);
+			double c = rhobar1 / rho;
+			double s = beta / rho;
+			double theta = s * alpha;
+			rhobar = -c * alpha;
+			double phi = c * phibar;
+			phibar *= s;
+
+			x = x.add(w.mapMultiply(phi / rho));
+			w = v.subtract(w.mapMultiply(theta / rho));
+
+			int column = (nIteration - 1) % k;
+			kept.setColumnVector(column, x);
+			keptV.setColumnVector(column, v);
+			keptIteration[column] = nIteration;
+
+			double normR = Math.abs(phibar);
+			double normAtR = normR * alpha * Math.abs(c);
+			if (normR <= tolerance * normD || normAtR <= tolerance * Math.sqrt(normA2) * normR) {
+				System.err.println("LSQR converged at the iteration " + nIteration + " (|r|/|d|=" + normR / normD
+						+ ")");
+				break;
+			}
+		}
+
+		// in the order of the iterations
+		int nKept = Math.max(1, Math.min(k, nIteration));
+		int first = nIteration <= k ? 0 : nIteration % k;
+		ans = new Array2DRowRealMatrix(n, nKept);
+		baseVectors = new Array2DRowRealMatrix(n, nKept);
+		iterations = new int[nKept];
+		for (int i = 0; i < nKept; i++) {
+			int column = (first + i) % k;
+			ans.setColumnVector(i, kept.getColumnVector(column));
+			baseVectors.setColumnVector(i, keptV.getColumnVector(column));
+			iterations[i] = Math.max(1, keptIteration[column]);
+		}
+	}
+
+	/**
+	 * @param i
+	 *            index of a column of {@link #getANS()}
+	 * @return the iteration number of the i th answer
+	 */
+	public int getIteration(int i) {
+		return iterations[i];
+	}
+
+	@Override
+	public int getParN() {
+		return eq.getMlength();
+	}
+
+	/**
+	 * Answers are written as LSQR[iteration].txt.
+	 */
+	@Override
+	public void outputAns(Path outPath) throws IOException {
+		Files.createDirectories(outPath);
+		System.err.println("outputting the answer files in " + outPath);
+		for (int i = 0; i < ans.getColumnDimension(); i++) {
+			Path out = outPath.resolve(getEnum().simple() + iterations[i] + ".txt");
+			try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(out))) {
+				for (double value : ans.getColumn(i))
+					pw.println(value);
+			}
+		}
+	}
+
+	@Override
+	public RealMatrix computeCovariance(double sigmaD, int j) {
+		throw new RuntimeException("LSQR does not compute covariance.");
+	}
+
+	/**
+	 * @return Lanczos vectors v at the kept iterations
+	 */
+	@Override
+	public RealMatrix getBaseVectors() {
+		return baseVectors;
+	}
+
+	@Override
+	InverseMethodEnum getEnum() {
+		return InverseMethodEnum.LSQR;
+	}
+
+}
@@ -33,14 +33,13 @@ import io.github.kensuke1984.kibrary.util.globalcmt.GlobalCMTData;
 import io.github.kensuke1984.kibrary.util.globalcmt.GlobalCMTID;
 import io.github.kensuke1984.kibrary.waveformdata.BasicID;
 import io.github.kensuke1984.kibrary.waveformdata.BasicIDFile;
-import io.github.kensuke1984.kibrary.waveformdata.PartialID;
-import io.github.kensuke1984.kibrary.waveformdata.PartialIDFile;
+import io.github.kensuke1984.kibrary.waveformdata.MappedPartialDataFile;
 
 /**
  * Let's invert
  *
  * @author Kensuke Konishi
- * @version 2.0.3.4
+ * @version 2.0.7
  */
 public class LetMeInvert implements Operation {
     /**
@@ -93,6 +92,10 @@ public class LetMeInvert implements Operation {
         if (!property.containsKey("partialPath"))
             throw new IllegalArgumentException("There is no information about 'partialPath'.");
         if (!property.containsKey("inverseMethods")) property.setProperty("inverseMethods", "CG SVD");
+        if (!property.containsKey("streaming")) property.setProperty("streaming", "false");
+        if (!property.containsKey("lsqrDamping")) property.setProperty("lsqrDamping", "0");
+        if (!property.containsKey("lsqrTolerance")) property.setProperty("lsqrTolerance", "1e-8");
+        if (!property.containsKey("lsqrCheckpoints")) property.setProperty("lsqrCheckpoints", "10");
     }
 
     private void set() {
@@ -111,8 +114,44 @@ public class LetMeInvert implements Operation {
                 Arrays.stream(property.getProperty("alpha").split("\\s+")).mapToDouble(Double::parseDouble).toArray();
         inverseMethods = Arrays.stream(property.getProperty("inverseMethods").split("\\s+")).map(InverseMethodEnum::of)
                 .collect(Collectors.toSet());
+        streaming = Boolean.parseBoolean(property.getProperty("streaming"));
+        if (streaming && inverseMethods.contains(InverseMethodEnum.LSQR)) throw new IllegalArgumentException(
+                "LSQR needs the matrix A, which is not built with streaming. " +
+                        "Set streaming false or remove LSQR from inverseMethods.");
+        lsqrDamping = Double.parseDouble(property.getProperty("lsqrDamping"));
+        lsqrTolerance = Double.parseDouble(property.getProperty("lsqrTolerance"));
+        if (property.containsKey("lsqrMaxIteration"))
+            lsqrMaxIteration = Integer.parseInt(property.getProperty("lsqrMaxIteration"));
+        lsqrCheckpoints = Integer.parseInt(property.getProperty("lsqrCheckpoints"));
     }
 
+    /**
+     * &lambda; for the damping in LSQR
+     */
+    protected double lsqrDamping;
+
+    /**
+     * tolerance for the termination of LSQR
+     */
+    protected double lsqrTolerance = 1e-8;
+
+    /**
+     * maximum number of iterations of LSQR, if it is 0, the number of unknowns
+     */
+    protected int lsqrMaxIteration;
+
+    /**
+     * the number of the last iterates of LSQR to output
+     */
+    protected int lsqrCheckpoints = 10;
+
+    /**
+     * If true, A<sup>T</sup>A and A<sup>T</sup>d are accumulated time window
+     * by time window without building A. It can not be used with LSQR,
+     * which needs A.
+     */
+    protected boolean streaming;
+
     /**
      * AIC計算に用いるα 独立データ数はn/αと考える
      */
@@ -143,8 +182,19 @@ public class LetMeInvert implements Operation {
             pw.println("#stationInformationPath station.inf");
             pw.println("##double[] alpha it self, if it is set, compute aic for each alpha.");
             pw.println("#alpha");
-            pw.println("##inverseMethods[] names of inverse methods (CG SVD)");
+            pw.println("##inverseMethods[] names of inverse methods, CG SVD LSQR (CG SVD)");
             pw.println("#inverseMethods");
+            pw.println("##boolean if AtA and Atd are accumulated without building A, for data larger than memory.");
+            pw.println("##LSQR can not be used with it (false)");
+            pw.println("#streaming");
+            pw.println("##double damping for LSQR (0)");
+            pw.println("#lsqrDamping");
+            pw.println("##double tolerance of the residual for LSQR (1e-8)");
+            pw.println("#lsqrTolerance");
+            pw.println("##int maximum number of iterations for LSQR (the number of unknowns)");
+            pw.println("#lsqrMaxIteration");
+            pw.println("##int the number of the last iterates output by LSQR (10)");
+            pw.println("#lsqrCheckpoints");
         }
         System.err.println(outPath + " is created.");
     }
@@ -179,8 +229,9 @@ public class LetMeInvert implements Operation {
         List<UnknownParameter> parameterList = UnknownParameterFile.read(unknownParameterListPath);
 
         // set partial matrix
-        PartialID[] partialIDs = PartialIDFile.readPartialIDandDataFile(partialIDPath, partialPath);
-        eq = new ObservationEquation(partialIDs, parameterList, dVector);
+        MappedPartialDataFile partialData = MappedPartialDataFile.open(partialIDPath, partialPath);
+        eq = streaming ? ObservationEquation.accumulate(partialData, parameterList, dVector, 0) :
+                new ObservationEquation(partialData, parameterList, dVector);
     }
 
     /**
@@ -434,7 +485,15 @@ public class LetMeInvert implements Operation {
         inverseMethods.forEach(method -> {
             try {
                 if (method == InverseMethodEnum.LEAST_SQUARES_METHOD) return; // TODO
-                solve(outPath.resolve(method.simple()), method.getMethod(eq.getAtA(), eq.getAtD()));
+                InverseProblem inverseProblem = method.getMethod(eq);
+                if (inverseProblem instanceof LSQRMethod) {
+                    LSQRMethod lsqr = (LSQRMethod) inverseProblem;
+                    lsqr.setDamping(lsqrDamping);
+                    lsqr.setTolerance(lsqrTolerance);
+                    if (0 < lsqrMaxIteration) lsqr.setMaxIteration(lsqrMaxIteration);
+                    lsqr.setNumberOfCheckpoints(lsqrCheckpoints);
+                }
+                solve(outPath.resolve(method.simple()), inverseProblem);
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -449,7 +508,7 @@ public class LetMeInvert implements Operation {
 
         // 基底ベクトルの書き出し SVD: vt, CG: cg ベクトル
         RealMatrix p = inverseProblem.getBaseVectors();
-        for (int j = 0; j < eq.getMlength(); j++) {
+        for (int j = 0; j < p.getColumnDimension(); j++) {
             writeDat(outPath.resolve("p" + j + ".txt"), p.getColumn(j));
         }
     }
@@ -469,6 +528,10 @@ public class LetMeInvert implements Operation {
 
     /**
      * outPath下にvarianceを書き込む
+     * <p>
+     * The i th answer has i degrees of freedom, except for LSQR, whose answers
+     * are the last iterates and have their iteration numbers as the degrees
+     * of freedom. For LSQR, each line has the iteration number and the value.
      *
      * @param outPath root path
      */
@@ -476,33 +539,40 @@ public class LetMeInvert implements Operation {
 
         Path out = outPath.resolve("variance.txt");
         if (Files.exists(out)) throw new FileAlreadyExistsException(out.toString());
-        double[] variance = new double[eq.getMlength() + 1];
+        int nAns = inverse.getANS().getColumnDimension();
+        double[] variance = new double[nAns + 1];
+        int[] freedom = new int[nAns + 1];
+        boolean lsqr = inverse instanceof LSQRMethod;
         variance[0] = eq.getDVector().getVariance();
-        for (int i = 0; i < eq.getMlength(); i++) {
+        for (int i = 0; i < nAns; i++) {
             variance[i + 1] = eq.varianceOf(inverse.getANS().getColumnVector(i));
+            freedom[i + 1] = lsqr ? ((LSQRMethod) inverse).getIteration(i) : i + 1;
         }
-        writeDat(out, variance);
+        if (lsqr) writeDat(out, freedom, variance);
+        else writeDat(out, variance);
         if (alpha == null) return;
         for (int i = 0; i < alpha.length; i++) {
             out = outPath.resolve("aic" + i + ".txt");
-            double[] aic = computeAIC(variance, alpha[i]);
-            writeDat(out, aic);
+            double[] aic = computeAIC(variance, freedom, alpha[i]);
+            if (lsqr) writeDat(out, freedom, aic);
+            else writeDat(out, aic);
         }
         writeDat(outPath.resolve("aic.inf"), alpha);
     }
 
     /**
-     * 自由度iに対してAICを計算する 独立データは n / alpha 各々のAIC群
+     * 自由度に対してAICを計算する 独立データは n / alpha 各々のAIC群
      *
      * @param variance varianceの列
-     * @param alpha alpha redundancy
+     * @param freedom  degrees of freedom for the variances
+     * @param alpha    alpha redundancy
      * @return array of aic
      */
-    private double[] computeAIC(double[] variance, double alpha) {
+    private double[] computeAIC(double[] variance, int[] freedom, double alpha) {
         double[] aic = new double[variance.length];
         int independentN = (int) (eq.getDlength() / alpha);
         for (int i = 0; i < aic.length; i++)
-            aic[i] = Utilities.computeAIC(variance[i], independentN, i);
+            aic[i] = Utilities.computeAIC(variance[i], independentN, freedom[i]);
 
         return aic;
     }
@@ -513,6 +583,13 @@ public class LetMeInvert implements Operation {
         }
     }
 
+    private static void writeDat(Path out, int[] keys, double[] dat) throws IOException {
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(out, StandardOpenOption.CREATE_NEW))) {
+            for (int i = 0; i < dat.length; i++)
+                pw.println(keys[i] + " " + dat[i]);
+        }
+    }
+
     private boolean canGO() {
         boolean cango = true;
         if (Files.exists(outPath)) {
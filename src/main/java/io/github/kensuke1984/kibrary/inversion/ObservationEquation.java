@@ -2,30 +2,42 @@ package io.github.kensuke1984.kibrary.inversion;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.DoubleBuffer;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 import java.util.stream.IntStream;
 
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
 
+import io.github.kensuke1984.kibrary.math.ColumnMajorMatrix;
 import io.github.kensuke1984.kibrary.math.Matrix;
 import io.github.kensuke1984.kibrary.util.Location;
 import io.github.kensuke1984.kibrary.util.Utilities;
 import io.github.kensuke1984.kibrary.util.spc.PartialType;
 import io.github.kensuke1984.kibrary.waveformdata.BasicID;
+import io.github.kensuke1984.kibrary.waveformdata.MappedPartialDataFile;
 import io.github.kensuke1984.kibrary.waveformdata.PartialID;
 
 /**
  * Am=d
  * 
- * @version 0.2.1.3
+ * @version 0.2.5
  * 
  * 
  * @author Kensuke Konishi
@@ -33,7 +45,7 @@ import io.github.kensuke1984.kibrary.waveformdata.PartialID;
  */
 public class ObservationEquation {
 
-	private Matrix a;
+	private ColumnMajorMatrix a;
 
 	/**
 	 * @param partialIDs
@@ -46,10 +58,70 @@ public class ObservationEquation {
 	public ObservationEquation(PartialID[] partialIDs, List<UnknownParameter> parameterList, Dvector dVector) {
 		this.dVector = dVector;
 		this.parameterList = parameterList;
-		readA(partialIDs);
+		makeParameterIndex();
+		readA(partialIDs, i -> DoubleBuffer.wrap(partialIDs[i].getData()));
 		atd = computeAtD(dVector.getD());
 	}
 
+	/**
+	 * Columns of A are read directly from the mapped partial waveforms in
+	 * parallel.
+	 * 
+	 * @param partialData
+	 *            for equation
+	 * @param parameterList
+	 *            for equation
+	 * @param dVector
+	 *            for equation
+	 */
+	public ObservationEquation(MappedPartialDataFile partialData, List<UnknownParameter> parameterList,
+			Dvector dVector) {
+		this.dVector = dVector;
+		this.parameterList = parameterList;
+		makeParameterIndex();
+		readA(partialData.getIDs(), partialData::getWaveform);
+		atd = computeAtD(dVector.getD());
+	}
+
+	private ObservationEquation(List<UnknownParameter> parameterList, Dvector dVector) {
+		this.dVector = dVector;
+		this.parameterList = parameterList;
+		makeParameterIndex();
+	}
+
+	/**
+	 * Builds only A<sup>T</sup>A and A<sup>T</sup>d without A. Partial
+	 * waveforms are read one time window at a time; the block of A for the
+	 * window is formed, its contribution is added to A<sup>T</sup>A and
+	 * A<sup>T</sup>d, and then it is dropped.
+	 * <p>
+	 * Each thread accumulates its own upper triangle of A<sup>T</sup>A
+	 * (8m(m+1)/2 bytes for m unknowns) and they are summed at the end. If
+	 * nThreads is not positive, the number of threads is chosen from the
+	 * available processors and the free heap.
+	 * <p>
+	 * The returned equation has no A, so {@link #operate(RealVector)},
+	 * {@link #computeAtD(RealVector)} and {@link #bornOut(RealVector)} are not
+	 * available.
+	 * 
+	 * @param partialData
+	 *            for equation
+	 * @param parameterList
+	 *            for equation
+	 * @param dVector
+	 *            for equation
+	 * @param nThreads
+	 *            the number of threads for the accumulation
+	 * @return {@link ObservationEquation} with A<sup>T</sup>A and
+	 *         A<sup>T</sup>d
+	 */
+	public static ObservationEquation accumulate(MappedPartialDataFile partialData,
+			List<UnknownParameter> parameterList, Dvector dVector, int nThreads) {
+		ObservationEquation eq = new ObservationEquation(parameterList, dVector);
+		eq.accumulateAtA(partialData, nThreads);
+		return eq;
+	}
+
 	private List<UnknownParameter> parameterList;
 	private Dvector dVector;
 
@@ -85,6 +157,11 @@ public class ObservationEquation {
 	public double varianceOf(RealVector m) {
 		Objects.requireNonNull(m);
 		double obs2 = dVector.getObsNorm() * dVector.getObsNorm();
+		// A<sup>T</sup>A is not formed just for this (e.g. by LSQR)
+		if (ata == null && a != null) {
+			double residual = dVector.getD().subtract(operate(m)).getNorm();
+			return residual * residual / obs2;
+		}
 		double variance = dVector.getDNorm() * dVector.getDNorm() - 2 * atd.dotProduct(m)
 				+ m.dotProduct(getAtA().operate(m));
 		return variance / obs2;
@@ -97,13 +174,16 @@ public class ObservationEquation {
 	 * 
 	 * @param ids
 	 *            source for A
+	 * @param waveform
+	 *            waveform of the i th ID
 	 */
-	private void readA(PartialID[] ids) {
-		a = new Matrix(dVector.getNpts(), parameterList.size());
+	private void readA(PartialID[] ids, IntFunction<DoubleBuffer> waveform) {
+		a = new ColumnMajorMatrix(dVector.getNpts(), parameterList.size());
 		// partialDataFile.readWaveform();
 		long t = System.nanoTime();
 		AtomicInteger count = new AtomicInteger();
-		Arrays.stream(ids).parallel().forEach(id -> {
+		IntStream.range(0, ids.length).parallel().forEach(i -> {
+			PartialID id = ids[i];
 			if (count.get() == dVector.getNTimeWindow() * parameterList.size())
 				return;
 			int column = whatNumer(id.getPartialType(), id.getPerturbationLocation());
@@ -115,9 +195,9 @@ public class ObservationEquation {
 				return;
 			int row = dVector.getStartPoints(k);
 			double weighting = dVector.getWeighting(k) * parameterList.get(column).getWeighting();
-			double[] partial = id.getData();
-			for (int j = 0; j < partial.length; j++)
-				a.setEntry(row + j, column, partial[j] * weighting);
+			DoubleBuffer partial = waveform.apply(i);
+			for (int j = 0, npts = partial.remaining(); j < npts; j++)
+				a.setEntry(row + j, column, partial.get(j) * weighting);
 			count.incrementAndGet();
 		});
 //		System.out.println(count.get()+" "+ dVector.getNTimeWindow() * parameterList.size()+" "+parameterList.size());
@@ -126,6 +206,154 @@ public class ObservationEquation {
 		System.err.println("A is read and built in " + Utilities.toTimeString(System.nanoTime() - t));
 	}
 
+	/**
+	 * Index of each unknown parameter in {@link #parameterList} for a partial
+	 * type. The key is the radius for 1D parameters and the {@link Location}
+	 * for 3D ones.
+	 */
+	private Map<PartialType, Map<Object, Integer>> parameterIndex;
+
+	private void makeParameterIndex() {
+		parameterIndex = new EnumMap<>(PartialType.class);
+		for (int i = 0; i < parameterList.size(); i++) {
+			UnknownParameter parameter = parameterList.get(i);
+			Object key = toParameterKey(parameter.getPartialType(), parameter);
+			if (key != null)
+				parameterIndex.computeIfAbsent(parameter.getPartialType(), type -> new HashMap<>()).putIfAbsent(key,
+						i);
+		}
+	}
+
+	private static Object toParameterKey(PartialType type, UnknownParameter parameter) {
+		switch (type) {
+		case PARA:
+		case PARC:
+		case PARF:
+		case PARL:
+		case PARN:
+		case PARQ:
+		case PAR1:
+		case PAR2:
+			return ((Physical1DParameter) parameter).getPerturbationR();
+		case A:
+		case C:
+		case F:
+		case L:
+		case N:
+		case Q:
+		case MU:
+		case LAMBDA:
+			return ((Physical3DParameter) parameter).getPointLocation();
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * See {@link #accumulate(MappedPartialDataFile, List, Dvector, int)}
+	 * 
+	 * @param partialData
+	 *            source for A<sup>T</sup>A and A<sup>T</sup>d
+	 * @param nThreads
+	 *            the number of threads
+	 */
+	private void accumulateAtA(MappedPartialDataFile partialData, int nThreads) {
+		long t = System.nanoTime();
+		int m = parameterList.size();
+		int nWindow = dVector.getNTimeWindow();
+		if (nThreads <= 0) {
+			Runtime runtime = Runtime.getRuntime();
+			long free = runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory();
+			long triangleBytes = 8L * m * (m + 1) / 2;
+			nThreads = (int) Math.max(1, Math.min(runtime.availableProcessors(), free / 2 / triangleBytes));
+		}
+		// partials in each time window {index of ID, column}
+		PartialID[] ids = partialData.getIDs();
+		int[] windows = new int[ids.length];
+		int[] columns = new int[ids.length];
+		IntStream.range(0, ids.length).parallel().forEach(i -> {
+			columns[i] = whatNumer(ids[i].getPartialType(), ids[i].getPerturbationLocation());
+			windows[i] = columns[i] < 0 ? -1 : dVector.whichTimewindow(ids[i]);
+		});
+		List<List<int[]>> partials = new ArrayList<>(nWindow);
+		for (int k = 0; k < nWindow; k++)
+			partials.add(new ArrayList<>());
+		int count = 0;
+		for (int i = 0; i < ids.length; i++)
+			if (0 <= windows[i]) {
+				partials.get(windows[i]).add(new int[] { i, columns[i] });
+				count++;
+			}
+		if (count != nWindow * m)
+			throw new RuntimeException("Input partials are not enough.");
+
+		RealVector[] dVec = dVector.getdVec();
+		AtomicInteger nextWindow = new AtomicInteger();
+		ExecutorService execs = Executors.newFixedThreadPool(nThreads);
+		List<Future<double[][]>> sums = new ArrayList<>();
+		for (int thread = 0; thread < nThreads; thread++)
+			sums.add(execs.submit(() -> {
+				// upper triangle of AtA (row i has m-i values) and AtD at the
+				// last row
+				double[][] sum = new double[m + 1][];
+				Arrays.setAll(sum, i -> new double[i == m ? m : m - i]);
+				for (int k; (k = nextWindow.getAndIncrement()) < nWindow;) {
+					List<int[]> window = partials.get(k);
+					double[] d = dVec[k].toArray();
+					double[][] block = new double[window.size()][];
+					int[] blockColumns = new int[block.length];
+					for (int b = 0; b < block.length; b++) {
+						blockColumns[b] = window.get(b)[1];
+						double weighting = dVector.getWeighting(k) * parameterList.get(blockColumns[b]).getWeighting();
+						DoubleBuffer partial = partialData.getWaveform(window.get(b)[0]);
+						block[b] = new double[partial.remaining()];
+						partial.get(block[b]);
+						for (int j = 0; j < block[b].length; j++)
+							block[b][j] *= weighting;
+					}
+					for (int b0 = 0; b0 < block.length; b0++) {
+						sum[m][blockColumns[b0]] += dot(block[b0], d);
+						for (int b1 = b0; b1 < block.length; b1++) {
+							int i = Math.min(blockColumns[b0], blockColumns[b1]);
+							int j = Math.max(blockColumns[b0], blockColumns[b1]);
+							sum[i][j - i] += dot(block[b0], block[b1]);
+						}
+					}
+				}
+				return sum;
+			}));
+		execs.shutdown();
+
+		Matrix ata = new Matrix(m, m);
+		double[] atd = new double[m];
+		try {
+			for (Future<double[][]> future : sums) {
+				double[][] sum = future.get();
+				for (int i = 0; i < m; i++) {
+					atd[i] += sum[m][i];
+					for (int j = i; j < m; j++)
+						ata.addToEntry(i, j, sum[i][j - i]);
+				}
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Could not accumulate AtA.", e);
+		}
+		for (int i = 1; i < m; i++)
+			for (int j = 0; j < i; j++)
+				ata.setEntry(i, j, ata.getEntry(j, i));
+		this.ata = ata;
+		this.atd = new ArrayRealVector(atd, false);
+		System.err.println("AtA and Atd are accumulated by " + nThreads + " threads in "
+				+ Utilities.toTimeString(System.nanoTime() - t));
+	}
+
+	private static double dot(double[] x, double[] y) {
+		double sum = 0;
+		for (int i = 0; i < x.length; i++)
+			sum += x[i] * y[i];
+		return sum;
+	}
+
 	/**
 	 * @param type
 	 *            to look for
@@ -134,37 +362,29 @@ public class ObservationEquation {
 	 * @return parameterが何番目にあるか なければ-1
 	 */
 	private int whatNumer(PartialType type, Location location) {
-		for (int i = 0; i < parameterList.size(); i++) {
-			if (parameterList.get(i).getPartialType() != type)
-				continue;
-			switch (type) {
-			case TIME:
-				throw new RuntimeException("time  madamuripo");
-			case PARA:
-			case PARC:
-			case PARF:
-			case PARL:
-			case PARN:
-			case PARQ:
-			case PAR1:
-			case PAR2:
-				if (location.getR() == ((Physical1DParameter) parameterList.get(i)).getPerturbationR())
-					return i;
-				break;
-			case A:
-			case C:
-			case F:
-			case L:
-			case N:
-			case Q:
-			case MU:
-			case LAMBDA:
-				if (location.equals(((Physical3DParameter) parameterList.get(i)).getPointLocation()))
-					return i;
-				break;
-			}
+		if (type == PartialType.TIME)
+			throw new RuntimeException("time  madamuripo");
+		Map<Object, Integer> index = parameterIndex.get(type);
+		if (index == null)
+			return -1;
+		Integer i = index.get(toLocationKey(type, location));
+		return i == null ? -1 : i;
+	}
+
+	private static Object toLocationKey(PartialType type, Location location) {
+		switch (type) {
+		case PARA:
+		case PARC:
+		case PARF:
+		case PARL:
+		case PARN:
+		case PARQ:
+		case PAR1:
+		case PAR2:
+			return location.getR();
+		default:
+			return location;
 		}
-		return -1;
 	}
 
 	public RealMatrix getA() {
@@ -238,6 +458,8 @@ public class ObservationEquation {
 	 * @return A<sup>T</sup>d
 	 */
 	public RealVector computeAtD(RealVector d) {
+		if (a == null)
+			throw new RuntimeException("A is not built for this equation.");
 		return a.preMultiply(d);
 	}
 
@@ -265,6 +487,8 @@ public class ObservationEquation {
 	 * @return Am
 	 */
 	public RealVector operate(RealVector m) {
+		if (a == null)
+			throw new RuntimeException("A is not built for this equation.");
 		return a.operate(m);
 	}
 
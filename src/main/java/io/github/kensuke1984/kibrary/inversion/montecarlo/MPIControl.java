@@ -1,106 +1,74 @@
 package io.github.kensuke1984.kibrary.inversion.montecarlo;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.stream.Collectors;
+
+import io.github.kensuke1984.kibrary.external.MPIScheduler;
 
 /**
+ * mpi-tish runs for {@link MetroPolice} through {@link MPIScheduler}.
+ *
  * @author Kensuke Konishi
- * @version 0.0.1
+ * @version 0.0.3.1
  */
 class MPIControl {
 
-	private final File bucket = new File("/dev/null");
-
-	private Map<String, Integer> npMap;
+	/**
+	 * the number of retries of a failed mpi-tish
+	 */
+	private static final int MAX_RETRIES = 2;
 
-	private Map<String, Boolean> busyMap;
+	private final MPIScheduler scheduler;
 
 	MPIControl(Path hostFile) throws IOException {
-		List<String> hostList = Files.readAllLines(hostFile);
-		npMap = hostList.stream().collect(Collectors.toMap(line -> line, line -> 1, (i, j) -> i + j));
-		busyMap = npMap.keySet().stream().collect(Collectors.toMap(k -> k, k -> false));
-		pool = Executors.newFixedThreadPool(npMap.size());
-		System.out.println("MPI processes run in " + npMap.size() + " hosts.");
+		scheduler = MPIScheduler.of(hostFile, MAX_RETRIES);
+		System.out.println("MPI processes run in " + scheduler.getUsages().size() + " hosts.");
 	}
 
 	MPIControl(int np) {
-		npMap = Collections.singletonMap("localhost", np);
-		busyMap = new HashMap<>();
-		busyMap.put("localhost", false);
+		scheduler = new MPIScheduler(Collections.singletonMap(MPIScheduler.LOCALHOST, np), MAX_RETRIES);
 		System.out.println("Each set of MPI processes for each DSM executable runs in " + np + " threads.");
-		pool = Executors.newSingleThreadExecutor();
-	}
-
-	private Callable<Integer> submit(String host, Path information) {
-		return () -> new ProcessBuilder("mpirun", "-host", host, "-np", String.valueOf(npMap.get(host)), "mpi-tish")
-				.directory(information.getParent().toFile()).redirectInput(information.toFile()).redirectError(bucket)
-				.redirectOutput(bucket).start().waitFor();
 	}
 
 	/**
-	 * @return host name which is free and it becomes busy when this method
-	 *         returns its name
+	 * @param informationPath
+	 *            Path of tish information file
+	 * @return future of mpi run, the future returns the parent Path of
+	 *         information Path
 	 */
-	private String waitFreeHost() {
-		String host = null;
-		while (host == null)
-			host = getFreeHost();
-		return host;
+	Future<Path> tish(Path informationPath) {
+		return tish(informationPath, 0);
 	}
 
 	/**
-	 * @return find a free host and set it busy(true)
+	 * @param informationPath
+	 *            Path of tish information file
+	 * @param priority
+	 *            runs with higher priorities start earlier
+	 * @return future of mpi run, the future returns the parent Path of
+	 *         information Path, or null if the run fails
 	 */
-	private synchronized String getFreeHost() {
-		Optional<String> host = busyMap.entrySet().stream().filter(e -> e.getValue() == false).map(e -> e.getKey())
-				.findAny();
-		if (!host.isPresent())
-			return null;
-		busyMap.put(host.get(), true);
-		return host.get();
+	Future<Path> tish(Path informationPath, double priority) {
+		return scheduler.tish(informationPath, priority)
+				.thenApply(exit -> exit == 0 ? informationPath.getParent() : null);
 	}
 
 	/**
-	 * Set host busy(true)
-	 * 
-	 * @param host
-	 *            name of host
+	 * @param mpirun
+	 *            if false, DSM programs are executed directly without mpirun
+	 *            (default: true)
 	 */
-	private synchronized void setFree(String host) {
-		busyMap.put(host, false);
-	}
-
-	private ExecutorService pool;
-
-	private Callable<Path> queue(Path information) {
-		return () -> {
-			String host = waitFreeHost();
-			int exit = submit(host, information).call();
-			setFree(host);
-			return exit == 0 ? information.getParent() : null;
-		};
+	void setMPIRun(boolean mpirun) {
+		scheduler.setMPIRun(mpirun);
 	}
 
 	/**
-	 * @param informationPath
-	 *            Path of tish information file
-	 * @return future of mpi run, the future returns the parent Path of
-	 *         information Path
+	 * Prints the usages of the hosts.
 	 */
-	Future<Path> tish(Path informationPath) {
-		return pool.submit(queue(informationPath));
-	};
+	void printUsages() {
+		scheduler.printUsages();
+	}
 
 }
@@ -3,6 +3,7 @@
  */
 package io.github.kensuke1984.kibrary.inversion.montecarlo;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
@@ -11,10 +12,15 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
@@ -49,10 +55,24 @@ import io.github.kensuke1984.kibrary.util.spc.SpcFileName;
  * 
  *         logFile is in run0.
  * 
+ *         Synthetics for each candidate are computed from the spectra,
+ *         filtered and compared with the observed waveforms in memory. Only
+ *         the summary (variance.inf) is written in each run. The starting
+ *         model in run0 is scored in the same way, so that its misfit is
+ *         comparable with the ones of the candidates.
  * 
- * @version 0.0.2.2.1
+ *         Options are read from {@value #PROPERTY_FILE} in the run path if it
+ *         exists: mpirun (true|false, default true). With mpirun false, DSM
+ *         executables (or stubs of them) in PATH run without mpirun.
+ * 
+ * @version 0.0.3.3
  */
 class MetroPolice {
+	/**
+	 * name of the file of options in the run path
+	 */
+	static final String PROPERTY_FILE = "metropolice.properties";
+
 	private Path montePath;
 	private Path psvPath;
 
@@ -63,6 +83,23 @@ class MetroPolice {
 		obsDir = montePath.resolve("obs");
 		SacComparator.set(montePath);
 		setFilter(0.005, 0.08, 4);
+		readProperties();
+	}
+
+	/**
+	 * if DSM runs through mpirun
+	 */
+	private boolean mpirun = true;
+
+	private void readProperties() throws IOException {
+		Path propertyPath = montePath.resolve(PROPERTY_FILE);
+		if (!Files.exists(propertyPath))
+			return;
+		Properties property = new Properties();
+		try (BufferedReader reader = Files.newBufferedReader(propertyPath)) {
+			property.load(reader);
+		}
+		mpirun = Boolean.parseBoolean(property.getProperty("mpirun", "true"));
 	}
 
 	private Path run0Path;
@@ -124,31 +161,89 @@ class MetroPolice {
 
 	private Map<GlobalCMTID, SourceTimeFunction> sourceTimeFunctionMap;
 
-	private void makeSacFiles(EventFolder eventDir) throws IOException {
-		Path spcPath = eventDir.toPath().resolve("spc");
-		SourceTimeFunction sourceTimeFunction = sourceTimeFunctionMap.get(eventDir.getGlobalCMTID());
-		try (Stream<Path> stream = Files.list(spcPath)) {
-			stream.filter(path -> path.toString().endsWith("SH.spc")).forEach(shPath -> {
-				SpcFileName shName = new SpcFileName(shPath);
-				SpcFileName psvName = toPSVname(shName);
-				try {
-					DSMOutput shSPC = shName.read();
-					DSMOutput psvSPC = psvName.read();
-					SACMaker sm = new SACMaker(psvSPC, shSPC, sourceTimeFunction);
-					sm.setComponents(components);
-					sm.setOutPath(eventDir.toPath());
-					sm.run();
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-			});
+	/**
+	 * PSV spectra, which are same in all the runs. At most
+	 * {@link #psvCacheSize} spectra are kept. Every run reads all the spectra
+	 * in the same order, so the ones cached first are kept instead of
+	 * evicting the least recently used, which would be read again only after
+	 * being evicted.
+	 */
+	private final Map<Path, DSMOutput> psvMap = new ConcurrentHashMap<>();
+
+	private DSMOutput readPSV(SpcFileName psvName) throws IOException {
+		Path path = psvName.toPath();
+		DSMOutput psvSPC = psvMap.get(path);
+		if (psvSPC != null)
+			return psvSPC;
+		psvSPC = psvName.read();
+		if (psvMap.size() < psvCacheSize) {
+			DSMOutput former = psvMap.putIfAbsent(path, psvSPC);
+			if (former != null)
+				return former;
+		}
+		return psvSPC;
+	}
+
+	/**
+	 * observed waveforms (T) of each event for station names
+	 */
+	private Map<GlobalCMTID, Map<String, SACData>> obsMap;
+
+	private void readObserved() throws IOException {
+		obsMap = new ConcurrentHashMap<>();
+		for (EventFolder eventDir : Utilities.eventFolderSet(obsDir)) {
+			Map<String, SACData> stationMap = new ConcurrentHashMap<>();
+			eventDir.sacFileSet().parallelStream()
+					.filter(name -> name.isOBS() && name.getComponent() == SACComponent.T).forEach(name -> {
+						try {
+							stationMap.put(name.getStationName(), name.read());
+						} catch (Exception e) {
+							e.printStackTrace();
+						}
+					});
+			obsMap.put(eventDir.getGlobalCMTID(), stationMap);
+		}
+	}
+
+	/**
+	 * Synthetics are created from the spectra in the event folder and
+	 * filtered, then compared with the observed ones. Nothing is written.
+	 * 
+	 * @param eventPath
+	 *            event folder in a run
+	 * @return [variance, correlation] for each station
+	 * @throws IOException
+	 *             if any
+	 */
+	private List<double[]> evaluate(Path eventPath) throws IOException {
+		GlobalCMTID id = new GlobalCMTID(eventPath.getFileName().toString());
+		SourceTimeFunction sourceTimeFunction = sourceTimeFunctionMap.get(id);
+		Map<String, SACData> stationMap = obsMap.getOrDefault(id, Collections.emptyMap());
+		List<Path> shPaths;
+		try (Stream<Path> stream = Files.list(eventPath.resolve("spc"))) {
+			shPaths = stream.filter(path -> path.toString().endsWith("SH.spc")).collect(Collectors.toList());
 		}
+		return shPaths.parallelStream().map(shPath -> {
+			SpcFileName shName = new SpcFileName(shPath);
+			SACData obsSac = stationMap.get(shName.getObserverID());
+			if (obsSac == null)
+				return null;
+			try {
+				SACMaker sm = new SACMaker(readPSV(toPSVname(shName)), shName.read(), sourceTimeFunction);
+				sm.setComponents(components);
+				SACData synSac = sm.toSACData().get(SACComponent.T).applyButterworthFilter(filter);
+				SacComparator comparator = new SacComparator(obsSac, synSac);
+				return new double[] { comparator.getVarianceTS(), comparator.getCorrelationTS() };
+			} catch (Exception e) {
+				e.printStackTrace();
+				return null;
+			}
+		}).filter(Objects::nonNull).collect(Collectors.toList());
 	}
 
 	private void setupRunpath(Path runPath) throws IOException {
 		try (Stream<EventFolder> obsEventStream = Utilities.eventFolderSet(obsDir).stream()) {
 			Files.createDirectories(runPath);
-			Files.createDirectories(runPath.resolve("variances"));
 			obsEventStream.map(e -> runPath.resolve(e.getGlobalCMTID().toString())).forEach(path -> {
 				try {
 					Files.createDirectories(path);
@@ -163,79 +258,52 @@ class MetroPolice {
 		}
 	}
 
-	private SACFileName toObs(SACFileName name) {
-		GlobalCMTID id = name.getGlobalCMTID();
-		String station = name.getStationName();
-		String bottom = station + "." + id + ".T";
-		return new SACFileName(obsDir.resolve(id.toString()).resolve(bottom));
-
-	}
-
-	private synchronized static void add(List<Double> list, double v) {
-		list.add(v);
-	}
-
+	/**
+	 * Computes the summary from the files in runPath/variances, which were
+	 * made for each event by runs before the synthetics were evaluated in
+	 * memory.
+	 * 
+	 * @param runPath
+	 *            of a run
+	 * @throws IOException
+	 *             if any
+	 */
 	private static void computeValueforComparison(Path runPath) throws IOException {
-		List<Double> variance = new ArrayList<>();
-		List<Double> correlation = new ArrayList<>();
-
+		List<double[]> values = new ArrayList<>();
 		Path variancePath = runPath.resolve("variances");
 		try (Stream<Path> stream = Files.list(variancePath)) {
 			stream.forEach(path -> {
 				try {
-					List<String> lines = Files.readAllLines(path);
-					lines.parallelStream().map(line -> Double.parseDouble(line.split("\\s+")[1]))
-							.forEach(d -> add(variance, d));
-					lines.parallelStream().map(line -> Double.parseDouble(line.split("\\s+")[2]))
-							.forEach(d -> add(correlation, d));
-
+					for (String line : Files.readAllLines(path)) {
+						String[] parts = line.split("\\s+");
+						values.add(new double[] { Double.parseDouble(parts[1]), Double.parseDouble(parts[2]) });
+					}
 				} catch (Exception e) {
 					e.printStackTrace();
 				}
-
 			});
-
 		}
+		writeSummary(runPath, values);
+	}
 
-		double varAve = variance.stream().mapToDouble(Double::doubleValue).average().getAsDouble();
-		double corAve = correlation.stream().mapToDouble(Double::doubleValue).average().getAsDouble();
+	/**
+	 * Writes the averages of the variances and the correlations in
+	 * runPath/variance.inf
+	 * 
+	 * @param runPath
+	 *            of a run
+	 * @param values
+	 *            [variance, correlation] for each station
+	 * @throws IOException
+	 *             if any
+	 */
+	private static void writeSummary(Path runPath, List<double[]> values) throws IOException {
+		double varAve = values.stream().mapToDouble(v -> v[0]).average().getAsDouble();
+		double corAve = values.stream().mapToDouble(v -> v[1]).average().getAsDouble();
 		String line = varAve + " " + corAve;
 		Files.write(runPath.resolve("variance.inf"), Arrays.asList(line));
 	}
 
-	private void compare(EventFolder eventDir) throws IOException {
-		Set<SACFileName> synNameSet = eventDir.sacFileSet();
-		synNameSet.removeIf(s -> !s.isSYN());
-		List<String> outLines = new ArrayList<>();
-		synNameSet.forEach(synName -> {
-			SACFileName obsName = toObs(synName);
-			if (!obsName.exists() || !synName.exists())
-				return;
-			try {
-				SACData obsSac = obsName.read();
-				SACData synSac = synName.read();
-				SacComparator comparator = new SacComparator(obsSac, synSac);
-				double variance = comparator.getVarianceTS();
-				double correlation = comparator.getCorrelationTS();
-				double synScSS = comparator.getSynScSTime() - comparator.getSynSTime();
-				double obsScSS = comparator.getObsScSTime() - comparator.getObsSTime();
-				double scsS = obsScSS - synScSS;
-				double scsSamp = comparator.getScSAmpRatio() / comparator.getSAmpRatio();
-				outLines.add(
-						obsName.getStationName() + " " + variance + " " + correlation + " " + scsS + " " + scsSamp);
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-		});
-		try {
-			if (0 < outLines.size())
-				Files.write(eventDir.toPath().resolve("variance.inf"), outLines);
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-
-	}
-
 	private static boolean judge(Path current, Path candidate) {
 		try {
 			List<String> currentLines = Files.readAllLines(current.resolve("variance.inf"));
@@ -266,54 +334,50 @@ class MetroPolice {
 		if (!DSMMPI.shExists)
 			throw new RuntimeException("mpi-sh does not exist in PATH.");
 		mpi = hostFilePath == null ? new MPIControl(8) : new MPIControl(hostFilePath);
+		mpi.setMPIRun(mpirun);
+		if (!mpirun)
+			System.out.println("DSM runs without mpirun.");
 	}
 
 	private Path hostFilePath;
 
-	private void runDSM(Path runPath) {
-		idSet.parallelStream().map(GlobalCMTID::toString).map(runPath::resolve).map(e -> e.resolve("sh.inf"))
-				.map(mpi::tish).map(this::postProcess).forEach(f -> {
-					try {
-						f.get();
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-				});
-	}
-
-	private Future<Integer> postProcess(Future<Path> future) {
-		FutureTask<Integer> c = new FutureTask<>(() -> {
-			Path event = future.get();
-			if (event != null) {
-				Path variancePath = event.resolveSibling("variances");
-				processSac(new EventFolder(event));
-				Files.move(event.resolve("variance.inf"), variancePath.resolve(event.getFileName() + ".inf"));
-				Files.delete(event);
-			}
-			return 0;
-		});
-		new Thread(c).start();
-		return c;
-	}
-
-	private void applyFilter(EventFolder eventDir) throws IOException {
-		eventDir.sacFileSet().forEach(name -> {
-			if (!name.isSYN())
-				return;
+	/**
+	 * Events with more stations run earlier.
+	 * 
+	 * @param runPath
+	 *            of a run
+	 * @return [variance, correlation] for each station of all the events
+	 */
+	private List<double[]> runDSM(Path runPath) {
+		List<Future<List<double[]>>> futures = idSet.stream()
+				.sorted(Comparator.comparingInt((GlobalCMTID id) -> -numberOfStations(id)))
+				.map(id -> mpi.tish(runPath.resolve(id + "/sh.inf"), numberOfStations(id))).map(this::postProcess)
+				.collect(Collectors.toList());
+		List<double[]> values = new ArrayList<>();
+		for (Future<List<double[]>> f : futures)
 			try {
-				SACData sf = name.read().applyButterworthFilter(filter);
-				sf.writeSAC(name.toPath());
+				values.addAll(f.get());
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
-		});
+		return values;
 	}
 
-	private void processSac(EventFolder eventDir) throws IOException {
-		makeSacFiles(eventDir);
-		applyFilter(eventDir);
-		compare(eventDir);
-		deleteIntermediate(eventDir);
+	private int numberOfStations(GlobalCMTID id) {
+		return obsMap.getOrDefault(id, Collections.emptyMap()).size();
+	}
+
+	private Future<List<double[]>> postProcess(Future<Path> future) {
+		FutureTask<List<double[]>> c = new FutureTask<>(() -> {
+			Path event = future.get();
+			if (event == null)
+				return Collections.emptyList();
+			List<double[]> values = evaluate(event);
+			deleteIntermediate(event);
+			return values;
+		});
+		new Thread(c).start();
+		return c;
 	}
 
 	private int findResumePoint() throws IOException {
@@ -340,14 +404,20 @@ class MetroPolice {
 		idSet = Utilities.globalCMTIDSet(obsDir);
 		readSetting();
 		computeSourceTimeFunction();
+		readObserved();
 	}
 
 	private void readSetting() {
 		np = 256;
 		samplingHz = 20;
 		tlen = 1638.4;
+		psvCacheSize = 4096;
 	}
 
+	/**
+	 * the maximum number of PSV spectra kept in memory
+	 */
+	private int psvCacheSize;
 	private int np;
 	private double tlen;
 	private double samplingHz;
@@ -364,20 +434,24 @@ class MetroPolice {
 		}
 	}
 
-	private void prepareRun0() throws IOException {
-		Path current = montePath.resolve("run0");
-		Path variancePath = current.resolve("variances");
-		if (Files.exists(variancePath))
-			return;
-		Files.createDirectories(variancePath);
-		Utilities.eventFolderSet(current).forEach(ed -> {
-			try {
-				compare(ed);
-				Files.move(ed.toPath().resolve("variance.inf"), variancePath.resolve(ed.getGlobalCMTID() + ".inf"));
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-		});
+	/**
+	 * Synthetics for the model in run0 are computed in run0/synthetic and
+	 * evaluated in memory as the ones for the candidates. The summary is
+	 * written in run0/variance.inf.
+	 * 
+	 * @param model
+	 *            in run0
+	 */
+	private void scoreRun0(PolynomialStructure model) throws IOException, InterruptedException {
+		Path syntheticPath = run0Path.resolve("synthetic");
+		setupRunpath(syntheticPath);
+		createDSMInf(model, syntheticPath);
+		writeSummary(run0Path, runDSM(syntheticPath));
+		try {
+			Files.deleteIfExists(syntheticPath);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
 	}
 
 	private void run() throws IOException, InterruptedException {
@@ -397,10 +471,11 @@ class MetroPolice {
 			throw new RuntimeException("Couldnt restart");
 		preProcess();
 		PolynomialStructure formerModel = new PolynomialStructure(startModel);
-		if (modelNumber == 0)
-			prepareRun0();
-		computeValueforComparison(current);
 		setMPIEnvironment();
+		if (modelNumber == 0)
+			scoreRun0(formerModel);
+		else if (Files.exists(current.resolve("variances")))
+			computeValueforComparison(current);
 		for (int iRun = start + 1; iRun < nRun + 1; iRun++) {
 			Path candidate = montePath.resolve("run" + iRun);
 			PolynomialStructure nextModel = ModelGenerator.nextStructure(formerModel);
@@ -408,9 +483,9 @@ class MetroPolice {
 			createDSMInf(nextModel, candidate);
 
 			// dsm run
-			// make SacFile and apply filter and compare
-			runDSM(candidate);
-			computeValueforComparison(candidate);
+			// make synthetics, apply filter and compare in memory
+			writeSummary(candidate, runDSM(candidate));
+			mpi.printUsages();
 			outputModelValue(candidate, nextModel);
 
 			// 評価
@@ -434,15 +509,7 @@ class MetroPolice {
 		}
 	}
 
-	private static void deleteIntermediate(EventFolder eventDir) throws IOException {
-		eventDir.sacFileSet().forEach(name -> {
-			try {
-				Files.delete(name.toPath());
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-		});
-		Path eventPath = eventDir.toPath();
+	private static void deleteIntermediate(Path eventPath) throws IOException {
 		try (DirectoryStream<Path> spcStream = Files.newDirectoryStream(eventPath.resolve("spc"))) {
 			for (Path s : spcStream)
 				Files.delete(s);
@@ -451,6 +518,7 @@ class MetroPolice {
 		}
 		Files.delete(eventPath.resolve("sh.inf"));
 		Files.delete(eventPath.resolve("spc"));
+		Files.delete(eventPath);
 	}
 
 	private static int limit = 100000;
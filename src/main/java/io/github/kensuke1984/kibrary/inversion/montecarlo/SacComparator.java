@@ -6,12 +6,12 @@ package io.github.kensuke1984.kibrary.inversion.montecarlo;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Set;
 import java.util.stream.IntStream;
 
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealVector;
 
+import io.github.kensuke1984.kibrary.timewindow.TimewindowIndex;
 import io.github.kensuke1984.kibrary.timewindow.TimewindowInformation;
 import io.github.kensuke1984.kibrary.timewindow.TimewindowInformationFile;
 import io.github.kensuke1984.kibrary.util.Station;
@@ -27,14 +27,14 @@ import io.github.kensuke1984.kibrary.util.sac.SACHeaderEnum;
  * 
  * @author Kensuke Konishi
  * 
- * @version 0.0.5
+ * @version 0.0.6
  * 
  * 
  */
 class SacComparator {
 	private static TraveltimeList sList;
 	private static TraveltimeList scsList;
-	private static Set<TimewindowInformation> twInfo;
+	private static TimewindowIndex<TimewindowInformation> twInfo;
 
 	static void set(Path dir) throws IOException {
 		Path sPath = dir.resolve("s.lst");
@@ -44,7 +44,7 @@ class SacComparator {
 			throw new RuntimeException("No files for SacComparator");
 		sList = new TraveltimeList(sPath);
 		scsList = new TraveltimeList(scsPath);
-		twInfo = TimewindowInformationFile.read(twPath);
+		twInfo = TimewindowIndex.of(TimewindowInformationFile.read(twPath));
 	}
 
 	private static final double sRange = 20;
@@ -198,10 +198,7 @@ class SacComparator {
 		String station = Station.of(obsSac).getStationName();
 
 		GlobalCMTID id = new GlobalCMTID(obsSac.getSACString(SACHeaderEnum.KEVNM));
-		TimewindowInformation window = twInfo.stream()
-				.filter(info -> info.getStation().getStationName().equals(station))
-				.filter(info -> info.getGlobalCMTID().equals(id)).filter(info -> info.getComponent() == SACComponent.T)
-				.findAny().get();
+		TimewindowInformation window = twInfo.get(station, id, SACComponent.T).stream().findAny().get();
 		tstart = window.getStartTime();
 		tend = window.getEndTime();
 		taupS = sList.getTime(station, id);
@@ -7,7 +7,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import io.github.kensuke1984.anisotime.Phase;
-import io.github.kensuke1984.kibrary.external.TauPTimeReader;
+import io.github.kensuke1984.kibrary.external.TravelTimeProvider;
 import io.github.kensuke1984.kibrary.util.Station;
 import io.github.kensuke1984.kibrary.util.globalcmt.GlobalCMTID;
 import io.github.kensuke1984.kibrary.util.sac.SACData;
@@ -15,7 +15,7 @@ import io.github.kensuke1984.kibrary.util.sac.SACHeaderEnum;
 
 /**
  * @author Kensuke Konishi 
- * @version 0.0.2
+ * @version 0.0.3
  */
 class TraveltimeList {
 
@@ -25,8 +25,21 @@ class TraveltimeList {
 
 	private Path listPath;
 
+	private TravelTimeProvider travelTime;
+
 	TraveltimeList(Path listPath) {
+		this(listPath, TravelTimeProvider.of("taup"));
+	}
+
+	/**
+	 * @param listPath
+	 *            path of the list
+	 * @param travelTime
+	 *            source of travel times for {@link #add(SACData, Phase)}
+	 */
+	TraveltimeList(Path listPath, TravelTimeProvider travelTime) {
 		this.listPath = listPath;
+		this.travelTime = travelTime;
 		if (Files.exists(listPath))
 			read(listPath);
 	}
@@ -34,7 +47,7 @@ class TraveltimeList {
 	void add(SACData sacFile, Phase phase) {
 		double eventR = 6371 - sacFile.getValue(SACHeaderEnum.EVDP);
 		double epicentralDistance = sacFile.getValue(SACHeaderEnum.GCARC);
-		double time = TauPTimeReader.getTauPPhase(eventR, epicentralDistance, phase).iterator().next().getTravelTime();
+		double time = travelTime.getTravelTimes(eventR, epicentralDistance, phase)[0];
 		add(sacFile, time);
 	}
 
@@ -0,0 +1,51 @@
+package io.github.kensuke1984.kibrary.math;
+
+import java.util.Random;
+
+import org.apache.commons.math3.linear.RealMatrix;
+
+import io.github.kensuke1984.kibrary.util.Utilities;
+
+/**
+ * Benchmark of A<sup>T</sup>A by {@link ColumnMajorMatrix#computeAtA()}
+ * against the former entry by entry computation.
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.1
+ */
+public final class AtABenchmark {
+
+    private AtABenchmark() {
+    }
+
+    /**
+     * @param args [number of rows] [number of columns] [number of repetitions]
+     *             (default: 100000 500 3)
+     */
+    public static void main(String[] args) {
+        int rows = args.length < 1 ? 100000 : Integer.parseInt(args[0]);
+        int columns = args.length < 2 ? 500 : Integer.parseInt(args[1]);
+        int repeat = args.length < 3 ? 3 : Integer.parseInt(args[2]);
+        Random random = new Random(0);
+        Matrix a = new Matrix(rows, columns);
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < columns; j++)
+                a.setEntry(i, j, random.nextGaussian());
+        ColumnMajorMatrix columnA = new ColumnMajorMatrix(a);
+        RealMatrix expected = null;
+        RealMatrix actual = null;
+        for (int r = 0; r < repeat; r++) {
+            long t = System.nanoTime();
+            expected = MatrixComputation.computeAtAByEntry(a);
+            long byEntry = System.nanoTime() - t;
+            t = System.nanoTime();
+            actual = columnA.computeAtA();
+            long blocked = System.nanoTime() - t;
+            System.out.println(
+                    "#" + r + " by entry: " + Utilities.toTimeString(byEntry) + " blocked: " +
+                            Utilities.toTimeString(blocked));
+        }
+        System.out.println("norm of the difference = " + expected.subtract(actual).getNorm());
+    }
+
+}
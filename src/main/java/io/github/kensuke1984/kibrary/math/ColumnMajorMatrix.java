@@ -0,0 +1,242 @@
+package io.github.kensuke1984.kibrary.math;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.linear.AbstractRealMatrix;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+
+/**
+ * Dense matrix stored column by column in primitive arrays, for tall matrices
+ * such as A of Am=d.
+ * <p>
+ * Each column is one contiguous double[], so the products with columns
+ * (A<sup>T</sup>A, A<sup>T</sup>d) walk the memory sequentially. A<sup>T</sup>A
+ * is computed only for the upper triangle in tiles of 32 columns and blocks
+ * of 2048 rows so that a pair of tiles stays in the cache. The tiles are
+ * computed in parallel on the common {@link ForkJoinPool}.
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.1
+ */
+public class ColumnMajorMatrix extends AbstractRealMatrix {
+
+    /**
+     * the number of columns in a tile
+     */
+    private static final int COLUMN_TILE = 32;
+
+    /**
+     * the number of rows in a block
+     */
+    private static final int ROW_BLOCK = 2048;
+
+    private final int rowDimension;
+
+    /**
+     * columns[j][i] is the (i, j) entry.
+     */
+    private final double[][] columns;
+
+    /**
+     * @param rowDimension    the number of rows
+     * @param columnDimension the number of columns
+     */
+    public ColumnMajorMatrix(int rowDimension, int columnDimension) {
+        super(rowDimension, columnDimension);
+        this.rowDimension = rowDimension;
+        columns = new double[columnDimension][rowDimension];
+    }
+
+    /**
+     * @param matrix to be copied
+     */
+    public ColumnMajorMatrix(RealMatrix matrix) {
+        this(matrix.getRowDimension(), matrix.getColumnDimension());
+        if (matrix instanceof Array2DRowRealMatrix) {
+            double[][] data = ((Array2DRowRealMatrix) matrix).getDataRef();
+            IntStream.range(0, columns.length).parallel().forEach(j -> {
+                for (int i = 0; i < rowDimension; i++)
+                    columns[j][i] = data[i][j];
+            });
+        } else IntStream.range(0, columns.length).parallel().forEach(j -> columns[j] = matrix.getColumn(j));
+    }
+
+    @Override
+    public int getRowDimension() {
+        return rowDimension;
+    }
+
+    @Override
+    public int getColumnDimension() {
+        return columns.length;
+    }
+
+    @Override
+    public RealMatrix createMatrix(int rowDimension, int columnDimension) {
+        return new ColumnMajorMatrix(rowDimension, columnDimension);
+    }
+
+    @Override
+    public ColumnMajorMatrix copy() {
+        ColumnMajorMatrix copy = new ColumnMajorMatrix(rowDimension, columns.length);
+        for (int j = 0; j < columns.length; j++)
+            System.arraycopy(columns[j], 0, copy.columns[j], 0, rowDimension);
+        return copy;
+    }
+
+    @Override
+    public double getEntry(int row, int column) {
+        return columns[column][row];
+    }
+
+    @Override
+    public void setEntry(int row, int column, double value) {
+        columns[column][row] = value;
+    }
+
+    @Override
+    public void addToEntry(int row, int column, double increment) {
+        columns[column][row] += increment;
+    }
+
+    @Override
+    public void multiplyEntry(int row, int column, double factor) {
+        columns[column][row] *= factor;
+    }
+
+    @Override
+    public double[] getColumn(int column) {
+        return columns[column].clone();
+    }
+
+    @Override
+    public RealVector operate(RealVector v) throws DimensionMismatchException {
+        return new ArrayRealVector(operate(v.toArray()), false);
+    }
+
+    /**
+     * Computes Av in parallel over blocks of rows.
+     */
+    @Override
+    public double[] operate(double[] v) throws DimensionMismatchException {
+        if (v.length != columns.length) throw new DimensionMismatchException(v.length, columns.length);
+        double[] av = new double[rowDimension];
+        IntStream.range(0, (rowDimension + ROW_BLOCK - 1) / ROW_BLOCK).parallel().forEach(b -> {
+            int r0 = b * ROW_BLOCK;
+            int r1 = Math.min(r0 + ROW_BLOCK, rowDimension);
+            for (int j = 0; j < columns.length; j++) {
+                double[] column = columns[j];
+                double vj = v[j];
+                for (int i = r0; i < r1; i++)
+                    av[i] += column[i] * vj;
+            }
+        });
+        return av;
+    }
+
+    @Override
+    public RealVector preMultiply(RealVector v) throws DimensionMismatchException {
+        return new ArrayRealVector(preMultiply(v.toArray()), false);
+    }
+
+    /**
+     * Computes v<sup>T</sup>A (=A<sup>T</sup>v) in parallel over columns.
+     */
+    @Override
+    public double[] preMultiply(double[] v) throws DimensionMismatchException {
+        if (v.length != rowDimension) throw new DimensionMismatchException(v.length, rowDimension);
+        double[] atv = new double[columns.length];
+        IntStream.range(0, columns.length).parallel().forEach(j -> atv[j] = dot(columns[j], v, 0, rowDimension));
+        return atv;
+    }
+
+    private static double dot(double[] x, double[] y, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++)
+            sum += x[i] * y[i];
+        return sum;
+    }
+
+    /**
+     * @return A<sup>T</sup>A
+     */
+    public Matrix computeAtA() {
+        int n = columns.length;
+        double[][] ata = new double[n][n];
+        int nTile = (n + COLUMN_TILE - 1) / COLUMN_TILE;
+        List<RecursiveAction> tiles = new ArrayList<>();
+        for (int ti = 0; ti < nTile; ti++)
+            for (int tj = ti; tj < nTile; tj++) {
+                int i0 = ti * COLUMN_TILE;
+                int j0 = tj * COLUMN_TILE;
+                tiles.add(new RecursiveAction() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected void compute() {
+                        computeTile(i0, Math.min(i0 + COLUMN_TILE, n), j0, Math.min(j0 + COLUMN_TILE, n), ata);
+                    }
+                });
+            }
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tiles);
+            }
+        });
+        // the lower triangle
+        IntStream.range(1, n).parallel().forEach(i -> {
+            for (int j = 0; j < i; j++)
+                ata[i][j] = ata[j][i];
+        });
+        return new Matrix(ata, false);
+    }
+
+    /**
+     * Adds (A<sup>T</sup>A)<sub>ij</sub> for i0&le;i&lt;i1, max(i,
+     * j0)&le;j&lt;j1 into ata. Four columns of j are processed at once so that
+     * the column i is loaded once for them.
+     */
+    private void computeTile(int i0, int i1, int j0, int j1, double[][] ata) {
+        for (int r0 = 0; r0 < rowDimension; r0 += ROW_BLOCK) {
+            int r1 = Math.min(r0 + ROW_BLOCK, rowDimension);
+            for (int i = i0; i < i1; i++) {
+                double[] ci = columns[i];
+                double[] ataI = ata[i];
+                int j = Math.max(j0, i);
+                for (; j + 3 < j1; j += 4) {
+                    double[] c0 = columns[j];
+                    double[] c1 = columns[j + 1];
+                    double[] c2 = columns[j + 2];
+                    double[] c3 = columns[j + 3];
+                    double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+                    for (int k = r0; k < r1; k++) {
+                        double a = ci[k];
+                        s0 += a * c0[k];
+                        s1 += a * c1[k];
+                        s2 += a * c2[k];
+                        s3 += a * c3[k];
+                    }
+                    ataI[j] += s0;
+                    ataI[j + 1] += s1;
+                    ataI[j + 2] += s2;
+                    ataI[j + 3] += s3;
+                }
+                for (; j < j1; j++)
+                    ataI[j] += dot(ci, columns[j], r0, r1);
+            }
+        }
+    }
+
+}
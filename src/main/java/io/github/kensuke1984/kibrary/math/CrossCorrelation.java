@@ -0,0 +1,181 @@
+package io.github.kensuke1984.kibrary.math;
+
+/**
+ * Cross-correlation of a template with a longer signal for all the lags.
+ * <p>
+ * c<sub>k</sub> = &Sigma;<sub>j</sub> t<sub>j</sub> s<sub>j+k</sub> (k = 0,
+ * 1, ..., n-m) for a template t of length m and a signal s of length n are
+ * computed at once by {@link FastFourierTransform} as the inverse transform
+ * of conj(T)S. The energy of the signal in each window
+ * e<sub>k</sub> = &Sigma;<sub>j</sub> s<sub>j+k</sub><sup>2</sup> is a
+ * running sum, which is computed again from scratch every m lags to keep the
+ * rounding errors small. Short inputs are correlated directly.
+ * <p>
+ * The buffers for the transforms are kept for each thread and reused.
+ * <p>
+ * This class is <b>IMMUTABLE</b>
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.1
+ */
+public final class CrossCorrelation {
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    /**
+     * c<sub>k</sub>
+     */
+    private final double[] correlation;
+
+    /**
+     * e<sub>k</sub>
+     */
+    private final double[] energy;
+
+    /**
+     * &Sigma; t<sub>j</sub><sup>2</sup>
+     */
+    private final double templateEnergy;
+
+    private CrossCorrelation(double[] correlation, double[] energy, double templateEnergy) {
+        this.correlation = correlation;
+        this.energy = energy;
+        this.templateEnergy = templateEnergy;
+    }
+
+    /**
+     * @param template template (length m)
+     * @param signal   signal (length n &ge; m)
+     * @return cross-correlation of the template with the signal for the lags
+     * 0, 1, ..., n-m
+     */
+    public static CrossCorrelation of(double[] template, double[] signal) {
+        int m = template.length;
+        int n = signal.length;
+        if (m == 0 || n < m) throw new IllegalArgumentException("Template must not be empty or longer than signal.");
+        int lags = n - m + 1;
+        double templateEnergy = 0;
+        for (double t : template)
+            templateEnergy += t * t;
+        int size = Integer.highestOneBit(n) == n ? n : Integer.highestOneBit(n) << 1;
+        double[] correlation = (long) lags * m <= 8L * size * (Integer.numberOfTrailingZeros(size) + 1) ?
+                correlateDirectly(template, signal, lags) : BUFFERS.get().correlate(template, signal, lags, size);
+        return new CrossCorrelation(correlation, energyOf(signal, m, lags), templateEnergy);
+    }
+
+    private static double[] correlateDirectly(double[] template, double[] signal, int lags) {
+        double[] correlation = new double[lags];
+        for (int k = 0; k < lags; k++) {
+            double c = 0;
+            for (int j = 0; j < template.length; j++)
+                c += template[j] * signal[j + k];
+            correlation[k] = c;
+        }
+        return correlation;
+    }
+
+    private static double[] energyOf(double[] signal, int m, int lags) {
+        double[] energy = new double[lags];
+        double e = 0;
+        for (int k = 0; k < lags; k++) {
+            if (k % m == 0) {
+                e = 0;
+                for (int j = k; j < k + m; j++)
+                    e += signal[j] * signal[j];
+            } else e += signal[k + m - 1] * signal[k + m - 1] - signal[k - 1] * signal[k - 1];
+            energy[k] = Math.max(e, 0);
+        }
+        return energy;
+    }
+
+    /**
+     * @return the number of the lags (n-m+1)
+     */
+    public int getNumberOfLags() {
+        return correlation.length;
+    }
+
+    /**
+     * @param lag k
+     * @return c<sub>k</sub>
+     */
+    public double getCorrelation(int lag) {
+        return correlation[lag];
+    }
+
+    /**
+     * @param lag k
+     * @return e<sub>k</sub>, the energy of the signal in the window for the lag
+     */
+    public double getEnergy(int lag) {
+        return energy[lag];
+    }
+
+    /**
+     * @return &Sigma; t<sub>j</sub><sup>2</sup>
+     */
+    public double getTemplateEnergy() {
+        return templateEnergy;
+    }
+
+    /**
+     * @param lag k
+     * @return c<sub>k</sub> / &radic;(e<sub>k</sub> &Sigma;t<sub>j</sub><sup>2</sup>)
+     */
+    public double getNormalizedCorrelation(int lag) {
+        return correlation[lag] / Math.sqrt(energy[lag] * templateEnergy);
+    }
+
+    /**
+     * @return the first lag with the maximum normalized correlation, if it is
+     * positive, otherwise 0
+     */
+    public int getBestLag() {
+        int best = 0;
+        double bestCorrelation = 0;
+        for (int k = 0; k < correlation.length; k++) {
+            double c = getNormalizedCorrelation(k);
+            if (bestCorrelation < c) {
+                best = k;
+                bestCorrelation = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * spectra and the result of the inverse transform
+     */
+    private static final class Buffers {
+        private double[] templateRe = new double[0];
+        private double[] templateIm = new double[0];
+        private double[] signalRe = new double[0];
+        private double[] signalIm = new double[0];
+        private double[] result = new double[0];
+
+        private double[] correlate(double[] template, double[] signal, int lags, int size) {
+            if (result.length != size) {
+                templateRe = new double[size / 2 + 1];
+                templateIm = new double[size / 2 + 1];
+                signalRe = new double[size / 2 + 1];
+                signalIm = new double[size / 2 + 1];
+                result = new double[size];
+            }
+            FastFourierTransform fft = FastFourierTransform.of(size);
+            fft.realTransform(template, templateRe, templateIm);
+            fft.realTransform(signal, signalRe, signalIm);
+            // conj(T)S
+            for (int i = 0; i < signalRe.length; i++) {
+                double re = templateRe[i] * signalRe[i] + templateIm[i] * signalIm[i];
+                double im = templateRe[i] * signalIm[i] - templateIm[i] * signalRe[i];
+                signalRe[i] = re;
+                signalIm[i] = im;
+            }
+            fft.inverseRealTransform(signalRe, signalIm, signalRe.length, result);
+            double[] correlation = new double[lags];
+            System.arraycopy(result, 0, correlation, 0, lags);
+            return correlation;
+        }
+    }
+
+}
@@ -0,0 +1,268 @@
+package io.github.kensuke1984.kibrary.math;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.math3.complex.Complex;
+
+/**
+ * Radix-2 fast Fourier transform on primitive arrays (real parts and
+ * imaginary parts in separate double[]).
+ * <p>
+ * The normalization is the same as
+ * {@link org.apache.commons.math3.transform.DftNormalization#STANDARD}:
+ * F<sub>k</sub> = &Sigma; f<sub>j</sub> exp(-2&pi;ijk/n) and the inverse has
+ * the factor 1/n.
+ * <p>
+ * A plan (tables of twiddle factors and scratch buffers) is made for each
+ * length and each thread, and reused by {@link #of(int)}. A plan must not be
+ * shared by threads.
+ * <p>
+ * The transforms between real data and Hermitian spectra use a complex
+ * transform of the half length.
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.1
+ */
+public final class FastFourierTransform {
+
+    private static final ThreadLocal<Map<Integer, FastFourierTransform>> PLANS =
+            ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * @param n the number of data points, must be a power of 2
+     * @return plan for n in this thread
+     */
+    public static FastFourierTransform of(int n) {
+        if (n < 1 || Integer.bitCount(n) != 1) throw new IllegalArgumentException(n + " is not a power of 2");
+        return PLANS.get().computeIfAbsent(n, FastFourierTransform::new);
+    }
+
+    private final int n;
+
+    /**
+     * cos(2&pi;k/n), sin(2&pi;k/n) for k=0, 1, ..., n/2
+     */
+    private final double[] cos;
+    private final double[] sin;
+
+    /**
+     * plan and buffers of n/2 for the real transforms, made when needed
+     */
+    private FastFourierTransform half;
+    private double[] halfRe;
+    private double[] halfIm;
+
+    private FastFourierTransform(int n) {
+        this.n = n;
+        cos = new double[n / 2 + 1];
+        sin = new double[n / 2 + 1];
+        for (int k = 0; k < cos.length; k++) {
+            double theta = 2 * Math.PI * k / n;
+            cos[k] = Math.cos(theta);
+            sin[k] = Math.sin(theta);
+        }
+    }
+
+    /**
+     * @return the number of data points
+     */
+    public int getN() {
+        return n;
+    }
+
+    /**
+     * Forward transform in place.
+     *
+     * @param re real parts (length n)
+     * @param im imaginary parts (length n)
+     */
+    public void transform(double[] re, double[] im) {
+        compute(re, im, -1);
+    }
+
+    /**
+     * Inverse transform in place (with the factor 1/n).
+     *
+     * @param re real parts (length n)
+     * @param im imaginary parts (length n)
+     */
+    public void inverseTransform(double[] re, double[] im) {
+        compute(re, im, 1);
+        double factor = 1.0 / n;
+        for (int i = 0; i < n; i++) {
+            re[i] *= factor;
+            im[i] *= factor;
+        }
+    }
+
+    /**
+     * Forward transform of real data. As the spectrum is Hermitian, only
+     * F<sub>0</sub>, ..., F<sub>n/2</sub> are computed.
+     *
+     * @param x  real data. If it is shorter than n, zeros are padded.
+     * @param re real parts of the spectrum (length n/2+1 or longer)
+     * @param im imaginary parts of the spectrum (length n/2+1 or longer)
+     */
+    public void realTransform(double[] x, double[] re, double[] im) {
+        if (n == 1) {
+            re[0] = x.length == 0 ? 0 : x[0];
+            im[0] = 0;
+            return;
+        }
+        int m = n / 2;
+        prepareHalf();
+        for (int j = 0; j < m; j++) {
+            halfRe[j] = 2 * j < x.length ? x[2 * j] : 0;
+            halfIm[j] = 2 * j + 1 < x.length ? x[2 * j + 1] : 0;
+        }
+        half.compute(halfRe, halfIm, -1);
+        for (int j = 0; j <= m; j++) {
+            // Z[j] and conj(Z[m-j]) (Z[m] = Z[0])
+            int j0 = j == m ? 0 : j;
+            int j1 = j == 0 ? 0 : m - j;
+            double ar = halfRe[j0];
+            double ai = halfIm[j0];
+            double br = halfRe[j1];
+            double bi = -halfIm[j1];
+            // even part E and odd part O
+            double er = 0.5 * (ar + br);
+            double ei = 0.5 * (ai + bi);
+            double or = 0.5 * (ai - bi);
+            double oi = -0.5 * (ar - br);
+            // F[j] = E + exp(-2 pi i j/n) O
+            re[j] = er + or * cos[j] + oi * sin[j];
+            im[j] = ei + oi * cos[j] - or * sin[j];
+        }
+    }
+
+    /**
+     * Inverse transform of a Hermitian spectrum to real data. F<sub>k</sub>
+     * (k&ge;length) are 0 and F<sub>n-k</sub> is the conjugate of
+     * F<sub>k</sub>. The imaginary parts of F<sub>0</sub> and F<sub>n/2</sub>
+     * are ignored, i.e. the real part of the complex transform is computed.
+     *
+     * @param re     real parts of F<sub>0</sub>, F<sub>1</sub>, ...
+     * @param im     imaginary parts of F<sub>0</sub>, F<sub>1</sub>, ...
+     * @param length the number of the spectrum to use (&le; n/2+1)
+     * @param x      real data (length n)
+     */
+    public void inverseRealTransform(double[] re, double[] im, int length, double[] x) {
+        if (n / 2 + 1 < length) throw new IllegalArgumentException("Input spectrum is too long " + length);
+        if (n == 1) {
+            x[0] = 0 < length ? re[0] : 0;
+            return;
+        }
+        int m = n / 2;
+        prepareHalf();
+        for (int j = 0; j < m; j++) {
+            // F[j] and F[j+m] = conj(F[m-j])
+            int k = m - j;
+            double ar = j < length ? re[j] : 0;
+            double ai = j == 0 || length <= j ? 0 : im[j];
+            double br = k < length ? re[k] : 0;
+            double bi = k == m || length <= k ? 0 : -im[k];
+            pack(j, ar, ai, br, bi);
+        }
+        inverseHalf(x);
+    }
+
+    /**
+     * {@link #inverseRealTransform(double[], double[], int, double[])} for
+     * a spectrum in {@link Complex}.
+     *
+     * @param spectrum F<sub>0</sub>, F<sub>1</sub>, ...
+     * @param length   the number of the spectrum to use (&le; n/2+1)
+     * @param x        real data (length n)
+     */
+    public void inverseRealTransform(Complex[] spectrum, int length, double[] x) {
+        if (n / 2 + 1 < length) throw new IllegalArgumentException("Input spectrum is too long " + length);
+        if (n == 1) {
+            x[0] = 0 < length ? spectrum[0].getReal() : 0;
+            return;
+        }
+        int m = n / 2;
+        prepareHalf();
+        for (int j = 0; j < m; j++) {
+            int k = m - j;
+            double ar = j < length ? spectrum[j].getReal() : 0;
+            double ai = j == 0 || length <= j ? 0 : spectrum[j].getImaginary();
+            double br = k < length ? spectrum[k].getReal() : 0;
+            double bi = k == m || length <= k ? 0 : -spectrum[k].getImaginary();
+            pack(j, ar, ai, br, bi);
+        }
+        inverseHalf(x);
+    }
+
+    /**
+     * Puts Z[j] = E[j] + i O[j] of F[j]=a, F[j+n/2]=b into the half buffers.
+     */
+    private void pack(int j, double ar, double ai, double br, double bi) {
+        double er = 0.5 * (ar + br);
+        double ei = 0.5 * (ai + bi);
+        double dr = 0.5 * (ar - br);
+        double di = 0.5 * (ai - bi);
+        // O = (a-b)/2 exp(2 pi i j/n)
+        double or = dr * cos[j] - di * sin[j];
+        double oi = dr * sin[j] + di * cos[j];
+        halfRe[j] = er - oi;
+        halfIm[j] = ei + or;
+    }
+
+    private void inverseHalf(double[] x) {
+        int m = n / 2;
+        half.compute(halfRe, halfIm, 1);
+        double factor = 1.0 / m;
+        for (int j = 0; j < m; j++) {
+            x[2 * j] = halfRe[j] * factor;
+            x[2 * j + 1] = halfIm[j] * factor;
+        }
+    }
+
+    private void prepareHalf() {
+        if (half != null) return;
+        half = of(n / 2);
+        halfRe = new double[n / 2];
+        halfIm = new double[n / 2];
+    }
+
+    /**
+     * Iterative decimation-in-time butterflies.
+     *
+     * @param sign -1 for forward, 1 for inverse (without the factor)
+     */
+    private void compute(double[] re, double[] im, int sign) {
+        // bit reversal
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1)
+                j ^= bit;
+            j ^= bit;
+            if (i < j) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        for (int length = 2; length <= n; length <<= 1) {
+            int halfLength = length >> 1;
+            int step = n / length;
+            for (int start = 0; start < n; start += length)
+                for (int k = 0, i = start; k < halfLength; k++, i++) {
+                    double wr = cos[k * step];
+                    double wi = sign * sin[k * step];
+                    int j = i + halfLength;
+                    double xr = re[j] * wr - im[j] * wi;
+                    double xi = re[j] * wi + im[j] * wr;
+                    re[j] = re[i] - xr;
+                    im[j] = im[i] - xi;
+                    re[i] += xr;
+                    im[i] += xi;
+                }
+        }
+    }
+
+}
@@ -14,14 +14,36 @@ import io.github.kensuke1984.kibrary.util.Utilities;
  * Computations of matrix and vector
  * 
  * 
- * @version 0.0.2.1
+ * @version 0.0.3
  * @author Kensuke Konishi
  */
 class MatrixComputation {
 
+	/**
+	 * A<sup>T</sup>A by the blocked kernel in {@link ColumnMajorMatrix}. If
+	 * the input is not a {@link ColumnMajorMatrix}, it is copied into one.
+	 * 
+	 * @param a
+	 *            A
+	 * @return A<sup>T</sup>A
+	 */
 	public static Matrix computeAtA(RealMatrix a) {
 		long start = System.nanoTime();
 		System.err.print("Computing matrix multiplication AtA");
+		Matrix ata = (a instanceof ColumnMajorMatrix ? (ColumnMajorMatrix) a : new ColumnMajorMatrix(a)).computeAtA();
+		System.err.println(",  it took " + Utilities.toTimeString(System.nanoTime() - start));
+		return ata;
+	}
+
+	/**
+	 * A<sup>T</sup>A entry by entry. This is the former implementation kept
+	 * for comparison in {@link AtABenchmark}.
+	 * 
+	 * @param a
+	 *            A
+	 * @return A<sup>T</sup>A
+	 */
+	static Matrix computeAtAByEntry(RealMatrix a) {
 		int n = a.getColumnDimension();
 		Matrix ata = new Matrix(n, n);
 
@@ -32,7 +54,6 @@ class MatrixComputation {
 				ata.setEntry(j, i, value);
 			});
 		});
-		System.err.println(",  it took " + Utilities.toTimeString(System.nanoTime()-start));
 		return ata;
 	}
 
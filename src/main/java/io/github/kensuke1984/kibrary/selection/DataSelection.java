@@ -13,7 +13,6 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.function.BiPredicate;
 import java.util.stream.Collectors;
 
 import org.apache.commons.io.FileUtils;
@@ -26,6 +25,7 @@ import io.github.kensuke1984.kibrary.Property;
 import io.github.kensuke1984.kibrary.datacorrection.StaticCorrection;
 import io.github.kensuke1984.kibrary.datacorrection.StaticCorrectionFile;
 import io.github.kensuke1984.kibrary.timewindow.Timewindow;
+import io.github.kensuke1984.kibrary.timewindow.TimewindowIndex;
 import io.github.kensuke1984.kibrary.timewindow.TimewindowInformation;
 import io.github.kensuke1984.kibrary.timewindow.TimewindowInformationFile;
 import io.github.kensuke1984.kibrary.util.EventFolder;
@@ -47,7 +47,7 @@ import io.github.kensuke1984.kibrary.util.sac.SACHeaderEnum;
  * {@link TimewindowInformationFile} necessary.
  *
  * @author Kensuke Konishi
- * @version 0.1.1.2
+ * @version 0.1.1.3
  */
 public class DataSelection implements Operation {
     public static void writeDefaultPropertiesFile() throws IOException {
@@ -160,22 +160,23 @@ public class DataSelection implements Operation {
         // sacSamplingHz
         // =Double.parseDouble(reader.getFirstValue("sacSamplingHz")); TODO
         // sacSamplingHz = 20;
-        staticCorrectionSet = staticCorrectionInformationFilePath == null ? Collections.emptySet() :
-                StaticCorrectionFile.read(staticCorrectionInformationFilePath);
+        staticCorrectionIndex = TimewindowIndex.ofStaticCorrections(
+                staticCorrectionInformationFilePath == null ? Collections.emptySet() :
+                        StaticCorrectionFile.read(staticCorrectionInformationFilePath));
         // eventDirs = WorkingDirectory.listEventDirs(workDir);
         eventDirs = Utilities.eventFolderSet(obsPath);
-        sourceTimewindowInformationSet = TimewindowInformationFile.read(timewindowInformationFilePath);
+        sourceTimewindowIndex = TimewindowIndex.of(TimewindowInformationFile.read(timewindowInformationFilePath));
         dateStr = Utilities.getTemporaryString();
         outputGoodWindowPath = workPath.resolve("selectedTimewindow" + dateStr + ".dat");
         goodTimewindowInformationSet = Collections.synchronizedSet(new HashSet<>());
     }
 
-    private Set<TimewindowInformation> sourceTimewindowInformationSet;
+    private TimewindowIndex<TimewindowInformation> sourceTimewindowIndex;
     private Set<TimewindowInformation> goodTimewindowInformationSet;
 
     private Path outputGoodWindowPath;
 
-    private Set<StaticCorrection> staticCorrectionSet;
+    private TimewindowIndex<StaticCorrection> staticCorrectionIndex;
 
     /**
      * @param args [parameter file name]
@@ -252,9 +253,7 @@ public class DataSelection implements Operation {
                     if (synSac.getValue(SACHeaderEnum.DELTA) != obsSac.getValue(SACHeaderEnum.DELTA)) continue;
 
                     // Pickup a time window of obsName
-                    Set<TimewindowInformation> windowInformations = sourceTimewindowInformationSet.stream()
-                            .filter(info -> info.getStation().equals(station) && info.getGlobalCMTID().equals(id) &&
-                                    info.getComponent() == component).collect(Collectors.toSet());
+                    Set<TimewindowInformation> windowInformations = sourceTimewindowIndex.get(station, id, component);
 
                     if (windowInformations.isEmpty()) continue;
 
@@ -277,15 +276,12 @@ public class DataSelection implements Operation {
     }
 
     /**
-     * ID for static correction and time window information Default is station
-     * name, global CMT id, component.
+     * Static correction and time window information are paired by station,
+     * global CMT id and component.
      */
-    private BiPredicate<StaticCorrection, TimewindowInformation> isPair =
-            (s, t) -> s.getStation().equals(t.getStation()) && s.getGlobalCMTID().equals(t.getGlobalCMTID()) &&
-                    s.getComponent() == t.getComponent();
-
     private StaticCorrection getStaticCorrection(TimewindowInformation window) {
-        return staticCorrectionSet.stream().filter(s -> isPair.test(s, window)).findAny().get();
+        return staticCorrectionIndex.get(window.getStation(), window.getGlobalCMTID(), window.getComponent()).stream()
+                .findAny().get();
     }
 
     /**
@@ -295,7 +291,7 @@ public class DataSelection implements Operation {
      * the input one.
      */
     private TimewindowInformation shift(TimewindowInformation timewindow) {
-        if (staticCorrectionSet.isEmpty()) return timewindow;
+        if (staticCorrectionIndex.isEmpty()) return timewindow;
         StaticCorrection foundShift = getStaticCorrection(timewindow);
         double value = foundShift.getTimeshift();
         return new TimewindowInformation(timewindow.getStartTime() - value, timewindow.getEndTime() - value,
@@ -6,8 +6,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -19,10 +19,10 @@ import io.github.kensuke1984.kibrary.Property;
 import io.github.kensuke1984.kibrary.firsthandler.FirstHandler;
 import io.github.kensuke1984.kibrary.util.EventFolder;
 import io.github.kensuke1984.kibrary.util.Utilities;
-import io.github.kensuke1984.kibrary.util.sac.SACData;
 import io.github.kensuke1984.kibrary.util.sac.SACFileName;
 import io.github.kensuke1984.kibrary.util.sac.SACHeaderData;
 import io.github.kensuke1984.kibrary.util.sac.SACHeaderEnum;
+import io.github.kensuke1984.kibrary.util.sac.SACHeaderIndex;
 
 /**
  * Filtering for dataset extracted from seed files by {@link FirstHandler}. It
@@ -30,7 +30,7 @@ import io.github.kensuke1984.kibrary.util.sac.SACHeaderEnum;
  * for synthetic ones.
  *
  * @author Kensuke Konishi
- * @version 1.2.0.2
+ * @version 1.2.0.4
  */
 public class SecondHandler implements Consumer<EventFolder>, Operation {
     public static void writeDefaultPropertiesFile() throws IOException {
@@ -91,9 +91,9 @@ public class SecondHandler implements Consumer<EventFolder>, Operation {
         predicate = createPredicate();
     }
 
-    private Predicate<SACData> predicate;
+    private Predicate<SACHeaderData> predicate;
 
-    private Predicate<SACData> createPredicate() {
+    private Predicate<SACHeaderData> createPredicate() {
 
         double delta = property.containsKey("delta") ? Double.parseDouble(property.getProperty("delta")) : Double.NaN;
         int npts = property.containsKey("npts") ? Integer.parseInt(property.getProperty("npts")) : Integer.MIN_VALUE;
@@ -165,26 +165,26 @@ public class SecondHandler implements Consumer<EventFolder>, Operation {
         Path trashDir = eventDir.toPath().resolve(trashName);
         System.out.println(eventDir);
         // + " making trash box (" + trashFile + ")");
-        // 観測波形ファイルを拾う
-        Set<SACFileName> sacnames;
+        // 観測波形ファイルを拾う (headers from the index)
+        Map<SACFileName, SACHeaderData> sacHeaderMap;
         try {
-            sacnames = eventDir.sacFileSet();
+            sacHeaderMap = eventDir.sacHeaderMap();
         } catch (IOException e1) {
             e1.printStackTrace();
             return;
         }
 
         try {
-            for (SACFileName sacName : sacnames) {
+            for (Map.Entry<SACFileName, SACHeaderData> sacEntry : sacHeaderMap.entrySet()) {
+                SACFileName sacName = sacEntry.getKey();
                 // if the sacName is OK
                 boolean isOK = true;
                 if (!sacName.isOBS()) continue;
 
                 if (!sacName.getGlobalCMTID().equals(eventDir.getGlobalCMTID())) isOK = false;
 
-                // SacFileの読み込み
-                SACData obsSac = sacName.read();
-                isOK = predicate.test(obsSac);
+                // SacFileのヘッダ
+                isOK = predicate.test(sacEntry.getValue());
 
                 if (!isOK) try {
                     FileUtils.moveFileToDirectory(sacName, trashDir.toFile(), true);
@@ -235,6 +235,7 @@ public class SecondHandler implements Consumer<EventFolder>, Operation {
     @Override
     public void run() throws Exception {
         Utilities.runEventProcess(workPath, this, 2, TimeUnit.HOURS);
+        SACHeaderIndex.get(workPath).flush();
     }
 
 }
@@ -0,0 +1,166 @@
+package io.github.kensuke1984.kibrary.timewindow;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import io.github.kensuke1984.kibrary.datacorrection.StaticCorrection;
+import io.github.kensuke1984.kibrary.util.Station;
+import io.github.kensuke1984.kibrary.util.globalcmt.GlobalCMTID;
+import io.github.kensuke1984.kibrary.util.sac.SACComponent;
+
+/**
+ * Index of time windows (or static corrections) by a station, a global CMT
+ * ID and a component.
+ * <p>
+ * The elements are put in buckets by the station name, the ID and the
+ * component, so a lookup costs as much as the size of the bucket instead of
+ * all the elements. Lookups by a {@link Station} look into the bucket for its
+ * name and keep the elements whose station equals to it.
+ * <p>
+ * This class is <b>IMMUTABLE</b>
+ * </p>
+ *
+ * @version 0.0.1
+ * @author Kensuke Konishi
+ * @param <T>
+ *            type of the elements
+ */
+public final class TimewindowIndex<T> {
+
+	/**
+	 * @param timewindows
+	 *            to index
+	 * @return index of the timewindows
+	 */
+	public static TimewindowIndex<TimewindowInformation> of(Collection<TimewindowInformation> timewindows) {
+		return new TimewindowIndex<>(timewindows, TimewindowInformation::getStation,
+				TimewindowInformation::getGlobalCMTID, TimewindowInformation::getComponent);
+	}
+
+	/**
+	 * @param staticCorrections
+	 *            to index
+	 * @return index of the static corrections
+	 */
+	public static TimewindowIndex<StaticCorrection> ofStaticCorrections(
+			Collection<StaticCorrection> staticCorrections) {
+		return new TimewindowIndex<>(staticCorrections, StaticCorrection::getStation,
+				StaticCorrection::getGlobalCMTID, StaticCorrection::getComponent);
+	}
+
+	private final Function<T, Station> stationOf;
+
+	/**
+	 * the elements for (station name, ID, component)
+	 */
+	private final Map<Key, Set<T>> buckets;
+
+	/**
+	 * the elements for (station name, ID) of all the components
+	 */
+	private final Map<Key, Set<T>> eventBuckets;
+
+	private TimewindowIndex(Collection<T> elements, Function<T, Station> stationOf,
+			Function<T, GlobalCMTID> idOf, Function<T, SACComponent> componentOf) {
+		this.stationOf = stationOf;
+		Map<Key, Set<T>> buckets = new HashMap<>();
+		Map<Key, Set<T>> eventBuckets = new HashMap<>();
+		for (T t : elements) {
+			String stationName = stationOf.apply(t).getStationName();
+			GlobalCMTID id = idOf.apply(t);
+			buckets.computeIfAbsent(new Key(stationName, id, componentOf.apply(t)), k -> new HashSet<>()).add(t);
+			eventBuckets.computeIfAbsent(new Key(stationName, id, null), k -> new HashSet<>()).add(t);
+		}
+		buckets.replaceAll((key, set) -> Collections.unmodifiableSet(set));
+		eventBuckets.replaceAll((key, set) -> Collections.unmodifiableSet(set));
+		this.buckets = buckets;
+		this.eventBuckets = eventBuckets;
+	}
+
+	/**
+	 * @param stationName
+	 *            name of a station
+	 * @param id
+	 *            global CMT ID
+	 * @param component
+	 *            of the elements
+	 * @return (<b>unmodifiable</b>) Set of the elements for the station name,
+	 *         the id and the component
+	 */
+	public Set<T> get(String stationName, GlobalCMTID id, SACComponent component) {
+		return buckets.getOrDefault(new Key(stationName, id, component), Collections.emptySet());
+	}
+
+	/**
+	 * @param stationName
+	 *            name of a station
+	 * @param id
+	 *            global CMT ID
+	 * @return (<b>unmodifiable</b>) Set of the elements for the station name
+	 *         and the id of all the components
+	 */
+	public Set<T> get(String stationName, GlobalCMTID id) {
+		return eventBuckets.getOrDefault(new Key(stationName, id, null), Collections.emptySet());
+	}
+
+	/**
+	 * @param station
+	 *            to look for
+	 * @param id
+	 *            global CMT ID
+	 * @param component
+	 *            of the elements
+	 * @return (<b>unmodifiable</b>) Set of the elements whose station equals
+	 *         to the station, for the id and the component
+	 */
+	public Set<T> get(Station station, GlobalCMTID id, SACComponent component) {
+		Set<T> bucket = get(station.getStationName(), id, component);
+		if (bucket.stream().allMatch(t -> stationOf.apply(t).equals(station)))
+			return bucket;
+		return Collections.unmodifiableSet(
+				bucket.stream().filter(t -> stationOf.apply(t).equals(station)).collect(Collectors.toSet()));
+	}
+
+	/**
+	 * @return if this has no elements
+	 */
+	public boolean isEmpty() {
+		return buckets.isEmpty();
+	}
+
+	private static final class Key {
+		private final String stationName;
+		private final GlobalCMTID id;
+		private final SACComponent component;
+
+		private Key(String stationName, GlobalCMTID id, SACComponent component) {
+			this.stationName = stationName;
+			this.id = id;
+			this.component = component;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(stationName, id, component);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return component == other.component && Objects.equals(stationName, other.stationName)
+					&& Objects.equals(id, other.id);
+		}
+	}
+
+}
@@ -18,29 +18,29 @@ import java.util.stream.Collectors;
 
 import io.github.kensuke1984.anisotime.Phase;
 import io.github.kensuke1984.kibrary.Operation;
-import io.github.kensuke1984.kibrary.external.TauPPhase;
-import io.github.kensuke1984.kibrary.external.TauPTimeReader;
+import io.github.kensuke1984.kibrary.external.TravelTimeProvider;
 import io.github.kensuke1984.kibrary.util.Station;
 import io.github.kensuke1984.kibrary.util.Utilities;
 import io.github.kensuke1984.kibrary.util.globalcmt.GlobalCMTID;
 import io.github.kensuke1984.kibrary.util.sac.SACComponent;
-import io.github.kensuke1984.kibrary.util.sac.SACData;
+import io.github.kensuke1984.kibrary.util.sac.SACHeaderData;
 import io.github.kensuke1984.kibrary.util.sac.SACFileName;
 import io.github.kensuke1984.kibrary.util.sac.SACHeaderEnum;
+import io.github.kensuke1984.kibrary.util.sac.SACHeaderIndex;
 
 /**
  * workingDirectory/イベントフォルダ内の波形に対して タイムウインドウをつけていく
  * 
  * Create an information file about timewindows. It looks for observed waveforms
  * in event folders under the working directory. For all the waveforms,
- * timewindows are computed by TauP.
+ * timewindows are computed by TauP or ANISOtime (see {@link TravelTimeProvider}).
  * 
  * 
  * It creates a window for each given phase and exphase with front and rear
  * parts. Overlapped part between those are abandoned. Start and end time of the
  * window is set to integer multiple of DELTA in SAC files.
  * 
- * @version 0.2.2.2
+ * @version 0.2.3.2
  * 
  * @author Kensuke Konishi
  * 
@@ -70,6 +70,8 @@ public class TimewindowMaker implements Operation {
 			pw.println("#frontShift");
 			pw.println("##double time after last phase. If it is 60, then 60 s after arrival (0)");
 			pw.println("#rearShift");
+			pw.println("##Source of travel times, taup (taup_time in PATH) or prem, iprem, ak135 (ANISOtime) (taup)");
+			pw.println("#travelTime");
 		}
 		System.err.println(outPath + " is created.");
 	}
@@ -87,6 +89,8 @@ public class TimewindowMaker implements Operation {
 			property.setProperty("exPhases", "sS");
 		if (!property.containsKey("usePhases"))
 			property.setProperty("usePhases", "S");
+		if (!property.containsKey("travelTime"))
+			property.setProperty("travelTime", "taup");
 	}
 
 	private Path workPath;
@@ -108,6 +112,7 @@ public class TimewindowMaker implements Operation {
 
 		frontShift = Double.parseDouble(property.getProperty("frontShift"));
 		rearShift = Double.parseDouble(property.getProperty("rearShift"));
+		travelTime = TravelTimeProvider.of(property.getProperty("travelTime"));
 
 	}
 
@@ -144,6 +149,11 @@ public class TimewindowMaker implements Operation {
 	 */
 	private Set<Phase> usePhases;
 
+	/**
+	 * source of travel times
+	 */
+	private TravelTimeProvider travelTime;
+
 	private Path outputPath;
 	private Set<TimewindowInformation> timewindowSet;
 
@@ -182,10 +192,12 @@ public class TimewindowMaker implements Operation {
 	public void run() throws Exception {
 		Utilities.runEventProcess(workPath, eventDir -> {
 			try {
-				eventDir.sacFileSet().stream().filter(sfn -> sfn.isSYN() && components.contains(sfn.getComponent()))
-						.forEach(sfn -> {
+				// headers from the index, waveforms are not read
+				eventDir.sacHeaderMap().forEach((sfn, header) -> {
+					if (!sfn.isSYN() || !components.contains(sfn.getComponent()))
+						return;
 					try {
-						makeTimeWindow(sfn);
+						makeTimeWindow(sfn, header);
 					} catch (Exception e) {
 						e.printStackTrace();
 					}
@@ -194,6 +206,7 @@ public class TimewindowMaker implements Operation {
 				e.printStackTrace();
 			}
 		} , 10, TimeUnit.HOURS);
+		SACHeaderIndex.get(workPath).flush();
 
 		if (timewindowSet.isEmpty())
 			System.err.println("No timewindow is created");
@@ -201,23 +214,22 @@ public class TimewindowMaker implements Operation {
 			TimewindowInformationFile.write(timewindowSet, outputPath);
 	}
 
-	private void makeTimeWindow(SACFileName sacFileName) throws IOException {
-		SACData sacFile = sacFileName.read();
+	private void makeTimeWindow(SACFileName sacFileName, SACHeaderData sacFile) throws IOException {
 		// 震源深さ radius
 		double eventR = 6371 - sacFile.getValue(SACHeaderEnum.EVDP);
 		// 震源観測点ペアの震央距離
 		double epicentralDistance = sacFile.getValue(SACHeaderEnum.GCARC);
 
-		Set<TauPPhase> usePhases = TauPTimeReader.getTauPPhase(eventR, epicentralDistance, this.usePhases);
-		Set<TauPPhase> exPhases = this.exPhases == null ? Collections.emptySet()
-				: TauPTimeReader.getTauPPhase(eventR, epicentralDistance, this.exPhases);
+		double[] phaseTime = travelTime.getTravelTimes(eventR, epicentralDistance, usePhases);
+		double[] exPhaseTime = exPhases == null || exPhases.isEmpty() ? null
+				: travelTime.getTravelTimes(eventR, epicentralDistance, exPhases);
 
-		if (usePhases.isEmpty()) {
+		if (phaseTime.length == 0) {
 			writeInvalid(sacFileName);
 			return;
 		}
-		double[] phaseTime = toTravelTime(usePhases);
-		double[] exPhaseTime = exPhases.isEmpty() ? null : toTravelTime(exPhases);
+		if (exPhaseTime != null && exPhaseTime.length == 0)
+			exPhaseTime = null;
 		Timewindow[] windows = createTimeWindows(phaseTime, exPhaseTime);
 		// System.exit(0);
 		if (windows == null) {
@@ -352,15 +364,6 @@ public class TimewindowMaker implements Operation {
 		return windowList.toArray(new Timewindow[0]);
 	}
 
-	/**
-	 * @param phases
-	 *            Set of TauPPhases
-	 * @return travel times in {@link TauPPhase}
-	 */
-	private static double[] toTravelTime(Set<TauPPhase> phases) {
-		return phases.stream().mapToDouble(TauPPhase::getTravelTime).toArray();
-	}
-
 	private synchronized void writeInvalid(SACFileName sacFileName) throws IOException {
 		try (PrintWriter pw = new PrintWriter(
 				Files.newBufferedWriter(invalidList, StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
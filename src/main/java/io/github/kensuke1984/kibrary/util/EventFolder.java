@@ -6,6 +6,7 @@ import java.nio.file.CopyOption;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -13,12 +14,14 @@ import java.util.stream.Stream;
 
 import io.github.kensuke1984.kibrary.util.globalcmt.GlobalCMTID;
 import io.github.kensuke1984.kibrary.util.sac.SACFileName;
+import io.github.kensuke1984.kibrary.util.sac.SACHeaderData;
+import io.github.kensuke1984.kibrary.util.sac.SACHeaderIndex;
 
 /**
  * Utility for an event folder
  *
  * @author Kensuke Konishi
- * @version 0.0.8.4
+ * @version 0.0.8.7
  */
 
 public class EventFolder extends File {
@@ -99,4 +102,18 @@ public class EventFolder extends File {
         }
     }
 
+    /**
+     * The headers are from {@link SACHeaderIndex} in the parent folder. This
+     * folder is refreshed in the index every time, so only SAC files added or
+     * changed since the last time are read. The index file is written by
+     * {@link SACHeaderIndex#flush()}.
+     *
+     * @return (<b>unmodifiable</b>) Map of all SAC files in this and their
+     * headers
+     * @throws IOException if an I/O error occurs
+     */
+    public Map<SACFileName, SACHeaderData> sacHeaderMap() throws IOException {
+        return SACHeaderIndex.get(toPath().toAbsolutePath().getParent()).getHeaders(this);
+    }
+
 }
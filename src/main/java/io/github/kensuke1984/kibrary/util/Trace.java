@@ -16,6 +16,7 @@ import org.apache.commons.math3.linear.LUDecomposition;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
 
+import io.github.kensuke1984.kibrary.math.CrossCorrelation;
 import io.github.kensuke1984.kibrary.timewindow.Timewindow;
 
 /**
@@ -29,7 +30,7 @@ import io.github.kensuke1984.kibrary.timewindow.Timewindow;
  * TODO sorted
  *
  * @author Kensuke Konishi
- * @version 0.1.2.1
+ * @version 0.1.2.2
  */
 public class Trace {
 
@@ -235,14 +236,9 @@ public class Trace {
         double corMax = -1;
         double compY2 = trace.yVector.getNorm();
         double shift = 0;
+        CrossCorrelation correlation = CrossCorrelation.of(trace.y, y);
         for (int i = 0; i <= gapLength; i++) {
-            double cor = 0;
-            double y2 = 0;
-            for (int j = 0; j < trace.getLength(); j++) {
-                cor += y[i + j] * trace.y[j];
-                y2 += y[i + j] * y[i + j];
-            }
-            cor /= y2 * compY2;
+            double cor = correlation.getCorrelation(i) / (correlation.getEnergy(i) * compY2);
             if (corMax < cor) {
                 shift = x[i] - trace.x[0];
                 corMax = cor;
@@ -269,22 +265,7 @@ public class Trace {
             shorter = compare;
             longer = base;
         }
-        int gap = longer.length - shorter.length;
-        int bestShift = 0;
-        double bestCorrelation = 0;
-        for (int shift = 0; shift < gap + 1; shift++) {
-            double[] partY = new double[shorter.length];
-            System.arraycopy(longer, shift, partY, 0, shorter.length);
-            RealVector partYVec = new ArrayRealVector(partY);
-            RealVector shorterVec = new ArrayRealVector(shorter);
-            double correlation = partYVec.dotProduct(shorterVec) / partYVec.getNorm() / shorterVec.getNorm();
-            if (bestCorrelation < correlation) {
-                bestCorrelation = correlation;
-                bestShift = shift;
-            }
-            // System.out.println(correlation);
-        }
-
+        int bestShift = CrossCorrelation.of(shorter, longer).getBestLag();
         return compare.length < base.length ? bestShift : -bestShift;
     }
 
@@ -13,6 +13,7 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -30,6 +31,8 @@ import org.apache.commons.math3.util.FastMath;
 
 import io.github.kensuke1984.kibrary.util.globalcmt.GlobalCMTID;
 import io.github.kensuke1984.kibrary.util.sac.SACFileName;
+import io.github.kensuke1984.kibrary.util.sac.SACHeaderData;
+import io.github.kensuke1984.kibrary.util.sac.SACHeaderIndex;
 import io.github.kensuke1984.kibrary.util.spc.SpcFileName;
 
 /**
@@ -37,7 +40,7 @@ import io.github.kensuke1984.kibrary.util.spc.SpcFileName;
  * this contains various useful static methods.
  *
  * @author Kensuke Konishi
- * @version 0.1.1.1
+ * @version 0.1.1.3
  */
 public final class Utilities {
 
@@ -149,6 +152,32 @@ public final class Utilities {
         }).collect(Collectors.toSet()));
     }
 
+    /**
+     * The headers are from {@link SACHeaderIndex} in the path, which is
+     * refreshed for SAC files added or changed since the last time. Waveforms
+     * are not read.
+     *
+     * @param path   of a folder containing event folders which have SAC files.
+     * @param filter for the headers
+     * @return (<b>unmodifiable</b>)Set of sac in event folders under the path
+     * whose header satisfies the filter
+     * @throws IOException if an I/O error occurs.
+     */
+    public static Set<SACFileName> sacFileNameSet(Path path, Predicate<SACHeaderData> filter) throws IOException {
+        return Collections.unmodifiableSet(sacHeaderMap(path).entrySet().stream()
+                .filter(entry -> filter.test(entry.getValue())).map(Map.Entry::getKey).collect(Collectors.toSet()));
+    }
+
+    /**
+     * @param path of a folder containing event folders which have SAC files.
+     * @return (<b>unmodifiable</b>)Map of sac in event folders under the path
+     * and their headers from {@link SACHeaderIndex}
+     * @throws IOException if an I/O error occurs.
+     */
+    public static Map<SACFileName, SACHeaderData> sacHeaderMap(Path path) throws IOException {
+        return SACHeaderIndex.get(path).getHeaders();
+    }
+
     /**
      * Runs process for all event folders under the workPath
      *
@@ -1,16 +1,27 @@
 package io.github.kensuke1984.kibrary.util.globalcmt;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.zip.CRC32;
 
 import javax.swing.JOptionPane;
 
@@ -22,9 +33,17 @@ import org.apache.commons.io.input.CloseShieldInputStream;
  * <p>
  * The catalog contains event list from <b>1976 January</b> to <b>2016
  * November</b>.
+ * <p>
+ * The parsed catalog is kept in {@link #SNAPSHOT_PATH} with the source of the
+ * text catalog (its path, size, modified time and checksum). The snapshot is
+ * used only when all of them match the current text catalog, otherwise the
+ * text is parsed again and the snapshot is made again. Without a catalog in
+ * the jar, the catalog file in the snapshot is used again if it still
+ * exists, and a catalog file is asked for otherwise.
+ * The NDKs are looked up through a {@link GlobalCMTIndex}.
  *
  * @author Kensuke Konishi
- * @version 0.1.2.1.1
+ * @version 0.1.4
  */
 final class GlobalCMTCatalog {
 
@@ -33,6 +52,21 @@ final class GlobalCMTCatalog {
      */
     private final static Set<NDK> NDKs;
 
+    private final static GlobalCMTIndex INDEX;
+
+    /**
+     * binary snapshot of the parsed catalog
+     */
+    static final Path SNAPSHOT_PATH =
+            Paths.get(System.getProperty("user.home"), ".Kibrary", "share", "globalcmt.snapshot");
+
+    private static final byte[] SNAPSHOT_MAGIC = {'K', 'G', 'C', 'M', 'T', 'S', 'N', '2'};
+
+    /**
+     * source name of the catalog in the jar file
+     */
+    private static final String JAR_SOURCE = "jar:globalcmt.catalog";
+
     private static Path selectCatalogFile() {
         Path catalogFile;
         String path = System.getProperty("user.dir");
@@ -57,29 +91,172 @@ final class GlobalCMTCatalog {
     }
 
     private static Set<NDK> readJar() {
+        try (InputStream stream = GlobalCMTCatalog.class.getClassLoader().getResourceAsStream("globalcmt.catalog")) {
+            if (stream == null) return null;
+            byte[] bytes = IOUtils.toByteArray(stream);
+            return readOrParse(bytes, new Source(JAR_SOURCE, bytes.length, 0, checksumOf(bytes)));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * @param catalogPath path of a text catalog
+     * @return NDKs in the snapshot if it is for the catalog, otherwise the
+     * ones parsed from the catalog (and the snapshot is made)
+     */
+    private static Set<NDK> readCatalog(Path catalogPath) {
         try {
-            List<String> lines =
-                    IOUtils.readLines(GlobalCMTCatalog.class.getClassLoader().getResourceAsStream("globalcmt.catalog"),
-                            Charset.defaultCharset());
-            if (lines.size() % 5 != 0) throw new Exception("Global CMT catalog contained in the jar file is broken");
-            return IntStream.range(0, lines.size() / 5).mapToObj(
-                    i -> NDK.read(lines.get(i * 5), lines.get(i * 5 + 1), lines.get(i * 5 + 2), lines.get(i * 5 + 3),
-                            lines.get(i * 5 + 4))).collect(Collectors.toSet());
-        } catch (NullPointerException e) {
+            catalogPath = catalogPath.toAbsolutePath().normalize();
+            long modified = Files.getLastModifiedTime(catalogPath).toMillis();
+            byte[] bytes = Files.readAllBytes(catalogPath);
+            return readOrParse(bytes, new Source(catalogPath.toString(), bytes.length, modified, checksumOf(bytes)));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Set<NDK> readOrParse(byte[] bytes, Source source) throws Exception {
+        Set<NDK> snapshot = readSnapshot(source);
+        if (snapshot != null) return snapshot;
+        List<String> lines = IOUtils.readLines(new ByteArrayInputStream(bytes), Charset.defaultCharset());
+        if (lines.size() % 5 != 0) throw new Exception("Global CMT catalog " + source.path + " is broken");
+        Set<NDK> ndks = parse(lines);
+        writeSnapshot(ndks, source);
+        return ndks;
+    }
+
+    private static long checksumOf(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    private static Set<NDK> parse(List<String> lines) {
+        return IntStream.range(0, lines.size() / 5).mapToObj(
+                i -> NDK.read(lines.get(i * 5), lines.get(i * 5 + 1), lines.get(i * 5 + 2), lines.get(i * 5 + 3),
+                        lines.get(i * 5 + 4))).collect(Collectors.toSet());
+    }
+
+    /**
+     * @return source of the snapshot, null if there is no valid snapshot
+     */
+    private static Source readSnapshotSource() {
+        if (!Files.exists(SNAPSHOT_PATH)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(SNAPSHOT_PATH)))) {
+            return readHeader(in);
+        } catch (Exception e) {
+            System.err.println(SNAPSHOT_PATH + " is broken and ignored. " + e.getMessage());
             return null;
+        }
+    }
+
+    /**
+     * @return source in the header, null if the magic is different
+     */
+    private static Source readHeader(DataInputStream in) throws IOException {
+        byte[] magic = new byte[SNAPSHOT_MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, SNAPSHOT_MAGIC)) return null;
+        return new Source(in.readUTF(), in.readLong(), in.readLong(), in.readLong());
+    }
+
+    /**
+     * @param source of the text catalog
+     * @return NDKs in the snapshot, null if there is no snapshot for the
+     * source
+     */
+    private static Set<NDK> readSnapshot(Source source) {
+        if (!Files.exists(SNAPSHOT_PATH)) return null;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(SNAPSHOT_PATH)))) {
+            if (!source.equals(readHeader(in))) return null;
+            int n = in.readInt();
+            Set<NDK> ndks = new HashSet<>(n * 2);
+            for (int i = 0; i < n; i++)
+                ndks.add(NDK.read(in));
+            return ndks;
         } catch (Exception e) {
-            e.printStackTrace();
+            System.err.println(SNAPSHOT_PATH + " is broken and ignored. " + e.getMessage());
             return null;
         }
     }
 
+    /**
+     * Writes the snapshot in a temporary file and replaces the old one. Errors
+     * are just noticed.
+     *
+     * @param ndks   to write
+     * @param source of the text catalog
+     */
+    private static void writeSnapshot(Set<NDK> ndks, Source source) {
+        Path tmp = SNAPSHOT_PATH.resolveSibling(SNAPSHOT_PATH.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(SNAPSHOT_PATH.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.write(SNAPSHOT_MAGIC);
+                out.writeUTF(source.path);
+                out.writeLong(source.size);
+                out.writeLong(source.modified);
+                out.writeLong(source.checksum);
+                out.writeInt(ndks.size());
+                for (NDK ndk : ndks)
+                    ndk.write(out);
+            }
+            Files.move(tmp, SNAPSHOT_PATH, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Could not write " + SNAPSHOT_PATH + ". " + e.getMessage());
+        }
+    }
+
+    /**
+     * Text catalog which a snapshot is made from
+     */
+    private static final class Source {
+        private final String path;
+        private final long size;
+        /**
+         * [ms] modified time (0 for the catalog in the jar file)
+         */
+        private final long modified;
+        private final long checksum;
+
+        private Source(String path, long size, long modified, long checksum) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.checksum = checksum;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Source)) return false;
+            Source other = (Source) obj;
+            return path.equals(other.path) && size == other.size && modified == other.modified &&
+                    checksum == other.checksum;
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() * 31 + Long.hashCode(checksum);
+        }
+    }
+
     private GlobalCMTCatalog() {
     }
 
     static {
         Set<NDK> readSet = readJar();
-        if (null == readSet) readSet = read(selectCatalogFile());
+        if (null == readSet) {
+            // a catalog once selected, which is checked against the snapshot
+            Source source = readSnapshotSource();
+            if (source != null && !source.path.equals(JAR_SOURCE) && Files.exists(Paths.get(source.path)))
+                readSet = readCatalog(Paths.get(source.path));
+        }
+        if (null == readSet) readSet = readCatalog(selectCatalogFile());
         NDKs = Collections.unmodifiableSet(readSet);
+        INDEX = new GlobalCMTIndex(NDKs);
     }
 
     /**
@@ -92,9 +269,7 @@ final class GlobalCMTCatalog {
         try {
             List<String> lines = Files.readAllLines(catalogPath);
             if (lines.size() % 5 != 0) throw new Exception(catalogPath + " is invalid.");
-            return IntStream.range(0, lines.size() / 5).mapToObj(
-                    i -> NDK.read(lines.get(i * 5), lines.get(i * 5 + 1), lines.get(i * 5 + 2), lines.get(i * 5 + 3),
-                            lines.get(i * 5 + 4))).collect(Collectors.toSet());
+            return parse(lines);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -107,8 +282,16 @@ final class GlobalCMTCatalog {
      * @return NDK of the input id
      */
     static NDK getNDK(GlobalCMTID id) {
-        return NDKs.parallelStream().filter(ndk -> ndk.getGlobalCMTID().equals(id)).findAny()
-                .orElseThrow(() -> new RuntimeException("There is no information for " + id));
+        NDK ndk = INDEX.get(id);
+        if (ndk == null) throw new RuntimeException("There is no information for " + id);
+        return ndk;
+    }
+
+    /**
+     * @return index of all NDKs
+     */
+    static GlobalCMTIndex index() {
+        return INDEX;
     }
 
     /**
@@ -0,0 +1,267 @@
+package io.github.kensuke1984.kibrary.util.globalcmt;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
+
+import io.github.kensuke1984.kibrary.util.HorizontalPosition;
+
+/**
+ * Index of NDKs for searches.
+ * <p>
+ * NDKs are kept in a map by their IDs, in arrays sorted by the centroid time,
+ * the depth and Mw for range queries, and in cells of a latitude and
+ * longitude grid for box and radius queries.
+ * <p>
+ * Range queries return candidates which include all the NDKs in the range,
+ * so the exact conditions must be checked by callers.
+ * <p>
+ * This class is <b>IMMUTABLE</b>
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.1
+ */
+final class GlobalCMTIndex {
+
+    /**
+     * [deg] size of the cells in the grid
+     */
+    private static final double CELL = 10;
+    private static final int N_LATITUDE = (int) (180 / CELL);
+    private static final int N_LONGITUDE = (int) (360 / CELL);
+
+    /**
+     * [deg] margin for the difference between geographic and geocentric
+     * latitudes in radius queries
+     */
+    private static final double MARGIN = 0.5;
+
+    private final Map<GlobalCMTID, NDK> ndkMap;
+
+    private final Sorted byTime;
+    private final Sorted byDepth;
+    private final Sorted byMw;
+
+    /**
+     * NDKs in each cell [latitude][longitude]
+     */
+    private final NDK[][][] grid;
+
+    GlobalCMTIndex(Collection<NDK> ndks) {
+        Map<GlobalCMTID, NDK> map = new HashMap<>(ndks.size() * 2);
+        for (NDK ndk : ndks)
+            map.put(ndk.getGlobalCMTID(), ndk);
+        ndkMap = Collections.unmodifiableMap(map);
+        byTime = new Sorted(ndks, ndk -> toSecond(ndk.getCMTTime()));
+        byDepth = new Sorted(ndks, ndk -> 6371 - ndk.getCmtLocation().getR());
+        byMw = new Sorted(ndks, ndk -> ndk.getCmt().getMw());
+        List<List<NDK>> cells = new ArrayList<>(N_LATITUDE * N_LONGITUDE);
+        for (int i = 0; i < N_LATITUDE * N_LONGITUDE; i++)
+            cells.add(new ArrayList<>());
+        for (NDK ndk : ndks)
+            cells.get(latitudeCell(ndk.getCmtLocation().getLatitude()) * N_LONGITUDE +
+                    longitudeCell(ndk.getCmtLocation().getLongitude())).add(ndk);
+        grid = new NDK[N_LATITUDE][N_LONGITUDE][];
+        for (int i = 0; i < N_LATITUDE; i++)
+            for (int j = 0; j < N_LONGITUDE; j++)
+                grid[i][j] = cells.get(i * N_LONGITUDE + j).toArray(new NDK[0]);
+    }
+
+    private static double toSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) + dateTime.getNano() * 1e-9;
+    }
+
+    private static int latitudeCell(double latitude) {
+        return Math.max(0, Math.min(N_LATITUDE - 1, (int) Math.floor((latitude + 90) / CELL)));
+    }
+
+    private static int longitudeCell(double longitude) {
+        int j = (int) Math.floor((longitude + 180) / CELL) % N_LONGITUDE;
+        return j < 0 ? j + N_LONGITUDE : j;
+    }
+
+    /**
+     * @param id of an NDK
+     * @return NDK for the id, null if there is not
+     */
+    NDK get(GlobalCMTID id) {
+        return ndkMap.get(id);
+    }
+
+    /**
+     * @return the number of NDKs
+     */
+    int size() {
+        return ndkMap.size();
+    }
+
+    /**
+     * @param start of centroid time (included)
+     * @param end   of centroid time (included)
+     * @return candidates of NDKs with centroid time in [start, end]
+     */
+    List<NDK> timeRange(LocalDateTime start, LocalDateTime end) {
+        // 1 ms for the rounding in seconds
+        return byTime.range(toSecond(start) - 1e-3, toSecond(end) + 1e-3);
+    }
+
+    /**
+     * @param lowerDepth [km]
+     * @param upperDepth [km]
+     * @return candidates of NDKs with centroid depth in [lowerDepth, upperDepth]
+     */
+    List<NDK> depthRange(double lowerDepth, double upperDepth) {
+        return byDepth.range(lowerDepth - 1e-6, upperDepth + 1e-6);
+    }
+
+    /**
+     * @param lowerMw lower limit of Mw
+     * @param upperMw upper limit of Mw
+     * @return candidates of NDKs with Mw in [lowerMw, upperMw]
+     */
+    List<NDK> mwRange(double lowerMw, double upperMw) {
+        return byMw.range(lowerMw, upperMw);
+    }
+
+    /**
+     * The longitude range is either in [-180, 180) or [0, 360) as
+     * {@link GlobalCMTSearch#setLongitudeRange(double, double)}.
+     *
+     * @param lowerLatitude  [deg]
+     * @param upperLatitude  [deg]
+     * @param lowerLongitude [deg]
+     * @param upperLongitude [deg]
+     * @return candidates of NDKs with the centroid in the box
+     */
+    List<NDK> box(double lowerLatitude, double upperLatitude, double lowerLongitude, double upperLongitude) {
+        List<NDK> candidates = new ArrayList<>();
+        boolean[] columns = columnsOf(lowerLongitude, upperLongitude);
+        for (int i = latitudeCell(lowerLatitude); i <= latitudeCell(upperLatitude); i++)
+            for (int j = 0; j < N_LONGITUDE; j++)
+                if (columns[j]) Collections.addAll(candidates, grid[i][j]);
+        return candidates;
+    }
+
+    /**
+     * @return the number of NDKs in {@link #box(double, double, double, double)}
+     */
+    private int boxSize(double lowerLatitude, double upperLatitude, double lowerLongitude, double upperLongitude) {
+        int size = 0;
+        boolean[] columns = columnsOf(lowerLongitude, upperLongitude);
+        for (int i = latitudeCell(lowerLatitude); i <= latitudeCell(upperLatitude); i++)
+            for (int j = 0; j < N_LONGITUDE; j++)
+                if (columns[j]) size += grid[i][j].length;
+        return size;
+    }
+
+    /**
+     * @return if each column of the grid has a part of the longitude range
+     */
+    private static boolean[] columnsOf(double lowerLongitude, double upperLongitude) {
+        boolean[] columns = new boolean[N_LONGITUDE];
+        if (360 <= upperLongitude - lowerLongitude) Arrays.fill(columns, true);
+        else for (double lon = lowerLongitude; ; lon += CELL) {
+            columns[longitudeCell(Math.min(lon, upperLongitude))] = true;
+            if (upperLongitude <= lon) break;
+        }
+        return columns;
+    }
+
+    /**
+     * @param search conditions
+     * @return the narrowest of the ranges of time, depth, Mw and the box in
+     * the search
+     */
+    List<NDK> candidates(GlobalCMTSearch search) {
+        List<NDK> candidates = timeRange(search.getStartDate(), search.getEndDate());
+        List<NDK> depth = depthRange(search.getLowerDepth(), search.getUpperDepth());
+        if (depth.size() < candidates.size()) candidates = depth;
+        List<NDK> mw = mwRange(search.getLowerMw(), search.getUpperMw());
+        if (mw.size() < candidates.size()) candidates = mw;
+        if (boxSize(search.getLowerLatitude(), search.getUpperLatitude(), search.getLowerLongitude(),
+                search.getUpperLongitude()) < candidates.size())
+            candidates = box(search.getLowerLatitude(), search.getUpperLatitude(), search.getLowerLongitude(),
+                    search.getUpperLongitude());
+        return candidates;
+    }
+
+    /**
+     * @param center   of the circle
+     * @param distance [deg] radius of the circle
+     * @return NDKs with the centroid within the distance from the center
+     */
+    List<NDK> within(HorizontalPosition center, double distance) {
+        double lowerLatitude = center.getLatitude() - distance - MARGIN;
+        double upperLatitude = center.getLatitude() + distance + MARGIN;
+        List<NDK> candidates;
+        if (lowerLatitude <= -90 || 90 <= upperLatitude) candidates =
+                box(Math.max(-90, lowerLatitude), Math.min(90, upperLatitude), -180, 180);
+        else {
+            double width = (distance + MARGIN) /
+                    Math.cos(Math.toRadians(Math.max(Math.abs(lowerLatitude), Math.abs(upperLatitude))));
+            double longitude = center.getLongitude();
+            candidates = 180 <= width ? box(lowerLatitude, upperLatitude, -180, 180) :
+                    box(lowerLatitude, upperLatitude, longitude - width, longitude + width);
+        }
+        double radian = Math.toRadians(distance);
+        candidates.removeIf(ndk -> radian < center.getEpicentralDistance(ndk.getCmtLocation()));
+        return candidates;
+    }
+
+    /**
+     * NDKs sorted by a value
+     */
+    private static final class Sorted {
+        private final NDK[] ndks;
+        private final double[] values;
+
+        private Sorted(Collection<NDK> ndks, ToDoubleFunction<NDK> valueOf) {
+            NDK[] array = ndks.toArray(new NDK[ndks.size()]);
+            double[] unsorted = Arrays.stream(array).mapToDouble(valueOf).toArray();
+            int[] order = IntStream.range(0, array.length).boxed()
+                    .sorted(Comparator.comparingDouble(i -> unsorted[i])).mapToInt(Integer::intValue).toArray();
+            this.ndks = Arrays.stream(order).mapToObj(i -> array[i]).toArray(NDK[]::new);
+            values = Arrays.stream(order).mapToDouble(i -> unsorted[i]).toArray();
+        }
+
+        /**
+         * @return NDKs with the value in [lower, upper]
+         */
+        private List<NDK> range(double lower, double upper) {
+            if (upper < lower) return Collections.emptyList();
+            return Arrays.asList(ndks).subList(firstNotLess(lower), firstGreater(upper));
+        }
+
+        private int firstNotLess(double value) {
+            int low = 0;
+            int high = values.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] < value) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+
+        private int firstGreater(double value) {
+            int low = 0;
+            int high = values.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] <= value) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+    }
+
+}
@@ -14,13 +14,14 @@ import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.commons.math3.util.Precision;
 
+import io.github.kensuke1984.kibrary.util.HorizontalPosition;
 import io.github.kensuke1984.kibrary.util.Location;
 
 /**
  * Global CMT searchを行う時のQuery
  *
  * @author Kensuke Konishi
- * @version 0.1.10.4
+ * @version 0.1.11
  *          TODO thread safe
  */
 public class GlobalCMTSearch {
@@ -52,6 +53,17 @@ public class GlobalCMTSearch {
                 .collect(Collectors.toSet());
     }
 
+    /**
+     * @param center   of the circle
+     * @param distance [deg] radius of the circle
+     * @return all global CMT IDs whose centroids are within the distance from
+     * the center
+     */
+    public static Set<GlobalCMTID> search(HorizontalPosition center, double distance) {
+        return GlobalCMTCatalog.index().within(center, distance).stream().map(NDK::getGlobalCMTID)
+                .collect(Collectors.toSet());
+    }
+
     public static void setOutputFormat(DateTimeFormatter outputFormat) {
         GlobalCMTSearch.outputFormat = outputFormat;
     }
@@ -65,6 +77,16 @@ public class GlobalCMTSearch {
         predicateSet.add(predicate);
     }
 
+    /**
+     * @param event to test
+     * @return if the event satisfies all the added predicates
+     */
+    boolean test(GlobalCMTData event) {
+        for (Predicate<GlobalCMTData> predicate : predicateSet)
+            if (!predicate.test(event)) return false;
+        return true;
+    }
+
     /**
      * @return copy of predicate set
      */
@@ -292,7 +314,7 @@ public class GlobalCMTSearch {
      * @return Set of {@link GlobalCMTID} which fulfill queries
      */
     public Set<GlobalCMTID> search() {
-        return GlobalCMTCatalog.allNDK().parallelStream().filter(ndk -> ndk.fulfill(this)).map(NDK::getGlobalCMTID)
+        return GlobalCMTCatalog.index().candidates(this).parallelStream().filter(ndk -> ndk.fulfill(this)).map(NDK::getGlobalCMTID)
                 .collect(Collectors.toSet());
     }
 
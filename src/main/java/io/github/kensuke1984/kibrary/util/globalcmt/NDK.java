@@ -1,6 +1,10 @@
 package io.github.kensuke1984.kibrary.util.globalcmt;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 
 import io.github.kensuke1984.kibrary.datacorrection.MomentTensor;
@@ -62,7 +66,7 @@ import io.github.kensuke1984.kibrary.util.Location;
  * ====
  *
  * @author Kensuke Konishi
- * @version 0.0.6.3
+ * @version 0.0.7
  * @see <a href=
  * http://www.ldeo.columbia.edu/~gcmt/projects/CMT/catalog/allorder.ndk_explained>official
  * guide</a>
@@ -355,6 +359,118 @@ final class NDK implements GlobalCMTData {
         return ndk;
     }
 
+    /**
+     * Writes all the values of this in a binary form, which is read by
+     * {@link #read(DataInput)}.
+     *
+     * @param out to write this in
+     * @throws IOException if an I/O error occurs
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeUTF(hypocenterReferenceCatalog);
+        writeDateTime(out, referenceDateTime);
+        writeLocation(out, hypocenterLocation);
+        out.writeDouble(mb);
+        out.writeDouble(ms);
+        out.writeUTF(geographicalLocation);
+        out.writeUTF(id.toString());
+        for (int[] bsm : new int[][]{b, s, m})
+            for (int i : bsm)
+                out.writeInt(i);
+        out.writeInt(cmtType);
+        out.writeUTF(momentRateFunctionType);
+        out.writeDouble(halfDurationMomentRateFunction);
+        out.writeDouble(timeDifference);
+        writeLocation(out, centroidLocation);
+        out.writeUTF(depthType);
+        out.writeUTF(timeStamp);
+        out.writeInt(momentExponent);
+        out.writeDouble(momentTensor.getMrr());
+        out.writeDouble(momentTensor.getMtt());
+        out.writeDouble(momentTensor.getMpp());
+        out.writeDouble(momentTensor.getMrt());
+        out.writeDouble(momentTensor.getMrp());
+        out.writeDouble(momentTensor.getMtp());
+        out.writeDouble(momentTensor.getMw());
+        out.writeUTF(versionCode);
+        for (double d : new double[]{eigenValue0, eigenValue1, eigenValue2, plunge0, plunge1, plunge2, azimuth0,
+                azimuth1, azimuth2, scalarMoment})
+            out.writeDouble(d);
+        for (int i : new int[]{strike0, dip0, rake0, strike1, dip1, rake1})
+            out.writeInt(i);
+    }
+
+    /**
+     * @param in to read an NDK written by {@link #write(DataOutput)}
+     * @return the NDK
+     * @throws IOException if an I/O error occurs
+     */
+    static NDK read(DataInput in) throws IOException {
+        NDK ndk = new NDK();
+        ndk.hypocenterReferenceCatalog = in.readUTF();
+        ndk.referenceDateTime = readDateTime(in);
+        ndk.hypocenterLocation = readLocation(in);
+        ndk.mb = in.readDouble();
+        ndk.ms = in.readDouble();
+        ndk.geographicalLocation = in.readUTF();
+        ndk.id = new GlobalCMTID(in.readUTF());
+        ndk.b = new int[]{in.readInt(), in.readInt(), in.readInt()};
+        ndk.s = new int[]{in.readInt(), in.readInt(), in.readInt()};
+        ndk.m = new int[]{in.readInt(), in.readInt(), in.readInt()};
+        ndk.cmtType = in.readInt();
+        ndk.momentRateFunctionType = in.readUTF();
+        ndk.halfDurationMomentRateFunction = in.readDouble();
+        ndk.timeDifference = in.readDouble();
+        ndk.centroidLocation = readLocation(in);
+        ndk.depthType = in.readUTF();
+        ndk.timeStamp = in.readUTF();
+        ndk.momentExponent = in.readInt();
+        double mrr = in.readDouble();
+        double mtt = in.readDouble();
+        double mpp = in.readDouble();
+        double mrt = in.readDouble();
+        double mrp = in.readDouble();
+        double mtp = in.readDouble();
+        ndk.momentTensor = new MomentTensor(mrr, mtt, mpp, mrt, mrp, mtp, ndk.momentExponent, in.readDouble());
+        ndk.versionCode = in.readUTF();
+        ndk.eigenValue0 = in.readDouble();
+        ndk.eigenValue1 = in.readDouble();
+        ndk.eigenValue2 = in.readDouble();
+        ndk.plunge0 = in.readDouble();
+        ndk.plunge1 = in.readDouble();
+        ndk.plunge2 = in.readDouble();
+        ndk.azimuth0 = in.readDouble();
+        ndk.azimuth1 = in.readDouble();
+        ndk.azimuth2 = in.readDouble();
+        ndk.scalarMoment = in.readDouble();
+        ndk.strike0 = in.readInt();
+        ndk.dip0 = in.readInt();
+        ndk.rake0 = in.readInt();
+        ndk.strike1 = in.readInt();
+        ndk.dip1 = in.readInt();
+        ndk.rake1 = in.readInt();
+        return ndk;
+    }
+
+    private static void writeDateTime(DataOutput out, LocalDateTime dateTime) throws IOException {
+        out.writeLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(dateTime.getNano());
+    }
+
+    private static LocalDateTime readDateTime(DataInput in) throws IOException {
+        return LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+    }
+
+    private static void writeLocation(DataOutput out, Location location) throws IOException {
+        out.writeDouble(location.getLatitude());
+        out.writeDouble(location.getLongitude());
+        out.writeDouble(location.getR());
+    }
+
+    private static Location readLocation(DataInput in) throws IOException {
+        return new Location(in.readDouble(), in.readDouble(), in.readDouble());
+    }
+
     private static final DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss.S");
 
     /**
@@ -370,11 +486,6 @@ final class NDK implements GlobalCMTData {
      * @return if this fulfills "search"
      */
     boolean fulfill(GlobalCMTSearch search) {
-        LocalDateTime cmtDate = getCMTTime();
-        if (search.getStartDate().isAfter(cmtDate) || search.getEndDate().isBefore(cmtDate)) return false;
-
-        if (!search.getPredicateSet().stream().allMatch(p -> p.test(this))) return false;
-
         // latitude
         double latitude = centroidLocation.getLatitude();
         if (latitude < search.getLowerLatitude() || search.getUpperLatitude() < latitude) return false;
@@ -407,7 +518,10 @@ final class NDK implements GlobalCMTData {
         // null axis plunge
         if (plunge1 < search.getLowerNullAxisPlunge() || search.getUpperNullAxisPlunge() < plunge1) return false;
 
-        return true;
+        LocalDateTime cmtDate = getCMTTime();
+        if (search.getStartDate().isAfter(cmtDate) || search.getEndDate().isBefore(cmtDate)) return false;
+
+        return search.test(this);
     }
 
     @Override
@@ -0,0 +1,102 @@
+package io.github.kensuke1984.kibrary.util.sac;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Header of a SAC file which keeps the raw {@value SACReader#HEADER_LENGTH}
+ * bytes and decodes a value only when it is requested. The values are the
+ * same as the ones in {@link SACHeader}.
+ * <p>
+ * Unused and internal values are read through a {@link SACHeader} made at the
+ * first time. Setters return a new {@link SACHeader}.
+ * <p>This class is <b>IMMUTABLE</b></p>
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.1
+ */
+final class LazySACHeader implements SACHeaderData {
+
+    private final ByteBuffer header;
+
+    /**
+     * made when it is needed
+     */
+    private volatile SACHeader sacHeader;
+
+    /**
+     * @param header header part of a SAC file (little endian)
+     */
+    LazySACHeader(ByteBuffer header) {
+        this.header = header.asReadOnlyBuffer().order(header.order());
+    }
+
+    private SACHeader toSACHeader() {
+        if (sacHeader == null) sacHeader = new SACHeader(header);
+        return sacHeader;
+    }
+
+    private static boolean isSpecial(SACHeaderEnum sacHeaderEnum) {
+        return sacHeaderEnum.typeOf() == 99 || sacHeaderEnum.typeOf() == -1;
+    }
+
+    @Override
+    public boolean getBoolean(SACHeaderEnum sacHeaderEnum) {
+        if (isSpecial(sacHeaderEnum)) return toSACHeader().getBoolean(sacHeaderEnum);
+        if (sacHeaderEnum.typeOf() != 3) throw new IllegalArgumentException(sacHeaderEnum + " is not boolean");
+        return SACReader.getBoolean(header, sacHeaderEnum);
+    }
+
+    @Override
+    public int getInt(SACHeaderEnum sacHeaderEnum) {
+        if (isSpecial(sacHeaderEnum)) return toSACHeader().getInt(sacHeaderEnum);
+        if (sacHeaderEnum.typeOf() != 1) throw new IllegalArgumentException(sacHeaderEnum + " is not integer");
+        return SACReader.getInt(header, sacHeaderEnum);
+    }
+
+    @Override
+    public int getSACEnumerated(SACHeaderEnum sacHeaderEnum) {
+        if (isSpecial(sacHeaderEnum)) return toSACHeader().getSACEnumerated(sacHeaderEnum);
+        if (sacHeaderEnum.typeOf() != 2) throw new IllegalArgumentException(sacHeaderEnum + " is not enumerated value");
+        return SACReader.getInt(header, sacHeaderEnum);
+    }
+
+    @Override
+    public String getSACString(SACHeaderEnum sacHeaderEnum) {
+        if (sacHeaderEnum.typeOf() != 8 && sacHeaderEnum.typeOf() != 16)
+            throw new IllegalArgumentException(sacHeaderEnum + " is not sac string");
+        return SACReader.getString(header, sacHeaderEnum);
+    }
+
+    @Override
+    public double getValue(SACHeaderEnum sacHeaderEnum) {
+        if (isSpecial(sacHeaderEnum)) return toSACHeader().getValue(sacHeaderEnum);
+        if (sacHeaderEnum.typeOf() != 0) throw new IllegalArgumentException(sacHeaderEnum + " is not float");
+        return SACHeader.toDouble(SACReader.getFloat(header, sacHeaderEnum));
+    }
+
+    @Override
+    public SACHeaderData setBoolean(SACHeaderEnum sacHeaderEnum, boolean bool) {
+        return toSACHeader().setBoolean(sacHeaderEnum, bool);
+    }
+
+    @Override
+    public SACHeaderData setInt(SACHeaderEnum sacHeaderEnum, int value) {
+        return toSACHeader().setInt(sacHeaderEnum, value);
+    }
+
+    @Override
+    public SACHeaderData setSACEnumerated(SACHeaderEnum sacHeaderEnum, int value) {
+        return toSACHeader().setSACEnumerated(sacHeaderEnum, value);
+    }
+
+    @Override
+    public SACHeaderData setSACString(SACHeaderEnum sacHeaderEnum, String string) {
+        return toSACHeader().setSACString(sacHeaderEnum, string);
+    }
+
+    @Override
+    public SACHeaderData setValue(SACHeaderEnum sacHeaderEnum, double value) {
+        return toSACHeader().setValue(sacHeaderEnum, value);
+    }
+
+}
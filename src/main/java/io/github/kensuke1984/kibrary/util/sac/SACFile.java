@@ -1,6 +1,7 @@
 package io.github.kensuke1984.kibrary.util.sac;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import io.github.kensuke1984.kibrary.butterworth.BandPassFilter;
 import io.github.kensuke1984.kibrary.butterworth.BandStopFilter;
@@ -14,7 +15,7 @@ import io.github.kensuke1984.kibrary.butterworth.LowPassFilter;
  * This class is <b>immutable</b>
  *
  * @author Kensuke Konishi
- * @version 1.0.0.1
+ * @version 1.0.2
  * @see <a href=http://ds.iris.edu/ds/nodes/dmc/forms/sac/>SAC</a>
  */
 class SACFile extends SACHeader implements SACData {
@@ -30,8 +31,16 @@ class SACFile extends SACHeader implements SACData {
      *                     sacFileName is broken.
      */
     SACFile(SACFileName sacFileName) throws IOException {
-        super(sacFileName);
-        read(sacFileName);
+        this(SACReader.read(sacFileName.toPath()));
+    }
+
+    /**
+     * @param sac the whole SAC file
+     * @throws IOException if the waveform is shorter than NPTS
+     */
+    private SACFile(ByteBuffer sac) throws IOException {
+        super(sac);
+        waveData = SACReader.readData(sac);
     }
 
     /**
@@ -61,26 +70,12 @@ class SACFile extends SACHeader implements SACData {
             double periodMax = 2 * Math.PI * getValue(SACHeaderEnum.DELTA) / bsf.getOmegaH();
             sd = sd.setValue(SACHeaderEnum.USER0, periodMax).setValue(SACHeaderEnum.USER1, periodMin);
         }
-        double[] sacdata = filter.applyFilter(waveData.clone());
+        double[] sacdata = waveData.clone();
+        filter.applyFilter(sacdata, 0, sacdata.length);
         sd = sd.setSACData(sacdata);
         return sd;
     }
 
-    /**
-     * Sacの波形部分を読み込む read sacdata from this.sacFile
-     */
-    private void read(SACFileName sacFileName) throws IOException {
-        try (SACInputStream stream = new SACInputStream(sacFileName.toPath())) {
-            stream.skipBytes(632);
-            int npts = getInt(SACHeaderEnum.NPTS);
-            waveData = new double[npts];
-            // float(4) * 70, int(4) * 40, String (8) * 22 + (16)
-            // 4* 70 + 4* 40 + 8* 22 +16 = 632
-            for (int i = 0; i < npts; i++)
-                waveData[i] = stream.readFloat();
-        }
-    }
-
     @Override
     public SACFile setSACData(double[] sacData) {
         // setInt(SacHeaderEnum.NPTS, npts);
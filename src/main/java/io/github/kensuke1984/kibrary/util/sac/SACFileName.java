@@ -24,7 +24,7 @@ import io.github.kensuke1984.kibrary.util.spc.PartialType;
  * station must be 8 or less letters
  *
  * @author Kensuke Konishi
- * @version 2.0.0.2
+ * @version 2.0.1
  * @see <a href=http://ds.iris.edu/ds/nodes/dmc/forms/sac/>SAC</a>
  */
 public class SACFileName extends File {
@@ -272,11 +272,13 @@ public class SACFileName extends File {
     }
 
     /**
+     * Only the header part is read. Each value is decoded when it is used.
+     *
      * @return (immutable) SACHeaderData of this file
      * @throws IOException if an I/O error occurs
      */
     public SACHeaderData readHeader() throws IOException {
-        return new SACHeader(this);
+        return new LazySACHeader(SACReader.readHeader(toPath()));
     }
 
     /**
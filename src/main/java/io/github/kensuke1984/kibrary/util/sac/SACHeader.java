@@ -1,13 +1,15 @@
 package io.github.kensuke1984.kibrary.util.sac;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * Information in the header parts of a SAC file.
  * <p>This class is <b>IMMUTABLE</b></p>
  *
  * @author Kensuke Konishi
- * @version 2.0.1.1
+ * @version 2.0.2
  * @see <a href=http://ds.iris.edu/ds/nodes/dmc/forms/sac/>SAC</a>
  */
 class SACHeader implements SACHeaderData, Cloneable {
@@ -27,151 +29,157 @@ class SACHeader implements SACHeaderData, Cloneable {
      * @param value in float
      * @return value in double
      */
-    private static double toDouble(float value) {
+    static double toDouble(float value) {
         return Double.parseDouble(Float.toString(value));
     }
 
     /**
      * 入力したsacファイルのヘッダーを読み込み上書きする
      *
-     * @param sacFileName to read
+     * @param header header part (or the whole) of a SAC file
      */
-    private void read(SACFileName sacFileName) throws IOException {
-        try (SACInputStream stream = new SACInputStream(sacFileName.toPath())) {
-            delta = toDouble(stream.readFloat()); // 0
-            depmin = toDouble(stream.readFloat()); // 1
-            depmax = toDouble(stream.readFloat()); // 2
-            scale = toDouble(stream.readFloat()); // 3
-            odelta = toDouble(stream.readFloat());
-            b = toDouble(stream.readFloat());
-            e = toDouble(stream.readFloat());
-            o = toDouble(stream.readFloat());
-            a = toDouble(stream.readFloat());
-            num9 = toDouble(stream.readFloat());
-            T0 = toDouble(stream.readFloat());
-            T1 = toDouble(stream.readFloat());
-            T2 = toDouble(stream.readFloat());
-            T3 = toDouble(stream.readFloat());
-            T4 = toDouble(stream.readFloat());
-            T5 = toDouble(stream.readFloat());
-            T6 = toDouble(stream.readFloat());
-            T7 = toDouble(stream.readFloat());
-            T8 = toDouble(stream.readFloat());
-            T9 = toDouble(stream.readFloat());
-            F = toDouble(stream.readFloat());
-            RESP0 = toDouble(stream.readFloat());
-            RESP1 = toDouble(stream.readFloat());
-            RESP2 = toDouble(stream.readFloat());
-            RESP3 = toDouble(stream.readFloat());
-            RESP4 = toDouble(stream.readFloat());
-            RESP5 = toDouble(stream.readFloat());
-            RESP6 = toDouble(stream.readFloat());
-            RESP7 = toDouble(stream.readFloat());
-            RESP8 = toDouble(stream.readFloat());
-            RESP9 = toDouble(stream.readFloat());
-            stla = toDouble(stream.readFloat());
-            stlo = toDouble(stream.readFloat());
-            STEL = toDouble(stream.readFloat());
-            STDP = toDouble(stream.readFloat());
-            evla = toDouble(stream.readFloat());
-            evlo = toDouble(stream.readFloat());
-            EVEL = toDouble(stream.readFloat());
-            evdp = toDouble(stream.readFloat());
-            MAG = toDouble(stream.readFloat());
-            USER0 = toDouble(stream.readFloat());
-            USER1 = toDouble(stream.readFloat());
-            USER2 = toDouble(stream.readFloat());
-            USER3 = toDouble(stream.readFloat());
-            USER4 = toDouble(stream.readFloat());
-            USER5 = toDouble(stream.readFloat());
-            USER6 = toDouble(stream.readFloat());
-            USER7 = toDouble(stream.readFloat());
-            USER8 = toDouble(stream.readFloat());
-            USER9 = toDouble(stream.readFloat());
-            DIST = toDouble(stream.readFloat());
-            AZ = toDouble(stream.readFloat());
-            BAZ = toDouble(stream.readFloat());
-            GCARC = toDouble(stream.readFloat());
-            num54 = toDouble(stream.readFloat());
-            num55 = toDouble(stream.readFloat());
-            DEPMEN = toDouble(stream.readFloat());
-            CMPAZ = toDouble(stream.readFloat());
-            CMPINC = toDouble(stream.readFloat());
-            XMINIMUM = toDouble(stream.readFloat());
-            XMAXIMUM = toDouble(stream.readFloat());
-            YMINIMUM = toDouble(stream.readFloat());
-            YMAXIMUM = toDouble(stream.readFloat());
-            num63 = toDouble(stream.readFloat());
-            num64 = toDouble(stream.readFloat());
-            num65 = toDouble(stream.readFloat());
-            num66 = toDouble(stream.readFloat());
-            num67 = toDouble(stream.readFloat());
-            num68 = toDouble(stream.readFloat());
-            num69 = toDouble(stream.readFloat());
-            nzyear = stream.readInt();
-            nzjday = stream.readInt();
-            nzhour = stream.readInt();
-            nzmin = stream.readInt();
-            nzsec = stream.readInt();
-            nzmsec = stream.readInt();
-            nvhdr = stream.readInt();
-            NORID = stream.readInt();
-            NEVID = stream.readInt();
-            npts = stream.readInt();
-            num80 = stream.readInt();
-            NWFID = stream.readInt();
-            nxsize = stream.readInt();
-            NYSIZE = stream.readInt();
-            num84 = stream.readInt();
-            IFTYPE = stream.readInt();
-            IDEP = stream.readInt();
-            IZTYPE = stream.readInt();
-            num88 = stream.readInt();
-            IINST = stream.readInt();
-            ISTREG = stream.readInt();
-            IEVREG = stream.readInt();
-            IEVTYP = stream.readInt();
-            IQUAL = stream.readInt();
-            ISYNTH = stream.readInt();
-            IMAGTYP = stream.readInt();
-            IMAGSRC = stream.readInt();
-            num97 = stream.readInt();
-            num98 = stream.readInt();
-            num99 = stream.readInt();
-            num100 = stream.readInt();
-            num101 = stream.readInt();
-            num102 = stream.readInt();
-            num103 = stream.readInt();
-            num104 = stream.readInt();
-            leven = stream.readSACBoolean();
-            lpspol = stream.readSACBoolean();
-            lovrok = stream.readSACBoolean();
-            lcalda = stream.readSACBoolean();
-            num109 = stream.readSACBoolean();
-            kstnm = stream.readString(8);
-            KEVNM = stream.readString(16);
-            KHOLE = stream.readString(8);
-            KO = stream.readString(8);
-            KA = stream.readString(8);
-            KT0 = stream.readString(8);
-            KT1 = stream.readString(8);
-            KT2 = stream.readString(8);
-            KT3 = stream.readString(8);
-            KT4 = stream.readString(8);
-            KT5 = stream.readString(8);
-            KT6 = stream.readString(8);
-            KT7 = stream.readString(8);
-            KT8 = stream.readString(8);
-            KT9 = stream.readString(8);
-            KF = stream.readString(8);
-            KUSER0 = stream.readString(8);
-            KUSER1 = stream.readString(8);
-            KUSER2 = stream.readString(8);
-            KCMPNM = stream.readString(8);
-            knetwk = stream.readString(8);
-            KDATRD = stream.readString(8);
-            KINST = stream.readString(8);
-        }
+    private void read(ByteBuffer header) {
+        ByteBuffer buffer = header.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(0);
+        delta = toDouble(buffer.getFloat()); // 0
+        depmin = toDouble(buffer.getFloat()); // 1
+        depmax = toDouble(buffer.getFloat()); // 2
+        scale = toDouble(buffer.getFloat()); // 3
+        odelta = toDouble(buffer.getFloat());
+        b = toDouble(buffer.getFloat());
+        e = toDouble(buffer.getFloat());
+        o = toDouble(buffer.getFloat());
+        a = toDouble(buffer.getFloat());
+        num9 = toDouble(buffer.getFloat());
+        T0 = toDouble(buffer.getFloat());
+        T1 = toDouble(buffer.getFloat());
+        T2 = toDouble(buffer.getFloat());
+        T3 = toDouble(buffer.getFloat());
+        T4 = toDouble(buffer.getFloat());
+        T5 = toDouble(buffer.getFloat());
+        T6 = toDouble(buffer.getFloat());
+        T7 = toDouble(buffer.getFloat());
+        T8 = toDouble(buffer.getFloat());
+        T9 = toDouble(buffer.getFloat());
+        F = toDouble(buffer.getFloat());
+        RESP0 = toDouble(buffer.getFloat());
+        RESP1 = toDouble(buffer.getFloat());
+        RESP2 = toDouble(buffer.getFloat());
+        RESP3 = toDouble(buffer.getFloat());
+        RESP4 = toDouble(buffer.getFloat());
+        RESP5 = toDouble(buffer.getFloat());
+        RESP6 = toDouble(buffer.getFloat());
+        RESP7 = toDouble(buffer.getFloat());
+        RESP8 = toDouble(buffer.getFloat());
+        RESP9 = toDouble(buffer.getFloat());
+        stla = toDouble(buffer.getFloat());
+        stlo = toDouble(buffer.getFloat());
+        STEL = toDouble(buffer.getFloat());
+        STDP = toDouble(buffer.getFloat());
+        evla = toDouble(buffer.getFloat());
+        evlo = toDouble(buffer.getFloat());
+        EVEL = toDouble(buffer.getFloat());
+        evdp = toDouble(buffer.getFloat());
+        MAG = toDouble(buffer.getFloat());
+        USER0 = toDouble(buffer.getFloat());
+        USER1 = toDouble(buffer.getFloat());
+        USER2 = toDouble(buffer.getFloat());
+        USER3 = toDouble(buffer.getFloat());
+        USER4 = toDouble(buffer.getFloat());
+        USER5 = toDouble(buffer.getFloat());
+        USER6 = toDouble(buffer.getFloat());
+        USER7 = toDouble(buffer.getFloat());
+        USER8 = toDouble(buffer.getFloat());
+        USER9 = toDouble(buffer.getFloat());
+        DIST = toDouble(buffer.getFloat());
+        AZ = toDouble(buffer.getFloat());
+        BAZ = toDouble(buffer.getFloat());
+        GCARC = toDouble(buffer.getFloat());
+        num54 = toDouble(buffer.getFloat());
+        num55 = toDouble(buffer.getFloat());
+        DEPMEN = toDouble(buffer.getFloat());
+        CMPAZ = toDouble(buffer.getFloat());
+        CMPINC = toDouble(buffer.getFloat());
+        XMINIMUM = toDouble(buffer.getFloat());
+        XMAXIMUM = toDouble(buffer.getFloat());
+        YMINIMUM = toDouble(buffer.getFloat());
+        YMAXIMUM = toDouble(buffer.getFloat());
+        num63 = toDouble(buffer.getFloat());
+        num64 = toDouble(buffer.getFloat());
+        num65 = toDouble(buffer.getFloat());
+        num66 = toDouble(buffer.getFloat());
+        num67 = toDouble(buffer.getFloat());
+        num68 = toDouble(buffer.getFloat());
+        num69 = toDouble(buffer.getFloat());
+        nzyear = buffer.getInt();
+        nzjday = buffer.getInt();
+        nzhour = buffer.getInt();
+        nzmin = buffer.getInt();
+        nzsec = buffer.getInt();
+        nzmsec = buffer.getInt();
+        nvhdr = buffer.getInt();
+        NORID = buffer.getInt();
+        NEVID = buffer.getInt();
+        npts = buffer.getInt();
+        num80 = buffer.getInt();
+        NWFID = buffer.getInt();
+        nxsize = buffer.getInt();
+        NYSIZE = buffer.getInt();
+        num84 = buffer.getInt();
+        IFTYPE = buffer.getInt();
+        IDEP = buffer.getInt();
+        IZTYPE = buffer.getInt();
+        num88 = buffer.getInt();
+        IINST = buffer.getInt();
+        ISTREG = buffer.getInt();
+        IEVREG = buffer.getInt();
+        IEVTYP = buffer.getInt();
+        IQUAL = buffer.getInt();
+        ISYNTH = buffer.getInt();
+        IMAGTYP = buffer.getInt();
+        IMAGSRC = buffer.getInt();
+        num97 = buffer.getInt();
+        num98 = buffer.getInt();
+        num99 = buffer.getInt();
+        num100 = buffer.getInt();
+        num101 = buffer.getInt();
+        num102 = buffer.getInt();
+        num103 = buffer.getInt();
+        num104 = buffer.getInt();
+        leven = buffer.getInt() == 1;
+        lpspol = buffer.getInt() == 1;
+        lovrok = buffer.getInt() == 1;
+        lcalda = buffer.getInt() == 1;
+        num109 = buffer.getInt() == 1;
+        kstnm = readString(buffer, 8);
+        KEVNM = readString(buffer, 16);
+        KHOLE = readString(buffer, 8);
+        KO = readString(buffer, 8);
+        KA = readString(buffer, 8);
+        KT0 = readString(buffer, 8);
+        KT1 = readString(buffer, 8);
+        KT2 = readString(buffer, 8);
+        KT3 = readString(buffer, 8);
+        KT4 = readString(buffer, 8);
+        KT5 = readString(buffer, 8);
+        KT6 = readString(buffer, 8);
+        KT7 = readString(buffer, 8);
+        KT8 = readString(buffer, 8);
+        KT9 = readString(buffer, 8);
+        KF = readString(buffer, 8);
+        KUSER0 = readString(buffer, 8);
+        KUSER1 = readString(buffer, 8);
+        KUSER2 = readString(buffer, 8);
+        KCMPNM = readString(buffer, 8);
+        knetwk = readString(buffer, 8);
+        KDATRD = readString(buffer, 8);
+        KINST = readString(buffer, 8);
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes).trim();
     }
 
     /**
@@ -181,7 +189,14 @@ class SACHeader implements SACHeaderData, Cloneable {
      * @throws IOException if an I/O error occurs.
      */
     SACHeader(SACFileName sacFileName) throws IOException {
-        read(sacFileName);
+        this(SACReader.readHeader(sacFileName.toPath()));
+    }
+
+    /**
+     * @param header header part (or the whole) of a SAC file
+     */
+    SACHeader(ByteBuffer header) {
+        read(header);
     }
 
     @Override
@@ -0,0 +1,458 @@
+package io.github.kensuke1984.kibrary.util.sac;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.github.kensuke1984.kibrary.util.EventFolder;
+import io.github.kensuke1984.kibrary.util.Utilities;
+
+/**
+ * Index of the headers of the SAC files in event folders under a work folder.
+ * <p>
+ * The values in {@link #INDEXED} of each SAC file are kept in {@value #FILE_NAME}
+ * in the work folder with the modified time and the size of the file. When an
+ * event folder is refreshed, only the SAC files which are new or whose time
+ * or size are changed are read, and the ones which disappeared are removed.
+ * <p>
+ * An event folder is refreshed every time its headers are requested
+ * ({@link #getHeaders(EventFolder)}), and all of them are refreshed for
+ * {@link #getHeaders()}, so that SAC files rewritten by other tools are read
+ * again. A single header ({@link #getHeader(SACFileName)}) is checked with the
+ * time and the size of its file.
+ * <p>
+ * The entries are kept for each event, so a refresh or a lookup touches only
+ * the entries of its event folder, and event folders can be refreshed in
+ * parallel. The index file is written only by {@link #flush()} (and by
+ * {@link #of(Path)} and {@link #getHeaders()}), so processes which use
+ * {@link #getHeaders(EventFolder)} for each event should call
+ * {@link #flush()} once at the end.
+ * <p>
+ * The headers from the index answer the indexed values without opening the
+ * SAC files. Other values are read from the file when they are requested.
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.3
+ */
+public final class SACHeaderIndex {
+
+    /**
+     * name of the index file in the work folder
+     */
+    public static final String FILE_NAME = ".sacheader.idx";
+
+    private static final byte[] MAGIC = {'K', 'S', 'A', 'C', 'I', 'D', 'X', '1'};
+
+    /**
+     * header values kept in the index
+     */
+    public static final Set<SACHeaderEnum> INDEXED = Collections.unmodifiableSet(EnumSet
+            .of(SACHeaderEnum.DELTA, SACHeaderEnum.B, SACHeaderEnum.E, SACHeaderEnum.STLA, SACHeaderEnum.STLO,
+                    SACHeaderEnum.EVLA, SACHeaderEnum.EVLO, SACHeaderEnum.EVDP, SACHeaderEnum.USER0,
+                    SACHeaderEnum.USER1, SACHeaderEnum.AZ, SACHeaderEnum.BAZ, SACHeaderEnum.GCARC,
+                    SACHeaderEnum.CMPAZ, SACHeaderEnum.NZYEAR, SACHeaderEnum.NZJDAY, SACHeaderEnum.NZHOUR,
+                    SACHeaderEnum.NZMIN, SACHeaderEnum.NZSEC, SACHeaderEnum.NZMSEC, SACHeaderEnum.NPTS,
+                    SACHeaderEnum.DEPMIN, SACHeaderEnum.DEPMAX, SACHeaderEnum.DEPMEN, SACHeaderEnum.KSTNM,
+                    SACHeaderEnum.KEVNM, SACHeaderEnum.KCMPNM, SACHeaderEnum.KNETWK));
+
+    /**
+     * {@link #INDEXED} in order
+     */
+    private static final SACHeaderEnum[] FIELDS = INDEXED.toArray(new SACHeaderEnum[INDEXED.size()]);
+
+    /**
+     * the number of bytes for {@link #INDEXED}
+     */
+    private static final int FIELD_LENGTH = Arrays.stream(FIELDS).mapToInt(SACHeaderIndex::lengthOf).sum();
+
+    private static final Map<Path, SACHeaderIndex> INDICES = new HashMap<>();
+
+    /**
+     * The index in the work folder is read at the first time. Every event
+     * folder in the work folder is refreshed and the index is written if it
+     * changed (also by lookups since the last writing).
+     *
+     * @param workPath work folder including event folders
+     * @return index for the workPath
+     * @throws IOException if an I/O error occurs
+     */
+    public static SACHeaderIndex of(Path workPath) throws IOException {
+        SACHeaderIndex index = get(workPath);
+        index.refresh();
+        index.flush();
+        return index;
+    }
+
+    /**
+     * The index in the work folder is read at the first time, but nothing is
+     * refreshed here. Each event folder is refreshed when it is used in
+     * {@link #getHeaders(EventFolder)}, and the index is written by
+     * {@link #flush()}.
+     *
+     * @param workPath work folder including event folders
+     * @return index for the workPath
+     * @throws IOException if an I/O error occurs
+     */
+    public static SACHeaderIndex get(Path workPath) throws IOException {
+        Path key = workPath.toAbsolutePath().normalize();
+        synchronized (INDICES) {
+            SACHeaderIndex index = INDICES.get(key);
+            if (index == null) INDICES.put(key, index = new SACHeaderIndex(key));
+            return index;
+        }
+    }
+
+    private final Path workPath;
+
+    /**
+     * key: name of an event folder, value: entries for the names of the SAC
+     * files in the folder
+     */
+    private final Map<String, Map<String, Entry>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * if entries are changed after the index is written
+     */
+    private volatile boolean changed;
+
+    private SACHeaderIndex(Path workPath) throws IOException {
+        this.workPath = workPath;
+        Path indexPath = workPath.resolve(FILE_NAME);
+        if (Files.exists(indexPath)) try {
+            read(indexPath);
+        } catch (IOException e) {
+            System.err.println(indexPath + " is broken and will be made again. " + e.getMessage());
+            entries.clear();
+        }
+    }
+
+    /**
+     * Refreshes all the event folders in the work folder, and removes the
+     * entries of the event folders which disappeared.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void refresh() throws IOException {
+        Set<String> events = new HashSet<>();
+        for (EventFolder eventFolder : Utilities.eventFolderSet(workPath)) {
+            events.add(eventFolder.getName());
+            refresh(eventFolder);
+        }
+        if (entries.keySet().retainAll(events)) changed = true;
+    }
+
+    /**
+     * Headers are read without any lock, so event folders can be refreshed
+     * in parallel.
+     *
+     * @param eventFolder to refresh
+     * @return entries of the event folder
+     * @throws IOException if an I/O error occurs
+     */
+    private Map<String, Entry> refresh(EventFolder eventFolder) throws IOException {
+        Map<String, Entry> eventEntries =
+                entries.computeIfAbsent(eventFolder.getName(), event -> new ConcurrentHashMap<>());
+        Set<String> names = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(eventFolder.toPath())) {
+            for (Path path : stream) {
+                if (!SACFileName.isSacFileName(path)) continue;
+                String name = path.getFileName().toString();
+                names.add(name);
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                long modified = attributes.lastModifiedTime().toMillis();
+                long size = attributes.size();
+                Entry entry = eventEntries.get(name);
+                if (entry != null && entry.modified == modified && entry.size == size) continue;
+                eventEntries.put(name, new Entry(modified, size, pack(SACReader.readHeader(path))));
+                changed = true;
+            }
+        }
+        if (eventEntries.keySet().retainAll(names)) changed = true;
+        return eventEntries;
+    }
+
+    /**
+     * The event folder is refreshed. The index is not written here (see
+     * {@link #flush()}).
+     *
+     * @param eventFolder in the work folder of this
+     * @return (<b>unmodifiable</b>) Map of SAC files in the event folder and
+     * their headers
+     * @throws IOException if an I/O error occurs
+     */
+    public Map<SACFileName, SACHeaderData> getHeaders(EventFolder eventFolder) throws IOException {
+        Map<SACFileName, SACHeaderData> map = new HashMap<>();
+        Path eventPath = workPath.resolve(eventFolder.getName());
+        refresh(eventFolder).forEach((name, entry) -> {
+            SACFileName sacFileName = new SACFileName(eventPath.resolve(name));
+            map.put(sacFileName, new IndexedHeader(sacFileName, entry.fields));
+        });
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * All the event folders are refreshed, and the index is written if it
+     * changed.
+     *
+     * @return (<b>unmodifiable</b>) Map of all SAC files in the index and
+     * their headers
+     * @throws IOException if an I/O error occurs
+     */
+    public Map<SACFileName, SACHeaderData> getHeaders() throws IOException {
+        refresh();
+        flush();
+        Map<SACFileName, SACHeaderData> map = new HashMap<>();
+        entries.forEach((event, eventEntries) -> {
+            Path eventPath = workPath.resolve(event);
+            eventEntries.forEach((name, entry) -> {
+                SACFileName sacFileName = new SACFileName(eventPath.resolve(name));
+                map.put(sacFileName, new IndexedHeader(sacFileName, entry.fields));
+            });
+        });
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Writes the index if it changed after the last writing.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void flush() throws IOException {
+        if (changed) write();
+    }
+
+    /**
+     * If the file is not in the index or its time or size is different from
+     * the ones in the index, the header is read and put in the index, which is
+     * written at the next {@link #flush()}.
+     *
+     * @param sacFileName in the work folder of this
+     * @return header of the sacFileName. The values in {@link #INDEXED} are
+     * from the index, if the file is in an event folder.
+     * @throws IOException if an I/O error occurs
+     */
+    public SACHeaderData getHeader(SACFileName sacFileName) throws IOException {
+        Path path = sacFileName.toPath().toAbsolutePath().normalize();
+        Path relative = workPath.relativize(path);
+        if (relative.getNameCount() != 2) return sacFileName.readHeader();
+        Map<String, Entry> eventEntries =
+                entries.computeIfAbsent(relative.getName(0).toString(), event -> new ConcurrentHashMap<>());
+        String name = relative.getName(1).toString();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+        Entry entry = eventEntries.get(name);
+        if (entry == null || entry.modified != modified || entry.size != size) {
+            eventEntries.put(name, entry = new Entry(modified, size, pack(SACReader.readHeader(path))));
+            changed = true;
+        }
+        return new IndexedHeader(sacFileName, entry.fields);
+    }
+
+    private synchronized void read(Path indexPath) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException("Unknown format");
+            int nField = in.readInt();
+            if (nField != FIELDS.length) throw new IOException("Index for other header values");
+            for (SACHeaderEnum field : FIELDS)
+                if (in.readShort() != field.ordinal()) throw new IOException("Index for other header values");
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String key = in.readUTF();
+                long modified = in.readLong();
+                long size = in.readLong();
+                byte[] fields = new byte[FIELD_LENGTH];
+                in.readFully(fields);
+                int slash = key.indexOf('/');
+                if (slash < 0) throw new IOException("Invalid entry " + key);
+                entries.computeIfAbsent(key.substring(0, slash), event -> new ConcurrentHashMap<>())
+                        .put(key.substring(slash + 1), new Entry(modified, size, fields));
+            }
+        } catch (EOFException e) {
+            throw new IOException("Unexpected end of the index", e);
+        }
+    }
+
+    /**
+     * Writes the index in a temporary file and replaces the old one.
+     * The keys in the file are the paths relative to the work folder.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private synchronized void write() throws IOException {
+        changed = false;
+        Path indexPath = workPath.resolve(FILE_NAME);
+        Path tmp = workPath.resolve(FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.write(MAGIC);
+            out.writeInt(FIELDS.length);
+            for (SACHeaderEnum field : FIELDS)
+                out.writeShort(field.ordinal());
+            Map<String, Entry> snapshot = new HashMap<>();
+            entries.forEach((event, eventEntries) -> eventEntries
+                    .forEach((name, entry) -> snapshot.put(event + "/" + name, entry)));
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> entry : snapshot.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().modified);
+                out.writeLong(entry.getValue().size);
+                out.write(entry.getValue().fields);
+            }
+        }
+        Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static int lengthOf(SACHeaderEnum sacHeaderEnum) {
+        switch (sacHeaderEnum.typeOf()) {
+            case 8:
+            case 16:
+                return sacHeaderEnum.typeOf();
+            default:
+                return 4;
+        }
+    }
+
+    /**
+     * @param header header part of a SAC file
+     * @return bytes of {@link #INDEXED} in the header
+     */
+    private static byte[] pack(ByteBuffer header) {
+        byte[] fields = new byte[FIELD_LENGTH];
+        ByteBuffer source = header.duplicate();
+        int i = 0;
+        for (SACHeaderEnum field : FIELDS) {
+            source.position(SACReader.positionOf(field));
+            source.get(fields, i, lengthOf(field));
+            i += lengthOf(field);
+        }
+        return fields;
+    }
+
+    /**
+     * @param fields bytes by {@link #pack(ByteBuffer)}
+     * @return header part of a SAC file which has only {@link #INDEXED}
+     */
+    private static ByteBuffer unpack(byte[] fields) {
+        ByteBuffer header = ByteBuffer.allocate(SACReader.HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        int i = 0;
+        for (SACHeaderEnum field : FIELDS) {
+            header.position(SACReader.positionOf(field));
+            header.put(fields, i, lengthOf(field));
+            i += lengthOf(field);
+        }
+        header.clear();
+        return header;
+    }
+
+    private static final class Entry {
+        private final long modified;
+        private final long size;
+        private final byte[] fields;
+
+        private Entry(long modified, long size, byte[] fields) {
+            this.modified = modified;
+            this.size = size;
+            this.fields = fields;
+        }
+    }
+
+    /**
+     * Header whose values in {@link #INDEXED} are from the index and the others
+     * are from the file (read when needed). Setters return a header of the file.
+     */
+    private static final class IndexedHeader implements SACHeaderData {
+
+        private final SACFileName sacFileName;
+        private final LazySACHeader indexed;
+        private volatile SACHeaderData file;
+
+        private IndexedHeader(SACFileName sacFileName, byte[] fields) {
+            this.sacFileName = sacFileName;
+            indexed = new LazySACHeader(unpack(fields));
+        }
+
+        private SACHeaderData file() {
+            if (file == null) try {
+                file = sacFileName.readHeader();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return file;
+        }
+
+        private SACHeaderData headerFor(SACHeaderEnum sacHeaderEnum) {
+            return INDEXED.contains(sacHeaderEnum) ? indexed : file();
+        }
+
+        @Override
+        public boolean getBoolean(SACHeaderEnum sacHeaderEnum) {
+            return headerFor(sacHeaderEnum).getBoolean(sacHeaderEnum);
+        }
+
+        @Override
+        public int getInt(SACHeaderEnum sacHeaderEnum) {
+            return headerFor(sacHeaderEnum).getInt(sacHeaderEnum);
+        }
+
+        @Override
+        public int getSACEnumerated(SACHeaderEnum sacHeaderEnum) {
+            return headerFor(sacHeaderEnum).getSACEnumerated(sacHeaderEnum);
+        }
+
+        @Override
+        public String getSACString(SACHeaderEnum sacHeaderEnum) {
+            return headerFor(sacHeaderEnum).getSACString(sacHeaderEnum);
+        }
+
+        @Override
+        public double getValue(SACHeaderEnum sacHeaderEnum) {
+            return headerFor(sacHeaderEnum).getValue(sacHeaderEnum);
+        }
+
+        @Override
+        public SACHeaderData setBoolean(SACHeaderEnum sacHeaderEnum, boolean bool) {
+            return file().setBoolean(sacHeaderEnum, bool);
+        }
+
+        @Override
+        public SACHeaderData setInt(SACHeaderEnum sacHeaderEnum, int value) {
+            return file().setInt(sacHeaderEnum, value);
+        }
+
+        @Override
+        public SACHeaderData setSACEnumerated(SACHeaderEnum sacHeaderEnum, int value) {
+            return file().setSACEnumerated(sacHeaderEnum, value);
+        }
+
+        @Override
+        public SACHeaderData setSACString(SACHeaderEnum sacHeaderEnum, String string) {
+            return file().setSACString(sacHeaderEnum, string);
+        }
+
+        @Override
+        public SACHeaderData setValue(SACHeaderEnum sacHeaderEnum, double value) {
+            return file().setValue(sacHeaderEnum, value);
+        }
+    }
+
+}
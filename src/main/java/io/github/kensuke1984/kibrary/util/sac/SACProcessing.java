@@ -0,0 +1,372 @@
+package io.github.kensuke1984.kibrary.util.sac;
+
+import java.util.Map;
+
+/**
+ * Operations on waveforms of SAC files in the JVM, which used to be done by
+ * SAC (rtrend, rmean, taper, interpolate, cut and rotate).
+ * <p>
+ * Methods on a waveform return a new array and do not change the input.
+ * Methods with a header map (see {@link SACUtil#readHeader(java.nio.file.Path)})
+ * update the values in the map (DELTA, B, E, NPTS, DEPMIN, DEPMAX and DEPMEN)
+ * for the returning waveform as SAC does.
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.2
+ * @see <a href=http://ds.iris.edu/ds/nodes/dmc/forms/sac/>SAC</a>
+ */
+public final class SACProcessing {
+
+    /**
+     * half width of the kernel for {@link Interpolation#SINC} in the number of
+     * (the coarser) samples
+     */
+    private static final int SINC_HALF_WIDTH = 16;
+
+    /**
+     * slopes smaller than this ratio to the largest one are regarded as this
+     * ratio in the weights of {@link Interpolation#WIGGINS} (epsilon 0.0001 in
+     * SAC)
+     */
+    private static final double WIGGINS_EPSILON = 1e-4;
+
+    /**
+     * tolerance in the number of samples for times on the edges
+     */
+    private static final double EPSILON = 1e-6;
+
+    private SACProcessing() {
+    }
+
+    /**
+     * Methods for {@link #interpolate(double[], double, double, double, int, Interpolation)}
+     */
+    public enum Interpolation {
+        /**
+         * the method of interpolate in SAC (Wiggins, 1976, BSSA). The
+         * waveform between two samples is a cubic polynomial whose slope at
+         * each sample is the average of the slopes of the neighbouring
+         * segments weighted by their inverse absolute values. As in SAC, the
+         * waveform is not low-pass filtered before down sampling.
+         */
+        WIGGINS,
+        /**
+         * linear interpolation between the two neighbouring samples
+         */
+        LINEAR,
+        /**
+         * band-limited interpolation by a sinc kernel with a Hann window. When
+         * the sampling becomes coarser, the cutoff is the new Nyquist
+         * frequency, so that it does not alias.
+         */
+        SINC
+    }
+
+    /**
+     * rtrend in SAC
+     *
+     * @param data waveform
+     * @return waveform without the least squares line
+     */
+    public static double[] removeTrend(double[] data) {
+        int n = data.length;
+        if (n < 2) return removeMean(data);
+        double center = (n - 1) / 2.0;
+        double mean = 0;
+        for (double d : data)
+            mean += d;
+        mean /= n;
+        double sxy = 0;
+        double sxx = 0;
+        for (int i = 0; i < n; i++) {
+            double x = i - center;
+            sxy += x * (data[i] - mean);
+            sxx += x * x;
+        }
+        double slope = sxy / sxx;
+        double[] detrended = new double[n];
+        for (int i = 0; i < n; i++)
+            detrended[i] = data[i] - mean - slope * (i - center);
+        return detrended;
+    }
+
+    /**
+     * rmean in SAC
+     *
+     * @param data waveform
+     * @return waveform without the mean
+     */
+    public static double[] removeMean(double[] data) {
+        if (data.length == 0) return new double[0];
+        double mean = 0;
+        for (double d : data)
+            mean += d;
+        mean /= data.length;
+        double[] removed = new double[data.length];
+        for (int i = 0; i < data.length; i++)
+            removed[i] = data[i] - mean;
+        return removed;
+    }
+
+    /**
+     * taper in SAC (HANNING). The both ends are multiplied by
+     * 0.5-0.5cos(&pi;i/m) (i = 0, ..., m-1) where m = width * NPTS. The two
+     * ends do not overlap (m &le; NPTS/2), so the middle sample of an odd
+     * NPTS is not tapered.
+     *
+     * @param data  waveform
+     * @param width of the taper at each end in [0, 0.5] (0.05 in SAC by
+     *              default)
+     * @return tapered waveform
+     */
+    public static double[] taper(double[] data, double width) {
+        if (width < 0 || 0.5 < width) throw new IllegalArgumentException("Width must be in [0, 0.5] " + width);
+        double[] tapered = data.clone();
+        int m = Math.min((int) Math.round(width * data.length), data.length / 2);
+        for (int i = 0; i < m; i++) {
+            double w = 0.5 - 0.5 * Math.cos(Math.PI * i / m);
+            tapered[i] *= w;
+            tapered[data.length - 1 - i] *= w;
+        }
+        return tapered;
+    }
+
+    /**
+     * Samples a waveform at start + j * newDelta (j = 0, ..., npts-1) where
+     * the time of data[0] is 0. Values outside the waveform are 0.
+     *
+     * @param data     waveform
+     * @param delta    [s] sampling interval of the waveform
+     * @param start    [s] time of the first new sample
+     * @param newDelta [s] new sampling interval
+     * @param npts     the number of the new samples
+     * @param method   of interpolation
+     * @return new waveform
+     */
+    public static double[] interpolate(double[] data, double delta, double start, double newDelta, int npts,
+                                       Interpolation method) {
+        if (delta <= 0 || newDelta <= 0) throw new IllegalArgumentException("Sampling intervals must be positive.");
+        if (npts < 0) throw new IllegalArgumentException("npts must not be negative.");
+        double[] interpolated = new double[npts];
+        switch (method) {
+            case WIGGINS:
+                double epsilon = WIGGINS_EPSILON * maxSlope(data);
+                for (int j = 0; j < npts; j++)
+                    interpolated[j] = wiggins(data, (start + j * newDelta) / delta, epsilon);
+                break;
+            case LINEAR:
+                for (int j = 0; j < npts; j++)
+                    interpolated[j] = linear(data, (start + j * newDelta) / delta);
+                break;
+            case SINC:
+                double ratio = Math.max(1, newDelta / delta);
+                for (int j = 0; j < npts; j++)
+                    interpolated[j] = sinc(data, (start + j * newDelta) / delta, ratio);
+                break;
+            default:
+                throw new RuntimeException("Unexpected");
+        }
+        return interpolated;
+    }
+
+    /**
+     * @param x position in the number of samples
+     */
+    private static double linear(double[] data, double x) {
+        int n = data.length;
+        if (x < -EPSILON || n - 1 + EPSILON < x || n == 0) return 0;
+        if (x <= 0) return data[0];
+        if (n - 1 <= x) return data[n - 1];
+        int i = (int) x;
+        double t = x - i;
+        return data[i] * (1 - t) + data[i + 1] * t;
+    }
+
+    /**
+     * @param x       position in the number of samples
+     * @param epsilon the smallest absolute slope in the weights
+     */
+    private static double wiggins(double[] data, double x, double epsilon) {
+        int n = data.length;
+        if (x < -EPSILON || n - 1 + EPSILON < x || n == 0) return 0;
+        if (x <= 0) return data[0];
+        if (n - 1 <= x) return data[n - 1];
+        int i = (int) x;
+        double t = x - i;
+        double t2 = t * t;
+        double t3 = t2 * t;
+        return (2 * t3 - 3 * t2 + 1) * data[i] + (t3 - 2 * t2 + t) * slopeAt(data, i, epsilon) +
+                (3 * t2 - 2 * t3) * data[i + 1] + (t3 - t2) * slopeAt(data, i + 1, epsilon);
+    }
+
+    /**
+     * @param i       index of a sample
+     * @param epsilon the smallest absolute slope in the weights
+     * @return slope at the i th sample per sample for {@link Interpolation#WIGGINS}
+     */
+    private static double slopeAt(double[] data, int i, double epsilon) {
+        if (i == 0) return data[1] - data[0];
+        if (i == data.length - 1) return data[i] - data[i - 1];
+        double before = data[i] - data[i - 1];
+        double after = data[i + 1] - data[i];
+        double weightBefore = Math.max(Math.abs(after), epsilon);
+        double weightAfter = Math.max(Math.abs(before), epsilon);
+        double weightSum = weightBefore + weightAfter;
+        return weightSum == 0 ? 0 : (weightBefore * before + weightAfter * after) / weightSum;
+    }
+
+    /**
+     * @return the largest absolute difference between neighbouring samples
+     */
+    private static double maxSlope(double[] data) {
+        double max = 0;
+        for (int i = 1; i < data.length; i++)
+            max = Math.max(max, Math.abs(data[i] - data[i - 1]));
+        return max;
+    }
+
+    /**
+     * The weights are normalized, so that a constant waveform stays constant
+     * near the edges.
+     *
+     * @param x     position in the number of samples
+     * @param ratio (&ge;1) width of the kernel in the number of samples
+     */
+    private static double sinc(double[] data, double x, double ratio) {
+        int n = data.length;
+        if (x < -EPSILON || n - 1 + EPSILON < x || n == 0) return 0;
+        double halfWidth = SINC_HALF_WIDTH * ratio;
+        int from = Math.max(0, (int) Math.ceil(x - halfWidth));
+        int to = Math.min(n - 1, (int) Math.floor(x + halfWidth));
+        double sum = 0;
+        double weightSum = 0;
+        for (int i = from; i <= to; i++) {
+            double u = (x - i) / ratio;
+            double w = (u == 0 ? 1 : Math.sin(Math.PI * u) / (Math.PI * u)) *
+                    (0.5 + 0.5 * Math.cos(Math.PI * u / SINC_HALF_WIDTH));
+            sum += w * data[i];
+            weightSum += w;
+        }
+        return weightSum == 0 ? 0 : sum / weightSum;
+    }
+
+    /**
+     * interpolate delta `newDelta` begin `newB` in SAC. The new waveform
+     * starts at newB and does not go beyond E.
+     *
+     * @param headerMap of the waveform (updated)
+     * @param data      waveform
+     * @param newDelta  [s] new DELTA
+     * @param newB      [s] new B
+     * @param method    of interpolation
+     * @return new waveform
+     */
+    public static double[] interpolate(Map<SACHeaderEnum, String> headerMap, double[] data, double newDelta,
+                                       double newB, Interpolation method) {
+        double delta = Double.parseDouble(headerMap.get(SACHeaderEnum.DELTA));
+        double b = Double.parseDouble(headerMap.get(SACHeaderEnum.B));
+        double e = b + (data.length - 1) * delta;
+        int npts = e < newB ? 0 : (int) Math.floor((e - newB) / newDelta + EPSILON) + 1;
+        double[] interpolated = interpolate(data, delta, newB - b, newDelta, npts, method);
+        headerMap.put(SACHeaderEnum.DELTA, Double.toString(newDelta));
+        setTimes(headerMap, newB, npts, newDelta);
+        setDependentValues(headerMap, interpolated);
+        return interpolated;
+    }
+
+    /**
+     * interpolate delta `newDelta` in SAC
+     *
+     * @param headerMap of the waveform (updated)
+     * @param data      waveform
+     * @param newDelta  [s] new DELTA
+     * @param method    of interpolation
+     * @return new waveform
+     */
+    public static double[] interpolate(Map<SACHeaderEnum, String> headerMap, double[] data, double newDelta,
+                                       Interpolation method) {
+        return interpolate(headerMap, data, newDelta, Double.parseDouble(headerMap.get(SACHeaderEnum.B)), method);
+    }
+
+    /**
+     * cut `start` n `npts` in SAC. The window is cut off at the ends of the
+     * waveform (cuterr usebe).
+     *
+     * @param headerMap of the waveform (updated)
+     * @param data      waveform
+     * @param start     [s] time of the first sample (rounded off to a sample)
+     * @param npts      the number of samples
+     * @return cut waveform
+     */
+    public static double[] cut(Map<SACHeaderEnum, String> headerMap, double[] data, double start, int npts) {
+        double delta = Double.parseDouble(headerMap.get(SACHeaderEnum.DELTA));
+        double b = Double.parseDouble(headerMap.get(SACHeaderEnum.B));
+        int from = Math.max(0, (int) Math.round((start - b) / delta));
+        int to = Math.min(data.length, from + Math.max(0, npts));
+        double[] cut = new double[Math.max(0, to - from)];
+        if (0 < cut.length) System.arraycopy(data, from, cut, 0, cut.length);
+        setTimes(headerMap, b + from * delta, cut.length, delta);
+        setDependentValues(headerMap, cut);
+        return cut;
+    }
+
+    /**
+     * rotate to gcp in SAC. The radial is from the source to the station
+     * (BAZ+180), and the transverse is 90 degrees clockwise from the radial.
+     * The two horizontal components must be perpendicular.
+     *
+     * @param data1   waveform of one horizontal component
+     * @param cmpaz1  [deg] CMPAZ of data1
+     * @param data2   waveform of the other horizontal component
+     * @param cmpaz2  [deg] CMPAZ of data2
+     * @param backAzimuth [deg] BAZ
+     * @return {radial, transverse}
+     */
+    public static double[][] rotate(double[] data1, double cmpaz1, double[] data2, double cmpaz2,
+                                    double backAzimuth) {
+        if (data1.length != data2.length) throw new IllegalArgumentException("NPTS are different.");
+        double radialAzimuth = Math.toRadians(backAzimuth + 180);
+        double transverseAzimuth = Math.toRadians(backAzimuth + 270);
+        double az1 = Math.toRadians(cmpaz1);
+        double az2 = Math.toRadians(cmpaz2);
+        double r1 = Math.cos(radialAzimuth - az1);
+        double r2 = Math.cos(radialAzimuth - az2);
+        double t1 = Math.cos(transverseAzimuth - az1);
+        double t2 = Math.cos(transverseAzimuth - az2);
+        double[] radial = new double[data1.length];
+        double[] transverse = new double[data1.length];
+        for (int i = 0; i < data1.length; i++) {
+            radial[i] = r1 * data1[i] + r2 * data2[i];
+            transverse[i] = t1 * data1[i] + t2 * data2[i];
+        }
+        return new double[][]{radial, transverse};
+    }
+
+    private static void setTimes(Map<SACHeaderEnum, String> headerMap, double b, int npts, double delta) {
+        headerMap.put(SACHeaderEnum.B, Double.toString(b));
+        headerMap.put(SACHeaderEnum.E, Double.toString(b + (npts - 1) * delta));
+        headerMap.put(SACHeaderEnum.NPTS, Integer.toString(npts));
+    }
+
+    /**
+     * Sets DEPMIN, DEPMAX and DEPMEN as SAC does when it writes a file.
+     *
+     * @param headerMap to set the values in
+     * @param data      waveform
+     */
+    public static void setDependentValues(Map<SACHeaderEnum, String> headerMap, double[] data) {
+        if (data.length == 0) return;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double mean = 0;
+        for (double d : data) {
+            min = Math.min(min, d);
+            max = Math.max(max, d);
+            mean += d;
+        }
+        headerMap.put(SACHeaderEnum.DEPMIN, Double.toString(min));
+        headerMap.put(SACHeaderEnum.DEPMAX, Double.toString(max));
+        headerMap.put(SACHeaderEnum.DEPMEN, Double.toString(mean / data.length));
+    }
+
+}
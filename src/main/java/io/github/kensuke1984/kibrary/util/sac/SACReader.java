@@ -0,0 +1,149 @@
+package io.github.kensuke1984.kibrary.util.sac;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reader of SAC files (little endian) through {@link ByteBuffer}s.
+ * <p>
+ * A file is read by one {@link FileChannel#read(ByteBuffer)} into a buffer
+ * on the heap (SAC files are usually too small to be worth mapping), and the
+ * waveform is decoded at once through a {@link java.nio.FloatBuffer}. Each
+ * header value is at a fixed position of the first {@link #HEADER_LENGTH}
+ * bytes and decoded only when it is requested.
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.2
+ * @see <a href=https://ds.iris.edu/files/sac-manual/manual/file_format.html>SAC
+ * data format</a>
+ */
+final class SACReader {
+
+    /**
+     * float(4) * 70, int(4) * 40, String (8) * 22 + (16)<br>
+     * 4* 70 + 4* 40 + 8* 22 +16 = 632
+     */
+    static final int HEADER_LENGTH = 632;
+
+    /**
+     * the first {@link SACHeaderEnum} of Strings
+     */
+    private static final int KSTNM_POSITION = 440;
+
+    private SACReader() {
+    }
+
+    /**
+     * @param sacPath to read
+     * @return the header part of the file
+     * @throws IOException if the file is shorter than the header, or if any
+     */
+    static ByteBuffer readHeader(Path sacPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(sacPath, StandardOpenOption.READ)) {
+            return read(channel, HEADER_LENGTH);
+        }
+    }
+
+    /**
+     * @param sacPath to read
+     * @return the whole file
+     * @throws IOException if the file is shorter than the header, or if any
+     */
+    static ByteBuffer read(Path sacPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(sacPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (Integer.MAX_VALUE < size) throw new IOException(sacPath + " is too large.");
+            return read(channel, Math.max(HEADER_LENGTH, (int) size));
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) if (channel.read(buffer) < 0) break;
+        if (buffer.position() < HEADER_LENGTH) throw new EOFException("SAC header is broken.");
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @param sac the whole file by {@link #read(Path)}
+     * @return the waveform in the file
+     * @throws IOException if the file is shorter than NPTS in the header
+     */
+    static double[] readData(ByteBuffer sac) throws IOException {
+        int npts = getInt(sac, SACHeaderEnum.NPTS);
+        if (sac.limit() < HEADER_LENGTH + 4L * npts) throw new EOFException("SAC file is shorter than NPTS " + npts);
+        float[] values = new float[npts];
+        ByteBuffer bb = sac.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        bb.position(HEADER_LENGTH);
+        bb.asFloatBuffer().get(values);
+        double[] data = new double[npts];
+        for (int i = 0; i < npts; i++)
+            data[i] = values[i];
+        return data;
+    }
+
+    /**
+     * @param sacHeaderEnum header name
+     * @return the position of the value in the header
+     */
+    static int positionOf(SACHeaderEnum sacHeaderEnum) {
+        int i = sacHeaderEnum.ordinal();
+        if (i < 110) return 4 * i;
+        switch (sacHeaderEnum) {
+            case KSTNM:
+                return KSTNM_POSITION;
+            case KEVNM:
+                return KSTNM_POSITION + 8;
+            default:
+                // after KEVNM (16 letters)
+                return KSTNM_POSITION + 8 * (i - 110 + 1);
+        }
+    }
+
+    /**
+     * @param header        header part (or the whole) of a SAC file
+     * @param sacHeaderEnum of a float value
+     * @return the float value
+     */
+    static float getFloat(ByteBuffer header, SACHeaderEnum sacHeaderEnum) {
+        return header.getFloat(positionOf(sacHeaderEnum));
+    }
+
+    /**
+     * @param header        header part (or the whole) of a SAC file
+     * @param sacHeaderEnum of an int, enumerated or logical value
+     * @return the int value
+     */
+    static int getInt(ByteBuffer header, SACHeaderEnum sacHeaderEnum) {
+        return header.getInt(positionOf(sacHeaderEnum));
+    }
+
+    /**
+     * @param header        header part (or the whole) of a SAC file
+     * @param sacHeaderEnum of a logical value
+     * @return the logical value (1 is true)
+     */
+    static boolean getBoolean(ByteBuffer header, SACHeaderEnum sacHeaderEnum) {
+        return getInt(header, sacHeaderEnum) == 1;
+    }
+
+    /**
+     * @param header        header part (or the whole) of a SAC file
+     * @param sacHeaderEnum of an alphanumeric value
+     * @return the trimmed String
+     */
+    static String getString(ByteBuffer header, SACHeaderEnum sacHeaderEnum) {
+        byte[] bytes = new byte[sacHeaderEnum == SACHeaderEnum.KEVNM ? 16 : 8];
+        ByteBuffer duplicate = header.duplicate();
+        duplicate.position(positionOf(sacHeaderEnum));
+        duplicate.get(bytes);
+        return new String(bytes).trim();
+    }
+
+}
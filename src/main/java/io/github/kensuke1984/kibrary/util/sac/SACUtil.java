@@ -2,6 +2,7 @@ package io.github.kensuke1984.kibrary.util.sac;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.OpenOption;
@@ -10,14 +11,13 @@ import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.Map;
 
-import io.github.kensuke1984.kibrary.external.SAC;
 import io.github.kensuke1984.kibrary.util.Trace;
 
 /**
  * Read/Write of a SAC file. (SAC: seismic analysis code)
  *
  * @author Kensuke Konishi
- * @version 0.1.1.1
+ * @version 0.1.3
  * @see <a href=http://ds.iris.edu/ds/nodes/dmc/forms/sac/>SAC</a>
  */
 public final class SACUtil {
@@ -27,13 +27,16 @@ public final class SACUtil {
 
     /**
      * By rotating hoge.E and hoge.N, output hoge.R and hoge.T The rotation is
-     * done by SAC.
+     * done as rotate to gcp in SAC by {@link SACProcessing}. The headers of the
+     * outputs are the one of hoge.N with CMPAZ and KCMPNM (radial, trnsvers)
+     * changed.
      *
      * @param sacEPath    SAC file which component is E. must exist.
      * @param sacNPath    SAC file which component is N. must exist.
      * @param outputRPath for output SAC with respect to R
      * @param outputTPath for output SAC with respect to T
-     * @return if the output is successful
+     * @return if the output is successful. False if NPTS, B or DELTA of the
+     * inputs are different, or the inputs are not perpendicular.
      * @throws IOException if an I/O error occurs. If sacEPath or sacNPath does not
      *                     exist, if output Paths already exist.
      */
@@ -47,27 +50,28 @@ public final class SACUtil {
 
         int npts = Integer.parseInt(mapE.get(SACHeaderEnum.NPTS));
         if (npts != Integer.parseInt(mapN.get(SACHeaderEnum.NPTS))) return false;
+        if (Double.parseDouble(mapE.get(SACHeaderEnum.B)) != Double.parseDouble(mapN.get(SACHeaderEnum.B)) ||
+                Double.parseDouble(mapE.get(SACHeaderEnum.DELTA)) !=
+                        Double.parseDouble(mapN.get(SACHeaderEnum.DELTA))) return false;
 
         double cmpazE = Double.parseDouble(mapE.get(SACHeaderEnum.CMPAZ));
         double cmpazN = Double.parseDouble(mapN.get(SACHeaderEnum.CMPAZ));
         double dCmpaz = Math.abs(cmpazE - cmpazN);
         if (dCmpaz != 90) return false;
 
-        // sacを開く
-        try (SAC sacProcess = SAC.createProcess()) {
-            Path rPath = outputRPath.getFileName();
-            Path tPath = outputTPath.getFileName();
-            sacProcess.inputCMD("cd " + sacNPath.toAbsolutePath().getParent());
-            sacProcess.inputCMD("r " + sacNPath.getFileName() + " " + sacEPath.getFileName());
-            sacProcess.inputCMD("rotate r");
-            sacProcess.inputCMD("w " + rPath + " " + tPath);
-            sacProcess.inputCMD("r " + rPath);
-            sacProcess.inputCMD("chnhdr kcmpnm \"radial\"");
-            sacProcess.inputCMD("write over");
-            sacProcess.inputCMD("r " + tPath);
-            sacProcess.inputCMD("chnhdr kcmpnm \"trnsvers\"");
-            sacProcess.inputCMD("write over");
-        }
+        double backAzimuth = Double.parseDouble(mapN.get(SACHeaderEnum.BAZ));
+        double[][] rt = SACProcessing
+                .rotate(readSACData(sacNPath), cmpazN, readSACData(sacEPath), cmpazE, backAzimuth);
+        Map<SACHeaderEnum, String> mapR = new EnumMap<>(mapN);
+        mapR.put(SACHeaderEnum.CMPAZ, Double.toString((backAzimuth + 180) % 360));
+        mapR.put(SACHeaderEnum.KCMPNM, "radial");
+        SACProcessing.setDependentValues(mapR, rt[0]);
+        Map<SACHeaderEnum, String> mapT = new EnumMap<>(mapN);
+        mapT.put(SACHeaderEnum.CMPAZ, Double.toString((backAzimuth + 270) % 360));
+        mapT.put(SACHeaderEnum.KCMPNM, "trnsvers");
+        SACProcessing.setDependentValues(mapT, rt[1]);
+        writeSAC(outputRPath, mapR, rt[0]);
+        writeSAC(outputTPath, mapT, rt[1]);
         return true;
 
     }
@@ -253,143 +257,23 @@ public final class SACUtil {
      */
     public static Map<SACHeaderEnum, String> readHeader(Path sacPath) throws IOException {
         Map<SACHeaderEnum, String> headerMap = new EnumMap<>(SACHeaderEnum.class);
-        try (SACInputStream stream = new SACInputStream(sacPath)) {
-            headerMap.put(SACHeaderEnum.DELTA, Float.toString(stream.readFloat())); // 0
-            headerMap.put(SACHeaderEnum.DEPMIN, Float.toString(stream.readFloat())); // 1
-            headerMap.put(SACHeaderEnum.DEPMAX, Float.toString(stream.readFloat())); // 2
-            headerMap.put(SACHeaderEnum.SCALE, Float.toString(stream.readFloat())); // 3
-            headerMap.put(SACHeaderEnum.ODELTA, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.B, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.E, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.O, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.A, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.num9, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.T0, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.T1, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.T2, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.T3, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.T4, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.T5, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.T6, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.T7, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.T8, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.T9, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.F, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.RESP0, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.RESP1, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.RESP2, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.RESP3, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.RESP4, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.RESP5, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.RESP6, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.RESP7, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.RESP8, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.RESP9, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.STLA, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.STLO, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.STEL, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.STDP, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.EVLA, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.EVLO, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.EVEL, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.EVDP, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.MAG, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.USER0, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.USER1, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.USER2, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.USER3, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.USER4, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.USER5, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.USER6, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.USER7, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.USER8, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.USER9, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.DIST, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.AZ, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.BAZ, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.GCARC, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.num54, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.num55, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.DEPMEN, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.CMPAZ, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.CMPINC, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.XMINIMUM, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.XMAXIMUM, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.YMINIMUM, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.YMAXIMUM, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.num63, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.num64, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.num65, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.num66, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.num67, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.num68, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.num69, Float.toString(stream.readFloat()));
-            headerMap.put(SACHeaderEnum.NZYEAR, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.NZJDAY, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.NZHOUR, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.NZMIN, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.NZSEC, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.NZMSEC, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.NVHDR, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.NORID, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.NEVID, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.NPTS, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.num80, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.NWFID, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.NXSIZE, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.NYSIZE, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.num84, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.IFTYPE, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.IDEP, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.IZTYPE, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.num88, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.IINST, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.ISTREG, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.IEVREG, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.IEVTYP, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.IQUAL, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.ISYNTH, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.IMAGTYP, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.IMAGSRC, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.num97, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.num98, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.num99, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.num100, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.num101, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.num102, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.num103, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.num104, Integer.toString(stream.readInt()));
-            headerMap.put(SACHeaderEnum.LEVEN, Boolean.toString(stream.readSACBoolean()));
-            headerMap.put(SACHeaderEnum.LPSPOL, Boolean.toString(stream.readSACBoolean()));
-            headerMap.put(SACHeaderEnum.LOVROK, Boolean.toString(stream.readSACBoolean()));
-            headerMap.put(SACHeaderEnum.LCALDA, Boolean.toString(stream.readSACBoolean()));
-            headerMap.put(SACHeaderEnum.num109, Boolean.toString(stream.readSACBoolean()));
-            headerMap.put(SACHeaderEnum.KSTNM, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KEVNM, stream.readString(16));
-            headerMap.put(SACHeaderEnum.KHOLE, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KO, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KA, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KT0, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KT1, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KT2, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KT3, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KT4, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KT5, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KT6, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KT7, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KT8, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KT9, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KF, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KUSER0, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KUSER1, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KUSER2, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KCMPNM, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KNETWK, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KDATRD, stream.readString(8));
-            headerMap.put(SACHeaderEnum.KINST, stream.readString(8));
-
+        ByteBuffer header = SACReader.readHeader(sacPath);
+        for (SACHeaderEnum sacHeaderEnum : SACHeaderEnum.values()) {
+            String value;
+            switch (sacHeaderEnum.typeOf()) {
+                case 8:
+                case 16:
+                    value = SACReader.getString(header, sacHeaderEnum);
+                    break;
+                default:
+                    int i = sacHeaderEnum.ordinal();
+                    // float(4) * 70, int(4) * 35, logical(4) * 5
+                    if (i < 70) value = Float.toString(SACReader.getFloat(header, sacHeaderEnum));
+                    else if (i < 105) value = Integer.toString(SACReader.getInt(header, sacHeaderEnum));
+                    else value = Boolean.toString(SACReader.getBoolean(header, sacHeaderEnum));
+            }
+            headerMap.put(sacHeaderEnum, value);
         }
-
         return headerMap;
     }
 
@@ -401,19 +285,7 @@ public final class SACUtil {
      * @throws IOException if sacPath does not exist or if an I/O error occurs
      */
     public static double[] readSACData(Path sacPath) throws IOException {
-        try (SACInputStream stream = new SACInputStream(sacPath)) {
-            stream.skipBytes(79 * 4);
-            int npts = stream.readInt();
-            double[] data = new double[npts];
-            stream.skipBytes(632 - 80 * 4);
-            // stream.skipBytes(632);
-            // float(4) * 70, int(4) * 40, String (8) * 22 + (16)
-            // 4* 70 + 4* 40 + 8* 22 +16 = 632
-            for (int i = 0; i < npts; i++)
-                data[i] = stream.readFloat();
-            return data;
-        }
-
+        return SACReader.readData(SACReader.read(sacPath));
     }
 
 }
@@ -7,6 +7,7 @@ import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.Map;
@@ -16,13 +17,13 @@ import java.util.function.Predicate;
 
 import org.apache.commons.math3.util.FastMath;
 
+import io.github.kensuke1984.kibrary.butterworth.BandPassFilter;
 import io.github.kensuke1984.kibrary.butterworth.ButterworthFilter;
 import io.github.kensuke1984.kibrary.datacorrection.SourceTimeFunction;
 import io.github.kensuke1984.kibrary.datacorrection.SCARDEC;
 import io.github.kensuke1984.kibrary.datacorrection.SCARDEC.SCARDEC_ID;
 import io.github.kensuke1984.kibrary.util.Raypath;
 import io.github.kensuke1984.kibrary.util.Station;
-import io.github.kensuke1984.kibrary.util.Trace;
 import io.github.kensuke1984.kibrary.util.Utilities;
 import io.github.kensuke1984.kibrary.util.globalcmt.GlobalCMTID;
 import io.github.kensuke1984.kibrary.util.sac.SACComponent;
@@ -40,7 +41,7 @@ import io.github.kensuke1984.kibrary.util.sac.SACHeaderEnum;
  * in Global CMT catalogue, the information for the event is written in SAC.
  * 
  * 
- * @version 0.1.6.1
+ * @version 0.1.7
  * 
  * @author Kensuke Konishi
  * @see <a href=http://ds.iris.edu/ds/nodes/dmc/forms/sac/>SAC</a>
@@ -231,11 +232,6 @@ public class SACMaker implements Runnable {
 			return Double.parseDouble(headerMap.get(sacHeaderEnum));
 		}
 
-		@Override
-		public Trace createTrace() {
-			throw new RuntimeException("UnEXPEcteD");
-		}
-
 		@Override
 		public SAC setBoolean(SACHeaderEnum sacHeaderEnum, boolean bool) {
 			if (headerMap.containsKey(sacHeaderEnum))
@@ -246,7 +242,15 @@ public class SACMaker implements Runnable {
 
 		@Override
 		public SAC applyButterworthFilter(ButterworthFilter filter) {
-			throw new RuntimeException("UnEXPEcteD");
+			SAC sac = clone();
+			if (filter instanceof BandPassFilter) {
+				BandPassFilter bp = (BandPassFilter) filter;
+				double delta = getValue(SACHeaderEnum.DELTA);
+				sac.headerMap.put(SACHeaderEnum.USER0, String.valueOf(2.0 * Math.PI * delta / bp.getOmegaH()));
+				sac.headerMap.put(SACHeaderEnum.USER1, String.valueOf(2.0 * Math.PI * delta / bp.getOmegaL()));
+			}
+			sac.waveData = filter.applyFilter(waveData);
+			return sac;
 		}
 
 		@Override
@@ -490,6 +494,28 @@ public class SACMaker implements Runnable {
 		}
 	}
 
+	/**
+	 * Creates the synthetics as {@link #run()} in memory without writing SAC
+	 * files. The temporal partials are not created.
+	 * 
+	 * @return (<b>unmodifiable</b>) Map of the synthetics for the components
+	 */
+	public Map<SACComponent, SACData> toSACData() {
+		setInformation();
+		SAC sac = new SAC();
+		setHeaderOn(sac);
+		SpcBody body = primeSPC.getSpcBodyList().get(0).copy();
+		if (secondarySPC != null)
+			body.addBody(secondarySPC.getSpcBodyList().get(0));
+
+		compute(body);
+
+		Map<SACComponent, SACData> sacMap = new EnumMap<>(SACComponent.class);
+		for (SACComponent component : components)
+			sacMap.put(component, sac.of(component).setSACData(body.getTimeseries(component)));
+		return Collections.unmodifiableMap(sacMap);
+	}
+
 	/**
 	 * set headers on the input sacFile
 	 * 
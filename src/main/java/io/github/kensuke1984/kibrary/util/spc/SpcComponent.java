@@ -1,20 +1,16 @@
 package io.github.kensuke1984.kibrary.util.spc;
 
-import java.util.Arrays;
-
 import org.apache.commons.math3.complex.Complex;
-import org.apache.commons.math3.transform.DftNormalization;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.TransformType;
 import org.apache.commons.math3.util.FastMath;
 
 import io.github.kensuke1984.kibrary.datacorrection.SourceTimeFunction;
+import io.github.kensuke1984.kibrary.math.FastFourierTransform;
 
 /**
  * 
  * Data for one element in one {@link SpcBody} in a {@link SpectrumFile}
  * 
- * @version 0.1.5.3
+ * @version 0.1.6
  * 
  * @author Kensuke Konishi
  * 
@@ -53,7 +49,7 @@ public class SpcComponent {
 	/**
 	 * 時間領域のデータ u[i] i=[0,nptsInTimedomain-1]
 	 */
-	private Complex[] uTime;
+	private double[] uTime;
 
 	SpcComponent(int np) {
 		this.np = np;
@@ -99,7 +95,7 @@ public class SpcComponent {
 	public void amplitudeCorrection(double tlen) {
 		double tmp = nptsInTimeDomain * 1e3 / tlen;
 		for (int i = 0; i < nptsInTimeDomain; i++)
-			uTime[i] = uTime[i].multiply(tmp);
+			uTime[i] *= tmp;
 
 	}
 
@@ -114,7 +110,7 @@ public class SpcComponent {
 	public void applyGrowingExponential(double omegai, double tlen) {
 		double constant = omegai * tlen / nptsInTimeDomain;
 		for (int i = 0; i < nptsInTimeDomain; i++)
-			uTime[i] = uTime[i].multiply(FastMath.exp(constant * i));
+			uTime[i] *= FastMath.exp(constant * i);
 	}
 
 	/**
@@ -156,7 +152,7 @@ public class SpcComponent {
 	 * @return the data in time_domain
 	 */
 	public double[] getTimeseries() {
-		return Arrays.stream(uTime).mapToDouble(Complex::getReal).toArray();
+		return uTime.clone();
 	}
 
 	private int getNPTS(int lsmooth) {
@@ -168,26 +164,9 @@ public class SpcComponent {
 	public void toTimeDomain(int lsmooth) {
 		nptsInTimeDomain = getNPTS(lsmooth);
 
-		int nnp = nptsInTimeDomain / 2;
-
-		FastFourierTransformer fft = new FastFourierTransformer(DftNormalization.STANDARD);
-
-		// pack to temporary Complex array
-		Complex[] data = new Complex[nptsInTimeDomain];
-		System.arraycopy(uFreq, 0, data, 0, np + 1);
-
-		// set blank due to lsmooth
-		Arrays.fill(data, np + 1, nnp + 1, Complex.ZERO);
-
-		// set values for imaginary frequency  F[i] = F[N-i]
-		for (int i = 0; i < nnp - 1; i++)
-			data[nnp + 1 + i] = data[nnp - 1 - i].conjugate();
-
-		// fast fourier transformation
-		data = fft.transform(data, TransformType.INVERSE);
-
-		// put values in time domain into collections
-		uTime = data;
+		// blank due to lsmooth and F[N-i] = conjugate of F[i]
+		uTime = new double[nptsInTimeDomain];
+		FastFourierTransform.of(nptsInTimeDomain).inverseRealTransform(uFreq, np + 1, uTime);
 	}
 
 }
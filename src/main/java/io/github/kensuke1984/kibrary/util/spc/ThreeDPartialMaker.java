@@ -1,16 +1,15 @@
 package io.github.kensuke1984.kibrary.util.spc;
 
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.math3.complex.Complex;
-import org.apache.commons.math3.transform.DftNormalization;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.TransformType;
 
 import io.github.kensuke1984.kibrary.datacorrection.SourceTimeFunction;
 import io.github.kensuke1984.kibrary.dsminformation.PolynomialStructure;
+import io.github.kensuke1984.kibrary.math.FastFourierTransform;
 import io.github.kensuke1984.kibrary.util.Earth;
 import io.github.kensuke1984.kibrary.util.HorizontalPosition;
 import io.github.kensuke1984.kibrary.util.Location;
@@ -21,9 +20,13 @@ import io.github.kensuke1984.kibrary.util.sac.SACComponent;
  * {@link BackwardPropagation}<br>
  * <p>
  * U<sub>j,q</sub> C<sub>jqrs</sub> &eta;<sub>ri,s</sub>
+ * <p>
+ * The spectra for &mu; and Q of all the bodies are computed once at the first
+ * request for Q and shared by the following bodies and components. They are
+ * softly referenced, so they are recomputed if the memory runs short.
  * 
  * 
- * @version 0.0.2.1
+ * @version 0.0.4.1
  * 
  * @author Kensuke Konishi
  * 
@@ -184,16 +187,18 @@ public class ThreeDPartialMaker {
 	 * @return Ui(t) u[t] 時間領域
 	 */
 	public double[] createPartial(SACComponent component, int iBody, PartialType type) {
-		Complex[] partial_frequency = type == PartialType.Q ? computeQpartial(component, iBody)
-				: computeTensorCulculus(component, iBody, type);
+		Complex[] partial_frequency;
+		DSMOutput muSpectrum;
+		if (type == PartialType.Q)
+			partial_frequency = computeQpartial(component, iBody);
+		else if (type == PartialType.MU && (muSpectrum = muSpectrumReference.get()) != null)
+			partial_frequency = muSpectrum.getSpcBodyList().get(iBody).getSpcComponent(component)
+					.getValueInFrequencyDomain();
+		else
+			partial_frequency = computeTensorCulculus(component, iBody, type);
 		if (null != sourceTimeFunction)
 			partial_frequency = sourceTimeFunction.convolve(partial_frequency);
-		Complex[] partial_time = toTimedomain(partial_frequency);
-		double[] partialdouble = new double[npts];
-		for (int j = 0; j < npts; j++)
-			partialdouble[j] = partial_time[j].getReal();
-		Arrays.stream(partial_time).mapToDouble(Complex::abs).toArray();
-		return partialdouble;
+		return toTimedomain(partial_frequency);
 	}
 
 	private FujiConversion fujiConversion;
@@ -204,16 +209,41 @@ public class ThreeDPartialMaker {
 	 * @param structure
 	 *            {@link PolynomialStructure}
 	 */
-	public void setStructure(PolynomialStructure structure) {
+	public synchronized void setStructure(PolynomialStructure structure) {
 		fujiConversion = new FujiConversion(structure);
+		qSpectrumReference = new SoftReference<>(null);
 	}
 
-	private Complex[] computeQpartial(SACComponent component, int iBody) {
+	/**
+	 * spectrum for &mu; of all the bodies. It is read without the lock in
+	 * {@link #createPartial}, so volatile.
+	 */
+	private volatile SoftReference<DSMOutput> muSpectrumReference = new SoftReference<>(null);
+
+	/**
+	 * spectrum for Q of all the bodies converted from the one for &mu;
+	 */
+	private volatile SoftReference<DSMOutput> qSpectrumReference = new SoftReference<>(null);
+
+	/**
+	 * @return spectrum for Q (computed if it is not cached)
+	 */
+	private synchronized DSMOutput getQSpectrum() {
+		DSMOutput qSpectrum = qSpectrumReference.get();
+		if (qSpectrum != null)
+			return qSpectrum;
 		if (fujiConversion == null)
 			fujiConversion = new FujiConversion(PolynomialStructure.PREM);
-		DSMOutput qspec = fujiConversion.convert(toSpectrum(PartialType.MU));
-		return qspec.getSpcBodyList().get(iBody).getSpcComponent(component).getValueInFrequencyDomain();
+		DSMOutput muSpectrum = muSpectrumReference.get();
+		if (muSpectrum == null)
+			muSpectrumReference = new SoftReference<>(muSpectrum = toSpectrum(PartialType.MU));
+		qSpectrum = fujiConversion.convert(muSpectrum);
+		qSpectrumReference = new SoftReference<>(qSpectrum);
+		return qSpectrum;
+	}
 
+	private Complex[] computeQpartial(SACComponent component, int iBody) {
+		return getQSpectrum().getSpcBodyList().get(iBody).getSpcComponent(component).getValueInFrequencyDomain();
 	}
 
 	/**
@@ -298,10 +328,10 @@ public class ThreeDPartialMaker {
 	 * 時間領域のデータにGrowingExponentialを考慮する
 	 * 
 	 */
-	private void applyGrowingExponential(Complex[] uTime) {
+	private void applyGrowingExponential(double[] uTime) {
 		final double x = bp.tlen() * fp.omegai() / npts;
 		for (int i = 0; i < npts; i++)
-			uTime[i] = uTime[i].multiply(Math.exp(i * x));
+			uTime[i] *= Math.exp(i * x);
 
 	}
 
@@ -311,10 +341,10 @@ public class ThreeDPartialMaker {
 	 * @param tlen
 	 *            time length
 	 */
-	private void correctAmplitude(Complex[] uTime) {
+	private void correctAmplitude(double[] uTime) {
 		final double tmp = npts * 1e3 / bp.tlen();
 		for (int i = 0; i < npts; i++)
-			uTime[i] = uTime[i].multiply(tmp);
+			uTime[i] *= tmp;
 	}
 
 	/**
@@ -324,8 +354,8 @@ public class ThreeDPartialMaker {
 	 * @param spector
 	 * @return
 	 */
-	private Complex[] toTimedomain(Complex[] spector) {
-		Complex[] partial_time = inverseFourierTransform(spector);
+	private double[] toTimedomain(Complex[] spector) {
+		double[] partial_time = inverseFourierTransform(spector);
 		applyGrowingExponential(partial_time);
 		correctAmplitude(partial_time);
 		return partial_time;
@@ -336,28 +366,13 @@ public class ThreeDPartialMaker {
 	 * 
 	 * @param complex
 	 *            waveform in frequency domain
-	 * @return 時間領域の複素数列
+	 * @return 時間領域の実数列
 	 */
-	private Complex[] inverseFourierTransform(Complex[] complex) {
-		// must be tested
-		int nnp = fp.np() * lsmooth;
-		FastFourierTransformer fft = new FastFourierTransformer(DftNormalization.STANDARD);
-
-		Complex[] data = new Complex[nnp * 2];
-
-		// pack to temporary Complex array
-		System.arraycopy(complex, 0, data, 0, fp.np() + 1);
-
-		// set blank due to lsmooth
-		Arrays.fill(data, fp.np() + 1, nnp + 1, Complex.ZERO);
-
-		// set values for imaginary frequency
-		for (int i = 0; i < nnp - 1; i++)
-			data[nnp + i + 1] = data[nnp - i - 1].conjugate();
-
-		// fast fourier transformation
-		return fft.transform(data, TransformType.INVERSE); // check
-
+	private double[] inverseFourierTransform(Complex[] complex) {
+		// blank due to lsmooth and F[N-i] = conjugate of F[i]
+		double[] data = new double[npts];
+		FastFourierTransform.of(npts).inverseRealTransform(complex, fp.np() + 1, data);
+		return data;
 	}
 
 	/**
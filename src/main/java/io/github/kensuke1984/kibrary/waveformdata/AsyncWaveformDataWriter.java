@@ -0,0 +1,246 @@
+package io.github.kensuke1984.kibrary.waveformdata;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Front of a {@link WaveformDataWriter} for many producer threads.
+ * <p>
+ * IDs with their waveforms are put in a lock-free queue, and a single I/O
+ * thread writes them with the {@link WaveformDataWriter} in the order of the
+ * queue, so that START_BYTEs are assigned one after another by the thread.
+ * Producers do not wait for the writing. The number of IDs in the queue is
+ * limited, and producers wait while the queue is full.
+ * <p>
+ * Errors in the I/O thread are thrown to producers by the next method. All the
+ * IDs must be added before {@link #close()}, which writes all of them and
+ * closes the {@link WaveformDataWriter}.
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.2
+ */
+public final class AsyncWaveformDataWriter implements Closeable, Flushable {
+
+    /**
+     * the default number of IDs in the queue
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final Object END = new Object();
+
+    private final WaveformDataWriter writer;
+
+    private final Queue<Object> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * free slots in the queue
+     */
+    private final Semaphore slots;
+
+    private final Thread ioThread;
+
+    /**
+     * if the I/O thread is going to park
+     */
+    private volatile boolean waiting;
+
+    private volatile IOException failure;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param writer to write IDs with
+     */
+    public AsyncWaveformDataWriter(WaveformDataWriter writer) {
+        this(writer, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param writer   to write IDs with
+     * @param capacity the maximum number of IDs in the queue
+     */
+    public AsyncWaveformDataWriter(WaveformDataWriter writer, int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive.");
+        this.writer = writer;
+        slots = new Semaphore(capacity);
+        ioThread = new Thread(this::write, "WaveformDataWriter " + writer.getDataPath().getFileName());
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    public Path getIDPath() {
+        return writer.getIDPath();
+    }
+
+    public Path getDataPath() {
+        return writer.getDataPath();
+    }
+
+    /**
+     * @param basicID StartByte will be ignored and set properly in the output file.
+     * @throws IOException if an I/O error has occurred in writing or this is closed
+     */
+    public void addBasicID(BasicID basicID) throws IOException {
+        put(basicID);
+    }
+
+    /**
+     * @param partialID {@link PartialID} must contain waveform data. StartByte will
+     *                  be ignored and set properly in the output file.
+     * @throws IOException if an I/O error has occurred in writing or this is closed
+     */
+    public void addPartialID(PartialID partialID) throws IOException {
+        put(partialID);
+    }
+
+    /**
+     * Waits until all the IDs added before are written in the files.
+     *
+     * @throws IOException if an I/O error has occurred in writing or this is closed
+     */
+    @Override
+    public void flush() throws IOException {
+        request(false);
+    }
+
+    /**
+     * Waits until all the IDs added before are written in the files and
+     * forced to the storage.
+     *
+     * @return the checkpoint after the IDs added before
+     * @throws IOException if an I/O error has occurred in writing or this is closed
+     * @see WaveformDataWriter#checkpoint()
+     */
+    public WaveformDataWriter.Checkpoint checkpoint() throws IOException {
+        return request(true);
+    }
+
+    private WaveformDataWriter.Checkpoint request(boolean checkpointing) throws IOException {
+        Request request = new Request(checkpointing);
+        put(request);
+        try {
+            request.latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted in flushing " + getDataPath());
+        }
+        checkFailure();
+        return request.checkpoint;
+    }
+
+    /**
+     * @return the checkpoint at the end of the files after {@link #close()},
+     * otherwise null
+     */
+    public WaveformDataWriter.Checkpoint getLastCheckpoint() {
+        return writer.getLastCheckpoint();
+    }
+
+    /**
+     * Writes all the IDs in the queue and closes the {@link WaveformDataWriter}.
+     *
+     * @throws IOException if an I/O error has occurred in writing
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed.compareAndSet(false, true)) return;
+        offer(END);
+        boolean interrupted = false;
+        while (ioThread.isAlive())
+            try {
+                ioThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        if (interrupted) Thread.currentThread().interrupt();
+        try {
+            writer.close();
+        } catch (IOException e) {
+            if (failure == null) failure = e;
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) throw new IOException("Failed in writing " + getDataPath(), e);
+    }
+
+    private void put(Object element) throws IOException {
+        if (closed.get()) throw new IOException(getDataPath() + " is already closed.");
+        checkFailure();
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted in waiting for " + getDataPath());
+        }
+        offer(element);
+    }
+
+    private void offer(Object element) {
+        queue.offer(element);
+        if (waiting) LockSupport.unpark(ioThread);
+    }
+
+    private Object take() {
+        Object element;
+        while ((element = queue.poll()) == null) {
+            waiting = true;
+            element = queue.poll();
+            if (element == null) LockSupport.park(this);
+            waiting = false;
+            if (element != null) break;
+        }
+        return element;
+    }
+
+    /**
+     * The I/O thread. After an error, elements are only taken from the queue,
+     * so that producers do not wait forever.
+     */
+    private void write() {
+        for (Object element = take(); element != END; element = take()) {
+            try {
+                if (failure == null) {
+                    if (element instanceof PartialID) writer.addPartialID((PartialID) element);
+                    else if (element instanceof BasicID) writer.addBasicID((BasicID) element);
+                    else {
+                        Request request = (Request) element;
+                        if (request.checkpointing) request.checkpoint = writer.checkpoint();
+                        else writer.flush();
+                    }
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new IOException(e);
+            }
+            if (element instanceof Request) ((Request) element).latch.countDown();
+            slots.release();
+        }
+    }
+
+    /**
+     * flush or checkpoint
+     */
+    private static final class Request {
+        private final boolean checkpointing;
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile WaveformDataWriter.Checkpoint checkpoint;
+
+        private Request(boolean checkpointing) {
+            this.checkpointing = checkpointing;
+        }
+    }
+
+}
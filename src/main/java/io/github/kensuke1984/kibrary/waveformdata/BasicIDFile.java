@@ -50,7 +50,7 @@ import io.github.kensuke1984.kibrary.util.sac.WaveformType;
  * TODO sampling Hz
  *
  * @author Kensuke Konishi
- * @version 0.3.0.3
+ * @version 0.3.0.4
  * @see {@link BasicID}
  */
 public final class BasicIDFile {
@@ -110,7 +110,7 @@ public final class BasicIDFile {
      * @param idPath   {@link Path} of an ID file, if it does not exist, an
      *                 IOException
      * @param dataPath {@link Path} of an data file, if it does not exist, an
-     *                 IOException
+     *                 IOException. The {@link WaveformEncoding} is detected.
      * @return Array of {@link BasicID} containing waveform data
      * @throws IOException if an I/O error happens,
      */
@@ -118,21 +118,18 @@ public final class BasicIDFile {
         BasicID[] ids = readBasicIDFile(idPath);
         long dataSize = Files.size(dataPath);
         long t = System.nanoTime();
-        BasicID lastID = ids[ids.length - 1];
-        if (dataSize != lastID.START_BYTE + lastID.NPTS * 8)
-            throw new RuntimeException(dataPath + " is not invalid for " + idPath);
-        try (BufferedInputStream bis = new BufferedInputStream(Files.newInputStream(dataPath))) {
+        WaveformEncoding encoding = WaveformEncoding.of(dataPath);
+        encoding.check(idPath, dataPath, ids);
+        long[] blockSizes = WaveformEncoding.blockSizes(ids, dataSize);
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(dataPath)))) {
             byte[][] bytes = new byte[ids.length][];
-            Arrays.parallelSetAll(bytes, i -> new byte[ids[i].NPTS * 8]);
+            Arrays.parallelSetAll(bytes, i -> new byte[(int) blockSizes[i]]);
+            dis.skipBytes(encoding.getHeaderSize());
             for (int i = 0; i < ids.length; i++)
-                bis.read(bytes[i]);
+                dis.readFully(bytes[i]);
             IntStream.range(0, ids.length).parallel().forEach(i -> {
                 BasicID id = ids[i];
-                ByteBuffer bb = ByteBuffer.wrap(bytes[i]);
-                double[] data = new double[id.NPTS];
-                for (int j = 0; j < data.length; j++)
-                    data[j] = bb.getDouble();
-                ids[i] = id.setData(data);
+                ids[i] = id.setData(encoding.decode(ByteBuffer.wrap(bytes[i]), id.NPTS));
             });
         }
         System.err.println("Reading waveform done in " + Utilities.toTimeString(System.nanoTime() - t));
@@ -140,11 +137,12 @@ public final class BasicIDFile {
     }
 
     /**
-     * @param idPath {@link Path} of an ID file
+     * @param idPath {@link Path} of an ID file (the record or {@link ColumnarIDFile} format)
      * @return Array of {@link BasicID} without waveform data
      * @throws IOException if an I/O error occurs
      */
     public static BasicID[] readBasicIDFile(Path idPath) throws IOException {
+        if (ColumnarIDFile.isColumnar(idPath)) return ColumnarIDFile.read(idPath).toBasicIDs();
         try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(idPath)))) {
             long t = System.nanoTime();
             long fileSize = Files.size(idPath);
@@ -0,0 +1,349 @@
+package io.github.kensuke1984.kibrary.waveformdata;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+import io.github.kensuke1984.kibrary.util.Location;
+import io.github.kensuke1984.kibrary.util.Station;
+import io.github.kensuke1984.kibrary.util.Utilities;
+import io.github.kensuke1984.kibrary.util.globalcmt.GlobalCMTID;
+import io.github.kensuke1984.kibrary.util.sac.SACComponent;
+import io.github.kensuke1984.kibrary.util.sac.WaveformType;
+import io.github.kensuke1984.kibrary.util.spc.PartialType;
+
+/**
+ * ID file in a columnar format.
+ * <p>
+ * The file is written by {@link WaveformDataWriter} when it is created as
+ * columnar, and {@link BasicIDFile#readBasicIDFile(Path)} and
+ * {@link PartialIDFile#readPartialIDFile(Path)} read it as well as the record
+ * format.
+ * <p>
+ * The file contains<br>
+ * {@link #MAGIC}(4), kind (1: 0 for BasicID, 1 for PartialID)<br>
+ * The same header as the record format (numbers, stations, events, period
+ * ranges and perturbation points)<br>
+ * Blocks of IDs, each of which is<br>
+ * Number of IDs in the block n(4)<br>
+ * Columns of n values each: (BasicID only) obs or syn(1), station number(2),
+ * event number(2), component(1), period range(1), start time(4), number of
+ * points(4), sampling hz(4), convoluted or not(1), position of a waveform(8),
+ * (PartialID only) type of partial(1), point of perturbation(2)<br>
+ * 0(4) as the end of the blocks
+ * <p>
+ * Blocks are written one after another while IDs are added, so the IDs are
+ * not kept in memory and a file can be resumed from a checkpoint between
+ * blocks. A file without the end of the blocks is not closed and can not be
+ * read. Bytes after the end are ignored.
+ * <p>
+ * The columns are decoded at once into primitive arrays. Lookups by (station,
+ * event, component, period range) and by (type of partial, point of
+ * perturbation) are made in memory by {@link io.github.kensuke1984.kibrary.inversion.Dvector}
+ * and {@link io.github.kensuke1984.kibrary.inversion.ObservationEquation}
+ * for the IDs they use.
+ * <p>
+ * <b>This class is IMMUTABLE</b>
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.3
+ */
+public final class ColumnarIDFile {
+
+    /**
+     * Magic number at the top of a columnar ID file. As a short it is negative
+     * so it never matches the number of stations in the record format.
+     */
+    public static final int MAGIC = 0xCD1D0002;
+
+    /**
+     * the maximum number of IDs in a block
+     */
+    static final int BLOCK_SIZE = 4096;
+
+    private final boolean partial;
+
+    private final Station[] stations;
+    private final GlobalCMTID[] globalCMTIDs;
+    private final double[][] periodRanges;
+    private final Location[] perturbationLocations;
+
+    private final byte[] obs;
+    private final short[] station;
+    private final short[] globalCMTID;
+    private final byte[] component;
+    private final byte[] periodRange;
+    private final float[] startTime;
+    private final int[] npts;
+    private final float[] samplingHz;
+    private final byte[] convolute;
+    private final long[] startByte;
+    private final byte[] partialType;
+    private final short[] perturbationLocation;
+
+    /**
+     * @param path {@link Path} of an ID file
+     * @return if the file is in the columnar format
+     * @throws IOException if an I/O error occurs
+     */
+    public static boolean isColumnar(Path path) throws IOException {
+        if (Files.size(path) < 4) return false;
+        try (InputStream is = Files.newInputStream(path)) {
+            byte[] bytes = new byte[4];
+            return is.read(bytes) == 4 && ByteBuffer.wrap(bytes).getInt() == MAGIC;
+        }
+    }
+
+    /**
+     * @param idPath {@link Path} of a columnar ID file
+     * @return {@link ColumnarIDFile} in the file
+     * @throws IOException if an I/O error occurs
+     */
+    public static ColumnarIDFile read(Path idPath) throws IOException {
+        long t = System.nanoTime();
+        ByteBuffer bb;
+        try (FileChannel channel = FileChannel.open(idPath, StandardOpenOption.READ)) {
+            bb = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (bb.getInt() != MAGIC) throw new RuntimeException(idPath + " is not a columnar ID file.");
+        ColumnarIDFile file = new ColumnarIDFile(bb, idPath);
+        System.err.println("Reading " + file.size() + " columnar IDs done in " +
+                Utilities.toTimeString(System.nanoTime() - t));
+        return file;
+    }
+
+    private ColumnarIDFile(ByteBuffer bb, Path idPath) {
+        partial = 0 < bb.get();
+        stations = new Station[bb.getShort()];
+        globalCMTIDs = new GlobalCMTID[bb.getShort()];
+        periodRanges = new double[bb.getShort()][2];
+        perturbationLocations = new Location[partial ? bb.getShort() : 0];
+        byte[] stationBytes = new byte[24];
+        for (int i = 0; i < stations.length; i++) {
+            bb.get(stationBytes);
+            stations[i] = Station.createStation(stationBytes);
+        }
+        byte[] cmtIDBytes = new byte[15];
+        for (int i = 0; i < globalCMTIDs.length; i++) {
+            bb.get(cmtIDBytes);
+            globalCMTIDs[i] = new GlobalCMTID(new String(cmtIDBytes).trim());
+        }
+        for (int i = 0; i < periodRanges.length; i++) {
+            periodRanges[i][0] = bb.getFloat();
+            periodRanges[i][1] = bb.getFloat();
+        }
+        for (int i = 0; i < perturbationLocations.length; i++) {
+            perturbationLocations[i] = new Location(bb.getFloat(), bb.getFloat(), bb.getFloat());
+        }
+        int n = countIDs(bb, bb.position(), partial, idPath);
+        obs = partial ? null : new byte[n];
+        station = new short[n];
+        globalCMTID = new short[n];
+        component = new byte[n];
+        periodRange = new byte[n];
+        startTime = new float[n];
+        npts = new int[n];
+        samplingHz = new float[n];
+        convolute = new byte[n];
+        startByte = new long[n];
+        partialType = partial ? new byte[n] : null;
+        perturbationLocation = partial ? new short[n] : null;
+        for (int from = 0, size; 0 < (size = bb.getInt()); from += size) {
+            if (!partial) bb.get(obs, from, size);
+            getShorts(bb, station, from, size);
+            getShorts(bb, globalCMTID, from, size);
+            bb.get(component, from, size);
+            bb.get(periodRange, from, size);
+            bb.asFloatBuffer().get(startTime, from, size);
+            bb.position(bb.position() + 4 * size);
+            bb.asIntBuffer().get(npts, from, size);
+            bb.position(bb.position() + 4 * size);
+            bb.asFloatBuffer().get(samplingHz, from, size);
+            bb.position(bb.position() + 4 * size);
+            bb.get(convolute, from, size);
+            bb.asLongBuffer().get(startByte, from, size);
+            bb.position(bb.position() + 8 * size);
+            if (partial) {
+                bb.get(partialType, from, size);
+                getShorts(bb, perturbationLocation, from, size);
+            }
+        }
+    }
+
+    /**
+     * @param partial if the IDs are {@link PartialID}s
+     * @return [byte] size of an ID in a block
+     */
+    static int bytesPerID(boolean partial) {
+        return partial ? PartialIDFile.oneIDByte : BasicIDFile.oneIDByte;
+    }
+
+    /**
+     * @param bb       of a columnar ID file
+     * @param position of the first block
+     * @param partial  if the IDs are {@link PartialID}s
+     * @param idPath   {@link Path} of the file (for a message)
+     * @return the number of IDs in the blocks
+     */
+    private static int countIDs(ByteBuffer bb, int position, boolean partial, Path idPath) {
+        long n = 0;
+        for (int size; ; position += 4 + size * bytesPerID(partial)) {
+            if (bb.limit() < position + 4) throw new RuntimeException(idPath + " is not closed.");
+            if ((size = bb.getInt(position)) <= 0) break;
+            if (bb.limit() < position + 4 + size * bytesPerID(partial))
+                throw new RuntimeException(idPath + " is not closed.");
+            n += size;
+        }
+        if (Integer.MAX_VALUE < n) throw new RuntimeException(idPath + " has too many IDs.");
+        return (int) n;
+    }
+
+    private static void getShorts(ByteBuffer bb, short[] array, int from, int n) {
+        bb.asShortBuffer().get(array, from, n);
+        bb.position(bb.position() + 2 * n);
+    }
+
+    /**
+     * @return the number of IDs
+     */
+    public int size() {
+        return station.length;
+    }
+
+    /**
+     * @return if the IDs are {@link PartialID}s
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * @param i index of an ID
+     * @return i th ID (without waveform data)
+     */
+    public BasicID getBasicID(int i) {
+        if (partial) return getPartialID(i);
+        double[] period = periodRanges[periodRange[i]];
+        return new BasicID(0 < obs[i] ? WaveformType.OBS : WaveformType.SYN, samplingHz[i], startTime[i], npts[i],
+                stations[station[i]], globalCMTIDs[globalCMTID[i]], SACComponent.getComponent(component[i]),
+                period[0], period[1], startByte[i], 0 < convolute[i]);
+    }
+
+    /**
+     * @param i index of an ID
+     * @return i th ID (without waveform data)
+     */
+    public PartialID getPartialID(int i) {
+        if (!partial) throw new RuntimeException("The IDs are not for partial derivatives.");
+        double[] period = periodRanges[periodRange[i]];
+        return new PartialID(stations[station[i]], globalCMTIDs[globalCMTID[i]],
+                SACComponent.getComponent(component[i]), samplingHz[i], startTime[i], npts[i], period[0], period[1],
+                startByte[i], 0 < convolute[i], perturbationLocations[perturbationLocation[i]],
+                PartialType.getType(partialType[i]));
+    }
+
+    /**
+     * @return all the IDs (without waveform data) in the order in the file
+     */
+    public BasicID[] toBasicIDs() {
+        BasicID[] ids = new BasicID[size()];
+        IntStream.range(0, ids.length).parallel().forEach(i -> ids[i] = getBasicID(i));
+        return ids;
+    }
+
+    /**
+     * @return all the IDs (without waveform data) in the order in the file
+     */
+    public PartialID[] toPartialIDs() {
+        PartialID[] ids = new PartialID[size()];
+        IntStream.range(0, ids.length).parallel().forEach(i -> ids[i] = getPartialID(i));
+        return ids;
+    }
+
+    /**
+     * Block of IDs to be written by {@link WaveformDataWriter}. The header
+     * part must be already written.
+     */
+    static final class Builder {
+        private final boolean partial;
+        private int n;
+        private final byte[] obs = new byte[BLOCK_SIZE];
+        private final short[] station = new short[BLOCK_SIZE];
+        private final short[] globalCMTID = new short[BLOCK_SIZE];
+        private final byte[] component = new byte[BLOCK_SIZE];
+        private final byte[] periodRange = new byte[BLOCK_SIZE];
+        private final float[] startTime = new float[BLOCK_SIZE];
+        private final int[] npts = new int[BLOCK_SIZE];
+        private final float[] samplingHz = new float[BLOCK_SIZE];
+        private final byte[] convolute = new byte[BLOCK_SIZE];
+        private final long[] startByte = new long[BLOCK_SIZE];
+        private final byte[] partialType = new byte[BLOCK_SIZE];
+        private final short[] perturbationLocation = new short[BLOCK_SIZE];
+
+        Builder(boolean partial) {
+            this.partial = partial;
+        }
+
+        /**
+         * The block is written when it is full.
+         */
+        void add(DataOutputStream dos, boolean isObs, int stationIndex, int idIndex, int componentValue,
+                 int rangeIndex, double start, int numberOfPoints, double hz, boolean isConvolute, long byteOffset,
+                 int typeValue, int locationIndex) throws IOException {
+            obs[n] = (byte) (isObs ? 1 : 0);
+            station[n] = (short) stationIndex;
+            globalCMTID[n] = (short) idIndex;
+            component[n] = (byte) componentValue;
+            periodRange[n] = (byte) rangeIndex;
+            startTime[n] = (float) start;
+            npts[n] = numberOfPoints;
+            samplingHz[n] = (float) hz;
+            convolute[n] = (byte) (isConvolute ? 1 : 0);
+            startByte[n] = byteOffset;
+            partialType[n] = (byte) typeValue;
+            perturbationLocation[n] = (short) locationIndex;
+            if (++n == BLOCK_SIZE) writeBlock(dos);
+        }
+
+        /**
+         * Writes the IDs added after the last block as a block if any.
+         */
+        void writeBlock(DataOutputStream dos) throws IOException {
+            if (n == 0) return;
+            dos.writeInt(n);
+            if (!partial) dos.write(obs, 0, n);
+            for (int i = 0; i < n; i++) dos.writeShort(station[i]);
+            for (int i = 0; i < n; i++) dos.writeShort(globalCMTID[i]);
+            dos.write(component, 0, n);
+            dos.write(periodRange, 0, n);
+            for (int i = 0; i < n; i++) dos.writeFloat(startTime[i]);
+            for (int i = 0; i < n; i++) dos.writeInt(npts[i]);
+            for (int i = 0; i < n; i++) dos.writeFloat(samplingHz[i]);
+            dos.write(convolute, 0, n);
+            for (int i = 0; i < n; i++) dos.writeLong(startByte[i]);
+            if (partial) {
+                dos.write(partialType, 0, n);
+                for (int i = 0; i < n; i++) dos.writeShort(perturbationLocation[i]);
+            }
+            n = 0;
+        }
+
+        /**
+         * Writes the rest of the IDs and the end of the blocks.
+         *
+         * @param dos to write in
+         */
+        void finish(DataOutputStream dos) throws IOException {
+            writeBlock(dos);
+            dos.writeInt(0);
+            dos.flush();
+        }
+    }
+
+}
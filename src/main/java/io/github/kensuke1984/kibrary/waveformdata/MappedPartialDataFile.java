@@ -0,0 +1,202 @@
+package io.github.kensuke1984.kibrary.waveformdata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import io.github.kensuke1984.kibrary.util.Utilities;
+
+/**
+ * Random access to a partial waveform file through memory mapping.
+ * <p>
+ * Only the ID file is parsed when this is opened. The waveform file is mapped
+ * with {@link FileChannel#map(FileChannel.MapMode, long, long)} and each
+ * waveform is served as a {@link DoubleBuffer} view at
+ * {@link PartialID#getStartByte()} without copying it onto the heap.
+ * <p>
+ * A single mapping can not exceed {@link Integer#MAX_VALUE} bytes, so a large
+ * file is mapped in several chunks. The chunks are cut at the boundaries of
+ * waveforms so that every waveform lies in one chunk.
+ * <p>
+ * Waveforms in a data file in {@link WaveformEncoding#FLOAT64} are viewed
+ * directly. In the other encodings, they are decoded onto the heap when they
+ * are accessed.
+ * <p>
+ * <b>This class is IMMUTABLE</b> and views can be read from multiple threads.
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.2
+ * @see PartialIDFile
+ */
+public final class MappedPartialDataFile {
+
+    /**
+     * Maximum size of one mapped chunk [byte]
+     */
+    private static final long MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * Selected IDs (without waveform data)
+     */
+    private final PartialID[] ids;
+
+    /**
+     * mapped chunks of the data file
+     */
+    private final MappedByteBuffer[] chunks;
+
+    /**
+     * index of the chunk for each ID
+     */
+    private final int[] chunkIndex;
+
+    /**
+     * position of each waveform in its chunk [byte]
+     */
+    private final int[] chunkOffset;
+
+    /**
+     * [byte] size of each waveform in its chunk
+     */
+    private final int[] blockSize;
+
+    private final WaveformEncoding encoding;
+
+    private MappedPartialDataFile(PartialID[] ids, MappedByteBuffer[] chunks, int[] chunkIndex, int[] chunkOffset,
+                                  int[] blockSize, WaveformEncoding encoding) {
+        this.ids = ids;
+        this.blockSize = blockSize;
+        this.encoding = encoding;
+        this.chunks = chunks;
+        this.chunkIndex = chunkIndex;
+        this.chunkOffset = chunkOffset;
+    }
+
+    /**
+     * @param idPath   {@link Path} of an ID file
+     * @param dataPath {@link Path} of a waveform file
+     * @return {@link MappedPartialDataFile} for all the IDs in the file
+     * @throws IOException if an I/O error occurs
+     */
+    public static MappedPartialDataFile open(Path idPath, Path dataPath) throws IOException {
+        return open(idPath, dataPath, id -> true);
+    }
+
+    /**
+     * Only IDs accepted by the chooser are accessible. Waveforms of rejected
+     * IDs are never touched.
+     *
+     * @param idPath   {@link Path} of an ID file
+     * @param dataPath {@link Path} of a waveform file
+     * @param chooser  {@link Predicate} for IDs to use
+     * @return {@link MappedPartialDataFile} for the chosen IDs
+     * @throws IOException if an I/O error occurs
+     */
+    public static MappedPartialDataFile open(Path idPath, Path dataPath, Predicate<PartialID> chooser)
+            throws IOException {
+        PartialID[] allIDs = PartialIDFile.readPartialIDFile(idPath);
+        long dataSize = Files.size(dataPath);
+        WaveformEncoding encoding = WaveformEncoding.of(dataPath);
+        encoding.check(idPath, dataPath, allIDs);
+        long t = System.nanoTime();
+        long[] allBlockSizes = WaveformEncoding.blockSizes(allIDs, dataSize);
+        int[] chosen = IntStream.range(0, allIDs.length).parallel().filter(i -> chooser.test(allIDs[i])).toArray();
+        PartialID[] ids = Arrays.stream(chosen).mapToObj(i -> allIDs[i]).toArray(PartialID[]::new);
+        int[] blockSize = Arrays.stream(chosen).map(i -> (int) allBlockSizes[i]).toArray();
+        // chunks are cut in the order of the positions
+        Integer[] order = new Integer[ids.length];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, (i, j) -> Long.compare(ids[i].START_BYTE, ids[j].START_BYTE));
+        int[] chunkIndex = new int[ids.length];
+        int[] chunkOffset = new int[ids.length];
+        List<MappedByteBuffer> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            int i = 0;
+            while (i < order.length) {
+                long chunkStart = ids[order[i]].START_BYTE;
+                long chunkEnd = chunkStart;
+                int j = i;
+                for (; j < order.length; j++) {
+                    PartialID id = ids[order[j]];
+                    long end = id.START_BYTE + blockSize[order[j]];
+                    if (MAX_CHUNK_SIZE < end - chunkStart) break;
+                    chunkIndex[order[j]] = chunks.size();
+                    chunkOffset[order[j]] = (int) (id.START_BYTE - chunkStart);
+                    chunkEnd = Math.max(chunkEnd, end);
+                }
+                if (j == i) throw new RuntimeException(ids[order[i]] + " is too large to be mapped.");
+                chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkEnd - chunkStart));
+                i = j;
+            }
+        }
+        System.err.println(ids.length + " partial waveforms are mapped in " + chunks.size() + " chunk(s) in " +
+                Utilities.toTimeString(System.nanoTime() - t));
+        return new MappedPartialDataFile(ids, chunks.toArray(new MappedByteBuffer[chunks.size()]), chunkIndex,
+                chunkOffset, blockSize, encoding);
+    }
+
+    /**
+     * @return the number of the accessible IDs
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @return the accessible IDs (without waveform data)
+     */
+    public PartialID[] getIDs() {
+        return ids.clone();
+    }
+
+    /**
+     * @param i index of an ID
+     * @return i th ID (without waveform data)
+     */
+    public PartialID getID(int i) {
+        return ids[i];
+    }
+
+    /**
+     * The returned buffer is a read-only view of the mapped file, or of a
+     * decoded copy if the file is not in {@link WaveformEncoding#FLOAT64}. Its
+     * position is independent of the other views.
+     *
+     * @param i index of an ID
+     * @return waveform of the i th ID
+     */
+    public DoubleBuffer getWaveform(int i) {
+        if (encoding != WaveformEncoding.FLOAT64) return DoubleBuffer.wrap(readData(i)).asReadOnlyBuffer();
+        return block(i).asDoubleBuffer();
+    }
+
+    /**
+     * @param i index of an ID
+     * @return i th ID with its waveform data read on the heap
+     */
+    public PartialID readID(int i) {
+        return ids[i].setData(readData(i));
+    }
+
+    private double[] readData(int i) {
+        return encoding.decode(block(i), ids[i].NPTS);
+    }
+
+    private ByteBuffer block(int i) {
+        ByteBuffer bb = chunks[chunkIndex[i]].duplicate();
+        bb.position(chunkOffset[i]);
+        bb.limit(chunkOffset[i] + blockSize[i]);
+        return bb.slice();
+    }
+
+}
@@ -16,13 +16,13 @@ import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.BiPredicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import io.github.kensuke1984.kibrary.Operation;
 import io.github.kensuke1984.kibrary.datacorrection.StaticCorrection;
 import io.github.kensuke1984.kibrary.datacorrection.StaticCorrectionFile;
+import io.github.kensuke1984.kibrary.timewindow.TimewindowIndex;
 import io.github.kensuke1984.kibrary.timewindow.TimewindowInformation;
 import io.github.kensuke1984.kibrary.timewindow.TimewindowInformationFile;
 import io.github.kensuke1984.kibrary.util.EventFolder;
@@ -66,7 +66,7 @@ import io.github.kensuke1984.kibrary.util.sac.WaveformType;
  * network in one event</b>
  *
  * @author Kensuke Konishi
- * @version 0.2.1.1
+ * @version 0.2.1.4
  */
 public class ObservedSyntheticDatasetMaker implements Operation {
 
@@ -95,6 +95,8 @@ public class ObservedSyntheticDatasetMaker implements Operation {
             throw new IllegalArgumentException("There is no information about timewindowPath.");
         if (!property.containsKey("sacSamplingHz")) property.setProperty("sacSamplingHz", "20");
         if (!property.containsKey("finalSamplingHz")) property.setProperty("finalSamplingHz", "1");
+        if (!property.containsKey("columnarID")) property.setProperty("columnarID", "false");
+        if (!property.containsKey("dataEncoding")) property.setProperty("dataEncoding", "FLOAT64");
     }
 
     private void set() throws NoSuchFileException {
@@ -122,6 +124,8 @@ public class ObservedSyntheticDatasetMaker implements Operation {
         // =Double.parseDouble(reader.getFirstValue("sacSamplingHz")); TODO
         sacSamplingHz = 20;
         finalSamplingHz = Double.parseDouble(property.getProperty("finalSamplingHz"));
+        columnarID = Boolean.parseBoolean(property.getProperty("columnarID"));
+        dataEncoding = WaveformEncoding.valueOf(property.getProperty("dataEncoding"));
     }
 
     public static void writeDefaultPropertiesFile() throws IOException {
@@ -152,6 +156,10 @@ public class ObservedSyntheticDatasetMaker implements Operation {
             pw.println("#sacSamplingHz the value will be ignored");
             pw.println("##double value of sampling Hz in output files (1)");
             pw.println("#finalSamplingHz");
+            pw.println("##boolean if the ID file is written in the columnar format (false)");
+            pw.println("#columnarID");
+            pw.println("##WaveformEncoding of the waveform file FLOAT64, FLOAT32 or COMPRESSED (FLOAT64)");
+            pw.println("#dataEncoding");
         }
         System.err.println(outPath + " is created.");
     }
@@ -202,11 +210,21 @@ public class ObservedSyntheticDatasetMaker implements Operation {
      */
     private boolean amplitudeCorrection;
 
-    private Set<StaticCorrection> staticCorrectionSet;
+    /**
+     * if the ID file is written as {@link ColumnarIDFile}
+     */
+    private boolean columnarID;
 
-    private Set<TimewindowInformation> timewindowInformationSet;
+    /**
+     * encoding of waveforms in the waveform file
+     */
+    private WaveformEncoding dataEncoding;
 
-    private WaveformDataWriter dataWriter;
+    private TimewindowIndex<StaticCorrection> staticCorrectionIndex;
+
+    private TimewindowIndex<TimewindowInformation> timewindowIndex;
+
+    private AsyncWaveformDataWriter dataWriter;
 
     private Set<EventFolder> eventDirs;
     private Set<Station> stationSet;
@@ -256,11 +274,12 @@ public class ObservedSyntheticDatasetMaker implements Operation {
     @Override
     public void run() throws Exception {
         if (timeCorrection || amplitudeCorrection)
-            staticCorrectionSet = StaticCorrectionFile.read(staticCorrectionPath);
+            staticCorrectionIndex = TimewindowIndex.ofStaticCorrections(StaticCorrectionFile.read(staticCorrectionPath));
 
         // obsDirからイベントフォルダを指定
         eventDirs = Utilities.eventFolderSet(obsPath);
-        timewindowInformationSet = TimewindowInformationFile.read(timewindowPath);
+        Set<TimewindowInformation> timewindowInformationSet = TimewindowInformationFile.read(timewindowPath);
+        timewindowIndex = TimewindowIndex.of(timewindowInformationSet);
         stationSet = timewindowInformationSet.parallelStream().map(TimewindowInformation::getStation)
                 .collect(Collectors.toSet());
         idSet = timewindowInformationSet.parallelStream().map(TimewindowInformation::getGlobalCMTID)
@@ -272,8 +291,9 @@ public class ObservedSyntheticDatasetMaker implements Operation {
         String dateStr = Utilities.getTemporaryString();
         Path waveIDPath = workPath.resolve("waveformID" + dateStr + ".dat");
         Path waveformPath = workPath.resolve("waveform" + dateStr + ".dat");
-        try (WaveformDataWriter bdw = new WaveformDataWriter(waveIDPath, waveformPath, stationSet, idSet,
-                periodRanges)) {
+        try (AsyncWaveformDataWriter bdw = new AsyncWaveformDataWriter(
+                new WaveformDataWriter(waveIDPath, waveformPath, stationSet, idSet, periodRanges, null, columnarID,
+                        dataEncoding))) {
             dataWriter = bdw;
             for (EventFolder eventDir : eventDirs)
                 execs.execute(new Worker(eventDir));
@@ -330,10 +350,7 @@ public class ObservedSyntheticDatasetMaker implements Operation {
 
                 if (!synFileName.exists()) continue;
 
-                Set<TimewindowInformation> windows = timewindowInformationSet.stream()
-                        .filter(info -> info.getStation().getStationName().equals(stationName))
-                        .filter(info -> info.getGlobalCMTID().equals(id))
-                        .filter(info -> info.getComponent() == component).collect(Collectors.toSet());
+                Set<TimewindowInformation> windows = timewindowIndex.get(stationName, id, component);
 
                 // タイムウインドウの情報が入っていなければ次へ
                 if (windows.isEmpty()) continue;
@@ -418,15 +435,12 @@ public class ObservedSyntheticDatasetMaker implements Operation {
     }
 
     /**
-     * ID for static correction and time window information Default is station
-     * name, global CMT id, component.
+     * Static correction and time window information are paired by station,
+     * global CMT id and component.
      */
-    private BiPredicate<StaticCorrection, TimewindowInformation> isPair =
-            (s, t) -> s.getStation().equals(t.getStation()) && s.getGlobalCMTID().equals(t.getGlobalCMTID()) &&
-                    s.getComponent() == t.getComponent();
-
     private StaticCorrection getStaticCorrection(TimewindowInformation window) {
-        return staticCorrectionSet.stream().filter(s -> isPair.test(s, window)).findAny().get();
+        return staticCorrectionIndex.get(window.getStation(), window.getGlobalCMTID(), window.getComponent()).stream()
+                .findAny().get();
     }
 
     private double[] cutDataSac(SACData sac, double startTime, int npts) {
@@ -22,6 +22,7 @@ import io.github.kensuke1984.kibrary.butterworth.BandPassFilter;
 import io.github.kensuke1984.kibrary.butterworth.ButterworthFilter;
 import io.github.kensuke1984.kibrary.datacorrection.SourceTimeFunction;
 import io.github.kensuke1984.kibrary.dsminformation.PolynomialStructure;
+import io.github.kensuke1984.kibrary.timewindow.TimewindowIndex;
 import io.github.kensuke1984.kibrary.timewindow.TimewindowInformation;
 import io.github.kensuke1984.kibrary.timewindow.TimewindowInformationFile;
 import io.github.kensuke1984.kibrary.util.EventFolder;
@@ -50,7 +51,7 @@ import io.github.kensuke1984.kibrary.util.spc.SpcFileType;
  * same events</b> TODO
  *
  * @author Kensuke Konishi
- * @version 0.2.0.4
+ * @version 0.2.0.7
  */
 public class Partial1DDatasetMaker implements Operation {
     private boolean backward;
@@ -89,6 +90,8 @@ public class Partial1DDatasetMaker implements Operation {
             pw.println("#finalSamplingHz");
             pw.println("##radius for perturbation points, must be set");
             pw.println("#bodyR 3505 3555 3605");
+            pw.println("##WaveformEncoding of the waveform file FLOAT64, FLOAT32 or COMPRESSED (FLOAT64)");
+            pw.println("#dataEncoding");
         }
         System.err.println(outPath + " is created.");
     }
@@ -107,6 +110,7 @@ public class Partial1DDatasetMaker implements Operation {
         if (!property.containsKey("minFreq")) property.setProperty("minFreq", "0.005");
         if (!property.containsKey("maxFreq")) property.setProperty("maxFreq", "0.08");
         if (!property.containsKey("finalSamplingHz")) property.setProperty("finalSamplingHz", "1");
+        if (!property.containsKey("dataEncoding")) property.setProperty("dataEncoding", "FLOAT64");
         if (!property.containsKey("timewindowPath"))
             throw new IllegalArgumentException("There is no information about timewindowPath.");
     }
@@ -146,7 +150,7 @@ public class Partial1DDatasetMaker implements Operation {
         // partialSamplingHz
         // =Double.parseDouble(reader.getFirstValue("partialSamplingHz")); TODO
         finalSamplingHz = Double.parseDouble(property.getProperty("finalSamplingHz"));
-
+        dataEncoding = WaveformEncoding.valueOf(property.getProperty("dataEncoding"));
     }
 
     /**
@@ -184,6 +188,11 @@ public class Partial1DDatasetMaker implements Operation {
      */
     private double finalSamplingHz;
 
+    /**
+     * encoding of waveforms in the waveform file
+     */
+    private WaveformEncoding dataEncoding;
+
     /**
      * The folder contains source time functions.
      */
@@ -366,10 +375,7 @@ public class Partial1DDatasetMaker implements Operation {
             process(spectrum);
 
             for (SACComponent component : components) {
-                Set<TimewindowInformation> tw = timewindowInformationSet.stream()
-                        .filter(info -> info.getStation().getStationName().equals(stationName))
-                        .filter(info -> info.getGlobalCMTID().equals(id))
-                        .filter(info -> info.getComponent() == component).collect(Collectors.toSet());
+                Set<TimewindowInformation> tw = timewindowIndex.get(stationName, id, component);
 
                 if (tw.isEmpty()) continue;
 
@@ -450,8 +456,10 @@ public class Partial1DDatasetMaker implements Operation {
      */
     private Set<TimewindowInformation> timewindowInformationSet;
 
+    private TimewindowIndex<TimewindowInformation> timewindowIndex;
+
     //
-    private WaveformDataWriter partialDataWriter;
+    private AsyncWaveformDataWriter partialDataWriter;
 
     private Path logPath;
 
@@ -514,6 +522,7 @@ public class Partial1DDatasetMaker implements Operation {
         // タイムウインドウの情報を読み取る。
         System.err.print("Reading timewindow information ");
         timewindowInformationSet = TimewindowInformationFile.read(timewindowPath);
+        timewindowIndex = TimewindowIndex.of(timewindowInformationSet);
         System.err.println("done");
 
         if (sourceTimeFunction == -1) readSourceTimeFunctions();
@@ -539,8 +548,9 @@ public class Partial1DDatasetMaker implements Operation {
 
         Path idPath = workPath.resolve("partial1DID" + dateString + ".dat");
         Path datasetPath = workPath.resolve("partial1D" + dateString + ".dat");
-        try (WaveformDataWriter pdw = new WaveformDataWriter(idPath, datasetPath, stationSet, idSet, periodRanges,
-                perturbationLocationSet)) {
+        try (AsyncWaveformDataWriter pdw = new AsyncWaveformDataWriter(
+                new WaveformDataWriter(idPath, datasetPath, stationSet, idSet, periodRanges,
+                        perturbationLocationSet, false, dataEncoding))) {
 
             partialDataWriter = pdw;
             for (EventFolder eventDir : eventDirs)
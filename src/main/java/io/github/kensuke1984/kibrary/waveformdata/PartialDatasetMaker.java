@@ -2,23 +2,31 @@ package io.github.kensuke1984.kibrary.waveformdata;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Deque;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import org.apache.commons.math3.complex.Complex;
 
 import io.github.kensuke1984.kibrary.Operation;
 import io.github.kensuke1984.kibrary.Property;
@@ -26,6 +34,7 @@ import io.github.kensuke1984.kibrary.butterworth.BandPassFilter;
 import io.github.kensuke1984.kibrary.butterworth.ButterworthFilter;
 import io.github.kensuke1984.kibrary.datacorrection.SourceTimeFunction;
 import io.github.kensuke1984.kibrary.dsminformation.PolynomialStructure;
+import io.github.kensuke1984.kibrary.timewindow.TimewindowIndex;
 import io.github.kensuke1984.kibrary.timewindow.TimewindowInformation;
 import io.github.kensuke1984.kibrary.timewindow.TimewindowInformationFile;
 import io.github.kensuke1984.kibrary.util.Location;
@@ -66,8 +75,19 @@ import io.github.kensuke1984.kibrary.util.spc.ThreeDPartialMaker;
  * TODO
  * <p>
  * Because of DSM condition, stations can not have the same name...
+ * <p>
+ * Progress is journaled in pdm*.journal by {@link WaveformDataJournal} for
+ * each BP file of each station. A run interrupted can be resumed with the
+ * journal (resumeJournal), then the output files are truncated to the last
+ * BP file done and the rest is computed. IDs are written in a fixed order, so
+ * the resumed files are the same as those by an uninterrupted run.
+ * <p>
+ * Computations for all the pairs of BP and FP files run in one
+ * {@link ForkJoinPool}. BP files are read in advance by another thread, and
+ * the computations for the next {@link #BP_PREFETCH} BP files are queued while
+ * the current one is finishing, so that workers do not wait between BP files.
  * 
- * @version 2.3.0.5
+ * @version 2.4.2
  * 
  * @author Kensuke Konishi
  */
@@ -153,6 +173,18 @@ public class PartialDatasetMaker implements Operation {
 	 * 0:none, 1:boxcar, 2:triangle.
 	 */
 	private int sourceTimeFunction;
+	/**
+	 * if the ID file is written as {@link ColumnarIDFile}
+	 */
+	private boolean columnarID;
+	/**
+	 * encoding of waveforms in the waveform file
+	 */
+	private WaveformEncoding dataEncoding;
+	/**
+	 * journal of an interrupted run to resume, or null
+	 */
+	private Path resumeJournalPath;
 	/**
 	 * The folder contains source time functions.
 	 */
@@ -168,9 +200,12 @@ public class PartialDatasetMaker implements Operation {
 
 		private DSMOutput bp;
 		private SpcFileName fpname;
-		private DSMOutput fp;
 		private Station station;
 		private GlobalCMTID id;
+		/**
+		 * computed IDs to be written in the order
+		 */
+		private final List<PartialID> partialIDs = new ArrayList<>();
 
 		/**
 		 * @param bp back propagate
@@ -191,26 +226,23 @@ public class PartialDatasetMaker implements Operation {
 		 * @param timewindowInformation time window information
 		 * @return cut waveform
 		 */
-		private Complex[] cutPartial(double[] u, TimewindowInformation timewindowInformation) {
+		private double[] cutPartial(double[] u, TimewindowInformation timewindowInformation) {
 			int cutstart = (int) (timewindowInformation.getStartTime() * partialSamplingHz) - ext;
 			// cutstartが振り切れた場合0 からにする
 			if (cutstart < 0)
 				return null;
 			int cutend = (int) (timewindowInformation.getEndTime() * partialSamplingHz) + ext;
-			Complex[] cut = new Complex[cutend - cutstart];
-			Arrays.parallelSetAll(cut, i -> new Complex(u[i + cutstart]));
-
-			return cut;
+			return Arrays.copyOfRange(u, cutstart, cutend);
 		}
 
-		private double[] sampleOutput(Complex[] u, TimewindowInformation timewindowInformation) {
+		private double[] sampleOutput(double[] u, TimewindowInformation timewindowInformation) {
 			// 書きだすための波形
 			int outnpts = (int) ((timewindowInformation.getEndTime() - timewindowInformation.getStartTime())
 					* finalSamplingHz);
 			double[] sampleU = new double[outnpts];
 
 			// cutting a waveform for outputting
-			Arrays.parallelSetAll(sampleU, j -> u[ext + j * step].getReal());
+			Arrays.parallelSetAll(sampleU, j -> u[ext + j * step]);
 			return sampleU;
 		}
 
@@ -231,15 +263,14 @@ public class PartialDatasetMaker implements Operation {
 			touchedSet.add(id);
 
 			// Pickup timewindows
-			Set<TimewindowInformation> timewindowList = timewindowInformation.stream()
-					.filter(info -> info.getStation().getStationName().equals(stationName))
-					.filter(info -> info.getGlobalCMTID().equals(id)).collect(Collectors.toSet());
+			Set<TimewindowInformation> timewindowList = timewindowIndex.get(stationName, id);
 
 			// timewindow情報のないときスキップ
 			if (timewindowList.isEmpty())
 				return;
 
 			// System.out.println("I am " + Thread.currentThread().getName());
+			DSMOutput fp;
 			try {
 				fp = fpname.read();
 			} catch (Exception e) {
@@ -256,26 +287,24 @@ public class PartialDatasetMaker implements Operation {
 			for (int ibody = 0, nbody = fp.nbody(); ibody < nbody; ibody++) {
 				// とりあえずtransverse（２）成分についての名前
 				Location location = fp.getObserverPosition().toLocation(fp.getBodyR()[ibody]);
+				// 摂動点の情報がない摂動点に対しては計算しない
+				if (!perturbationLocationSet.contains(location))
+					continue;
 				for (PartialType type : partialTypes)
 					for (SACComponent component : components) {
 						if (timewindowList.stream().noneMatch(info -> info.getComponent() == component))
 							continue;
 						double[] partial = threedPartialMaker.createPartial(component, ibody, type);
-						timewindowList.stream().filter(info -> info.getComponent() == component).forEach(info -> {
-							Complex[] u = cutPartial(partial, info);
+						timewindowList.stream().filter(info -> info.getComponent() == component).sorted()
+								.forEach(info -> {
+							double[] u = cutPartial(partial, info);
 
-							u = filter.applyFilter(u);
+							filter.applyFilter(u, 0, u.length);
 							double[] cutU = sampleOutput(u, info);
 
-							PartialID pid = new PartialID(station, id, component, finalSamplingHz, info.getStartTime(),
+							partialIDs.add(new PartialID(station, id, component, finalSamplingHz, info.getStartTime(),
 									cutU.length, 1 / maxFreq, 1 / minFreq, 0, sourceTimeFunction != 0, location, type,
-									cutU);
-							try {
-								partialDataWriter.addPartialID(pid);
-								System.out.print(".");
-							} catch (Exception e) {
-								e.printStackTrace();
-							}
+									cutU));
 						});
 					}
 
@@ -297,7 +326,115 @@ public class PartialDatasetMaker implements Operation {
 
 	private Set<TimewindowInformation> timewindowInformation;
 
-	private Set<GlobalCMTID> touchedSet = new HashSet<>();
+	private TimewindowIndex<TimewindowInformation> timewindowIndex;
+
+	private Set<GlobalCMTID> touchedSet = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * the number of BP files read and computed ahead of the one being written.
+	 * Decoded BP spectra and computed partials are kept for at most
+	 * BP_PREFETCH+1 BP files.
+	 */
+	private static final int BP_PREFETCH = 2;
+
+	/**
+	 * Computations for a BP file of a station with all the FP files
+	 */
+	private class BPUnit {
+		/**
+		 * name in the journal
+		 */
+		private final String name;
+		private final Station station;
+		private final SpcFileName bpname;
+		private final Path[] fpEventPaths;
+		/**
+		 * if this is the last unit for the station
+		 */
+		private boolean last;
+		private CompletableFuture<List<PartialComputation>> computations;
+
+		private BPUnit(String name, Station station, SpcFileName bpname, Path[] fpEventPaths) {
+			this.name = name;
+			this.station = station;
+			this.bpname = bpname;
+			this.fpEventPaths = fpEventPaths;
+		}
+
+		/**
+		 * Reads the BP file by the reader and then computes with the FP files in
+		 * the pool.
+		 */
+		private void start(ExecutorService bpReader, ForkJoinPool pool) {
+			computations = CompletableFuture.supplyAsync(() -> {
+				try {
+					return bpname.read();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, bpReader).thenCompose(bp -> {
+				// 摂動点の名前
+				String pointName = bp.getObserverID();
+				List<PartialComputation> list = new ArrayList<>();
+				// timewindowの存在するfpdirに対して
+				// ｂｐファイルに対する全てのfpファイルを
+				for (Path fpEventPath : fpEventPaths) {
+					String eventName = fpEventPath.getParent().getFileName().toString();
+					SpcFileName fpfile = new SpcFileName(
+							fpEventPath.resolve(pointName + "." + eventName + ".PF..." + bpname.getMode() + ".spc"));
+					if (fpfile.exists())
+						list.add(new PartialComputation(bp, station, fpfile));
+				}
+				return CompletableFuture
+						.allOf(list.stream().map(pc -> CompletableFuture.runAsync(pc, pool))
+								.toArray(CompletableFuture[]::new))
+						.thenApply(v -> list);
+			});
+		}
+	}
+
+	/**
+	 * @return units not done yet in the order of stations and BP files
+	 * @throws IOException if an I/O error occurs in listing BP files
+	 */
+	private List<BPUnit> collectUnits() throws IOException {
+		List<BPUnit> units = new ArrayList<>();
+		// bpフォルダごとにスタート
+		for (Station station : stationSet) {
+			Path bpModelPath = bpPath.resolve("0000" + station.getStationName()).resolve(modelName);
+
+			// Set of global cmt IDs for the station in the timewindow.
+			Set<GlobalCMTID> idSet = timewindowInformation.stream()
+					.filter(info -> components.contains(info.getComponent()))
+					.filter(info -> info.getStation().equals(station)).map(TimewindowInformation::getGlobalCMTID)
+					.collect(Collectors.toCollection(TreeSet::new));
+
+			if (idSet.isEmpty())
+				continue;
+
+			// bpModelFolder内 spectorfile
+			Set<SpcFileName> bpFiles = new TreeSet<>(Utilities.collectSpcFileName(bpModelPath));
+			System.out.println(bpFiles.size() + " bpfiles are found");
+
+			// stationに対するタイムウインドウが存在するfp内のmodelフォルダ
+			Path[] fpEventPaths = idSet.stream().map(id -> fpPath.resolve(id.toString() + "/" + modelName))
+					.filter(Files::exists).toArray(Path[]::new);
+
+			int donebp = 0;
+			BPUnit unit = null;
+			for (SpcFileName bpname : bpFiles) {
+				String name = station.getStationName() + "/" + bpname.getName();
+				if (journal.isDone(name)) {
+					System.out.println("Skipping " + bpname.getName() + " " + ++donebp + "/" + bpFiles.size());
+					continue;
+				}
+				units.add(unit = new BPUnit(name, station, bpname, fpEventPaths));
+			}
+			if (unit != null)
+				unit.last = true;
+		}
+		return units;
+	}
 
 	public PartialDatasetMaker(Properties property) throws IOException {
 		this.property = (Properties) property.clone();
@@ -341,6 +478,12 @@ public class PartialDatasetMaker implements Operation {
 			pw.println("#perturbationPath perturbationPoint.inf");
 			pw.println("##File for Qstructure (if no file, then PREM)");
 			pw.println("#qinf");
+			pw.println("##boolean if the ID file is written in the columnar format (false)");
+			pw.println("#columnarID");
+			pw.println("##WaveformEncoding of the waveform file FLOAT64, FLOAT32 or COMPRESSED (FLOAT64)");
+			pw.println("#dataEncoding");
+			pw.println("##Path of a journal (pdm*.journal) of an interrupted run to resume (none)");
+			pw.println("#resumeJournal");
 		}
 		System.err.println(outPath + " is created.");
 	}
@@ -370,6 +513,10 @@ public class PartialDatasetMaker implements Operation {
 			property.setProperty("partialSamplingHz", "20");
 		if (!property.containsKey("finalSamplingHz"))
 			property.setProperty("finalSamplingHz", "1");
+		if (!property.containsKey("columnarID"))
+			property.setProperty("columnarID", "false");
+		if (!property.containsKey("dataEncoding"))
+			property.setProperty("dataEncoding", "FLOAT64");
 	}
 
 	/**
@@ -386,7 +533,7 @@ public class PartialDatasetMaker implements Operation {
 		fpPath = getPath("fpPath");
 		timewindowPath = getPath("timewindowPath");
 		components = Arrays.stream(property.getProperty("components").split("\\s+")).map(SACComponent::valueOf)
-				.collect(Collectors.toSet());
+				.collect(Collectors.toCollection(() -> EnumSet.noneOf(SACComponent.class)));
 
 		if (property.containsKey("qinf"))
 			structure = new PolynomialStructure(getPath("qinf"));
@@ -399,7 +546,7 @@ public class PartialDatasetMaker implements Operation {
 		modelName = property.getProperty("modelName");
 
 		partialTypes = Arrays.stream(property.getProperty("partialTypes").split("\\s+")).map(PartialType::valueOf)
-				.collect(Collectors.toSet());
+				.collect(Collectors.toCollection(() -> EnumSet.noneOf(PartialType.class)));
 		tlen = Double.parseDouble(property.getProperty("tlen"));
 		np = Integer.parseInt(property.getProperty("np"));
 		minFreq = Double.parseDouble(property.getProperty("minFreq"));
@@ -409,6 +556,10 @@ public class PartialDatasetMaker implements Operation {
 		// =Double.parseDouble(reader.getFirstValue("partialSamplingHz")); TODO
 
 		finalSamplingHz = Double.parseDouble(property.getProperty("finalSamplingHz"));
+		columnarID = Boolean.parseBoolean(property.getProperty("columnarID"));
+		dataEncoding = WaveformEncoding.valueOf(property.getProperty("dataEncoding"));
+		if (property.containsKey("resumeJournal"))
+			resumeJournalPath = getPath("resumeJournal");
 	}
 
 	private void setLog() throws IOException {
@@ -421,15 +572,33 @@ public class PartialDatasetMaker implements Operation {
 		}
 	}
 
+	/**
+	 * For a journal already finished, no writer is made, so the finished
+	 * files are never opened for writing again.
+	 */
 	private void setOutput() throws IOException {
+		if (resumeJournalPath != null) {
+			journal = WaveformDataJournal.resume(resumeJournalPath);
+			if (journal.isFinished())
+				return;
+			partialDataWriter = new AsyncWaveformDataWriter(new WaveformDataWriter(journal.getIDPath(),
+					journal.getDataPath(), stationSet, idSet, periodRanges, perturbationLocationSet, columnarID,
+					dataEncoding, journal.getCheckpoint()));
+			writeLog("Resuming " + journal.getIDPath() + " " + journal.getDataPath() + " from "
+					+ journal.getCheckpoint());
+			System.out.println("Resuming " + journal.getIDPath() + " " + journal.getDataPath());
+			return;
+		}
 
 		// 書き込み準備
 		Path idPath = workPath.resolve("partialID" + dateString + ".dat");
 		Path datasetPath = workPath.resolve("partial" + dateString + ".dat");
 
-		partialDataWriter = new WaveformDataWriter(idPath, datasetPath, stationSet, idSet, periodRanges,
-				perturbationLocationSet);
-		writeLog("Creating " + idPath + " " + datasetPath);
+		partialDataWriter = new AsyncWaveformDataWriter(new WaveformDataWriter(idPath, datasetPath, stationSet,
+				idSet, periodRanges, perturbationLocationSet, columnarID, dataEncoding));
+		journal = WaveformDataJournal.create(workPath.resolve("pdm" + dateString + ".journal"), idPath,
+				datasetPath, partialDataWriter.checkpoint());
+		writeLog("Creating " + idPath + " " + datasetPath + " journaled in " + journal.getJournalPath());
 		System.out.println("Creating " + idPath + " " + datasetPath);
 	}
 
@@ -444,13 +613,15 @@ public class PartialDatasetMaker implements Operation {
 			perturbationLocationSet = lines.map(line -> line.split("\\s+"))
 					.map(parts -> new Location(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]),
 							Double.parseDouble(parts[2])))
-					.collect(Collectors.toSet());
+					.collect(Collectors.toCollection(TreeSet::new));
 		}
 	}
 
 	private String dateString;
 
-	private WaveformDataWriter partialDataWriter;
+	private AsyncWaveformDataWriter partialDataWriter;
+
+	private WaveformDataJournal journal;
 
 	private Path logPath;
 
@@ -474,63 +645,49 @@ public class PartialDatasetMaker implements Operation {
 		// sacdataを何ポイントおきに取り出すか
 		step = (int) (partialSamplingHz / finalSamplingHz);
 		setOutput();
-		int bpnum = 0;
+		if (journal.isFinished()) {
+			System.err.println(journal.getJournalPath() + " is already finished.");
+			journal.close();
+			return;
+		}
 		setSourceTimeFunctions();
-		// bpフォルダごとにスタート
-		for (Station station : stationSet) {
-			Path bp0000Path = bpPath.resolve("0000" + station.getStationName());
-			Path bpModelPath = bp0000Path.resolve(modelName);
-
-			// Set of global cmt IDs for the station in the timewindow.
-			Set<GlobalCMTID> idSet = timewindowInformation.stream()
-					.filter(info -> components.contains(info.getComponent()))
-					.filter(info -> info.getStation().equals(station)).map(TimewindowInformation::getGlobalCMTID)
-					.collect(Collectors.toSet());
-
-			if (idSet.isEmpty())
-				continue;
-
-			// bpModelFolder内 spectorfile
-			Set<SpcFileName> bpFiles = Utilities.collectSpcFileName(bpModelPath);
-			System.out.println(bpFiles.size() + " bpfiles are found");
-
-			// stationに対するタイムウインドウが存在するfp内のmodelフォルダ
-			Path[] fpEventPaths = idSet.stream().map(id -> fpPath.resolve(id.toString() + "/" + modelName))
-					.filter(Files::exists).toArray(Path[]::new);
-
-			int donebp = 0;
-			// bpフォルダ内の各bpファイルに対して
-			for (SpcFileName bpname : bpFiles) {
-				// create ThreadPool
-				ExecutorService execs = Executors.newFixedThreadPool(N_THREADS);
-				System.out.println("Working for " + bpname.getName() + " " + ++donebp + "/" + bpFiles.size());
-				// 摂動点の名前
-				DSMOutput bp = bpname.read();
-				String pointName = bp.getObserverID();
-
-				// timewindowの存在するfpdirに対して
-				// ｂｐファイルに対する全てのfpファイルを
-				for (Path fpEventPath : fpEventPaths) {
-					String eventName = fpEventPath.getParent().getFileName().toString();
-					SpcFileName fpfile = new SpcFileName(
-							fpEventPath.resolve(pointName + "." + eventName + ".PF..." + bpname.getMode() + ".spc"));
-					if (!fpfile.exists())
-						continue;
-					PartialComputation pc = new PartialComputation(bp, station, fpfile);
-					execs.execute(pc);
+		List<BPUnit> units = collectUnits();
+		writeLog(units.size() + " BP files are to be computed");
+		ForkJoinPool pool = new ForkJoinPool(N_THREADS);
+		ExecutorService bpReader = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "BP reader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		Deque<BPUnit> inFlight = new ArrayDeque<>();
+		int started = 0;
+		int bpnum = 0;
+		try {
+			for (int i = 0; i < units.size(); i++) {
+				// the next BP files are read and their computations are queued
+				while (started < units.size() && inFlight.size() <= BP_PREFETCH) {
+					BPUnit unit = units.get(started++);
+					unit.start(bpReader, pool);
+					inFlight.add(unit);
 				}
-				execs.shutdown();
-				while (!execs.isTerminated()) {
-					try {
-						Thread.sleep(100);
-					} catch (Exception e) {
-						e.printStackTrace();
+				BPUnit unit = inFlight.poll();
+				System.out.println("Working for " + unit.name + " " + (i + 1) + "/" + units.size());
+				List<PartialComputation> computations = unit.computations.join();
+				unit.computations = null;
+				// IDs are written in the order of the computations so that a resumed run writes the same
+				for (PartialComputation pc : computations)
+					for (PartialID pid : pc.partialIDs) {
+						partialDataWriter.addPartialID(pid);
+						System.out.print(".");
 					}
-				}
-				partialDataWriter.flush();
+				journal.done(unit.name, partialDataWriter.checkpoint());
 				System.out.println();
+				if (unit.last)
+					writeLog(+bpnum++ + "th " + bpPath.resolve("0000" + unit.station.getStationName()) + " was done ");
 			}
-			writeLog(+bpnum++ + "th " + bp0000Path + " was done ");
+		} finally {
+			pool.shutdownNow();
+			bpReader.shutdownNow();
 		}
 		terminate();
 	}
@@ -583,12 +740,15 @@ public class PartialDatasetMaker implements Operation {
 
 	private void terminate() throws IOException {
 		partialDataWriter.close();
+		journal.finish(partialDataWriter.getLastCheckpoint());
+		journal.close();
 		endTime = System.nanoTime();
 		long nanoSeconds = endTime - startTime;
 		String endLine = "Everything is done in " + Utilities.toTimeString(nanoSeconds) + ". Over n out! ";
 		System.err.println(endLine);
 		writeLog(endLine);
 		writeLog(partialDataWriter.getIDPath() + " " + partialDataWriter.getDataPath() + " were created");
+		writeLog("Lengths and checksums: " + partialDataWriter.getLastCheckpoint());
 	}
 
 	private synchronized void writeLog(String line) throws IOException {
@@ -617,8 +777,9 @@ public class PartialDatasetMaker implements Operation {
 		// タイムウインドウの情報を読み取る。
 		System.err.println("Reading timewindow information");
 		timewindowInformation = TimewindowInformationFile.read(timewindowPath);
-		idSet = new HashSet<>();
-		stationSet = new HashSet<>();
+		timewindowIndex = TimewindowIndex.of(timewindowInformation);
+		idSet = new TreeSet<>();
+		stationSet = new TreeSet<>();
 		timewindowInformation.forEach(t -> {
 			idSet.add(t.getGlobalCMTID());
 			stationSet.add(t.getStation());
@@ -45,7 +45,7 @@ import io.github.kensuke1984.kibrary.util.spc.PartialType;
  * READing has problem. TODO
  *
  * @author Kensuke Konishi
- * @version 0.3.0.3
+ * @version 0.3.0.4
  */
 public final class PartialIDFile {
 
@@ -54,20 +54,20 @@ public final class PartialIDFile {
         PartialID[] ids = readPartialIDFile(idPath);
         long t = System.nanoTime();
         long dataSize = Files.size(dataPath);
-        PartialID lastID = ids[ids.length - 1];
-        if (dataSize != lastID.START_BYTE + lastID.NPTS * 8)
-            throw new RuntimeException(dataPath + " is not invalid for " + idPath);
+        WaveformEncoding encoding = WaveformEncoding.of(dataPath);
+        encoding.check(idPath, dataPath, ids);
+        long[] blockSizes = WaveformEncoding.blockSizes(ids, dataSize);
         try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(dataPath)))) {
+            dis.skipBytes(encoding.getHeaderSize());
             for (int i = 0; i < ids.length; i++) {
+                byte[] block = new byte[(int) blockSizes[i]];
                 if (!chooser.test(ids[i])) {
-                    dis.skipBytes(ids[i].NPTS * 8);
+                    dis.skipBytes(block.length);
                     ids[i] = null;
                     continue;
                 }
-                double[] data = new double[ids[i].NPTS];
-                for (int j = 0; j < data.length; j++)
-                    data[j] = dis.readDouble();
-                ids[i] = ids[i].setData(data);
+                dis.readFully(block);
+                ids[i] = ids[i].setData(encoding.decode(ByteBuffer.wrap(block), ids[i].NPTS));
             }
         }
         if (chooser != null) ids = Arrays.stream(ids).parallel().filter(Objects::nonNull).toArray(PartialID[]::new);
@@ -76,11 +76,12 @@ public final class PartialIDFile {
     }
 
     /**
-     * @param idPath {@link Path} of an ID file.
+     * @param idPath {@link Path} of an ID file (the record or {@link ColumnarIDFile} format)
      * @return Array of {@link PartialID} without waveform data
      * @throws IOException if an I/O error occurs
      */
     public static PartialID[] readPartialIDFile(Path idPath) throws IOException {
+        if (ColumnarIDFile.isColumnar(idPath)) return ColumnarIDFile.read(idPath).toPartialIDs();
         try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(idPath)))) {
             long fileSize = Files.size(idPath);
             Station[] stations = new Station[dis.readShort()];
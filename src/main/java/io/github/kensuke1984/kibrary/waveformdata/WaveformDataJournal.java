@@ -0,0 +1,227 @@
+package io.github.kensuke1984.kibrary.waveformdata;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Journal of progress in writing a pair of an ID file and a data file by
+ * {@link WaveformDataWriter}, so that an interrupted run can be resumed.
+ * <p>
+ * Each line is a record and ends with the CRC32 of the rest of the line. The
+ * first line is <br>
+ * FILES (ID file name) (data file name) (checkpoint at the start)<br>
+ * and a line is appended when a unit of work is done<br>
+ * DONE (unit) (checkpoint after the unit)<br>
+ * and the last line is the trailer written when the files are closed<br>
+ * END (checkpoint at the end)<br>
+ * where a checkpoint is {@link WaveformDataWriter.Checkpoint#toString()}. The
+ * ID and data files are in the same folder as the journal. Units must not
+ * contain spaces.
+ * <p>
+ * A record is appended after its checkpoint is forced to the storage, and the
+ * journal is forced after each record. When a journal is resumed, a broken
+ * line at the end is cut off, and the files are truncated to the last
+ * checkpoint by {@link WaveformDataWriter}.
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.1
+ */
+public final class WaveformDataJournal implements Closeable {
+
+    private final Path journalPath;
+
+    private final FileChannel channel;
+
+    private final Path idPath;
+
+    private final Path dataPath;
+
+    /**
+     * units in the journal
+     */
+    private final Set<String> doneUnits;
+
+    private WaveformDataWriter.Checkpoint checkpoint;
+
+    private boolean finished;
+
+    private WaveformDataJournal(Path journalPath, FileChannel channel, Path idPath, Path dataPath,
+                                Set<String> doneUnits, WaveformDataWriter.Checkpoint checkpoint, boolean finished) {
+        this.journalPath = journalPath;
+        this.channel = channel;
+        this.idPath = idPath;
+        this.dataPath = dataPath;
+        this.doneUnits = doneUnits;
+        this.checkpoint = checkpoint;
+        this.finished = finished;
+    }
+
+    /**
+     * @param journalPath {@link Path} of a new journal
+     * @param idPath      {@link Path} of the ID file
+     * @param dataPath    {@link Path} of the data file
+     * @param start       checkpoint of the new files
+     * @return new journal
+     * @throws IOException if an I/O error occurs
+     */
+    public static WaveformDataJournal create(Path journalPath, Path idPath, Path dataPath,
+                                             WaveformDataWriter.Checkpoint start) throws IOException {
+        FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        WaveformDataJournal journal =
+                new WaveformDataJournal(journalPath, channel, journalPath.resolveSibling(idPath.getFileName()),
+                        journalPath.resolveSibling(dataPath.getFileName()), new HashSet<>(), start, false);
+        journal.append("FILES " + idPath.getFileName() + " " + dataPath.getFileName() + " " + start);
+        return journal;
+    }
+
+    /**
+     * Reads the journal and cuts off a broken line at the end if any.
+     *
+     * @param journalPath {@link Path} of a journal by an interrupted run
+     * @return the journal to continue
+     * @throws IOException if an I/O error occurs
+     */
+    public static WaveformDataJournal resume(Path journalPath) throws IOException {
+        byte[] bytes = Files.readAllBytes(journalPath);
+        Path idPath = null;
+        Path dataPath = null;
+        Set<String> doneUnits = new HashSet<>();
+        WaveformDataWriter.Checkpoint checkpoint = null;
+        boolean finished = false;
+        int validLength = 0;
+        for (int from = 0, to; (to = indexOf(bytes, from)) >= 0 && !finished; from = to + 1) {
+            String record = check(new String(bytes, from, to - from, StandardCharsets.US_ASCII));
+            if (record == null) break;
+            String[] parts = record.split(" ", 2);
+            if (idPath == null) {
+                if (!parts[0].equals("FILES")) throw new RuntimeException(journalPath + " is not a journal.");
+                String[] names = parts[1].split(" ", 3);
+                idPath = journalPath.resolveSibling(names[0]);
+                dataPath = journalPath.resolveSibling(names[1]);
+                checkpoint = WaveformDataWriter.Checkpoint.parse(names[2]);
+            } else if (parts[0].equals("DONE")) {
+                String[] unit = parts[1].split(" ", 2);
+                doneUnits.add(unit[0]);
+                checkpoint = WaveformDataWriter.Checkpoint.parse(unit[1]);
+            } else if (parts[0].equals("END")) {
+                checkpoint = WaveformDataWriter.Checkpoint.parse(parts[1]);
+                finished = true;
+            } else break;
+            validLength = to + 1;
+        }
+        if (idPath == null) throw new RuntimeException(journalPath + " has no valid records.");
+        FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE);
+        if (validLength < bytes.length) {
+            System.err.println("Cutting off " + (bytes.length - validLength) + " bytes at the end of " + journalPath);
+            channel.truncate(validLength);
+            channel.force(false);
+        }
+        channel.position(validLength);
+        return new WaveformDataJournal(journalPath, channel, idPath, dataPath, doneUnits, checkpoint, finished);
+    }
+
+    private static int indexOf(byte[] bytes, int from) {
+        for (int i = from; i < bytes.length; i++)
+            if (bytes[i] == '\n') return i;
+        return -1;
+    }
+
+    /**
+     * @param line with a checksum
+     * @return the line without the checksum, or null if the checksum is wrong
+     */
+    private static String check(String line) {
+        int i = line.lastIndexOf(' ');
+        if (i < 0) return null;
+        String record = line.substring(0, i);
+        return line.substring(i + 1).equals(Long.toHexString(checksumOf(record))) ? record : null;
+    }
+
+    private static long checksumOf(String record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.US_ASCII));
+        return crc.getValue();
+    }
+
+    private void append(String record) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(
+                (record + " " + Long.toHexString(checksumOf(record)) + "\n").getBytes(StandardCharsets.US_ASCII));
+        while (bb.hasRemaining()) channel.write(bb);
+        channel.force(false);
+    }
+
+    /**
+     * @param unit       done, its IDs must be in the files before the checkpoint
+     * @param checkpoint after the unit
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void done(String unit, WaveformDataWriter.Checkpoint checkpoint) throws IOException {
+        if (finished) throw new IllegalStateException(journalPath + " is already finished.");
+        if (unit.contains(" ")) throw new IllegalArgumentException("Unit must not contain spaces " + unit);
+        append("DONE " + unit + " " + checkpoint);
+        doneUnits.add(unit);
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Writes the trailer.
+     *
+     * @param checkpoint at the end of the closed files
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void finish(WaveformDataWriter.Checkpoint checkpoint) throws IOException {
+        if (finished) throw new IllegalStateException(journalPath + " is already finished.");
+        append("END " + checkpoint);
+        this.checkpoint = checkpoint;
+        finished = true;
+    }
+
+    /**
+     * @param unit to check
+     * @return if the unit is done
+     */
+    public synchronized boolean isDone(String unit) {
+        return doneUnits.contains(unit);
+    }
+
+    /**
+     * @return if the trailer is written
+     */
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return the last checkpoint in the journal
+     */
+    public synchronized WaveformDataWriter.Checkpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    public Path getJournalPath() {
+        return journalPath;
+    }
+
+    public Path getIDPath() {
+        return idPath;
+    }
+
+    public Path getDataPath() {
+        return dataPath;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -1,17 +1,22 @@
 package io.github.kensuke1984.kibrary.waveformdata;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.DataOutputStream;
 import java.io.Flushable;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -25,9 +30,24 @@ import io.github.kensuke1984.kibrary.util.sac.WaveformType;
  * BasicDatasetやPartialDatasetの書き込み
  * <p>
  * This class create a new set of dataset files.
+ * <p>
+ * Waveforms are put in a large direct buffer and written to the data file
+ * through a {@link FileChannel} when the buffer is full. For many producer
+ * threads, see {@link AsyncWaveformDataWriter}. Waveforms are written in a
+ * {@link WaveformEncoding} ({@link WaveformEncoding#FLOAT64} by default).
+ * <p>
+ * CRC32 checksums of the both files are kept while writing. A
+ * {@link Checkpoint} by {@link #checkpoint()} is a consistent point of the
+ * files on the disk, and a writer created with a checkpoint truncates the
+ * files to it and continues writing there.
+ * <p>
+ * IDs in the {@link ColumnarIDFile} format are written in blocks of
+ * {@link ColumnarIDFile#BLOCK_SIZE} IDs, and the rest of them are written as
+ * a block when this is flushed. The end of the blocks is written when this is
+ * closed.
  *
  * @author Kensuke Konishi
- * @version 0.4.0.1
+ * @version 0.4.7
  */
 public class WaveformDataWriter implements Closeable, Flushable {
     public Path getIDPath() {
@@ -43,10 +63,38 @@ public class WaveformDataWriter implements Closeable, Flushable {
      */
     private DataOutputStream idStream;
 
+    private FileChannel idChannel;
+
+    /**
+     * checksum of the ID file
+     */
+    private final CRC32 idChecksum = new CRC32();
+
+    /**
+     * checksum of the data file
+     */
+    private final CRC32 dataChecksum = new CRC32();
+
+    /**
+     * the checkpoint when this is closed
+     */
+    private Checkpoint lastCheckpoint;
+
+    /**
+     * [byte] size of {@link #dataBuffer}
+     */
+    private static final int DATA_BUFFER_SIZE = 4 * 1024 * 1024;
+
     /**
      * 波形情報の書き出し
      */
-    private DataOutputStream dataStream;
+    private FileChannel dataChannel;
+
+    /**
+     * waveforms to be written in {@link #dataChannel} (big endian as
+     * {@link DataOutputStream})
+     */
+    private final ByteBuffer dataBuffer = ByteBuffer.allocateDirect(DATA_BUFFER_SIZE);
 
     /**
      * id information file
@@ -60,14 +108,48 @@ public class WaveformDataWriter implements Closeable, Flushable {
 
     @Override
     public void close() throws IOException {
-        idStream.close();
-        dataStream.close();
+        try {
+            if (columns != null) columns.finish(idStream);
+            lastCheckpoint = checkpoint();
+        } finally {
+            idStream.close();
+            dataChannel.close();
+        }
     }
 
     @Override
-    public void flush() throws IOException {
+    public synchronized void flush() throws IOException {
+        if (columns != null) columns.writeBlock(idStream);
         idStream.flush();
-        dataStream.flush();
+        drainDataBuffer();
+    }
+
+    /**
+     * Flushes and forces the both files to the storage.
+     *
+     * @return the current checkpoint
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized Checkpoint checkpoint() throws IOException {
+        flush();
+        idChannel.force(false);
+        dataChannel.force(false);
+        return new Checkpoint(idChannel.position(), dataLength, idChecksum.getValue(), dataChecksum.getValue());
+    }
+
+    /**
+     * @return the checkpoint at the end of the files after {@link #close()},
+     * otherwise null
+     */
+    public Checkpoint getLastCheckpoint() {
+        return lastCheckpoint;
+    }
+
+    private void drainDataBuffer() throws IOException {
+        dataBuffer.flip();
+        dataChecksum.update(dataBuffer.duplicate());
+        while (dataBuffer.hasRemaining()) dataChannel.write(dataBuffer);
+        dataBuffer.clear();
     }
 
     /**
@@ -76,6 +158,16 @@ public class WaveformDataWriter implements Closeable, Flushable {
      */
     private final int mode;
 
+    /**
+     * Columns of IDs if the ID file is columnar, otherwise null
+     */
+    private final ColumnarIDFile.Builder columns;
+
+    /**
+     * encoding of waveforms in the data file
+     */
+    private final WaveformEncoding encoding;
+
     /**
      * index map for stations
      */
@@ -112,6 +204,22 @@ public class WaveformDataWriter implements Closeable, Flushable {
         this(idPath, dataPath, stationSet, globalCMTIDSet, periodRanges, null);
     }
 
+    /**
+     * This constructor is only for BasicID.
+     *
+     * @param idPath         Path for ID file (must not exist)
+     * @param dataPath       Path for data file (must not exist)
+     * @param stationSet     must contain all information of the IDs to output
+     * @param globalCMTIDSet must contain all information of the IDs to output
+     * @param periodRanges   must contain all information of the IDs to output.
+     * @param columnar       if the ID file is written in the {@link ColumnarIDFile} format
+     * @throws IOException if an error occurs
+     */
+    public WaveformDataWriter(Path idPath, Path dataPath, Set<Station> stationSet, Set<GlobalCMTID> globalCMTIDSet,
+                              double[][] periodRanges, boolean columnar) throws IOException {
+        this(idPath, dataPath, stationSet, globalCMTIDSet, periodRanges, null, columnar);
+    }
+
     /**
      * This constructor is only for PartialID. All output ID must have a
      * station, a Global CMT ID and period ranges in the input ones.
@@ -128,15 +236,80 @@ public class WaveformDataWriter implements Closeable, Flushable {
      */
     public WaveformDataWriter(Path idPath, Path dataPath, Set<Station> stationSet, Set<GlobalCMTID> globalCMTIDSet,
                               double[][] periodRanges, Set<Location> perturbationPoints) throws IOException {
+        this(idPath, dataPath, stationSet, globalCMTIDSet, periodRanges, perturbationPoints, false);
+    }
+
+    /**
+     * This constructor is only for PartialID.
+     *
+     * @param idPath             Path for ID file (must not exist)
+     * @param dataPath           Path for data file (must not exist)
+     * @param stationSet         must contain all information of the IDs to output
+     * @param globalCMTIDSet     must contain all information of the IDs to output
+     * @param periodRanges       must contain all information of the IDs to output.
+     * @param perturbationPoints must contain all information of the IDs to output
+     * @param columnar           if the ID file is written in the {@link ColumnarIDFile} format
+     * @throws IOException if an error occurs
+     */
+    public WaveformDataWriter(Path idPath, Path dataPath, Set<Station> stationSet, Set<GlobalCMTID> globalCMTIDSet,
+                              double[][] periodRanges, Set<Location> perturbationPoints, boolean columnar)
+            throws IOException {
+        this(idPath, dataPath, stationSet, globalCMTIDSet, periodRanges, perturbationPoints, columnar,
+                WaveformEncoding.FLOAT64);
+    }
+
+    /**
+     * @param idPath             Path for ID file (must not exist)
+     * @param dataPath           Path for data file (must not exist)
+     * @param stationSet         must contain all information of the IDs to output
+     * @param globalCMTIDSet     must contain all information of the IDs to output
+     * @param periodRanges       must contain all information of the IDs to output.
+     * @param perturbationPoints must contain all information of the IDs to output. null for BasicID.
+     * @param columnar           if the ID file is written in the {@link ColumnarIDFile} format
+     * @param encoding           of waveforms in the data file
+     * @throws IOException if an error occurs
+     */
+    public WaveformDataWriter(Path idPath, Path dataPath, Set<Station> stationSet, Set<GlobalCMTID> globalCMTIDSet,
+                              double[][] periodRanges, Set<Location> perturbationPoints, boolean columnar,
+                              WaveformEncoding encoding) throws IOException {
+        this(idPath, dataPath, stationSet, globalCMTIDSet, periodRanges, perturbationPoints, columnar, encoding,
+                null);
+    }
+
+    /**
+     * With a checkpoint, the files are truncated to it and the following IDs
+     * are written after it. The files must be written by a writer with the
+     * same arguments (the sets in the same order) and the contents before the
+     * checkpoint must match its checksums.
+     *
+     * @param idPath             Path for ID file (must not exist without a checkpoint)
+     * @param dataPath           Path for data file (must not exist without a checkpoint)
+     * @param stationSet         must contain all information of the IDs to output
+     * @param globalCMTIDSet     must contain all information of the IDs to output
+     * @param periodRanges       must contain all information of the IDs to output.
+     * @param perturbationPoints must contain all information of the IDs to output. null for BasicID.
+     * @param columnar           if the ID file is written in the {@link ColumnarIDFile} format
+     * @param encoding           of waveforms in the data file
+     * @param checkpoint         to resume writing from, or null for new files
+     * @throws IOException if an error occurs
+     */
+    public WaveformDataWriter(Path idPath, Path dataPath, Set<Station> stationSet, Set<GlobalCMTID> globalCMTIDSet,
+                              double[][] periodRanges, Set<Location> perturbationPoints, boolean columnar,
+                              WaveformEncoding encoding, Checkpoint checkpoint) throws IOException {
         this.idPath = idPath;
         this.dataPath = dataPath;
         if (checkDuplication(periodRanges)) throw new RuntimeException("Input periodRanges have duplication.");
         this.periodRanges = periodRanges;
-        idStream = new DataOutputStream(
-                new BufferedOutputStream(Files.newOutputStream(idPath, StandardOpenOption.CREATE_NEW)));
-        dataStream = new DataOutputStream(
-                new BufferedOutputStream(Files.newOutputStream(dataPath, StandardOpenOption.CREATE_NEW)));
-        dataLength = Files.size(dataPath);
+        this.encoding = encoding;
+        // the header is made in memory first to check it against a file to resume
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        idStream = new DataOutputStream(header);
+        mode = perturbationPoints == null ? 0 : 1;
+        columns = columnar ? new ColumnarIDFile.Builder(mode == 1) : null;
+        if (columnar) {
+            idStream.writeInt(ColumnarIDFile.MAGIC);
+            idStream.writeByte(mode);
+        }
         idStream.writeShort(stationSet.size());
         idStream.writeShort(globalCMTIDSet.size());
         idStream.writeShort(periodRanges.length);
@@ -148,7 +321,124 @@ public class WaveformDataWriter implements Closeable, Flushable {
             idStream.writeFloat((float) periodRange[1]);
         }
         if (perturbationPoints != null) makePerturbationMap(perturbationPoints);
-        mode = perturbationPoints == null ? 0 : 1;
+        byte[] headerBytes = header.toByteArray();
+        if (checkpoint == null) {
+            idChannel = FileChannel.open(idPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            dataChannel = FileChannel.open(dataPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } else {
+            idChannel = FileChannel.open(idPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            dataChannel = FileChannel.open(dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            byte[] writtenHeader = new byte[headerBytes.length];
+            ByteBuffer bb = ByteBuffer.wrap(writtenHeader);
+            while (bb.hasRemaining()) if (idChannel.read(bb, bb.position()) < 0) break;
+            if (!Arrays.equals(headerBytes, writtenHeader))
+                throw new RuntimeException("The header of " + idPath + " is different from the input.");
+            // both files are checked before either of them is truncated
+            verify(idChannel, checkpoint.getIDLength(), idChecksum, checkpoint.getIDChecksum(), idPath);
+            verify(dataChannel, checkpoint.getDataLength(), dataChecksum, checkpoint.getDataChecksum(), dataPath);
+            truncate(idChannel, checkpoint.getIDLength());
+            truncate(dataChannel, checkpoint.getDataLength());
+            if (WaveformEncoding.of(dataPath) != encoding)
+                throw new RuntimeException(dataPath + " is not in " + encoding);
+        }
+        idStream = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(idChannel)), idChecksum));
+        if (checkpoint == null) {
+            idStream.write(headerBytes);
+            dataBuffer.put(encoding.header());
+            dataLength = encoding.getHeaderSize();
+        } else dataLength = checkpoint.getDataLength();
+    }
+
+    /**
+     * Checks the checksum of the contents of a file before the length. The
+     * file is not changed.
+     */
+    private static void verify(FileChannel channel, long length, CRC32 checksum, long expected, Path path)
+            throws IOException {
+        if (channel.size() < length) throw new RuntimeException(path + " is shorter than the checkpoint.");
+        ByteBuffer bb = ByteBuffer.allocateDirect(DATA_BUFFER_SIZE);
+        for (long position = 0; position < length; ) {
+            bb.clear();
+            bb.limit((int) Math.min(bb.capacity(), length - position));
+            int n = channel.read(bb, position);
+            if (n < 0) throw new RuntimeException("Unexpected end of " + path);
+            position += n;
+            bb.flip();
+            checksum.update(bb);
+        }
+        if (checksum.getValue() != expected)
+            throw new RuntimeException(path + " does not match the checksum of the checkpoint.");
+    }
+
+    /**
+     * Truncates a file to the length, and sets the position of the channel at
+     * the end.
+     */
+    private static void truncate(FileChannel channel, long length) throws IOException {
+        channel.truncate(length);
+        channel.position(length);
+    }
+
+    /**
+     * Lengths and CRC32 checksums of the ID and data files at a point.
+     * <p>
+     * This class is <b>IMMUTABLE</b>
+     */
+    public static final class Checkpoint {
+        private final long idLength;
+        private final long dataLength;
+        private final long idChecksum;
+        private final long dataChecksum;
+
+        /**
+         * @param idLength     [byte] length of the ID file
+         * @param dataLength   [byte] length of the data file
+         * @param idChecksum   CRC32 of the ID file
+         * @param dataChecksum CRC32 of the data file
+         */
+        public Checkpoint(long idLength, long dataLength, long idChecksum, long dataChecksum) {
+            this.idLength = idLength;
+            this.dataLength = dataLength;
+            this.idChecksum = idChecksum;
+            this.dataChecksum = dataChecksum;
+        }
+
+        /**
+         * @param line written by {@link #toString()}
+         * @return the checkpoint in the line
+         */
+        public static Checkpoint parse(String line) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length != 4) throw new IllegalArgumentException("Invalid checkpoint " + line);
+            return new Checkpoint(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2], 16),
+                    Long.parseLong(parts[3], 16));
+        }
+
+        public long getIDLength() {
+            return idLength;
+        }
+
+        public long getDataLength() {
+            return dataLength;
+        }
+
+        public long getIDChecksum() {
+            return idChecksum;
+        }
+
+        public long getDataChecksum() {
+            return dataChecksum;
+        }
+
+        /**
+         * @return lengths and checksums (in hex) separated by spaces
+         */
+        @Override
+        public String toString() {
+            return idLength + " " + dataLength + " " + Long.toHexString(idChecksum) + " " +
+                    Long.toHexString(dataChecksum);
+        }
     }
 
     private void makeGlobalCMTIDMap(Set<GlobalCMTID> globalCMTIDSet) throws IOException {
@@ -202,7 +492,25 @@ public class WaveformDataWriter implements Closeable, Flushable {
      * @param data waveform data
      */
     private void addWaveform(double[] data) throws IOException {
-        for (double aData : data) dataStream.writeDouble(aData);
+        if (encoding != WaveformEncoding.FLOAT64) {
+            ByteBuffer block = encoding.encode(data);
+            dataLength += block.remaining();
+            while (block.hasRemaining()) {
+                if (!dataBuffer.hasRemaining()) drainDataBuffer();
+                int limit = block.limit();
+                block.limit(block.position() + Math.min(block.remaining(), dataBuffer.remaining()));
+                dataBuffer.put(block);
+                block.limit(limit);
+            }
+            return;
+        }
+        for (int offset = 0; offset < data.length; ) {
+            if (dataBuffer.remaining() < 8) drainDataBuffer();
+            int n = Math.min(data.length - offset, dataBuffer.remaining() / 8);
+            dataBuffer.asDoubleBuffer().put(data, offset, n);
+            dataBuffer.position(dataBuffer.position() + 8 * n);
+            offset += n;
+        }
         dataLength += 8 * data.length;
     }
 
@@ -212,6 +520,17 @@ public class WaveformDataWriter implements Closeable, Flushable {
      */
     public synchronized void addBasicID(BasicID basicID) throws IOException {
         if (mode != 0) throw new RuntimeException("No BasicID please, would you.");
+        if (columns != null) {
+            if (basicID.TYPE == WaveformType.PARTIAL) throw new RuntimeException("This is a partial derivative.");
+            long startByte = dataLength;
+            addWaveform(basicID.getData());
+            columns.add(idStream, basicID.TYPE == WaveformType.OBS, stationMap.get(basicID.STATION),
+                    globalCMTIDMap.get(basicID.ID), basicID.COMPONENT.valueOf(),
+                    getIndexOfRange(basicID.MIN_PERIOD, basicID.MAX_PERIOD), basicID.getStartTime(),
+                    basicID.getNpts(), basicID.getSamplingHz(),
+                    basicID.getWaveformType() == WaveformType.OBS || basicID.CONVOLUTE, startByte, 0, 0);
+            return;
+        }
 
         switch (basicID.TYPE) {
             case OBS:
@@ -260,6 +579,13 @@ public class WaveformDataWriter implements Closeable, Flushable {
         if (mode != 1) throw new RuntimeException("No Partial please, would you.");
         long startByte = dataLength;
         addWaveform(partialID.getData());
+        if (columns != null) {
+            columns.add(idStream, false, stationMap.get(partialID.STATION), globalCMTIDMap.get(partialID.ID),
+                    partialID.COMPONENT.valueOf(), getIndexOfRange(partialID.MIN_PERIOD, partialID.MAX_PERIOD),
+                    partialID.START_TIME, partialID.NPTS, partialID.SAMPLINGHZ, partialID.CONVOLUTE, startByte,
+                    partialID.getPartialType().getValue(), perturbationLocationMap.get(partialID.pointLocation));
+            return;
+        }
         idStream.writeShort(stationMap.get(partialID.STATION));
         idStream.writeShort(globalCMTIDMap.get(partialID.ID));
         idStream.writeByte(partialID.COMPONENT.valueOf());
@@ -0,0 +1,270 @@
+package io.github.kensuke1984.kibrary.waveformdata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Encodings of waveforms in a data file written by {@link WaveformDataWriter}.
+ * <p>
+ * A data file in {@link #FLOAT64} is the same as before, big endian doubles
+ * without any header. A data file in the other encodings starts with a header
+ * of {@link #HEADER_SIZE} bytes: {@link #MAGIC}(4), encoding(1) and 3 bytes
+ * of 0. The top of the header is a NaN as a double, so it is never taken for
+ * a waveform in {@link #FLOAT64}. Readers detect the encoding by
+ * {@link #of(Path)}.
+ * <p>
+ * Start bytes of IDs are the positions of their blocks in the file including
+ * the header.
+ *
+ * @author Kensuke Konishi
+ * @version 0.0.1
+ */
+public enum WaveformEncoding {
+    /**
+     * big endian double (8 bytes per point)
+     */
+    FLOAT64(0),
+    /**
+     * big endian float (4 bytes per point)
+     */
+    FLOAT32(1),
+    /**
+     * Each waveform is quantized with a step of 2 {@link #RELATIVE_ERROR}
+     * times its maximum absolute value, so that the error of each point is at
+     * most {@link #RELATIVE_ERROR} of the maximum. The second differences of
+     * the quantized values are written as zigzag variable-length integers.
+     * <p>
+     * A block is: size of the rest(4), the step(8), the integers.
+     */
+    COMPRESSED(2);
+
+    /**
+     * Magic number at the top of a data file with a header
+     */
+    public static final int MAGIC = 0x7FFDA7A0;
+
+    /**
+     * [byte] size of the header of a data file (except {@link #FLOAT64})
+     */
+    public static final int HEADER_SIZE = 8;
+
+    /**
+     * maximum error of {@link #COMPRESSED} relative to the maximum absolute
+     * value of a waveform
+     */
+    public static final double RELATIVE_ERROR = 1e-6;
+
+    private final int value;
+
+    WaveformEncoding(int value) {
+        this.value = value;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public static WaveformEncoding getEncoding(int n) {
+        return Arrays.stream(values()).filter(encoding -> encoding.value == n).findAny()
+                .orElseThrow(() -> new IllegalArgumentException("Input n " + n + " is invalid."));
+    }
+
+    /**
+     * @param dataPath {@link Path} of a data file
+     * @return encoding of the data file
+     * @throws IOException if an I/O error occurs
+     */
+    public static WaveformEncoding of(Path dataPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) if (channel.read(header) < 0) break;
+            if (header.hasRemaining() || header.getInt(0) != MAGIC) return FLOAT64;
+            return getEncoding(header.get(4));
+        }
+    }
+
+    /**
+     * @return [byte] size of the header of a data file
+     */
+    public int getHeaderSize() {
+        return this == FLOAT64 ? 0 : HEADER_SIZE;
+    }
+
+    /**
+     * @return the header of a data file
+     */
+    ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(getHeaderSize());
+        if (this != FLOAT64) header.putInt(MAGIC).put((byte) value);
+        header.clear();
+        return header;
+    }
+
+    /**
+     * @param data waveform
+     * @return block of the waveform (position 0)
+     */
+    ByteBuffer encode(double[] data) {
+        ByteBuffer bb;
+        switch (this) {
+            case FLOAT64:
+                bb = ByteBuffer.allocate(8 * data.length);
+                bb.asDoubleBuffer().put(data);
+                return bb;
+            case FLOAT32:
+                bb = ByteBuffer.allocate(4 * data.length);
+                for (double d : data)
+                    bb.putFloat((float) d);
+                bb.flip();
+                return bb;
+            case COMPRESSED:
+                double max = 0;
+                for (double d : data)
+                    max = Math.max(max, Math.abs(d));
+                if (!Double.isFinite(max)) throw new IllegalArgumentException("Waveform has NaN or Infinity.");
+                double step = 2 * RELATIVE_ERROR * max;
+                bb = ByteBuffer.allocate(12 + 10 * data.length);
+                bb.position(4);
+                bb.putDouble(step);
+                long k1 = 0;
+                long k2 = 0;
+                for (double d : data) {
+                    long k = step == 0 ? 0 : Math.round(d / step);
+                    putVarLong(bb, zigzag(k - 2 * k1 + k2));
+                    k2 = k1;
+                    k1 = k;
+                }
+                bb.putInt(0, bb.position() - 4);
+                bb.flip();
+                return bb;
+            default:
+                throw new RuntimeException("Unexpected");
+        }
+    }
+
+    /**
+     * @param bb   containing a block at the position, which is moved to the
+     *             end of the block
+     * @param npts the number of points
+     * @return the waveform
+     */
+    public double[] decode(ByteBuffer bb, int npts) {
+        double[] data = new double[npts];
+        switch (this) {
+            case FLOAT64:
+                bb.asDoubleBuffer().get(data);
+                bb.position(bb.position() + 8 * npts);
+                return data;
+            case FLOAT32:
+                for (int i = 0; i < npts; i++)
+                    data[i] = bb.getFloat();
+                return data;
+            case COMPRESSED:
+                bb.getInt();
+                double step = bb.getDouble();
+                long k1 = 0;
+                long k2 = 0;
+                for (int i = 0; i < npts; i++) {
+                    long k = unzigzag(getVarLong(bb)) + 2 * k1 - k2;
+                    data[i] = k * step;
+                    k2 = k1;
+                    k1 = k;
+                }
+                return data;
+            default:
+                throw new RuntimeException("Unexpected");
+        }
+    }
+
+    /**
+     * @param channel   of a data file
+     * @param startByte position of a block
+     * @param npts      the number of points in the block
+     * @return [byte] position of the end of the block
+     * @throws IOException if an I/O error occurs
+     */
+    long endOf(FileChannel channel, long startByte, int npts) throws IOException {
+        switch (this) {
+            case FLOAT64:
+                return startByte + 8L * npts;
+            case FLOAT32:
+                return startByte + 4L * npts;
+            case COMPRESSED:
+                ByteBuffer size = ByteBuffer.allocate(4);
+                while (size.hasRemaining())
+                    if (channel.read(size, startByte + size.position()) < 0) return -1;
+                return startByte + 4 + size.getInt(0);
+            default:
+                throw new RuntimeException("Unexpected");
+        }
+    }
+
+    /**
+     * Checks that the last block ends at the end of the data file.
+     *
+     * @param idPath   {@link Path} of the ID file (for a message)
+     * @param dataPath {@link Path} of the data file
+     * @param ids      in the data file
+     * @throws IOException if an I/O error occurs
+     */
+    void check(Path idPath, Path dataPath, BasicID[] ids) throws IOException {
+        long dataSize = Files.size(dataPath);
+        BasicID lastID = ids[0];
+        for (BasicID id : ids)
+            if (lastID.START_BYTE < id.START_BYTE) lastID = id;
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            if (dataSize != endOf(channel, lastID.START_BYTE, lastID.NPTS))
+                throw new RuntimeException(dataPath + " is not invalid for " + idPath);
+        }
+    }
+
+    /**
+     * Blocks are next to each other in the data file, so the size of each is
+     * the distance to the next one.
+     *
+     * @param ids      in the data file
+     * @param dataSize [byte] size of the data file
+     * @return [byte] size of the block of each ID
+     */
+    static long[] blockSizes(BasicID[] ids, long dataSize) {
+        Integer[] order = new Integer[ids.length];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, (i, j) -> Long.compare(ids[i].START_BYTE, ids[j].START_BYTE));
+        long[] sizes = new long[ids.length];
+        for (int i = 0; i < order.length; i++)
+            sizes[order[i]] =
+                    (i + 1 < order.length ? ids[order[i + 1]].START_BYTE : dataSize) - ids[order[i]].START_BYTE;
+        return sizes;
+    }
+
+    private static long zigzag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    private static long unzigzag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static void putVarLong(ByteBuffer bb, long n) {
+        while ((n & ~0x7FL) != 0) {
+            bb.put((byte) ((n & 0x7F) | 0x80));
+            n >>>= 7;
+        }
+        bb.put((byte) n);
+    }
+
+    private static long getVarLong(ByteBuffer bb) {
+        long n = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = bb.get();
+            n |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return n;
+        }
+    }
+
+}